@@ -295,6 +295,34 @@ abstract public class AbstractComponentRuntime implements IComponentRuntime {
         }
         Bindings bindings = scriptEngine.createBindings();       
         bindHeadersAndFlowParameters(bindings, inputMessage);
+        bindEntityValues(bindings, entityData);
+        scriptEngine.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+        return bindings;
+    }
+
+    /**
+     * Rebinds a row into bindings that were set up once for the message with
+     * {@link #bindHeadersAndFlowParameters(Bindings, Message)}. The bound
+     * entity maps are reused and the values left over from the previous row
+     * are cleared.
+     */
+    @SuppressWarnings("unchecked")
+    protected void rebindEntityData(Bindings bindings, EntityData entityData) {
+        if (entityNameLookup == null) {
+            entityNameLookup = new EntityNameLookup(context.getFlowStep().getComponent().getInputModel());
+        }
+        for (ModelEntity entity : getInputModel().getModelEntities()) {
+            Object boundEntity = bindings.get(entity.getName());
+            if (boundEntity instanceof HashMap) {
+                for (Map.Entry<String, Object> entry : ((Map<String, Object>) boundEntity).entrySet()) {
+                    entry.setValue(null);
+                }
+            }
+        }
+        bindEntityValues(bindings, entityData);
+    }
+
+    private void bindEntityValues(Bindings bindings, EntityData entityData) {
         Model model = getInputModel();
         bindings.put("CHANGE_TYPE", entityData.getChangeType().name());
         bindings.put("ENTITY_NAMES", entityNameLookup.getEntityNames(entityData));                
@@ -312,8 +340,6 @@ abstract public class AbstractComponentRuntime implements IComponentRuntime {
                 log(LogLevel.WARN, "Could not find attribute in the input model with an id of " + attributeId);
             }
         }
-        scriptEngine.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
-        return bindings;
     }
 
     protected Bindings bindStringData(ScriptEngine scriptEngine, Message inputMessage, String value) {
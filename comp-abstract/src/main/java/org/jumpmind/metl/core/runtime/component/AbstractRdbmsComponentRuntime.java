@@ -65,6 +65,8 @@ abstract public class AbstractRdbmsComponentRuntime extends AbstractComponentRun
     
     protected int queryTimeout = -1;
 
+    protected int fetchSize = -1;
+
     protected NamedParameterJdbcTemplate getJdbcTemplate() {
         if (dataSource == null && getResourceRuntime() == null) {
             throw new RuntimeException("The data source resource has not been configured.  Please configure it.");
@@ -75,6 +77,7 @@ abstract public class AbstractRdbmsComponentRuntime extends AbstractComponentRun
         }
         JdbcTemplate template = new JdbcTemplate(dataSource);
         template.setQueryTimeout(queryTimeout);
+        template.setFetchSize(fetchSize);
         return new NamedParameterJdbcTemplate(template);
     }
 
@@ -442,7 +442,7 @@ public class ModelAttributeScriptHelper {
         LocalVariableTableParameterNameDiscoverer discoverer = new LocalVariableTableParameterNameDiscoverer();
         for (Method method : methods) {
             if (method.getDeclaringClass().equals(ModelAttributeScriptHelper.class) && Modifier.isPublic(method.getModifiers())
-                    && !Modifier.isStatic(method.getModifiers())) {
+                    && !Modifier.isStatic(method.getModifiers()) && !method.getName().equals("eval")) {
                 StringBuilder sig = new StringBuilder(method.getName());
                 sig.append("(");
                 String[] names = discoverer.getParameterNames(method);
@@ -465,28 +465,48 @@ public class ModelAttributeScriptHelper {
 
     public static Object eval(Message message, ComponentContext context, ModelAttrib attribute, Object value, Model model, ModelEntity entity,
             EntityData data, String expression) {
+        return compile(context, attribute, entity, model, expression).eval(message, data, value);
+    }
+
+    /**
+     * Compiles a format function into a helper whose {@link #eval()} returns
+     * the value of the expression. Components should compile their format
+     * functions once at start and call {@link #eval(Message, EntityData, Object)}
+     * for each value.
+     */
+    public static ModelAttributeScriptHelper compile(ComponentContext context, ModelAttrib attribute, ModelEntity entity, Model model,
+            String expression) {
         ScriptEngine engine = scriptEngine.get();
         if (engine == null) {
             engine = new GroovyScriptEngineImpl();
             scriptEngine.set(engine);
         }
-        engine.put("value", value);
-        engine.put("data", data);
         engine.put("entity", entity);
         engine.put("model", model);
         engine.put("attribute", attribute);
-        engine.put("message", message);
         engine.put("context", context);
 
         try {
             String importString = "import org.jumpmind.metl.core.runtime.component.ModelAttributeScriptHelper;\n";
             String code = String.format(
-                    "return new ModelAttributeScriptHelper(message, context, attribute, entity, model, data, value) { public Object eval() { return %s } }.eval()",
+                    "return new ModelAttributeScriptHelper(context, attribute, entity, model) { public Object eval() { return %s \n } }",
                     expression);
-            return engine.eval(importString + code);
+            return (ModelAttributeScriptHelper) engine.eval(importString + code);
         } catch (ScriptException e) {
+            throw new RuntimeException("Unable to compile groovy script.  Attribute ==> " + attribute.getName() + "."
+                    + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()), e);
+        }
+    }
+
+    public Object eval(Message message, EntityData data, Object value) {
+        this.message = message;
+        this.data = data;
+        this.value = value;
+        try {
+            return eval();
+        } catch (Exception e) {
             throw new RuntimeException("Unable to evaluate groovy script.  Attribute ==> " + attribute.getName() + ".  Value ==> "
-                    + value.toString() + "." + e.getCause().getMessage(), e);
+                    + (value == null ? "null" : value.toString()) + "." + e.getMessage(), e);
         }
     }
 
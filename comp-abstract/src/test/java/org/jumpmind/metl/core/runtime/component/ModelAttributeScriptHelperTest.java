@@ -20,9 +20,11 @@
  */
 package org.jumpmind.metl.core.runtime.component;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
+import org.jumpmind.metl.core.model.ModelAttrib;
 import org.junit.Test;
 
 public class ModelAttributeScriptHelperTest {
@@ -36,4 +38,14 @@ public class ModelAttributeScriptHelperTest {
         assertNotNull(helper.parsedate("yyyy-MM-dd", "0000-00-01"));
 
     }
+
+    @Test
+    public void testCompiledHelperIsReusedAcrossValues() {
+        ModelAttrib attribute = new ModelAttrib("a1", "e1", "COL1");
+        ModelAttributeScriptHelper helper = ModelAttributeScriptHelper.compile(null, attribute, null, null,
+                "value == null ? 'none' : capitalize()");
+        assertEquals("Abc", helper.eval(null, null, "abc"));
+        assertEquals("none", helper.eval(null, null, null));
+        assertEquals("Xyz", helper.eval(null, null, "xyz"));
+    }
 }
@@ -22,43 +22,34 @@ package org.jumpmind.metl.core.runtime.component;
 
 import static org.apache.commons.lang.StringUtils.isBlank;
 
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
-
-import org.apache.commons.io.FileUtils;
-import org.h2.Driver;
-import org.jumpmind.db.model.Column;
-import org.jumpmind.db.model.IIndex;
-import org.jumpmind.db.model.IndexColumn;
-import org.jumpmind.db.model.Table;
-import org.jumpmind.db.platform.IDatabasePlatform;
-import org.jumpmind.db.platform.JdbcDatabasePlatformFactory;
-import org.jumpmind.db.sql.SqlTemplateSettings;
-import org.jumpmind.db.util.ResettableBasicDataSource;
-import org.jumpmind.metl.core.model.AbstractNamedObject;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+
 import org.jumpmind.metl.core.model.Component;
 import org.jumpmind.metl.core.model.ComponentAttribSetting;
 import org.jumpmind.metl.core.model.ComponentEntitySetting;
-import org.jumpmind.metl.core.model.DataType;
 import org.jumpmind.metl.core.model.Model;
 import org.jumpmind.metl.core.model.ModelAttrib;
 import org.jumpmind.metl.core.model.ModelEntity;
-import org.jumpmind.metl.core.runtime.ControlMessage;
-import org.jumpmind.metl.core.runtime.EntityData.ChangeType;
-import org.jumpmind.metl.core.runtime.LogLevel;
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityDataMessage;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.MisconfiguredException;
 import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
+import org.jumpmind.metl.core.util.SpillBuffer;
+import org.jumpmind.metl.core.util.ThreadUtils;
 import org.jumpmind.properties.TypedProperties;
 
 public class DataDiff extends AbstractComponentRuntime {
@@ -66,6 +57,10 @@ public class DataDiff extends AbstractComponentRuntime {
     public static String SOURCE_1 = "source.1";
     public static String SOURCE_2 = "source.2";
     public static String IN_MEMORY_COMPARE = "in.memory.compare";
+    public static String SORTED_MERGE = "sorted.merge";
+    public static String MEMORY_BUDGET_MB = "memory.budget.mb";
+    public static String PARTITION_COUNT = "partition.count";
+    public static String PARALLELISM = "parallelism";
 
     public final static String ENTITY_ADD_ENABLED = "add.enabled";
 
@@ -85,19 +80,32 @@ public class DataDiff extends AbstractComponentRuntime {
 
     boolean inMemoryCompare = true;
 
-    IDatabasePlatform databasePlatform;
+    boolean sortedMerge = false;
+
+    long memoryBudgetBytes;
 
-    RdbmsWriter databaseWriter;
+    int partitionCount;
 
-    String databaseName;
+    int parallelism;
+
+    ExecutorService partitionExecutor;
 
     List<ModelEntity> entities;
 
-    Throwable error;
+    List<EntityDiff> entityDiffs;
+
+    Map<EntityDiff, HashDiff> hashDiffs = new LinkedHashMap<>();
+
+    Map<EntityDiff, SortedMergeDiff> mergeDiffs = new LinkedHashMap<>();
+
+    Map<EntityDiff, SpillBuffer<EntityData>> deletes = new LinkedHashMap<>();
+
+    long memoryUsed;
+
+    ArrayList<EntityData> outputBatch = new ArrayList<>();
 
     @Override
     public void start() {
-        error = null;
         TypedProperties properties = getTypedProperties();
         this.sourceStep1Id = properties.get(SOURCE_1);
         if (isBlank(sourceStep1Id)) {
@@ -111,6 +119,10 @@ public class DataDiff extends AbstractComponentRuntime {
         }
 
         this.inMemoryCompare = properties.is(IN_MEMORY_COMPARE);
+        this.sortedMerge = properties.is(SORTED_MERGE, false);
+        this.memoryBudgetBytes = properties.getLong(MEMORY_BUDGET_MB, 256) * 1024 * 1024;
+        this.partitionCount = Math.max(1, properties.getInt(PARTITION_COUNT, 64));
+        this.parallelism = properties.getInt(PARALLELISM, 2);
         this.rowsPerMessage = properties.getInt(ROWS_PER_MESSAGE);
         Component comp = context.getFlowStep().getComponent();
         comp.setOutputModel(comp.getInputModel());
@@ -134,311 +146,263 @@ public class DataDiff extends AbstractComponentRuntime {
                 return new Integer(orderValue1).compareTo(new Integer(orderValue2));
             }
         });
+
+        entityDiffs = new ArrayList<>(entities.size());
+        for (ModelEntity entity : entities) {
+            entityDiffs.add(createEntityDiff(comp, entity));
+        }
+
+        if (!sortedMerge && parallelism > 1) {
+            partitionExecutor = ThreadUtils.createFixedThreadPool(
+                    "data-diff-" + context.getFlowStep().getId() + "-" + threadNumber, partitionCount, parallelism);
+        }
     }
 
-    @Override
-    public void handle(Message message, ISendMessageCallback callback,
-            boolean unitOfWorkBoundaryReached) {
-        createDatabase();
-        loadIntoDatabase(message);
-        if (unitOfWorkBoundaryReached && error == null) {
-            calculateDiff(callback);
+    protected EntityDiff createEntityDiff(Component component, ModelEntity entity) {
+        Set<String> compareEnabledAttributeIds = new HashSet<>();
+        for (ModelAttrib attribute : entity.getModelAttributes()) {
+            ComponentAttribSetting matchColumnSetting = component.getSingleAttributeSetting(attribute.getId(),
+                    DataDiff.ATTRIBUTE_COMPARE_ENABLED);
+            boolean matchColumn = matchColumnSetting != null ? Boolean.parseBoolean(matchColumnSetting.getValue()) : true;
+            if (matchColumn) {
+                compareEnabledAttributeIds.add(attribute.getId());
+            }
         }
+        return new EntityDiff(entity, compareEnabledAttributeIds, isEnabled(component, entity, ENTITY_ADD_ENABLED),
+                isEnabled(component, entity, ENTITY_CHG_ENABLED), isEnabled(component, entity, ENTITY_DEL_ENABLED));
     }
-    
-    /*
-     * Column names must be quoted in order to handle names with spaces.
-     * Note: Quoting the name also makes the name case sensitive in H2.
-     * Make the name upper case to match the table create statement.
-     */
-    protected String getFormattedName(AbstractNamedObject o) {
-        return "\"" + o.getName().toUpperCase() + "\"";
+
+    private boolean isEnabled(Component component, ModelEntity entity, String settingName) {
+        ComponentEntitySetting setting = component.getSingleEntitySetting(entity.getId(), settingName);
+        return setting != null ? Boolean.parseBoolean(setting.getValue()) : true;
     }
 
-    protected void calculateDiff(ISendMessageCallback callback) {
-        Map<ModelEntity, String> changeSqls = new HashMap<>();
-        Map<ModelEntity, String> addSqls = new HashMap<>();
-        Map<ModelEntity, String> delSqls = new HashMap<>();
-        Component component = context.getFlowStep().getComponent();
-        for (ModelEntity entity : entities) {
-            StringBuilder addSql = new StringBuilder("select ");
-            StringBuilder chgSql = new StringBuilder(addSql);
-            StringBuilder delSql = new StringBuilder(addSql);
-            appendColumns(addSql, "curr.", entity);
-            appendColumns(delSql, "orig.", entity);
-            appendColumns(chgSql, "curr.", entity);
-
-            addSql.append(" from " + entity.getName() + "_2 curr left join " + entity.getName()
-                    + "_1 orig on ");
-            delSql.append(" from " + entity.getName() + "_1 orig left join " + entity.getName()
-                    + "_2 curr on ");
-            chgSql.append(" from " + entity.getName() + "_1 orig join " + entity.getName()
-                    + "_2 curr on ");
-            boolean secondPk = false;
-            for (ModelAttrib attribute : entity.getModelAttributes()) {
-                if (attribute.isPk()) {
-                    if (secondPk) {
-                        addSql.append(" and ");
-                        delSql.append(" and ");
-                        chgSql.append(" and ");
-                    }
-                    addSql.append("curr.").append(getFormattedName(attribute)).append("=").append("orig.")
-                            .append(getFormattedName(attribute));
-                    delSql.append("curr.").append(getFormattedName(attribute)).append("=").append("orig.")
-                            .append(getFormattedName(attribute));
-                    chgSql.append("curr.").append(getFormattedName(attribute)).append("=").append("orig.")
-                            .append(getFormattedName(attribute));
-                    secondPk = true;
-                }
-            }
+    @Override
+    public void stop() {
+        reset();
+        if (partitionExecutor != null) {
+            partitionExecutor.shutdownNow();
+            partitionExecutor = null;
+        }
+        super.stop();
+    }
 
-            addSql.append(" where ");
-            delSql.append(" where ");
-            chgSql.append(" where ");
-            secondPk = false;
-            boolean secondCol = false;
-            for (ModelAttrib attribute : entity.getModelAttributes()) {
-                if (attribute.isPk()) {
-                    if (secondPk) {
-                        addSql.append(" or ");
-                        delSql.append(" or ");
-                    }
-                    addSql.append("orig.").append(getFormattedName(attribute)).append(" is null");
-                    delSql.append("curr.").append(getFormattedName(attribute)).append(" is null");
-                    secondPk = true;
+    @Override
+    public void handle(Message message, ISendMessageCallback callback,
+            boolean unitOfWorkBoundaryReached) {
+        if (message instanceof EntityDataMessage) {
+            String originatingStepId = message.getHeader().getOriginatingStepId();
+            boolean original = sourceStep1Id.equals(originatingStepId);
+            if (original || sourceStep2Id.equals(originatingStepId)) {
+                if (sortedMerge) {
+                    merge(original, ((EntityDataMessage) message).getPayload(), callback);
                 } else {
-                    ComponentAttribSetting matchColumnSetting = component
-                            .getSingleAttributeSetting(attribute.getId(),
-                                    DataDiff.ATTRIBUTE_COMPARE_ENABLED);
-                    boolean matchColumn = matchColumnSetting != null
-                            ? Boolean.parseBoolean(matchColumnSetting.getValue()) : true;
-                    if (matchColumn) {
-                        if (secondCol) {
-                            chgSql.append(" or ");
-                        }
-                        chgSql.append("curr.").append(getFormattedName(attribute)).append(" != ")
-                                .append("orig.").append(getFormattedName(attribute));
-                        chgSql.append(" or ");
-                        chgSql.append("curr.").append(getFormattedName(attribute)).append(" is null and ")
-                                .append("orig.").append(getFormattedName(attribute))
-                                .append(" is not null ");
-                        chgSql.append(" or ");
-                        chgSql.append("curr.").append(getFormattedName(attribute))
-                                .append(" is not null and ").append("orig.")
-                                .append(getFormattedName(attribute)).append(" is null ");
-                        secondCol = true;
-                    }
+                    partition(original, ((EntityDataMessage) message).getPayload());
                 }
             }
-
-            //we only want to do a change compare if this entity has 
-            //cols to compare other than the primary key.
-            if (!entity.hasOnlyPrimaryKeys() && secondCol) {
-                changeSqls.put(entity, chgSql.toString());
-                log(LogLevel.INFO, "Generated diff sql for CHG: %s", chgSql);
-            }
-            log(LogLevel.INFO, "Generated diff sql for ADD: %s", addSql);
-            log(LogLevel.INFO, "Generated diff sql for DEL: %s", delSql);
-            addSqls.put(entity, addSql.toString());
-            delSqls.put(entity, delSql.toString());
-
         }
 
-        RdbmsReader reader = new RdbmsReader();
-        reader.setDataSource(databasePlatform.getDataSource());
-        reader.setContext(context);
-        reader.setComponentDefinition(componentDefinition);
-        reader.setRowsPerMessage(rowsPerMessage);
-        reader.setThreadNumber(threadNumber);
-
-        for (ModelEntity entity : entities) {
-            ComponentEntitySetting add = component.getSingleEntitySetting(entity.getId(),
-                    DataDiff.ENTITY_ADD_ENABLED);
-            ComponentEntitySetting chg = component.getSingleEntitySetting(entity.getId(),
-                    DataDiff.ENTITY_CHG_ENABLED);
-            boolean addEnabled = add != null ? Boolean.parseBoolean(add.getValue()) : true;
-            boolean chgEnabled = chg != null ? Boolean.parseBoolean(chg.getValue()) : true;
-            if (addEnabled) {
-                reader.setSql(addSqls.get(entity));
-                reader.setEntityChangeType(ChangeType.ADD);
-                reader.handle(new ControlMessage(this.context.getFlowStep().getId()), callback,
-                        false);
-                info("Sent %d ADD records for %s", reader.getRowReadDuringHandle(),
-                        entity.getName());
+        if (unitOfWorkBoundaryReached) {
+            try {
+                if (sortedMerge) {
+                    finishMerge(callback);
+                } else {
+                    calculateDiff(callback);
+                }
+                sendDeletes(callback);
+            } finally {
+                reset();
             }
+        }
+    }
 
-            if (chgEnabled && changeSqls.get(entity) != null) {
-                reader.setSql(changeSqls.get(entity));
-                reader.setEntityChangeType(ChangeType.CHG);
-                reader.handle(new ControlMessage(this.context.getFlowStep().getId()), callback,
-                        false);
-                info("Sent %d CHG records for %s", reader.getRowReadDuringHandle(),
-                        entity.getName());
+    protected void partition(boolean original, List<EntityData> rows) {
+        for (EntityData row : rows) {
+            getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber);
+            for (EntityDiff entityDiff : entityDiffs) {
+                HashDiff hashDiff = hashDiffs.get(entityDiff);
+                if (hashDiff == null) {
+                    hashDiff = new HashDiff(entityDiff, partitionCount);
+                    hashDiffs.put(entityDiff, hashDiff);
+                }
+                memoryUsed += hashDiff.add(original, row);
             }
-
         }
 
-        for (int i = entities.size() - 1; i >= 0; i--) {
-            ModelEntity entity = entities.get(i);
-            ComponentEntitySetting del = component.getSingleEntitySetting(entity.getId(),
-                    DataDiff.ENTITY_DEL_ENABLED);
-            boolean delEnabled = del != null ? Boolean.parseBoolean(del.getValue()) : true;
-
-            if (delEnabled) {
-                reader.setSql(delSqls.get(entity));
-                reader.setEntityChangeType(ChangeType.DEL);
-                reader.handle(new ControlMessage(this.context.getFlowStep().getId()), callback,
-                        false);
-                info("Sent %d DEL records for %s", reader.getRowReadDuringHandle(),
-                        entity.getName());
+        if (isOverMemoryBudget()) {
+            List<SpillBuffer<EntityData>> buffers = new ArrayList<>();
+            for (HashDiff hashDiff : hashDiffs.values()) {
+                buffers.addAll(hashDiff.getBuffers());
             }
+            spill(buffers);
         }
+    }
 
-        ResettableBasicDataSource ds = databasePlatform.getDataSource();
-
-        ds.close();
-
-        if (!inMemoryCompare) {
-            try {
-                Files.list(Paths.get(System.getProperty("h2.baseDir")))
-                        .filter(path -> path.toFile().getName().startsWith(databaseName))
-                        .forEach(path -> deleteDatabaseFile(path.toFile()));
-            } catch (IOException e) {
-                log.warn("Failed to delete file", e);
+    protected void calculateDiff(ISendMessageCallback callback) {
+        for (EntityDiff entityDiff : entityDiffs) {
+            HashDiff hashDiff = hashDiffs.get(entityDiff);
+            if (hashDiff != null) {
+                long[] counts = new long[2];
+                if (partitionExecutor != null) {
+                    CompletionService<HashDiff.Result> completionService = new ExecutorCompletionService<>(partitionExecutor);
+                    for (int i = 0; i < hashDiff.getPartitionCount(); i++) {
+                        final int partition = i;
+                        completionService.submit(() -> hashDiff.diff(partition));
+                    }
+                    for (int i = 0; i < hashDiff.getPartitionCount(); i++) {
+                        try {
+                            sendResult(entityDiff, completionService.take().get(), counts, callback);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new RuntimeException(e);
+                        } catch (ExecutionException e) {
+                            Throwable cause = e.getCause();
+                            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+                        }
+                    }
+                } else {
+                    for (int i = 0; i < hashDiff.getPartitionCount(); i++) {
+                        sendResult(entityDiff, hashDiff.diff(i), counts, callback);
+                    }
+                }
+                flush(callback);
+                info("Sent %d ADD and %d CHG records for %s", counts[0], counts[1], entityDiff.getEntity().getName());
             }
         }
-
-        databasePlatform = null;
-        databaseName = null;
-        databaseWriter = null;
-
     }
 
-    protected void deleteDatabaseFile(File file) {
-        log(LogLevel.INFO, "Deleting database file: %s", file.getName());
-        FileUtils.deleteQuietly(file);
+    protected void sendResult(EntityDiff entityDiff, HashDiff.Result result, long[] counts, ISendMessageCallback callback) {
+        memoryUsed -= result.getReleasedMemory();
+        send(result.getAdded(), callback);
+        send(result.getChanged(), callback);
+        counts[0] += result.getAdded().size();
+        counts[1] += result.getChanged().size();
+        addDeletes(entityDiff, result.getDeleted());
     }
 
-    protected void appendColumns(StringBuilder sql, String prefix, ModelEntity entity) {
-        for (ModelAttrib attribute : entity.getModelAttributes()) {
-
-            Component component = context.getFlowStep().getComponent();
-            ComponentAttribSetting matchColumnSetting = component.getSingleAttributeSetting(
-                    attribute.getId(), DataDiff.ATTRIBUTE_COMPARE_ENABLED);
-            boolean matchColumn = matchColumnSetting != null
-                    ? Boolean.parseBoolean(matchColumnSetting.getValue()) : true;
-            if (matchColumn) {
-                sql.append(prefix).append(getFormattedName(attribute)).append(" /* ")
-                        .append(entity.getName()).append(".").append(attribute.getName())
-                        .append(" */").append(",");
+    protected void merge(boolean original, List<EntityData> rows, ISendMessageCallback callback) {
+        for (EntityData row : rows) {
+            getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber);
+            for (EntityDiff entityDiff : entityDiffs) {
+                SortedMergeDiff mergeDiff = mergeDiffs.get(entityDiff);
+                if (mergeDiff == null) {
+                    mergeDiff = new SortedMergeDiff(entityDiff);
+                    mergeDiffs.put(entityDiff, mergeDiff);
+                }
+                mergeDiff.add(original, row);
             }
         }
-        sql.replace(sql.length() - 1, sql.length(), "");
-    }
 
-    protected void loadIntoDatabase(Message message) {
-        String originatingStepId = message.getHeader().getOriginatingStepId();
-        String tableSuffix = null;
-        if (sourceStep1Id.equals(originatingStepId)) {
-            tableSuffix = "_1";
-        } else if (sourceStep2Id.equals(originatingStepId)) {
-            tableSuffix = "_2";
+        for (SortedMergeDiff mergeDiff : mergeDiffs.values()) {
+            send(mergeDiff.takeOutput(), callback);
+            addDeletes(mergeDiff.getEntityDiff(), mergeDiff.takeDeleted());
         }
+    }
 
-        if (databaseWriter == null) {
-            databaseWriter = new RdbmsWriter();
-            databaseWriter.setDatabasePlatform(databasePlatform);
-            databaseWriter.setComponentDefinition(componentDefinition);
-            databaseWriter.setReplaceRows(true);
-            databaseWriter.setContext(context);
-            databaseWriter.setThreadNumber(threadNumber);
+    protected void finishMerge(ISendMessageCallback callback) {
+        for (SortedMergeDiff mergeDiff : mergeDiffs.values()) {
+            mergeDiff.finish();
+            send(mergeDiff.takeOutput(), callback);
+            addDeletes(mergeDiff.getEntityDiff(), mergeDiff.takeDeleted());
+            info("Sent %d ADD and %d CHG records for %s", mergeDiff.getAddCount(), mergeDiff.getChgCount(),
+                    mergeDiff.getEntityDiff().getEntity().getName());
         }
+        flush(callback);
+    }
 
-        if (tableSuffix != null) {
-            databaseWriter.setTableSuffix(tableSuffix);
-            try {
-                databaseWriter.handle(message, null, false);
-            } finally {
-                error = databaseWriter.getError();
+    /**
+     * Deletes are held until the adds and changes of every entity have been
+     * sent, then they are sent in reverse entity order
+     */
+    protected void addDeletes(EntityDiff entityDiff, List<EntityData> rows) {
+        if (rows.size() > 0) {
+            SpillBuffer<EntityData> buffer = deletes.get(entityDiff);
+            if (buffer == null) {
+                buffer = new SpillBuffer<>("diff");
+                deletes.put(entityDiff, buffer);
+            }
+            for (EntityData row : rows) {
+                long size = row.estimateSize();
+                buffer.add(row, size);
+                memoryUsed += size;
+            }
+            if (isOverMemoryBudget()) {
+                spill(deletes.values());
             }
         }
     }
 
-    protected void createDatabase() {
-        if (databasePlatform == null) {
-            ResettableBasicDataSource ds = new ResettableBasicDataSource();
-            ds.setDriverClassName(Driver.class.getName());
-            ds.setMaxActive(1);
-            ds.setInitialSize(1);
-            ds.setMinIdle(1);
-            ds.setMaxIdle(1);
-            databaseName = UUID.randomUUID().toString();
-            if (inMemoryCompare) {
-                ds.setUrl("jdbc:h2:mem:" + databaseName);
-            } else {
-                ds.setUrl("jdbc:h2:file:./" + databaseName);
-            }
-            databasePlatform = JdbcDatabasePlatformFactory.createNewPlatformInstance(ds,
-                    new SqlTemplateSettings(), true, false);
-
-            Model inputModel = context.getFlowStep().getComponent().getInputModel();
-            List<ModelEntity> entities = inputModel.getModelEntities();
-            for (ModelEntity entity : entities) {
-                Table table = new Table();
-                table.setName(entity.getName() + "_1");
-                List<ModelAttrib> attributes = entity.getModelAttributes();
-                for (ModelAttrib attribute : attributes) {
-                    DataType dataType = attribute.getDataType();
-                    Column column = new Column(attribute.getName());
-                    if (dataType.isNumeric()) {
-                        column.setTypeCode(Types.DECIMAL);
-                    } else if (dataType.isBoolean()) {
-                        column.setTypeCode(Types.BOOLEAN);
-                    } else if (dataType.isTimestamp()) {
-                        column.setTypeCode(Types.TIMESTAMP);
-                    } else if (dataType.isBinary()) {
-                        column.setTypeCode(Types.BLOB);
-                    } else {
-                        column.setTypeCode(Types.LONGVARCHAR);
-                    }
-
-                    column.setPrimaryKey(attribute.isPk());
-                    table.addColumn(column);
+    protected void sendDeletes(ISendMessageCallback callback) {
+        for (int i = entityDiffs.size() - 1; i >= 0; i--) {
+            EntityDiff entityDiff = entityDiffs.get(i);
+            SpillBuffer<EntityData> buffer = deletes.get(entityDiff);
+            if (buffer != null) {
+                Iterator<EntityData> rows = buffer.iterator();
+                while (rows.hasNext()) {
+                    send(rows.next(), callback);
                 }
-                alterCaseToMatchLogicalCase(table);
-                databasePlatform.createTables(false, false, table);
+                flush(callback);
+                info("Sent %d DEL records for %s", buffer.size(), entityDiff.getEntity().getName());
+            }
+        }
+    }
 
-                table.setName(entity.getName().toUpperCase() + "_2");
-                databasePlatform.createTables(false, false, table);
+    protected boolean isOverMemoryBudget() {
+        return !inMemoryCompare && memoryUsed > memoryBudgetBytes;
+    }
 
+    /**
+     * Spill the largest buffers until memory use is back under half of the
+     * budget
+     */
+    protected void spill(Collection<SpillBuffer<EntityData>> buffers) {
+        List<SpillBuffer<EntityData>> bySize = new ArrayList<>(buffers);
+        Collections.sort(bySize, (b1, b2) -> Long.compare(b2.getMemorySize(), b1.getMemorySize()));
+        for (SpillBuffer<EntityData> buffer : bySize) {
+            if (memoryUsed <= memoryBudgetBytes / 2 || buffer.getMemorySize() == 0) {
+                break;
             }
-
-            log(LogLevel.INFO, "Creating databasePlatform with the following url: %s", ds.getUrl());
+            memoryUsed -= buffer.spill();
         }
     }
 
-    @Override
-    public boolean supportsStartupMessages() {
-        return false;
+    protected void send(List<EntityData> rows, ISendMessageCallback callback) {
+        for (EntityData row : rows) {
+            send(row, callback);
+        }
     }
 
-    private void alterCaseToMatchLogicalCase(Table table) {
-        table.setName(table.getName().toUpperCase());
-
-        Column[] columns = table.getColumns();
-        for (Column column : columns) {
-            column.setName(column.getName().toUpperCase());
+    protected void send(EntityData row, ISendMessageCallback callback) {
+        outputBatch.add(row);
+        if (outputBatch.size() >= rowsPerMessage) {
+            flush(callback);
         }
+    }
 
-        IIndex[] indexes = table.getIndices();
-        for (IIndex index : indexes) {
-            index.setName(index.getName().toUpperCase());
+    protected void flush(ISendMessageCallback callback) {
+        if (outputBatch.size() > 0) {
+            callback.sendEntityDataMessage(null, outputBatch);
+            outputBatch = new ArrayList<>();
+        }
+    }
 
-            IndexColumn[] indexColumns = index.getColumns();
-            for (IndexColumn indexColumn : indexColumns) {
-                indexColumn.setName(indexColumn.getName().toUpperCase());
-            }
+    protected void reset() {
+        for (HashDiff hashDiff : hashDiffs.values()) {
+            hashDiff.close();
         }
+        for (SpillBuffer<EntityData> buffer : deletes.values()) {
+            buffer.close();
+        }
+        hashDiffs.clear();
+        mergeDiffs.clear();
+        deletes.clear();
+        outputBatch = new ArrayList<>();
+        memoryUsed = 0;
+    }
+
+    @Override
+    public boolean supportsStartupMessages() {
+        return false;
     }
 
 }
@@ -0,0 +1,263 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import org.jumpmind.metl.core.model.DataType;
+import org.jumpmind.metl.core.model.ModelAttrib;
+import org.jumpmind.metl.core.model.ModelEntity;
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityData.ChangeType;
+import org.jumpmind.metl.core.runtime.EntityDataLayout;
+
+/**
+ * The attributes of one entity that a {@link DataDiff} works with, resolved
+ * once when the component starts: the primary key, the attributes that are
+ * compared and the attributes that are sent.
+ * <p>
+ * Values are normalized by data type before they are compared, so that a
+ * number that arrives as the string "1.0" from one source and as the integer 1
+ * from the other is the same value.
+ */
+public class EntityDiff {
+
+    ModelEntity entity;
+
+    String[] attributeIds;
+
+    String[] pkAttributeIds;
+
+    DataType[] pkDataTypes;
+
+    String[] compareAttributeIds;
+
+    DataType[] compareDataTypes;
+
+    String[] outputAttributeIds;
+
+    EntityDataLayout layout = new EntityDataLayout(true);
+
+    EntityDataLayout outputLayout = new EntityDataLayout(true);
+
+    boolean addEnabled;
+
+    boolean chgEnabled;
+
+    boolean delEnabled;
+
+    public EntityDiff(ModelEntity entity, Set<String> compareEnabledAttributeIds, boolean addEnabled, boolean chgEnabled,
+            boolean delEnabled) {
+        this.entity = entity;
+        this.addEnabled = addEnabled;
+        this.chgEnabled = chgEnabled;
+        this.delEnabled = delEnabled;
+
+        List<ModelAttrib> attributes = entity.getModelAttributes();
+        List<ModelAttrib> pks = new ArrayList<>();
+        List<ModelAttrib> compares = new ArrayList<>();
+        List<String> outputs = new ArrayList<>();
+        attributeIds = new String[attributes.size()];
+        for (int i = 0; i < attributeIds.length; i++) {
+            ModelAttrib attribute = attributes.get(i);
+            attributeIds[i] = attribute.getId();
+            if (attribute.isPk()) {
+                pks.add(attribute);
+            } else if (compareEnabledAttributeIds.contains(attribute.getId())) {
+                compares.add(attribute);
+            }
+            if (compareEnabledAttributeIds.contains(attribute.getId())) {
+                outputs.add(attribute.getId());
+            }
+        }
+
+        pkAttributeIds = ids(pks);
+        pkDataTypes = dataTypes(pks);
+        compareAttributeIds = ids(compares);
+        compareDataTypes = dataTypes(compares);
+        outputAttributeIds = outputs.toArray(new String[outputs.size()]);
+    }
+
+    private static String[] ids(List<ModelAttrib> attributes) {
+        String[] ids = new String[attributes.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = attributes.get(i).getId();
+        }
+        return ids;
+    }
+
+    private static DataType[] dataTypes(List<ModelAttrib> attributes) {
+        DataType[] dataTypes = new DataType[attributes.size()];
+        for (int i = 0; i < dataTypes.length; i++) {
+            dataTypes[i] = attributes.get(i).getDataType();
+        }
+        return dataTypes;
+    }
+
+    public ModelEntity getEntity() {
+        return entity;
+    }
+
+    public boolean isAddEnabled() {
+        return addEnabled;
+    }
+
+    /**
+     * Changes are only looked for when the entity has attributes to compare
+     * other than its primary key
+     */
+    public boolean isChgEnabled() {
+        return chgEnabled && compareAttributeIds.length > 0;
+    }
+
+    public boolean isDelEnabled() {
+        return delEnabled;
+    }
+
+    /**
+     * @return The attributes of the row that belong to this entity, or null if
+     *         the row has none of them
+     */
+    public EntityData project(EntityData row) {
+        EntityData entityRow = null;
+        for (String attributeId : attributeIds) {
+            if (row.containsKey(attributeId)) {
+                if (entityRow == null) {
+                    entityRow = new EntityData(layout);
+                }
+                entityRow.put(attributeId, row.get(attributeId));
+            }
+        }
+        return entityRow;
+    }
+
+    /**
+     * @return The attributes that are sent for a row found to be added,
+     *         changed or deleted
+     */
+    public EntityData output(EntityData row, ChangeType changeType) {
+        EntityData outputRow = new EntityData(outputLayout);
+        outputRow.setChangeType(changeType);
+        for (String attributeId : outputAttributeIds) {
+            outputRow.put(attributeId, row.get(attributeId));
+        }
+        return outputRow;
+    }
+
+    /**
+     * @return A value that is equal for rows with the same primary key, to use
+     *         as a hash key
+     */
+    public Object key(EntityData row) {
+        if (pkAttributeIds.length == 1) {
+            return normalize(row.get(pkAttributeIds[0]), pkDataTypes[0]);
+        } else {
+            Object[] key = new Object[pkAttributeIds.length];
+            for (int i = 0; i < key.length; i++) {
+                key[i] = normalize(row.get(pkAttributeIds[i]), pkDataTypes[i]);
+            }
+            return Arrays.asList(key);
+        }
+    }
+
+    /**
+     * @return true if any primary key value of the row is null. These rows
+     *         never match a row of the other source, the same as in the SQL
+     *         join the diff used to run.
+     */
+    public boolean hasNullKey(EntityData row) {
+        for (String pkAttributeId : pkAttributeIds) {
+            if (row.get(pkAttributeId) == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isChanged(EntityData original, EntityData current) {
+        for (int i = 0; i < compareAttributeIds.length; i++) {
+            Object value1 = normalize(original.get(compareAttributeIds[i]), compareDataTypes[i]);
+            Object value2 = normalize(current.get(compareAttributeIds[i]), compareDataTypes[i]);
+            if (value1 == null ? value2 != null : !value1.equals(value2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compare the primary keys of two rows, for inputs that are ordered by
+     * primary key. Nulls sort first.
+     */
+    public int compareKeys(EntityData row1, EntityData row2) {
+        for (int i = 0; i < pkAttributeIds.length; i++) {
+            int result = compare(normalize(row1.get(pkAttributeIds[i]), pkDataTypes[i]),
+                    normalize(row2.get(pkAttributeIds[i]), pkDataTypes[i]));
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    protected int compare(Object value1, Object value2) {
+        if (value1 == value2) {
+            return 0;
+        } else if (value1 == null) {
+            return -1;
+        } else if (value2 == null) {
+            return 1;
+        } else if (value1 instanceof Comparable && value1.getClass().equals(value2.getClass())) {
+            return ((Comparable) value1).compareTo(value2);
+        } else {
+            return value1.toString().compareTo(value2.toString());
+        }
+    }
+
+    protected Object normalize(Object value, DataType dataType) {
+        if (value == null || dataType == null) {
+            return value;
+        } else if (dataType.isNumeric()) {
+            try {
+                BigDecimal number = value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString().trim());
+                return number.signum() == 0 ? BigDecimal.ZERO : number.stripTrailingZeros();
+            } catch (NumberFormatException e) {
+                return value.toString();
+            }
+        } else if (dataType.isBoolean()) {
+            return value instanceof Boolean ? value : Boolean.valueOf(value.toString().trim());
+        } else if (dataType.isTimestamp()) {
+            return value instanceof Date ? (Object) ((Date) value).getTime() : value.toString();
+        } else if (value instanceof byte[]) {
+            return ByteBuffer.wrap((byte[]) value);
+        } else {
+            return value.toString();
+        }
+    }
+
+}
@@ -0,0 +1,204 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityData.ChangeType;
+import org.jumpmind.metl.core.util.SpillBuffer;
+
+/**
+ * Diffs one entity by hash partitioning the rows of both sources on primary
+ * key. Each partition holds the rows of both sources that hash to it and can
+ * be spilled to disk on its own. Partitions are diffed independently, so they
+ * can be diffed in parallel and their results sent as soon as each one is
+ * done. Only one partition has to fit in memory at a time.
+ * <p>
+ * When a source sends the same primary key more than once the last row wins.
+ * A row with a null primary key value never matches, so it is always added or
+ * deleted.
+ */
+public class HashDiff implements Closeable {
+
+    EntityDiff entityDiff;
+
+    SpillBuffer<EntityData>[] originals;
+
+    SpillBuffer<EntityData>[] currents;
+
+    @SuppressWarnings("unchecked")
+    public HashDiff(EntityDiff entityDiff, int partitionCount) {
+        this.entityDiff = entityDiff;
+        this.originals = new SpillBuffer[partitionCount];
+        this.currents = new SpillBuffer[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            originals[i] = new SpillBuffer<>("diff");
+            currents[i] = new SpillBuffer<>("diff");
+        }
+    }
+
+    public EntityDiff getEntityDiff() {
+        return entityDiff;
+    }
+
+    public int getPartitionCount() {
+        return originals.length;
+    }
+
+    /**
+     * @return The estimated number of bytes the row added to memory
+     */
+    public long add(boolean original, EntityData row) {
+        EntityData entityRow = entityDiff.project(row);
+        if (entityRow != null) {
+            Object key = entityDiff.key(entityRow);
+            /*
+             * A single column key can be null. Those rows are never matched so
+             * any partition will do
+             */
+            int partition = key != null ? (key.hashCode() & Integer.MAX_VALUE) % originals.length : 0;
+            long size = entityRow.estimateSize();
+            (original ? originals : currents)[partition].add(entityRow, size);
+            return size;
+        } else {
+            return 0;
+        }
+    }
+
+    public List<SpillBuffer<EntityData>> getBuffers() {
+        List<SpillBuffer<EntityData>> buffers = new ArrayList<>(originals.length * 2);
+        for (int i = 0; i < originals.length; i++) {
+            buffers.add(originals[i]);
+            buffers.add(currents[i]);
+        }
+        return buffers;
+    }
+
+    /**
+     * Diff one partition and release the rows it held
+     */
+    public Result diff(int partition) {
+        Result result = new Result(partition);
+        result.releasedMemory = originals[partition].getMemorySize() + currents[partition].getMemorySize();
+
+        List<EntityData> unmatchedOriginals = new ArrayList<>();
+        List<EntityData> unmatchedCurrents = new ArrayList<>();
+        Map<Object, EntityData> originalRows = load(originals[partition], unmatchedOriginals);
+        Map<Object, EntityData> currentRows = load(currents[partition], unmatchedCurrents);
+
+        for (Map.Entry<Object, EntityData> entry : currentRows.entrySet()) {
+            EntityData original = originalRows.remove(entry.getKey());
+            if (original == null) {
+                if (entityDiff.isAddEnabled()) {
+                    result.added.add(entityDiff.output(entry.getValue(), ChangeType.ADD));
+                }
+            } else if (entityDiff.isChgEnabled() && entityDiff.isChanged(original, entry.getValue())) {
+                result.changed.add(entityDiff.output(entry.getValue(), ChangeType.CHG));
+            }
+        }
+
+        if (entityDiff.isAddEnabled()) {
+            for (EntityData current : unmatchedCurrents) {
+                result.added.add(entityDiff.output(current, ChangeType.ADD));
+            }
+        }
+
+        if (entityDiff.isDelEnabled()) {
+            for (EntityData original : originalRows.values()) {
+                result.deleted.add(entityDiff.output(original, ChangeType.DEL));
+            }
+            for (EntityData original : unmatchedOriginals) {
+                result.deleted.add(entityDiff.output(original, ChangeType.DEL));
+            }
+        }
+
+        originals[partition].close();
+        currents[partition].close();
+        return result;
+    }
+
+    /**
+     * @param nullKeyRows
+     *            collects the rows with a null primary key value, which are
+     *            not put in the map because they never match
+     */
+    protected Map<Object, EntityData> load(SpillBuffer<EntityData> buffer, List<EntityData> nullKeyRows) {
+        Map<Object, EntityData> rows = new LinkedHashMap<>((int) Math.min(Integer.MAX_VALUE / 2, buffer.size() * 4 / 3 + 1));
+        Iterator<EntityData> i = buffer.iterator();
+        while (i.hasNext()) {
+            EntityData row = i.next();
+            if (entityDiff.hasNullKey(row)) {
+                nullKeyRows.add(row);
+            } else {
+                rows.put(entityDiff.key(row), row);
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public void close() {
+        for (int i = 0; i < originals.length; i++) {
+            originals[i].close();
+            currents[i].close();
+        }
+    }
+
+    public static class Result {
+
+        int partition;
+
+        long releasedMemory;
+
+        List<EntityData> added = new ArrayList<>();
+
+        List<EntityData> changed = new ArrayList<>();
+
+        List<EntityData> deleted = new ArrayList<>();
+
+        Result(int partition) {
+            this.partition = partition;
+        }
+
+        public List<EntityData> getAdded() {
+            return added;
+        }
+
+        public List<EntityData> getChanged() {
+            return changed;
+        }
+
+        public List<EntityData> getDeleted() {
+            return deleted;
+        }
+
+        public long getReleasedMemory() {
+            return releasedMemory;
+        }
+    }
+
+}
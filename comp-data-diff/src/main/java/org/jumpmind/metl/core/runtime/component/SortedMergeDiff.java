@@ -0,0 +1,144 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityData.ChangeType;
+
+/**
+ * Diffs one entity when both sources send their rows ordered by primary key.
+ * Rows are matched as they arrive and only the rows that one source is ahead
+ * of the other by are held in memory. A row with a null primary key value
+ * never matches, so it is always added or deleted.
+ */
+public class SortedMergeDiff {
+
+    EntityDiff entityDiff;
+
+    ArrayDeque<EntityData> originals = new ArrayDeque<>();
+
+    ArrayDeque<EntityData> currents = new ArrayDeque<>();
+
+    List<EntityData> output = new ArrayList<>();
+
+    List<EntityData> deleted = new ArrayList<>();
+
+    long addCount;
+
+    long chgCount;
+
+    public SortedMergeDiff(EntityDiff entityDiff) {
+        this.entityDiff = entityDiff;
+    }
+
+    public EntityDiff getEntityDiff() {
+        return entityDiff;
+    }
+
+    public void add(boolean original, EntityData row) {
+        EntityData entityRow = entityDiff.project(row);
+        if (entityRow != null) {
+            (original ? originals : currents).add(entityRow);
+            merge(false);
+        }
+    }
+
+    /**
+     * Called once both sources have sent all of their rows
+     */
+    public void finish() {
+        merge(true);
+    }
+
+    protected void merge(boolean finished) {
+        while (!originals.isEmpty() && !currents.isEmpty()) {
+            int result = entityDiff.compareKeys(originals.peek(), currents.peek());
+            if (result < 0) {
+                deleted(originals.poll());
+            } else if (result > 0) {
+                added(currents.poll());
+            } else if (entityDiff.hasNullKey(originals.peek())) {
+                deleted(originals.poll());
+                added(currents.poll());
+            } else {
+                EntityData original = originals.poll();
+                EntityData current = currents.poll();
+                if (entityDiff.isChgEnabled() && entityDiff.isChanged(original, current)) {
+                    output.add(entityDiff.output(current, ChangeType.CHG));
+                    chgCount++;
+                }
+            }
+        }
+
+        if (finished) {
+            while (!originals.isEmpty()) {
+                deleted(originals.poll());
+            }
+            while (!currents.isEmpty()) {
+                added(currents.poll());
+            }
+        }
+    }
+
+    protected void added(EntityData current) {
+        if (entityDiff.isAddEnabled()) {
+            output.add(entityDiff.output(current, ChangeType.ADD));
+            addCount++;
+        }
+    }
+
+    protected void deleted(EntityData original) {
+        if (entityDiff.isDelEnabled()) {
+            deleted.add(entityDiff.output(original, ChangeType.DEL));
+        }
+    }
+
+    /**
+     * @return The added and changed rows found since the last call
+     */
+    public List<EntityData> takeOutput() {
+        List<EntityData> rows = output;
+        output = new ArrayList<>();
+        return rows;
+    }
+
+    /**
+     * @return The deleted rows found since the last call
+     */
+    public List<EntityData> takeDeleted() {
+        List<EntityData> rows = deleted;
+        deleted = new ArrayList<>();
+        return rows;
+    }
+
+    public long getAddCount() {
+        return addCount;
+    }
+
+    public long getChgCount() {
+        return chgCount;
+    }
+
+}
@@ -0,0 +1,175 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.jumpmind.metl.core.model.DataType;
+import org.jumpmind.metl.core.model.ModelAttrib;
+import org.jumpmind.metl.core.model.ModelEntity;
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityData.ChangeType;
+import org.jumpmind.metl.core.util.SpillBuffer;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HashDiffTest {
+
+    EntityDiff entityDiff;
+
+    @Before
+    public void setup() {
+        ModelEntity entity = new ModelEntity("entity", "ENTITY");
+        entity.addModelAttribute(attribute("id", DataType.INTEGER, true));
+        entity.addModelAttribute(attribute("name", DataType.VARCHAR, false));
+        entity.addModelAttribute(attribute("ignored", DataType.VARCHAR, false));
+        entityDiff = new EntityDiff(entity, new HashSet<>(Arrays.asList("id", "name")), true, true, true);
+    }
+
+    @Test
+    public void testHashDiff() {
+        HashDiff hashDiff = new HashDiff(entityDiff, 4);
+        load(hashDiff, true);
+        for (SpillBuffer<EntityData> buffer : hashDiff.getBuffers()) {
+            buffer.spill();
+        }
+        load(hashDiff, false);
+
+        List<EntityData> output = new ArrayList<>();
+        List<EntityData> deleted = new ArrayList<>();
+        for (int i = 0; i < hashDiff.getPartitionCount(); i++) {
+            HashDiff.Result result = hashDiff.diff(i);
+            output.addAll(result.getAdded());
+            output.addAll(result.getChanged());
+            deleted.addAll(result.getDeleted());
+        }
+        hashDiff.close();
+        assertResults(output, deleted);
+    }
+
+    @Test
+    public void testSortedMergeDiff() {
+        SortedMergeDiff mergeDiff = new SortedMergeDiff(entityDiff);
+        List<EntityData> originals = originals();
+        List<EntityData> currents = currents();
+        for (int i = 0; i < Math.max(originals.size(), currents.size()); i++) {
+            if (i < originals.size()) {
+                mergeDiff.add(true, originals.get(i));
+            }
+            if (i < currents.size()) {
+                mergeDiff.add(false, currents.get(i));
+            }
+        }
+        mergeDiff.finish();
+        assertResults(mergeDiff.takeOutput(), mergeDiff.takeDeleted());
+    }
+
+    @Test
+    public void testNullKeysNeverMatch() {
+        HashDiff hashDiff = new HashDiff(entityDiff, 4);
+        SortedMergeDiff mergeDiff = new SortedMergeDiff(entityDiff);
+        for (EntityData row : Arrays.asList(row(null, "none", "a"), row("1", "one", "a"))) {
+            hashDiff.add(true, row);
+            mergeDiff.add(true, row);
+        }
+        for (EntityData row : Arrays.asList(row(null, "none", "b"), row(1, "one", "b"))) {
+            hashDiff.add(false, row);
+            mergeDiff.add(false, row);
+        }
+        mergeDiff.finish();
+
+        List<EntityData> output = new ArrayList<>();
+        List<EntityData> deleted = new ArrayList<>();
+        for (int i = 0; i < hashDiff.getPartitionCount(); i++) {
+            HashDiff.Result result = hashDiff.diff(i);
+            output.addAll(result.getAdded());
+            output.addAll(result.getChanged());
+            deleted.addAll(result.getDeleted());
+        }
+        hashDiff.close();
+        assertNullKeyAddedAndDeleted(output, deleted);
+        assertNullKeyAddedAndDeleted(mergeDiff.takeOutput(), mergeDiff.takeDeleted());
+    }
+
+    protected void assertNullKeyAddedAndDeleted(List<EntityData> output, List<EntityData> deleted) {
+        assertEquals(1, output.size());
+        assertEquals(ChangeType.ADD, output.get(0).getChangeType());
+        assertNull(output.get(0).get("id"));
+        assertEquals(1, deleted.size());
+        assertEquals(ChangeType.DEL, deleted.get(0).getChangeType());
+        assertNull(deleted.get(0).get("id"));
+    }
+
+    protected void assertResults(List<EntityData> output, List<EntityData> deleted) {
+        Map<Object, ChangeType> changes = new HashMap<>();
+        for (EntityData row : output) {
+            changes.put(row.get("id").toString(), row.getChangeType());
+            assertFalse(row.containsKey("ignored"));
+        }
+        assertEquals(2, changes.size());
+        assertEquals(ChangeType.CHG, changes.get("2"));
+        assertEquals(ChangeType.ADD, changes.get("5"));
+        assertEquals(1, deleted.size());
+        assertEquals(ChangeType.DEL, deleted.get(0).getChangeType());
+        assertEquals("1", deleted.get(0).get("id"));
+    }
+
+    protected void load(HashDiff hashDiff, boolean original) {
+        for (EntityData row : original ? originals() : currents()) {
+            hashDiff.add(original, row);
+        }
+    }
+
+    protected List<EntityData> originals() {
+        return Arrays.asList(row("1", "one", "a"), row("2", "two", "a"), row("3", "three", "a"), row("4.0", "four", "a"));
+    }
+
+    protected List<EntityData> currents() {
+        return Arrays.asList(row(2, "TWO", "b"), row(3, "three", "b"), row(4, "four", "b"), row(5, "five", "b"));
+    }
+
+    protected EntityData row(Object id, String name, String ignored) {
+        EntityData data = new EntityData();
+        data.put("id", id);
+        data.put("name", name);
+        data.put("ignored", ignored);
+        return data;
+    }
+
+    protected ModelAttrib attribute(String id, DataType dataType, boolean pk) {
+        ModelAttrib attribute = new ModelAttrib();
+        attribute.setId(id);
+        attribute.setName(id);
+        attribute.setDataType(dataType);
+        attribute.setPk(pk);
+        return attribute;
+    }
+
+}
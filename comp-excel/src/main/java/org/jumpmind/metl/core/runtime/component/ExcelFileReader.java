@@ -20,6 +20,7 @@
  */
 package org.jumpmind.metl.core.runtime.component;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
@@ -30,22 +31,25 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.DateUtil;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
 import org.jumpmind.exception.IoException;
 import org.jumpmind.metl.core.model.ComponentAttribSetting;
 import org.jumpmind.metl.core.model.Model;
 import org.jumpmind.metl.core.runtime.ControlMessage;
 import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityDataLayout;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.MisconfiguredException;
 import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
 import org.jumpmind.properties.TypedProperties;
+import org.xml.sax.SAXException;
 
 import net.sf.saxon.value.DecimalValue;
 
@@ -73,6 +77,8 @@ public class ExcelFileReader extends AbstractFileReader {
 
     Set<String> worsheetsToRead;
 
+    EntityDataLayout entityDataLayout = new EntityDataLayout(true);
+
     Map<String, String[]> worksheetColumnListMap;
 
     @Override
@@ -162,102 +168,84 @@ public class ExcelFileReader extends AbstractFileReader {
         }
     }
 
-    @SuppressWarnings("deprecation")
     private void readWorkbook(Map<String, Serializable> headers, InputStream inStream,
             ISendMessageCallback callback) throws IOException {
 
-        int linesInMessage = 0;
+        /*
+         * A package opened from a file reads each part from the zip as it is
+         * needed, where one opened from a stream is inflated into memory
+         */
+        File file = File.createTempFile("metl-excel-", ".xlsx");
+        OPCPackage pkg = null;
+        try {
+            FileUtils.copyInputStreamToFile(inStream, file);
+            pkg = OPCPackage.open(file, PackageAccess.READ);
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+            SheetRowHandler rowHandler = new SheetRowHandler(headers, callback);
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                InputStream sheet = sheets.next();
+                try {
+                    if (worsheetsToRead.contains(sheets.getSheetName())) {
+                        String[] worksheetColumnArray = worksheetColumnListMap.get(sheets.getSheetName());
+                        new ExcelSheetHandler(strings, styles, worksheetColumnArray, entityDataLayout, ignoreError,
+                                rowHandler).parse(sheet);
+                    }
+                } finally {
+                    IOUtils.closeQuietly(sheet);
+                }
+            }
+            // send leftovers
+            rowHandler.flush();
+        } catch (OpenXML4JException | SAXException e) {
+            throw new IoException(e);
+        } finally {
+            if (pkg != null) {
+                pkg.revert();
+            }
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
+    class SheetRowHandler implements ExcelSheetHandler.RowHandler {
+
+        Map<String, Serializable> headers;
+
+        ISendMessageCallback callback;
+
         ArrayList<EntityData> outboundPayload = new ArrayList<EntityData>();
+
         int currentFileLinesRead = 1;
 
-        Workbook wb = new XSSFWorkbook(inStream);
-        try {
-        for (int i = 0; i < wb.getNumberOfSheets(); i++) {
-            Sheet sheet = wb.getSheetAt(i);
-            if (worsheetsToRead.contains(sheet.getSheetName())) {
-                String[] worksheetColumnArray = worksheetColumnListMap.get(sheet.getSheetName());
-                for (Row row : sheet) {
-                    if (currentFileLinesRead > headerLinesToSkip) {
-                        EntityData data = new EntityData();
-                        Object cellValue = null;
-                        for (Cell cell : row) {
-                            if (worksheetColumnArray[cell.getColumnIndex()] != null) {
-                                switch (cell.getCellType()) {
-                                    case Cell.CELL_TYPE_STRING:
-                                        cellValue = cell.getStringCellValue();
-                                        break;
-                                    case Cell.CELL_TYPE_BOOLEAN:
-                                        cellValue = cell.getBooleanCellValue();
-                                        break;
-                                    case Cell.CELL_TYPE_NUMERIC:
-                                        if (DateUtil.isCellDateFormatted(cell)) {
-                                            cellValue = cell.getDateCellValue();
-                                        } else {
-                                            cellValue = cell.getNumericCellValue();
-                                        }
-                                        break;
-                                    case Cell.CELL_TYPE_BLANK:
-                                        cellValue = null;
-                                        break;
-                                    case Cell.CELL_TYPE_FORMULA:
-                                    	// If a formula cell get the value the formula evaluates to.
-                                    	// Some Errors appear as a formula, in these cases need to determine if user
-                                    	// wants to fail the process or replace the error formula with null 
-                                    	try {
-                                        	cellValue = cell.getRichStringCellValue();   
-                                    	} catch (IllegalStateException ise) {
-                                    		if (ignoreError) {
-                                    			cellValue = null;
-                                    		} else {
-                                                throw new UnsupportedOperationException(
-                                                        "Error in cell formula: " + cell.getCellFormula() + " .  Invalid cell (RowIdx:ColIdx): " 
-                                                                + (cell.getRowIndex()+1) + ":" + (cell.getColumnIndex()+1));
-                                    		}
-                                    	}
-                                        break;
-                                    case Cell.CELL_TYPE_ERROR:
-                                    	if (ignoreError) {
-                                    		cellValue = null;
-                                		} else {
-                                            throw new UnsupportedOperationException(
-                                                    "Error in cell.  (RowIdx:ColIdx): " 
-                                                            + (cell.getRowIndex()+1) + ":" + (cell.getColumnIndex()+1));
-                                    	}
-                                    	break;
-                                    default:
-                                        throw new UnsupportedOperationException(
-                                                "Invalid cell type value.  Cell Type ==>"
-                                                        + cell.getCellType() 
-                                                        + "  Invalid cell (RowIdx:ColIdx): " 
-                                                        + (cell.getRowIndex()+1) + ":" + (cell.getColumnIndex()+1));
-                                }
-                                data.put(worksheetColumnArray[cell.getColumnIndex()], cellValue);
-                            } //end if worksheetColumnArray != null i.e. this cell is mapped
-                        } // end for cells
-                        getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber);
-                        // only add the data record to the outbound payload if there is data existing
-                        // for some reason some Excel files are getting additional rows read that are empty and thus creating empty
-                        // entity records which cause the read to fail.
-                        if (!data.isEmpty()) {
-                            outboundPayload.add(data);
-                            linesInMessage++;
-                        }
-                        if (linesInMessage == rowsPerMessage) {
-                            callback.sendEntityDataMessage(headers, outboundPayload);
-                            linesInMessage = 0;
-                            outboundPayload = new ArrayList<EntityData>();
-                        }
-                    } // if we are done skipping lines
-                    currentFileLinesRead++;
-                } // end for rows
-            } // if we should read this worksheet
-        } // for each worksheet
-          // send leftovers
-        if (outboundPayload.size() > 0) {
-            callback.sendEntityDataMessage(headers, outboundPayload);
+        SheetRowHandler(Map<String, Serializable> headers, ISendMessageCallback callback) {
+            this.headers = headers;
+            this.callback = callback;
         }
-        } finally {
-            IOUtils.closeQuietly(wb);
+
+        @Override
+        public void handleRow(EntityData data) {
+            if (currentFileLinesRead > headerLinesToSkip) {
+                getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber);
+                // only add the data record to the outbound payload if there is data existing
+                // for some reason some Excel files are getting additional rows read that are empty and thus creating empty
+                // entity records which cause the read to fail.
+                if (!data.isEmpty()) {
+                    outboundPayload.add(data);
+                }
+                if (outboundPayload.size() == rowsPerMessage) {
+                    flush();
+                }
+            }
+            currentFileLinesRead++;
+        }
+
+        void flush() {
+            if (outboundPayload.size() > 0) {
+                callback.sendEntityDataMessage(headers, outboundPayload);
+                outboundPayload = new ArrayList<EntityData>();
+            }
         }
     }
 }
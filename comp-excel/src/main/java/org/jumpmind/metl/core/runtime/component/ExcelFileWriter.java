@@ -38,6 +38,7 @@ import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.WorkbookUtil;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.jumpmind.exception.IoException;
 import org.jumpmind.metl.core.model.ComponentAttribSetting;
@@ -69,6 +70,8 @@ public class ExcelFileWriter extends AbstractFileWriter {
 
     public final static String EXCEL_WRITER_ATTRIBUTE_ORDINAL = "excel.writer.attribute.ordinal";
 
+    public final static String SETTING_ROWS_IN_MEMORY = "rows.in.memory";
+
     public final static String EXCEL_OUTPUT_FORMAT = "Microsoft Excel XML (.xlsx)";
     
     boolean emptyFile;
@@ -76,6 +79,10 @@ public class ExcelFileWriter extends AbstractFileWriter {
     boolean inputDataReceived = false;
     
     boolean includeHeader;
+
+    boolean writeHeader;
+
+    int rowsInMemory = SXSSFWorkbook.DEFAULT_WINDOW_SIZE;
             
     String excelOutputType = EXCEL_OUTPUT_TYPE;
     
@@ -101,6 +108,7 @@ public class ExcelFileWriter extends AbstractFileWriter {
         TypedProperties properties = getTypedProperties();
         emptyFile = properties.is(SETTING_EMPTY_FILE, false);
         includeHeader = properties.is(SETTING_INCLUDE_HEADER, false);
+        rowsInMemory = properties.getInt(SETTING_ROWS_IN_MEMORY, rowsInMemory);
         excelOutputType = properties.get(EXCEL_OUTPUT_TYPE, excelOutputType);
         excelSheetName = properties.get(SETTING_SHEET_NAME, excelSheetName);
         String enteredFileName = properties.get(SETTING_RELATIVE_PATH);
@@ -119,16 +127,41 @@ public class ExcelFileWriter extends AbstractFileWriter {
         	relativePathAndFile = properties.get(SETTING_RELATIVE_PATH);
         }
         
+        createWorkbook();
+        convertAttributeSettingsToAttributeFormat();
+    }
+
+    private void createWorkbook() {
         if ("Microsoft Excel (.xls)".equals(excelOutputType)) {
         	wb = new HSSFWorkbook();
         } else {
-            wb = new XSSFWorkbook();
+            // only a window of rows is kept in memory, the rest are flushed to compressed temporary files
+            wb = new SXSSFWorkbook(new XSSFWorkbook(), rowsInMemory, true);
         }
         
         // fix user entered sheet (tab) name if it does not meet the Excel requirements
         String safeName = WorkbookUtil.createSafeSheetName(excelSheetName);
         sheet = wb.createSheet(safeName);
-        convertAttributeSettingsToAttributeFormat();
+        rowNbr = 0;
+        colNbr = 0;
+        writeHeader = includeHeader;
+    }
+
+    private void writeWorkbook() throws IOException {
+        if (fileOut != null) {
+            wb.write(fileOut);
+        }
+        // a streamed workbook cannot take more rows once written, so each file gets a new one
+        disposeWorkbook();
+        createWorkbook();
+    }
+
+    private void disposeWorkbook() {
+        if (wb instanceof SXSSFWorkbook) {
+            // removes the temporary files that hold the flushed rows
+            ((SXSSFWorkbook) wb).dispose();
+        }
+        IOUtils.closeQuietly(wb);
     }
 
     @Override
@@ -170,8 +203,8 @@ public class ExcelFileWriter extends AbstractFileWriter {
             inputDataReceived = true;
             
             // if we need to include the header add it to the output and update the boolean to not output again
-            if (includeHeader) {
-            	Row row = sheet.createRow((short)rowNbr);
+            if (writeHeader) {
+            	Row row = sheet.createRow(rowNbr);
         		for (AttributeFormat attr : attributes) {
                     if (attr.getAttribute() != null) {
                 		Cell cell = row.createCell(colNbr);
@@ -182,7 +215,7 @@ public class ExcelFileWriter extends AbstractFileWriter {
             	
                 rowNbr++;
                 colNbr = 0;
-            	includeHeader = false;
+            	writeHeader = false;
             }
             
             initStreamAndWriter(inputMessage);
@@ -190,7 +223,7 @@ public class ExcelFileWriter extends AbstractFileWriter {
             if (inputMessage instanceof EntityDataMessage) {
                 ArrayList<EntityData> inputRows = ((EntityDataMessage)inputMessage).getPayload();
                 for (EntityData inputRow : inputRows) {
-                	Row row = sheet.createRow((short)rowNbr);
+                	Row row = sheet.createRow(rowNbr);
                 	for (AttributeFormat attribute : attributes) {
                         Object object = inputRow.get(attribute.getAttributeId());
                     	Cell cell = row.createCell(colNbr);
@@ -205,17 +238,14 @@ public class ExcelFileWriter extends AbstractFileWriter {
 
     	try {
 	        if ((inputMessage instanceof ControlMessage || unitOfWorkBoundaryReached) && callback != null) {
-				if (fileOut != null) {
-					wb.write(fileOut);
-				}
+	            writeWorkbook();
+	            closeFile();
 	            closeDirectory();
 	            ArrayList<String> results = new ArrayList<>(1);
 	            results.add("{\"status\":\"success\"}");
 	            callback.sendTextMessage(null, results);
 	        } else if (inputMessage instanceof ContentMessage) {
-				if (fileOut != null) {
-					wb.write(fileOut);
-				}
+	            writeWorkbook();
 	            closeFile();
 	        }
 		} catch (IOException e) {
@@ -234,11 +264,13 @@ public class ExcelFileWriter extends AbstractFileWriter {
     public void stop() {
         super.stop();
         closeDirectory();
+        disposeWorkbook();
     }
 
     @Override
     public void flowCompletedWithErrors(Throwable myError) {
         closeFile();
+        disposeWorkbook();
         super.flowCompletedWithErrors(myError);
     }
 
@@ -0,0 +1,207 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityDataLayout;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Reads the rows of one XLSX worksheet part as it is parsed, so that a sheet
+ * never has to be loaded into a workbook. Only the cells of mapped columns are
+ * converted, using the same value types the workbook based reader produced:
+ * strings, booleans, doubles and dates for date formatted numbers.
+ */
+class ExcelSheetHandler extends DefaultHandler {
+
+    interface RowHandler {
+        void handleRow(EntityData data);
+    }
+
+    ReadOnlySharedStringsTable strings;
+
+    StylesTable styles;
+
+    String[] columns;
+
+    EntityDataLayout entityDataLayout;
+
+    boolean ignoreError;
+
+    RowHandler rowHandler;
+
+    Map<Integer, Boolean> dateStyles = new HashMap<Integer, Boolean>();
+
+    EntityData data;
+
+    int rowIndex = -1;
+
+    int columnIndex = -1;
+
+    boolean mapped;
+
+    String cellType;
+
+    String cellStyle;
+
+    boolean formula;
+
+    boolean hasValue;
+
+    boolean collecting;
+
+    StringBuilder value = new StringBuilder();
+
+    ExcelSheetHandler(ReadOnlySharedStringsTable strings, StylesTable styles, String[] columns,
+            EntityDataLayout entityDataLayout, boolean ignoreError, RowHandler rowHandler) {
+        this.strings = strings;
+        this.styles = styles;
+        this.columns = columns;
+        this.entityDataLayout = entityDataLayout;
+        this.ignoreError = ignoreError;
+        this.rowHandler = rowHandler;
+    }
+
+    void parse(InputStream sheet) throws IOException, SAXException {
+        try {
+            XMLReader reader = SAXHelper.newXMLReader();
+            reader.setContentHandler(this);
+            reader.parse(new InputSource(sheet));
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        if ("row".equals(localName)) {
+            String reference = attributes.getValue("r");
+            rowIndex = reference != null ? Integer.parseInt(reference) - 1 : rowIndex + 1;
+            columnIndex = -1;
+            data = new EntityData(entityDataLayout);
+        } else if ("c".equals(localName)) {
+            String reference = attributes.getValue("r");
+            columnIndex = reference != null ? toColumnIndex(reference) : columnIndex + 1;
+            mapped = columnIndex < columns.length && columns[columnIndex] != null;
+            cellType = attributes.getValue("t");
+            cellStyle = attributes.getValue("s");
+            formula = false;
+            hasValue = false;
+            value.setLength(0);
+        } else if ("f".equals(localName)) {
+            formula = true;
+        } else if (mapped && ("v".equals(localName) || "t".equals(localName))) {
+            collecting = true;
+            hasValue = true;
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        if (collecting) {
+            value.append(ch, start, length);
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+        if ("v".equals(localName) || "t".equals(localName)) {
+            collecting = false;
+        } else if ("c".equals(localName)) {
+            if (mapped) {
+                data.put(columns[columnIndex], getCellValue());
+            }
+            mapped = false;
+        } else if ("row".equals(localName)) {
+            rowHandler.handleRow(data);
+            data = null;
+        }
+    }
+
+    protected Object getCellValue() {
+        if (!hasValue) {
+            return null;
+        }
+        String text = value.toString();
+        if ("s".equals(cellType)) {
+            return strings.getEntryAt(Integer.parseInt(text));
+        } else if ("str".equals(cellType) || "inlineStr".equals(cellType)) {
+            return text;
+        } else if ("b".equals(cellType)) {
+            return "1".equals(text);
+        } else if ("e".equals(cellType)) {
+            if (ignoreError) {
+                return null;
+            } else if (formula) {
+                throw new UnsupportedOperationException("Error in cell formula.  Invalid cell (RowIdx:ColIdx): "
+                        + (rowIndex + 1) + ":" + (columnIndex + 1));
+            } else {
+                throw new UnsupportedOperationException(
+                        "Error in cell.  (RowIdx:ColIdx): " + (rowIndex + 1) + ":" + (columnIndex + 1));
+            }
+        } else {
+            double number = Double.parseDouble(text);
+            if (cellStyle != null && DateUtil.isValidExcelDate(number) && isDateStyle(Integer.parseInt(cellStyle))) {
+                return DateUtil.getJavaDate(number);
+            } else {
+                return number;
+            }
+        }
+    }
+
+    protected boolean isDateStyle(int styleIndex) {
+        Boolean date = dateStyles.get(styleIndex);
+        if (date == null) {
+            XSSFCellStyle style = styles.getStyleAt(styleIndex);
+            date = style != null && DateUtil.isADateFormat(style.getDataFormat(), style.getDataFormatString());
+            dateStyles.put(styleIndex, date);
+        }
+        return date;
+    }
+
+    protected static int toColumnIndex(String cellReference) {
+        int columnIndex = 0;
+        for (int i = 0; i < cellReference.length(); i++) {
+            char c = cellReference.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                break;
+            }
+            columnIndex = columnIndex * 26 + (c - 'A' + 1);
+        }
+        return columnIndex - 1;
+    }
+}
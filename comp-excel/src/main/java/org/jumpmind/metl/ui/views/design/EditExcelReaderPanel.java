@@ -207,6 +207,7 @@ public class EditExcelReaderPanel extends AbstractComponentEditPanel {
                             .compareTo(entity2.getName().toLowerCase());
                 }
             });
+            model.invalidateIndexes();
 
             for (ModelEntity entity : model.getModelEntities()) {
                 for (ModelAttrib attr : entity.getModelAttributes()) {
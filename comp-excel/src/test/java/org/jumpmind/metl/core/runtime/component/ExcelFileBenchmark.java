@@ -0,0 +1,181 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityDataLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares reading an XLSX file through a loaded {@link XSSFWorkbook}, the way
+ * {@link ExcelFileReader} used to, with the {@link ExcelSheetHandler} event
+ * parser, and writing one through an {@link XSSFWorkbook} with the
+ * {@link SXSSFWorkbook} that {@link ExcelFileWriter} now uses. The fork runs
+ * with a small heap so the workbook variants show their memory cost as gc
+ * time, and the gc profiler reports the allocation of each.
+ * <p>
+ * <code>gradle jmh -PjmhArgs="ExcelFileBenchmark -prof gc"</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class ExcelFileBenchmark {
+
+    static final int COLUMNS = 10;
+
+    @Param({ "10000", "100000" })
+    int rowCount;
+
+    File file;
+
+    String[] columns;
+
+    EntityDataLayout layout;
+
+    @Setup
+    public void setup() throws IOException {
+        file = File.createTempFile("excel-benchmark-", ".xlsx");
+        SXSSFWorkbook workbook = new SXSSFWorkbook(new XSSFWorkbook(), SXSSFWorkbook.DEFAULT_WINDOW_SIZE, true);
+        try (OutputStream out = new FileOutputStream(file)) {
+            write(workbook, out);
+        }
+        columns = new String[COLUMNS];
+        layout = new EntityDataLayout(true);
+        for (int i = 0; i < COLUMNS; i++) {
+            columns[i] = "column" + i;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        FileUtils.deleteQuietly(file);
+    }
+
+    @Benchmark
+    public int readWorkbook() throws Exception {
+        int count = 0;
+        try (InputStream in = new FileInputStream(file); Workbook workbook = new XSSFWorkbook(in)) {
+            for (Row row : workbook.getSheetAt(0)) {
+                EntityData data = new EntityData(layout);
+                for (Cell cell : row) {
+                    data.put(columns[cell.getColumnIndex()], cell.getCellType() == Cell.CELL_TYPE_NUMERIC
+                            ? (Object) cell.getNumericCellValue() : cell.getStringCellValue());
+                }
+                count += data.size();
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int readEvents() throws Exception {
+        final int[] count = new int[1];
+        OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ);
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            ExcelSheetHandler handler = new ExcelSheetHandler(new ReadOnlySharedStringsTable(pkg), reader.getStylesTable(),
+                    columns, layout, false, new ExcelSheetHandler.RowHandler() {
+                        @Override
+                        public void handleRow(EntityData data) {
+                            count[0] += data.size();
+                        }
+                    });
+            InputStream sheet = reader.getSheetsData().next();
+            try {
+                handler.parse(sheet);
+            } finally {
+                IOUtils.closeQuietly(sheet);
+            }
+        } finally {
+            pkg.revert();
+        }
+        return count[0];
+    }
+
+    @Benchmark
+    public void writeWorkbook() throws IOException {
+        write(new XSSFWorkbook(), new NullOutputStream());
+    }
+
+    @Benchmark
+    public void writeStreaming() throws IOException {
+        write(new SXSSFWorkbook(new XSSFWorkbook(), SXSSFWorkbook.DEFAULT_WINDOW_SIZE, true), new NullOutputStream());
+    }
+
+    protected void write(Workbook workbook, OutputStream out) throws IOException {
+        try {
+            Sheet sheet = workbook.createSheet("Sheet1");
+            for (int rowNbr = 0; rowNbr < rowCount; rowNbr++) {
+                Row row = sheet.createRow(rowNbr);
+                for (int colNbr = 0; colNbr < COLUMNS; colNbr++) {
+                    Cell cell = row.createCell(colNbr);
+                    if (colNbr % 2 == 0) {
+                        cell.setCellValue(rowNbr * colNbr);
+                    } else {
+                        cell.setCellValue("value " + rowNbr + "-" + colNbr);
+                    }
+                }
+            }
+            workbook.write(out);
+        } finally {
+            if (workbook instanceof SXSSFWorkbook) {
+                ((SXSSFWorkbook) workbook).dispose();
+            }
+            workbook.close();
+        }
+    }
+
+}
@@ -0,0 +1,284 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityDataLayout;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExcelSheetHandlerTest {
+
+    /*
+     * Column B is never written and column E is written but not mapped. The
+     * cell in column K is past the end of the mapping.
+     */
+    static final String[] COLUMNS = { "shared", "missing", "bool", "date", null, "stringFormula",
+            "numberFormula", "error", "errorFormula", "blank" };
+
+    static final Date DATE = DateUtil.getJavaDate(42736.5);
+
+    File file;
+
+    @Before
+    public void setup() throws Exception {
+        file = File.createTempFile("excel-sheet-handler-", ".xlsx");
+        Workbook wb = new XSSFWorkbook();
+        try {
+            CellStyle dateStyle = wb.createCellStyle();
+            dateStyle.setDataFormat(wb.getCreationHelper().createDataFormat().getFormat("m/d/yy h:mm"));
+            Sheet sheet = wb.createSheet("test");
+            Row row = sheet.createRow(0);
+            row.createCell(0).setCellValue("alpha");
+            row.createCell(2).setCellValue(true);
+            Cell date = row.createCell(3);
+            date.setCellValue(DATE);
+            date.setCellStyle(dateStyle);
+            row.createCell(4).setCellValue(3.5);
+            row.createCell(5).setCellFormula("A1&\"x\"");
+            row.createCell(6).setCellFormula("E1*2");
+            row.createCell(7).setCellErrorValue(FormulaError.DIV0.getCode());
+            row.createCell(8).setCellFormula("1/0");
+            row.createCell(9);
+            row.createCell(10).setCellValue("unmapped");
+            wb.getCreationHelper().createFormulaEvaluator().evaluateAll();
+            OutputStream os = new FileOutputStream(file);
+            try {
+                wb.write(os);
+            } finally {
+                IOUtils.closeQuietly(os);
+            }
+        } finally {
+            IOUtils.closeQuietly(wb);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(file);
+    }
+
+    @Test
+    public void testCellTypesMatchWorkbookReader() throws Exception {
+        EntityData streamed = readWithSheetHandler(COLUMNS, true).get(0);
+        EntityData loaded = readWithWorkbook(COLUMNS, true).get(0);
+
+        assertEquals("alpha", streamed.get("shared"));
+        assertEquals(Boolean.TRUE, streamed.get("bool"));
+        assertEquals(DATE, streamed.get("date"));
+        assertFalse(streamed.containsKey("missing"));
+        assertNull(streamed.get("error"));
+        assertTrue(streamed.containsKey("blank"));
+        assertNull(streamed.get("blank"));
+        assertEquals(8, streamed.size());
+        for (String column : new String[] { "shared", "missing", "bool", "date", "error", "errorFormula", "blank" }) {
+            assertEquals(column, loaded.containsKey(column), streamed.containsKey(column));
+            assertEquals(column, loaded.get(column), streamed.get(column));
+        }
+        assertEquals(loaded.keySet(), streamed.keySet());
+
+        /*
+         * The workbook reader returned a rich text string for a string formula
+         * and could not read a number formula at all
+         */
+        assertEquals("alphax", ((XSSFRichTextString) loaded.get("stringFormula")).getString());
+        assertEquals("alphax", streamed.get("stringFormula"));
+        assertNull(loaded.get("numberFormula"));
+        assertEquals(7.0, streamed.get("numberFormula"));
+    }
+
+    @Test
+    public void testErrorCellFailsWhenErrorsAreNotIgnored() throws Exception {
+        try {
+            readWithSheetHandler(COLUMNS, false);
+            fail("Expected the error cell to fail the read");
+        } catch (UnsupportedOperationException e) {
+            assertEquals("Error in cell.  (RowIdx:ColIdx): 1:8", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testErrorFormulaFailsWhenErrorsAreNotIgnored() throws Exception {
+        String[] columns = new String[9];
+        columns[8] = "errorFormula";
+        try {
+            readWithSheetHandler(columns, false);
+            fail("Expected the error formula to fail the read");
+        } catch (UnsupportedOperationException e) {
+            assertEquals("Error in cell formula.  Invalid cell (RowIdx:ColIdx): 1:9", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testInlineStringsAndSparseReferences() throws Exception {
+        String xml = "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>"
+                + "<row r=\"1\"><c r=\"A1\" t=\"inlineStr\"><is><t>one</t></is></c><c r=\"C1\"><v>2</v></c>"
+                + "<c r=\"AB1\" t=\"inlineStr\"><is><t>far</t></is></c></row>"
+                + "<row r=\"4\"><c t=\"inlineStr\"><is><t>two</t></is></c><c><v>5</v></c></row>"
+                + "<row><c r=\"B5\" t=\"b\"><v>0</v></c></row>"
+                + "</sheetData></worksheet>";
+        String[] columns = new String[28];
+        columns[0] = "a";
+        columns[1] = "b";
+        columns[2] = "c";
+        columns[27] = "ab";
+        final List<EntityData> rows = new ArrayList<EntityData>();
+        new ExcelSheetHandler(null, null, columns, new EntityDataLayout(true), false, new ExcelSheetHandler.RowHandler() {
+            @Override
+            public void handleRow(EntityData data) {
+                rows.add(data);
+            }
+        }).parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+
+        assertEquals(3, rows.size());
+        assertEquals("one", rows.get(0).get("a"));
+        assertFalse(rows.get(0).containsKey("b"));
+        assertEquals(2.0, rows.get(0).get("c"));
+        assertEquals("far", rows.get(0).get("ab"));
+        assertEquals("two", rows.get(1).get("a"));
+        assertEquals(5.0, rows.get(1).get("b"));
+        assertFalse(rows.get(2).containsKey("a"));
+        assertEquals(Boolean.FALSE, rows.get(2).get("b"));
+    }
+
+    @Test
+    public void testToColumnIndex() {
+        assertEquals(0, ExcelSheetHandler.toColumnIndex("A1"));
+        assertEquals(25, ExcelSheetHandler.toColumnIndex("Z10"));
+        assertEquals(27, ExcelSheetHandler.toColumnIndex("AB1"));
+        assertEquals(16383, ExcelSheetHandler.toColumnIndex("XFD1048576"));
+    }
+
+    protected List<EntityData> readWithSheetHandler(String[] columns, boolean ignoreError) throws Exception {
+        final List<EntityData> rows = new ArrayList<EntityData>();
+        OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ);
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            InputStream sheet = reader.getSheetsData().next();
+            try {
+                new ExcelSheetHandler(new ReadOnlySharedStringsTable(pkg), reader.getStylesTable(), columns,
+                        new EntityDataLayout(true), ignoreError, new ExcelSheetHandler.RowHandler() {
+                            @Override
+                            public void handleRow(EntityData data) {
+                                rows.add(data);
+                            }
+                        }).parse(sheet);
+            } finally {
+                IOUtils.closeQuietly(sheet);
+            }
+        } finally {
+            pkg.revert();
+        }
+        return rows;
+    }
+
+    /**
+     * The cell conversion {@link ExcelFileReader} used when it loaded the
+     * whole workbook
+     */
+    @SuppressWarnings("deprecation")
+    protected List<EntityData> readWithWorkbook(String[] columns, boolean ignoreError) throws IOException {
+        List<EntityData> rows = new ArrayList<EntityData>();
+        InputStream is = new FileInputStream(file);
+        Workbook wb = new XSSFWorkbook(is);
+        try {
+            for (Row row : wb.getSheetAt(0)) {
+                EntityData data = new EntityData(new EntityDataLayout(true));
+                for (Cell cell : row) {
+                    if (cell.getColumnIndex() >= columns.length || columns[cell.getColumnIndex()] == null) {
+                        continue;
+                    }
+                    Object cellValue = null;
+                    switch (cell.getCellType()) {
+                        case Cell.CELL_TYPE_STRING:
+                            cellValue = cell.getStringCellValue();
+                            break;
+                        case Cell.CELL_TYPE_BOOLEAN:
+                            cellValue = cell.getBooleanCellValue();
+                            break;
+                        case Cell.CELL_TYPE_NUMERIC:
+                            if (DateUtil.isCellDateFormatted(cell)) {
+                                cellValue = cell.getDateCellValue();
+                            } else {
+                                cellValue = cell.getNumericCellValue();
+                            }
+                            break;
+                        case Cell.CELL_TYPE_FORMULA:
+                            try {
+                                cellValue = cell.getRichStringCellValue();
+                            } catch (IllegalStateException e) {
+                                if (!ignoreError) {
+                                    throw new UnsupportedOperationException(e);
+                                }
+                            }
+                            break;
+                        case Cell.CELL_TYPE_ERROR:
+                            if (!ignoreError) {
+                                throw new UnsupportedOperationException();
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                    data.put(columns[cell.getColumnIndex()], cellValue);
+                }
+                rows.add(data);
+            }
+        } finally {
+            IOUtils.closeQuietly(wb);
+            IOUtils.closeQuietly(is);
+        }
+        return rows;
+    }
+}
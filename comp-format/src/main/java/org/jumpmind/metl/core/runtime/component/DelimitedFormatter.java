@@ -157,9 +157,8 @@ public class DelimitedFormatter extends AbstractComponentRuntime {
             if (attributes.size() > 0) {
                 for (AttributeFormat attribute : attributes) {
                     Object object = inputRow.get(attribute.getAttributeId());
-                    if (isNotBlank(attribute.getFormatFunction())) {
-                        object = ModelAttributeScriptHelper.eval(inputMessage, context, attribute.getAttribute(), object, getInputModel(),
-                                attribute.getEntity(), inputRow, attribute.getFormatFunction());
+                    if (attribute.getFormatHelper() != null) {
+                        object = attribute.getFormatHelper().eval(inputMessage, inputRow, object);
                     }
 
                     csvWriter.write(object != null ? object.toString() : null,!trimColumns);
@@ -224,6 +223,13 @@ public class DelimitedFormatter extends AbstractComponentRuntime {
                 return ordinal1.getOrdinal() - ordinal2.getOrdinal();
             }
         });
+
+        for (AttributeFormat format : attributes) {
+            if (isNotBlank(format.getFormatFunction())) {
+                format.setFormatHelper(ModelAttributeScriptHelper.compile(context, format.getAttribute(), format.getEntity(),
+                        getInputModel(), format.getFormatFunction()));
+            }
+        }
     }
 
     private class AttributeFormat {
@@ -233,6 +239,7 @@ public class DelimitedFormatter extends AbstractComponentRuntime {
         String attributeId;
         int ordinal;
         String formatFunction;
+        ModelAttributeScriptHelper formatHelper;
 
         public AttributeFormat(String attributeId, ModelEntity entity, ModelAttrib attribute) {
             this.attributeId = attributeId;
@@ -260,6 +267,14 @@ public class DelimitedFormatter extends AbstractComponentRuntime {
             this.formatFunction = formatFunction;
         }
 
+        public ModelAttributeScriptHelper getFormatHelper() {
+            return formatHelper;
+        }
+
+        public void setFormatHelper(ModelAttributeScriptHelper formatHelper) {
+            this.formatHelper = formatHelper;
+        }
+
         public ModelAttrib getAttribute() {
             return attribute;
         }
@@ -38,6 +38,7 @@ import org.jumpmind.metl.core.model.Model;
 import org.jumpmind.metl.core.model.ModelAttrib;
 import org.jumpmind.metl.core.model.ModelEntity;
 import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityDataLayout;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.TextMessage;
 import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
@@ -59,6 +60,8 @@ public class DelimitedParser extends AbstractComponentRuntime {
 
     public final static String SETTING_ENCODING = "encoding";
 
+    public final static String SETTING_STREAMING_PARSER = "streaming.parser";
+
     public final static String DELIMITED_FORMATTER_ATTRIBUTE_FORMAT_FUNCTION = DelimitedFormatter.DELIMITED_FORMATTER_ATTRIBUTE_FORMAT_FUNCTION;
 
     public final static String DELIMITED_FORMATTER_ATTRIBUTE_ORDINAL = DelimitedFormatter.DELIMITED_FORMATTER_ATTRIBUTE_ORDINAL;
@@ -75,6 +78,16 @@ public class DelimitedParser extends AbstractComponentRuntime {
 
     List<AttributeFormat> attributes = new ArrayList<AttributeFormat>();
 
+    EntityDataLayout entityDataLayout = new EntityDataLayout(true);
+
+    DelimitedTokenizer tokenizer;
+
+    int[] columnIndexes;
+
+    int[] columnSlots;
+
+    ModelAttributeScriptHelper[] columnFormatHelpers;
+
     @Override
     public void start() {
         delimiter = StringEscapeUtils.unescapeJava(getComponent().get(SETTING_DELIMITER, delimiter));
@@ -86,6 +99,44 @@ public class DelimitedParser extends AbstractComponentRuntime {
         if (getComponent().getOutputModel() == null) {
             throw new IllegalStateException("This component requires an output model.  Please select one.");
         }
+        if (getComponent().getBoolean(SETTING_STREAMING_PARSER, false)) {
+            tokenizer = new DelimitedTokenizer(delimiter.charAt(0), isNotBlank(quoteCharacter) ? quoteCharacter.charAt(0) : 0,
+                    isNotBlank(quoteCharacter));
+            resolveColumns();
+        }
+    }
+
+    /**
+     * Maps the columns of a record to attribute slots once so the streaming
+     * parser can fill rows by index
+     */
+    protected void resolveColumns() {
+        List<String> attributeIds = new ArrayList<String>();
+        List<Integer> indexes = new ArrayList<Integer>();
+        List<ModelAttributeScriptHelper> helpers = new ArrayList<ModelAttributeScriptHelper>();
+        if (attributes.size() > 0) {
+            for (AttributeFormat attribute : attributes) {
+                attributeIds.add(attribute.getAttributeId());
+                indexes.add(attribute.getOrdinal() - 1);
+                helpers.add(attribute.getFormatHelper());
+            }
+        } else {
+            int index = 0;
+            for (ModelEntity modelEntity : getComponent().getOutputModel().getModelEntities()) {
+                for (ModelAttrib modelAttribute : modelEntity.getModelAttributes()) {
+                    attributeIds.add(modelAttribute.getId());
+                    indexes.add(index++);
+                    helpers.add(null);
+                }
+            }
+        }
+        columnIndexes = new int[attributeIds.size()];
+        columnSlots = new int[attributeIds.size()];
+        columnFormatHelpers = helpers.toArray(new ModelAttributeScriptHelper[helpers.size()]);
+        for (int i = 0; i < columnIndexes.length; i++) {
+            columnIndexes[i] = indexes.get(i);
+            columnSlots[i] = entityDataLayout.indexOfOrAdd(attributeIds.get(i));
+        }
     }
 
     @Override
@@ -95,10 +146,10 @@ public class DelimitedParser extends AbstractComponentRuntime {
 
     @Override
     public void handle(Message inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
+        ArrayList<EntityData> outputPayload = new ArrayList<EntityData>();
         if (inputMessage instanceof TextMessage) {
             ArrayList<String> inputRows = ((TextMessage)inputMessage).getPayload();
 
-            ArrayList<EntityData> outputPayload = new ArrayList<EntityData>();
             int headerRowsToSkip = inputMessage.getHeader().getSequenceNumber() == 0 ? numberOfHeaderLinesToSkip : 0;
             try {
                 int rowCount = 0;
@@ -107,7 +158,13 @@ public class DelimitedParser extends AbstractComponentRuntime {
                     for (String inputRow : inputRows) {
                         if (headerRowsToSkip == 0) {                            
                             if (rowCount + numberOfFooterLinesToSkip < inputRows.size()) {
-                                combined.append(inputRow).append("\n");
+                                if (tokenizer != null) {
+                                    if (tokenizer.addLine(inputRow)) {
+                                        outputPayload.add(toEntityData(inputMessage));
+                                    }
+                                } else {
+                                    combined.append(inputRow).append("\n");
+                                }
                             }
                         } else {
                             headerRowsToSkip--;
@@ -115,17 +172,38 @@ public class DelimitedParser extends AbstractComponentRuntime {
                         rowCount++;
                     }
                     
-                    processInputRows(inputMessage, combined, outputPayload);
+                    if (tokenizer == null) {
+                        processInputRows(inputMessage, combined, outputPayload);
+                    }
 
                 }
             } catch (IOException e) {
                 throw new IoException(e);
             }
+        }
+
+        if (tokenizer != null && unitOfWorkBoundaryReached && tokenizer.finish()) {
+            outputPayload.add(toEntityData(inputMessage));
+        }
 
+        if (inputMessage instanceof TextMessage || outputPayload.size() > 0) {
             callback.sendEntityDataMessage(null, outputPayload);
         }
     }
 
+    protected EntityData toEntityData(Message inputMessage) {
+        EntityData data = new EntityData(entityDataLayout);
+        for (int i = 0; i < columnIndexes.length; i++) {
+            Object value = tokenizer.getField(columnIndexes[i]);
+            if (columnFormatHelpers[i] != null) {
+                value = columnFormatHelpers[i].eval(inputMessage, data, value);
+            }
+            data.putAt(columnSlots[i], value);
+        }
+        context.getComponentStatistics().incrementNumberEntitiesProcessed(getThreadNumber());
+        return data;
+    }
+
     private void processInputRows(Message inputMessage, StringBuilder inputRow, List<EntityData> payload) throws IOException {
 
         CsvReader csvReader = new CsvReader(new ByteArrayInputStream(inputRow.toString().getBytes(Charset.forName(encoding))), Charset.forName(encoding));
@@ -137,13 +215,12 @@ public class DelimitedParser extends AbstractComponentRuntime {
             csvReader.setUseTextQualifier(false);
         }
         while (csvReader.readRecord()) {
-            EntityData data = new EntityData();
+            EntityData data = new EntityData(entityDataLayout);
             if (attributes.size() > 0) {
                 for (AttributeFormat attribute : attributes) {
                     Object value = csvReader.get(attribute.getOrdinal() - 1);
-                    if (isNotBlank(attribute.getFormatFunction())) {
-                        value = ModelAttributeScriptHelper.eval(inputMessage, context, attribute.getAttribute(), value, getOutputModel(), attribute.getEntity(),
-                                data, attribute.getFormatFunction());
+                    if (attribute.getFormatHelper() != null) {
+                        value = attribute.getFormatHelper().eval(inputMessage, data, value);
                     }
 
                     data.put(attribute.getAttributeId(), value);
@@ -199,6 +276,13 @@ public class DelimitedParser extends AbstractComponentRuntime {
             }
         });
 
+        for (AttributeFormat format : attributes) {
+            if (isNotBlank(format.getFormatFunction())) {
+                format.setFormatHelper(ModelAttributeScriptHelper.compile(context, format.getAttribute(), format.getEntity(),
+                        getOutputModel(), format.getFormatFunction()));
+            }
+        }
+
     }
 
     protected class AttributeFormat {
@@ -219,6 +303,8 @@ public class DelimitedParser extends AbstractComponentRuntime {
 
         String formatFunction;
 
+        ModelAttributeScriptHelper formatHelper;
+
         public String getAttributeId() {
             return attributeId;
         }
@@ -239,6 +325,14 @@ public class DelimitedParser extends AbstractComponentRuntime {
             this.formatFunction = formatFunction;
         }
 
+        public ModelAttributeScriptHelper getFormatHelper() {
+            return formatHelper;
+        }
+
+        public void setFormatHelper(ModelAttributeScriptHelper formatHelper) {
+            this.formatHelper = formatHelper;
+        }
+
         public ModelAttrib getAttribute() {
             return attribute;
         }
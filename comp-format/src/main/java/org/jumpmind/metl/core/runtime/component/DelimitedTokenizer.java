@@ -0,0 +1,178 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import java.util.Arrays;
+
+/**
+ * Splits delimited lines into fields without first joining them into a
+ * document. A quoted field that is not closed at the end of a line continues
+ * on the next line that is added, which may arrive in a later message.
+ * <p>
+ * The rules follow the {@link org.jumpmind.symmetric.csv.CsvReader} settings
+ * that {@link DelimitedParser} has always used: quotes inside a quoted field
+ * are escaped by doubling them, whitespace around unquoted fields is trimmed,
+ * anything between a closing quote and the next delimiter is dropped and empty
+ * lines are skipped.
+ * <p>
+ * The field array is reused from record to record, so the fields of a record
+ * have to be read before the next line is added.
+ */
+class DelimitedTokenizer {
+
+    final char delimiter;
+
+    final char quote;
+
+    final boolean useQuote;
+
+    String[] fields = new String[16];
+
+    int fieldCount;
+
+    final StringBuilder quotedField = new StringBuilder();
+
+    boolean inQuotes;
+
+    DelimitedTokenizer(char delimiter, char quote, boolean useQuote) {
+        this.delimiter = delimiter;
+        this.quote = quote;
+        this.useQuote = useQuote;
+    }
+
+    /**
+     * @return true if the line completed a record
+     */
+    public boolean addLine(String line) {
+        int length = line.length();
+        int pos;
+        if (inQuotes) {
+            quotedField.append('\n');
+            pos = readQuoted(line, 0);
+        } else if (length == 0) {
+            return false;
+        } else {
+            fieldCount = 0;
+            pos = readField(line, 0);
+        }
+        while (pos < length && !inQuotes) {
+            pos = readField(line, pos + 1);
+        }
+        return !inQuotes;
+    }
+
+    /**
+     * Completes a record that was left open by a quoted field that was never
+     * closed
+     * 
+     * @return true if there was such a record
+     */
+    public boolean finish() {
+        if (inQuotes) {
+            inQuotes = false;
+            addField(quotedField.toString());
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    public boolean isRecordOpen() {
+        return inQuotes;
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @return the field of the current record or an empty string if the
+     *         record has fewer fields
+     */
+    public String getField(int index) {
+        return index >= 0 && index < fieldCount ? fields[index] : "";
+    }
+
+    /**
+     * @return the position of the delimiter that ended the field or the
+     *         length of the line
+     */
+    protected int readField(String line, int start) {
+        int length = line.length();
+        int pos = start;
+        while (pos < length && isTrimmable(line.charAt(pos))) {
+            pos++;
+        }
+        if (useQuote && pos < length && line.charAt(pos) == quote) {
+            inQuotes = true;
+            quotedField.setLength(0);
+            return readQuoted(line, pos + 1);
+        } else {
+            int end = line.indexOf(delimiter, pos);
+            if (end < 0) {
+                end = length;
+            }
+            int last = end;
+            while (last > pos && isTrimmable(line.charAt(last - 1))) {
+                last--;
+            }
+            addField(line.substring(pos, last));
+            return end;
+        }
+    }
+
+    protected int readQuoted(String line, int start) {
+        int length = line.length();
+        int pos = start;
+        while (true) {
+            int closing = line.indexOf(quote, pos);
+            if (closing < 0) {
+                quotedField.append(line, pos, length);
+                return length;
+            } else if (closing + 1 < length && line.charAt(closing + 1) == quote) {
+                quotedField.append(line, pos, closing + 1);
+                pos = closing + 2;
+            } else {
+                inQuotes = false;
+                if (quotedField.length() == 0) {
+                    addField(line.substring(pos, closing));
+                } else {
+                    quotedField.append(line, pos, closing);
+                    addField(quotedField.toString());
+                }
+                int end = line.indexOf(delimiter, closing + 1);
+                return end < 0 ? length : end;
+            }
+        }
+    }
+
+    protected void addField(String value) {
+        if (fieldCount == fields.length) {
+            fields = Arrays.copyOf(fields, fieldCount * 2);
+        }
+        fields[fieldCount++] = value;
+    }
+
+    protected boolean isTrimmable(char c) {
+        return (c == ' ' || c == '\t') && c != delimiter;
+    }
+
+}
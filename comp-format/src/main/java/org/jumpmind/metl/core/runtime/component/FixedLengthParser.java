@@ -36,6 +36,7 @@ import org.jumpmind.metl.core.model.Model;
 import org.jumpmind.metl.core.model.ModelAttrib;
 import org.jumpmind.metl.core.model.ModelEntity;
 import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityDataLayout;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.TextMessage;
 import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
@@ -56,6 +57,8 @@ public class FixedLengthParser extends AbstractComponentRuntime {
 
     List<AttributeFormat> attributesList;
 
+    EntityDataLayout entityDataLayout = new EntityDataLayout(true);
+
     @Override
     public void start() {
         if (getComponent().getOutputModel() == null) {
@@ -106,7 +109,7 @@ public class FixedLengthParser extends AbstractComponentRuntime {
 
     private EntityData processInputRow(Message inputMessage, String inputRow) throws IOException {
         if (attributesList.size() > 0) {
-            EntityData data = new EntityData();
+            EntityData data = new EntityData(entityDataLayout);
             for (AttributeFormat attribute : attributesList) {
                 int length = attribute.getLength() > inputRow.length() ? inputRow.length() : attribute.getLength();
                 Object value = null;
@@ -117,9 +120,8 @@ public class FixedLengthParser extends AbstractComponentRuntime {
                 }
 
                 inputRow = inputRow.substring(length);
-                if (isNotBlank(attribute.getFormatFunction())) {
-                    value = ModelAttributeScriptHelper.eval(inputMessage, context, attribute.getAttribute(), value, getOutputModel(), attribute.getEntity(), data,
-                            attribute.getFormatFunction());
+                if (attribute.getFormatHelper() != null) {
+                    value = attribute.getFormatHelper().eval(inputMessage, data, value);
                 }
 
                 data.put(attribute.getAttributeId(), value);
@@ -159,6 +161,13 @@ public class FixedLengthParser extends AbstractComponentRuntime {
                 return format1.getOrdinal() - format2.getOrdinal();
             }
         });
+
+        for (AttributeFormat format : attributesList) {
+            if (isNotBlank(format.getFormatFunction())) {
+                format.setFormatHelper(ModelAttributeScriptHelper.compile(context, format.getAttribute(), format.getEntity(),
+                        getOutputModel(), format.getFormatFunction()));
+            }
+        }
     }
 
     private class AttributeFormat {
@@ -168,6 +177,7 @@ public class FixedLengthParser extends AbstractComponentRuntime {
         int ordinal;
         int length;
         String formatFunction;
+        ModelAttributeScriptHelper formatHelper;
 
         public AttributeFormat(ModelAttrib attribute, ModelEntity entity) {
             this.attribute = attribute;
@@ -198,6 +208,14 @@ public class FixedLengthParser extends AbstractComponentRuntime {
             this.formatFunction = formatFunction;
         }
 
+        public ModelAttributeScriptHelper getFormatHelper() {
+            return formatHelper;
+        }
+
+        public void setFormatHelper(ModelAttributeScriptHelper formatHelper) {
+            this.formatHelper = formatHelper;
+        }
+
         public String getFormatFunction() {
             return formatFunction;
         }
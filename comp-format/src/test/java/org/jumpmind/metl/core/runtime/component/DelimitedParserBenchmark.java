@@ -0,0 +1,143 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityDataLayout;
+import org.jumpmind.symmetric.csv.CsvReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the way {@link DelimitedParser} has parsed a message of lines, by
+ * joining them into one document and reading it back with a
+ * {@link CsvReader}, with the streaming parser that tokenizes each line and
+ * fills rows by slot.
+ * <p>
+ * <code>gradle jmh -PjmhArgs="DelimitedParserBenchmark -prof gc"</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DelimitedParserBenchmark {
+
+    static final int ROWS = 1000;
+
+    static final Charset ENCODING = Charset.forName("UTF-8");
+
+    @Param({ "10", "40", "120" })
+    int columnCount;
+
+    @Param({ "false", "true" })
+    boolean quoted;
+
+    List<String> lines;
+
+    String[] attributeIds;
+
+    EntityDataLayout layout;
+
+    int[] slots;
+
+    @Setup
+    public void setup() {
+        attributeIds = new String[columnCount];
+        layout = new EntityDataLayout(true);
+        slots = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            attributeIds[i] = UUID.randomUUID().toString();
+            slots[i] = layout.indexOfOrAdd(attributeIds[i]);
+        }
+        lines = new ArrayList<String>(ROWS);
+        for (int row = 0; row < ROWS; row++) {
+            StringBuilder line = new StringBuilder();
+            for (int column = 0; column < columnCount; column++) {
+                if (column > 0) {
+                    line.append(',');
+                }
+                String value = "value " + row + "-" + column;
+                line.append(quoted ? "\"" + value + "\"" : value);
+            }
+            lines.add(line.toString());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<EntityData> csvReader() throws IOException {
+        StringBuilder combined = new StringBuilder();
+        for (String line : lines) {
+            combined.append(line).append("\n");
+        }
+        CsvReader csvReader = new CsvReader(new ByteArrayInputStream(combined.toString().getBytes(ENCODING)), ENCODING);
+        csvReader.setDelimiter(',');
+        csvReader.setTextQualifier('"');
+        csvReader.setUseTextQualifier(true);
+        List<EntityData> rows = new ArrayList<EntityData>(ROWS);
+        while (csvReader.readRecord()) {
+            EntityData data = new EntityData(layout);
+            for (int i = 0; i < attributeIds.length; i++) {
+                data.put(attributeIds[i], csvReader.get(i));
+            }
+            rows.add(data);
+        }
+        return rows;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<EntityData> streaming() {
+        DelimitedTokenizer tokenizer = new DelimitedTokenizer(',', '"', true);
+        List<EntityData> rows = new ArrayList<EntityData>(ROWS);
+        for (String line : lines) {
+            if (tokenizer.addLine(line)) {
+                EntityData data = new EntityData(layout);
+                for (int i = 0; i < slots.length; i++) {
+                    data.putAt(slots[i], tokenizer.getField(i));
+                }
+                rows.add(data);
+            }
+        }
+        return rows;
+    }
+
+}
@@ -0,0 +1,105 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DelimitedTokenizerTest {
+
+    @Test
+    public void testUnquotedFieldsAreTrimmed() {
+        DelimitedTokenizer tokenizer = new DelimitedTokenizer(',', '"', true);
+        assertTrue(tokenizer.addLine(" a ,b,\tc\t,"));
+        assertFields(tokenizer, "a", "b", "c", "");
+        assertEquals("", tokenizer.getField(10));
+        assertEquals("", tokenizer.getField(-1));
+    }
+
+    @Test
+    public void testQuotedFields() {
+        DelimitedTokenizer tokenizer = new DelimitedTokenizer(',', '"', true);
+        assertTrue(tokenizer.addLine("\" a,b \",\"say \"\"hi\"\"\",  \"x\"junk ,\"\""));
+        assertFields(tokenizer, " a,b ", "say \"hi\"", "x", "");
+        assertTrue(tokenizer.addLine("a\"b,c"));
+        assertFields(tokenizer, "a\"b", "c");
+    }
+
+    @Test
+    public void testQuotedFieldSpanningLines() {
+        DelimitedTokenizer tokenizer = new DelimitedTokenizer('|', '\'', true);
+        assertFalse(tokenizer.addLine("1|'first"));
+        assertTrue(tokenizer.isRecordOpen());
+        assertFalse(tokenizer.addLine(""));
+        assertTrue(tokenizer.addLine("last'|2"));
+        assertFields(tokenizer, "1", "first\n\nlast", "2");
+        assertTrue(tokenizer.addLine("3|4"));
+        assertFields(tokenizer, "3", "4");
+    }
+
+    @Test
+    public void testFinishCompletesAnOpenRecord() {
+        DelimitedTokenizer tokenizer = new DelimitedTokenizer(',', '"', true);
+        assertFalse(tokenizer.finish());
+        assertFalse(tokenizer.addLine("1,\"open"));
+        assertTrue(tokenizer.finish());
+        assertFields(tokenizer, "1", "open");
+        assertFalse(tokenizer.isRecordOpen());
+    }
+
+    @Test
+    public void testEmptyLinesAreSkipped() {
+        DelimitedTokenizer tokenizer = new DelimitedTokenizer(',', '"', true);
+        assertFalse(tokenizer.addLine(""));
+        assertTrue(tokenizer.addLine(" "));
+        assertFields(tokenizer, "");
+    }
+
+    @Test
+    public void testTabDelimiterWithoutQuotes() {
+        DelimitedTokenizer tokenizer = new DelimitedTokenizer('\t', (char) 0, false);
+        assertTrue(tokenizer.addLine("\"a\"\t\t b "));
+        assertFields(tokenizer, "\"a\"", "", "b");
+    }
+
+    @Test
+    public void testFieldArrayGrows() {
+        DelimitedTokenizer tokenizer = new DelimitedTokenizer(',', '"', true);
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            line.append(i).append(',');
+        }
+        assertTrue(tokenizer.addLine(line.toString()));
+        assertEquals(41, tokenizer.getFieldCount());
+        assertEquals("39", tokenizer.getField(39));
+    }
+
+    protected void assertFields(DelimitedTokenizer tokenizer, String... expected) {
+        assertEquals(expected.length, tokenizer.getFieldCount());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], tokenizer.getField(i));
+        }
+    }
+
+}
@@ -32,6 +32,7 @@ import org.jumpmind.metl.core.model.Model;
 import org.jumpmind.metl.core.model.ModelAttrib;
 import org.jumpmind.metl.core.model.ModelEntity;
 import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityDataLayout;
 import org.jumpmind.metl.core.runtime.EntityDataMessage;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.MisconfiguredException;
@@ -53,6 +54,8 @@ public class Mapping extends AbstractMapping {
 
     boolean entityPerRecord;
 
+    EntityDataLayout entityDataLayout = new EntityDataLayout(true);
+
     @Override
     public void start() {
         validate();
@@ -163,7 +166,7 @@ public class Mapping extends AbstractMapping {
     protected ArrayList<EntityData> mapInputToOutput(EntityData inputRow) {
         ArrayList<EntityData> outputPayload = new ArrayList<EntityData>();
 
-        EntityData outputRow = new EntityData();
+        EntityData outputRow = new EntityData(entityDataLayout);
         outputRow.setChangeType(inputRow.getChangeType());
 
         for (Entry<String, Object> attrEntry : inputRow.entrySet()) {
@@ -105,6 +105,7 @@ public class MappingDiagram extends AbstractJavaScriptComponent {
 				}
 			}
 		}
+		c.invalidateIndexes();
 	}
 
 	@Override
@@ -142,7 +143,7 @@ public class MappingDiagram extends AbstractJavaScriptComponent {
 		List<ComponentAttribSetting> settings = component.getAttributeSetting(sourceId, Mapping.ATTRIBUTE_MAPS_TO);
 		for (ComponentAttribSetting setting : settings) {
 			if (setting.getValue().equals(targetId)) {
-				component.getAttributeSettings().remove(setting);
+				component.removeAttributeSetting(setting);
 				context.getConfigurationService().delete(setting);
 				markAsDirty();
 			}
@@ -153,7 +154,7 @@ public class MappingDiagram extends AbstractJavaScriptComponent {
 		List<ComponentEntitySetting> settings = component.getEntitySetting(sourceId, Mapping.ENTITY_MAPS_TO);
 		for (ComponentEntitySetting setting : settings) {
 			if (setting.getValue().equals(targetId)) {
-				component.getEntitySettings().remove(setting);
+				component.removeEntitySetting(setting);
 				context.getConfigurationService().delete(setting);
 				markAsDirty();
 			}
@@ -23,6 +23,8 @@ package org.jumpmind.metl.core.runtime.component;
 import static org.apache.commons.lang.StringUtils.isBlank;
 import static org.apache.commons.lang.StringUtils.isNotBlank;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -35,6 +37,12 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.jumpmind.db.sql.SqlException;
 import org.jumpmind.metl.core.model.Model;
@@ -43,14 +51,17 @@ import org.jumpmind.metl.core.model.ModelEntity;
 import org.jumpmind.metl.core.runtime.ContentMessage;
 import org.jumpmind.metl.core.runtime.ControlMessage;
 import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityDataLayout;
 import org.jumpmind.metl.core.runtime.EntityData.ChangeType;
 import org.jumpmind.metl.core.runtime.LogLevel;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.MisconfiguredException;
 import org.jumpmind.metl.core.runtime.TextMessage;
 import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
+import org.jumpmind.metl.core.util.ThreadUtils;
 import org.jumpmind.properties.TypedProperties;
 import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.JdbcUtils;
@@ -78,6 +89,24 @@ public class RdbmsReader extends AbstractRdbmsComponentRuntime {
 
     private static final String SQL_FROM_MESSAGE = "sql.get.from.message";
 
+    public final static String FETCH_SIZE = "fetch.size";
+
+    public final static String PARTITION_MODE = "partition.mode";
+
+    public final static String PARTITION_COLUMN = "partition.column";
+
+    public final static String PARTITION_COUNT = "partition.count";
+
+    public final static String PARTITION_THREADS = "partition.threads";
+
+    public static final String PARTITION_NONE = "NONE";
+
+    public static final String PARTITION_KEY_RANGE = "KEY RANGE";
+
+    public static final String PARTITION_MODULO = "MODULO";
+
+    static final Object PARTITION_DONE = new Object();
+
     List<String> sqls;
 
     String runWhen = PER_UNIT_OF_WORK;
@@ -97,6 +126,18 @@ public class RdbmsReader extends AbstractRdbmsComponentRuntime {
     String unitOfWork = COMPONENT_LIFETIME;
     
     boolean getSqlFromMessage = false;
+
+    EntityDataLayout entityDataLayout = new EntityDataLayout(true);
+
+    String partitionMode = PARTITION_NONE;
+
+    String partitionColumn;
+
+    int partitionCount = 4;
+
+    int partitionThreads = 4;
+
+    ExecutorService partitionExecutor;
     
     @Override
     public void start() {
@@ -110,6 +151,34 @@ public class RdbmsReader extends AbstractRdbmsComponentRuntime {
         runWhen = properties.get(RUN_WHEN, runWhen);
         unitOfWork = properties.get(UNIT_OF_WORK, unitOfWork);
         queryTimeout = properties.getInt(QUERY_TIMEOUT, queryTimeout);
+        fetchSize = properties.getInt(FETCH_SIZE, 0);
+        if (fetchSize <= 0) {
+            fetchSize = -1;
+        }
+        partitionMode = properties.get(PARTITION_MODE, PARTITION_NONE);
+        partitionColumn = properties.get(PARTITION_COLUMN);
+        partitionCount = properties.getInt(PARTITION_COUNT, partitionCount);
+        partitionThreads = properties.getInt(PARTITION_THREADS, partitionThreads);
+        if (isPartitioned()) {
+            if (isBlank(partitionColumn)) {
+                throw new MisconfiguredException("A partition column is required when partition mode is %s", partitionMode);
+            }
+            partitionExecutor = ThreadUtils.createFixedThreadPool(
+                    "rdbms-reader-" + context.getFlowStep().getId() + "-" + threadNumber, partitionCount, Math.max(1, partitionThreads));
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (partitionExecutor != null) {
+            partitionExecutor.shutdownNow();
+            partitionExecutor = null;
+        }
+        super.stop();
+    }
+
+    protected boolean isPartitioned() {
+        return !PARTITION_NONE.equals(partitionMode) && partitionCount > 1;
     }
 
     @Override
@@ -165,7 +234,11 @@ public class RdbmsReader extends AbstractRdbmsComponentRuntime {
                 log(LogLevel.INFO, "About to run: %s", sqlToExecute);
                 log(LogLevel.INFO, "Passing params: %s", paramMap);
                 resultSetToEntityDataConverter.setSqlToExecute(sqlToExecute);
-                template.query(sqlToExecute, paramMap, resultSetToEntityDataConverter);
+                if (isPartitioned()) {
+                    queryPartitions(template, sqlToExecute, paramMap, callback, outboundPayload);
+                } else {
+                    template.query(sqlToExecute, paramMap, resultSetToEntityDataConverter);
+                }
                 if (unitOfWork.equalsIgnoreCase(SQL_STATEMENT)) {
                     sendLeftOverRows(callback, outboundPayload);
                     callback.sendControlMessage();
@@ -180,6 +253,156 @@ public class RdbmsReader extends AbstractRdbmsComponentRuntime {
         
     }
 
+    /**
+     * Split the query into partitions on the partition column and read them
+     * concurrently, each over its own pooled connection. Rows are sent from
+     * this thread as the partitions hand them over.
+     */
+    protected void queryPartitions(NamedParameterJdbcTemplate template, String sql, Map<String, Object> paramMap,
+            ISendMessageCallback callback, ArrayList<EntityData> outboundPayload) {
+        List<String> predicates = null;
+        if (PARTITION_KEY_RANGE.equals(partitionMode)) {
+            BigDecimal[] range = template.query(getPartitionSql(sql, partitionColumn, null,
+                    String.format("min(%s), max(%s)", partitionColumn, partitionColumn)), paramMap, rs -> {
+                        rs.next();
+                        return new BigDecimal[] { rs.getBigDecimal(1), rs.getBigDecimal(2) };
+                    });
+            predicates = getKeyRangePredicates(partitionColumn, range[0], range[1], partitionCount);
+        } else {
+            String databaseName = template.getJdbcOperations()
+                    .execute((ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName());
+            predicates = getModuloPredicates(partitionColumn, partitionCount,
+                    databaseName != null && databaseName.toLowerCase().contains("microsoft"));
+        }
+
+        BlockingQueue<Object> chunks = new LinkedBlockingQueue<>(Math.max(2, partitionThreads * 2));
+        List<Future<?>> futures = new ArrayList<>(predicates.size());
+        for (String predicate : predicates) {
+            String partitionSql = getPartitionSql(sql, partitionColumn, predicate, "*");
+            futures.add(partitionExecutor.submit(() -> queryPartition(template, sql, partitionSql, paramMap, chunks)));
+        }
+        log(LogLevel.INFO, "Reading %d partitions on %s", predicates.size(), partitionColumn);
+
+        int remaining = futures.size();
+        try {
+            while (remaining > 0) {
+                checkForInterruption();
+                Object chunk = chunks.poll(1, TimeUnit.SECONDS);
+                if (chunk == PARTITION_DONE) {
+                    remaining--;
+                } else if (chunk instanceof RuntimeException) {
+                    throw (RuntimeException) chunk;
+                } else if (chunk instanceof Throwable) {
+                    throw new RuntimeException((Throwable) chunk);
+                } else if (chunk != null) {
+                    @SuppressWarnings("unchecked")
+                    ArrayList<EntityData> rows = (ArrayList<EntityData>) chunk;
+                    getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber, rows.size());
+                    rowReadDuringHandle += rows.size();
+                    if (outboundPayload.size() > 0) {
+                        outboundPayload.addAll(rows);
+                        sendLeftOverRows(callback, outboundPayload);
+                    } else {
+                        callback.sendEntityDataMessage(null, rows);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new CancellationException();
+        } finally {
+            if (remaining > 0) {
+                for (Future<?> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    protected void queryPartition(NamedParameterJdbcTemplate template, String sql, String partitionSql, Map<String, Object> paramMap,
+            BlockingQueue<Object> chunks) {
+        try {
+            template.query(partitionSql, paramMap, (ResultSetExtractor<Object>) rs -> {
+                ResultSetMetaData meta = rs.getMetaData();
+                ArrayList<String> attributeIds = getAttributeIds(sql, meta, getSqlColumnEntityHints(sql));
+                ArrayList<EntityData> rows = new ArrayList<>();
+                try {
+                    while (rs.next()) {
+                        rows.add(toEntityData(rs, meta, attributeIds));
+                        if (rows.size() >= rowsPerMessage) {
+                            chunks.put(rows);
+                            rows = new ArrayList<>();
+                        }
+                    }
+                    if (rows.size() > 0) {
+                        chunks.put(rows);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException();
+                }
+                return null;
+            });
+            chunks.put(PARTITION_DONE);
+        } catch (Throwable ex) {
+            if (!(ex instanceof CancellationException)) {
+                try {
+                    chunks.put(ex);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param predicate
+     *            The partition condition or null for no condition
+     */
+    static String getPartitionSql(String sql, String partitionColumn, String predicate, String selectList) {
+        StringBuilder partitionSql = new StringBuilder("select ").append(selectList).append(" from (\n");
+        partitionSql.append(sql.trim().replaceAll(";$", "")).append("\n) metl_partition");
+        if (predicate != null) {
+            partitionSql.append(" where ").append(predicate);
+        }
+        return partitionSql.toString();
+    }
+
+    static List<String> getKeyRangePredicates(String column, BigDecimal min, BigDecimal max, int count) {
+        List<String> predicates = new ArrayList<>(count);
+        if (min == null || max == null || count <= 1 || min.compareTo(max) == 0) {
+            predicates.add("1=1");
+        } else {
+            BigDecimal span = max.subtract(min);
+            String previous = null;
+            for (int i = 1; i <= count; i++) {
+                String bound = i == count ? null : span.multiply(BigDecimal.valueOf(i))
+                        .divide(BigDecimal.valueOf(count), 10, RoundingMode.HALF_UP).add(min).stripTrailingZeros().toPlainString();
+                if (previous == null) {
+                    predicates.add(String.format("(%s < %s or %s is null)", column, bound, column));
+                } else if (bound == null) {
+                    predicates.add(String.format("%s >= %s", column, previous));
+                } else {
+                    predicates.add(String.format("%s >= %s and %s < %s", column, previous, column, bound));
+                }
+                previous = bound;
+            }
+        }
+        return predicates;
+    }
+
+    static List<String> getModuloPredicates(String column, int count, boolean modOperator) {
+        List<String> predicates = new ArrayList<>(count);
+        String modulo = modOperator ? String.format("abs(%s %% %d)", column, count) : String.format("abs(mod(%s, %d))", column, count);
+        for (int i = 0; i < count; i++) {
+            if (i == 0) {
+                predicates.add(String.format("(%s = 0 or %s is null)", modulo, column));
+            } else {
+                predicates.add(String.format("%s = %d", modulo, i));
+            }
+        }
+        return predicates;
+    }
+
     private void sendLeftOverRows(final ISendMessageCallback callback, ArrayList<EntityData> outboundPayload) {
         if (outboundPayload != null && outboundPayload.size() > 0) {
             callback.sendEntityDataMessage(null, outboundPayload);
@@ -381,6 +604,22 @@ public class RdbmsReader extends AbstractRdbmsComponentRuntime {
         return idx;
     }
 
+    protected EntityData toEntityData(ResultSet rs, ResultSetMetaData meta, List<String> attributeIds) throws SQLException {
+        EntityData rowData = new EntityData(entityDataLayout);
+        rowData.setChangeType(entityChangeType);
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            String attributeId = attributeIds.get(i - 1);
+            if (isNotBlank(attributeId)) {
+                Object value = JdbcUtils.getResultSetValue(rs, i);
+                if (trimColumns && value instanceof String) {
+                    value = value.toString().trim();
+                }
+                rowData.put(attributeId, value);
+            }
+        }
+        return rowData;
+    }
+
     protected void logEntityAttributes(EntityData rowData) {
         StringBuilder sb = new StringBuilder();
         sb.append("{\n");
@@ -508,18 +747,7 @@ public class RdbmsReader extends AbstractRdbmsComponentRuntime {
 
                 getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber);
 
-                EntityData rowData = new EntityData();
-                rowData.setChangeType(entityChangeType);
-                for (int i = 1; i <= meta.getColumnCount(); i++) {
-                    String attributeId = attributeIds.get(i - 1);
-                    if (isNotBlank(attributeId)) {
-                        Object value = JdbcUtils.getResultSetValue(rs, i);
-                        if (trimColumns && value instanceof String) {
-                            value = value.toString().trim();
-                        }
-                        rowData.put(attributeId, value);
-                    }
-                }
+                EntityData rowData = toEntityData(rs, meta, attributeIds);
                 rowReadDuringHandle++;
                 payload.add(rowData);
                 if (context.getDeployment() != null && context.getDeployment().asLogLevel() == LogLevel.DEBUG) {
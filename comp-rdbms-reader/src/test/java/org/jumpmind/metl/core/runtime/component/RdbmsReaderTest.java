@@ -22,6 +22,8 @@ package org.jumpmind.metl.core.runtime.component;
 
 import static org.junit.Assert.assertEquals;
 
+import java.math.BigDecimal;
+import java.util.List;
 import java.util.Map;
 
 import org.jumpmind.metl.core.runtime.MisconfiguredException;
@@ -80,6 +82,30 @@ public class RdbmsReaderTest {
         }
         assertEquals(errorFound,false);
     }
+
+    @Test
+    public void testGetPartitionSql() {
+        assertEquals("select * from (\nselect a, b from test\n) metl_partition where abs(mod(a, 2)) = 1",
+                RdbmsReader.getPartitionSql("select a, b from test;", "a", "abs(mod(a, 2)) = 1", "*"));
+    }
+
+    @Test
+    public void testGetKeyRangePredicates() {
+        List<String> predicates = RdbmsReader.getKeyRangePredicates("id", new BigDecimal(1), new BigDecimal(101), 4);
+        assertEquals(4, predicates.size());
+        assertEquals("(id < 26 or id is null)", predicates.get(0));
+        assertEquals("id >= 26 and id < 51", predicates.get(1));
+        assertEquals("id >= 76", predicates.get(3));
+        assertEquals(1, RdbmsReader.getKeyRangePredicates("id", null, null, 4).size());
+    }
+
+    @Test
+    public void testGetModuloPredicates() {
+        List<String> predicates = RdbmsReader.getModuloPredicates("id", 3, false);
+        assertEquals("(abs(mod(id, 3)) = 0 or id is null)", predicates.get(0));
+        assertEquals("abs(mod(id, 3)) = 2", predicates.get(2));
+        assertEquals("abs(id % 3) = 1", RdbmsReader.getModuloPredicates("id", 3, true).get(1));
+    }
     
 
 }
@@ -0,0 +1,183 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Derives multi-row insert and dialect specific upsert statements from the
+ * single row insert statement that the database platform generated, so that
+ * identifier quoting and parameter casts stay the same as the platform's.
+ */
+class BulkDmlBuilder {
+
+    static final Pattern INSERT = Pattern.compile("(?is)\\s*insert\\s+into\\s+(.+?)\\s*\\((.+?)\\)\\s*values\\s*\\((.*)\\)\\s*");
+
+    String tableName;
+
+    List<String> columns;
+
+    List<String> parameters;
+
+    /**
+     * @return null if the statement is not a simple single row insert
+     */
+    static BulkDmlBuilder parse(String insertSql) {
+        Matcher matcher = INSERT.matcher(insertSql);
+        if (matcher.matches()) {
+            BulkDmlBuilder builder = new BulkDmlBuilder();
+            builder.tableName = matcher.group(1).trim();
+            builder.columns = split(matcher.group(2));
+            builder.parameters = split(matcher.group(3));
+            if (builder.columns.size() == builder.parameters.size()) {
+                return builder;
+            }
+        }
+        return null;
+    }
+
+    static List<String> split(String list) {
+        List<String> items = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < list.length(); i++) {
+            char c = list.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                items.add(list.substring(start, i).trim());
+                start = i + 1;
+            }
+        }
+        items.add(list.substring(start).trim());
+        return items;
+    }
+
+    String getInsertPrefix() {
+        return "insert into " + tableName + " (" + String.join(", ", columns) + ") values ";
+    }
+
+    String getValuesTuple() {
+        return "(" + String.join(", ", parameters) + ")";
+    }
+
+    String buildMultiRowInsert(int rowCount) {
+        StringBuilder sql = new StringBuilder(getInsertPrefix());
+        String tuple = getValuesTuple();
+        for (int i = 0; i < rowCount; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(tuple);
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Build an insert or update statement that takes the same parameters as
+     * the insert statement.
+     * 
+     * @param keyColumns
+     *            Flags the columns of the insert statement that make up the
+     *            primary key
+     * @param updateColumns
+     *            Flags the columns of the insert statement that are updated
+     *            when the row already exists
+     * @return null if the platform has no upsert statement that can honor the
+     *         column settings
+     */
+    String buildUpsert(String platformName, boolean[] keyColumns, boolean[] updateColumns) {
+        List<String> keys = new ArrayList<>();
+        List<String> updates = new ArrayList<>();
+        boolean allNonKeysUpdated = true;
+        for (int i = 0; i < columns.size(); i++) {
+            if (keyColumns[i]) {
+                keys.add(columns.get(i));
+            } else if (updateColumns[i]) {
+                updates.add(columns.get(i));
+            } else {
+                allNonKeysUpdated = false;
+            }
+        }
+        if (keys.size() == 0 || platformName == null) {
+            return null;
+        }
+
+        String platform = platformName.toLowerCase();
+        StringBuilder sql = new StringBuilder();
+        if (platform.startsWith("postgres")) {
+            sql.append(getInsertPrefix()).append(getValuesTuple());
+            sql.append(" on conflict (").append(String.join(", ", keys)).append(") do ");
+            if (updates.size() > 0) {
+                sql.append("update set ");
+                for (int i = 0; i < updates.size(); i++) {
+                    sql.append(i > 0 ? ", " : "").append(updates.get(i)).append(" = excluded.").append(updates.get(i));
+                }
+            } else {
+                sql.append("nothing");
+            }
+        } else if (platform.startsWith("mysql") || platform.startsWith("mariadb")) {
+            sql.append(getInsertPrefix()).append(getValuesTuple());
+            sql.append(" on duplicate key update ");
+            if (updates.size() > 0) {
+                for (int i = 0; i < updates.size(); i++) {
+                    sql.append(i > 0 ? ", " : "").append(updates.get(i)).append(" = values(").append(updates.get(i)).append(")");
+                }
+            } else {
+                sql.append(keys.get(0)).append(" = ").append(keys.get(0));
+            }
+        } else if (platform.startsWith("mssql") || platform.startsWith("oracle")) {
+            boolean oracle = platform.startsWith("oracle");
+            sql.append("merge into ").append(tableName).append(oracle ? " t" : " as t").append(" using (select ");
+            for (int i = 0; i < columns.size(); i++) {
+                sql.append(i > 0 ? ", " : "").append(parameters.get(i)).append(oracle ? " " : " as ").append(columns.get(i));
+            }
+            sql.append(oracle ? " from dual) s on (" : ") as s on (");
+            for (int i = 0; i < keys.size(); i++) {
+                sql.append(i > 0 ? " and " : "").append("t.").append(keys.get(i)).append(" = s.").append(keys.get(i));
+            }
+            sql.append(")");
+            if (updates.size() > 0) {
+                sql.append(" when matched then update set ");
+                for (int i = 0; i < updates.size(); i++) {
+                    sql.append(i > 0 ? ", " : "").append("t.").append(updates.get(i)).append(" = s.").append(updates.get(i));
+                }
+            }
+            sql.append(" when not matched then insert (").append(String.join(", ", columns)).append(") values (");
+            for (int i = 0; i < columns.size(); i++) {
+                sql.append(i > 0 ? ", " : "").append("s.").append(columns.get(i));
+            }
+            sql.append(oracle ? ")" : ");");
+        } else if (platform.startsWith("h2") && allNonKeysUpdated) {
+            sql.append("merge into ").append(tableName).append(" (").append(String.join(", ", columns)).append(") key (")
+                    .append(String.join(", ", keys)).append(") values ").append(getValuesTuple());
+        } else {
+            return null;
+        }
+        return sql.toString();
+    }
+
+}
@@ -28,6 +28,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -78,6 +79,15 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
     public final static String TABLE_PREFIX = "table.prefix";
     public final static String AUTO_CREATE_TABLE = "table.auto.create";
     public final static String USE_CACHED_METADATA = "use.cached.table.metadata";
+    public final static String COMMIT_INTERVAL = "commit.interval.rows";
+    public final static String INSERT_ROWS_PER_STATEMENT = "insert.rows.per.statement";
+    public final static String USE_UPSERT = "use.upsert";
+
+    /**
+     * Keeps multi-row inserts under the bind parameter limits of the
+     * databases we support (SQL Server allows 2100)
+     */
+    final static int MAX_PARAMETERS_PER_STATEMENT = 2000;
 
     boolean useCachedMetadata = false;
     boolean continueOnError = false;
@@ -87,6 +97,11 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
     boolean quoteIdentifiers = false;
     boolean fitToColumn = false;
     boolean autoCreateTable = false;
+    boolean useUpsert = false;
+    int commitInterval = 0;
+    int insertRowsPerStatement = 1;
+    int uncommittedRowCount = 0;
+    ISqlTransaction transaction;
     String catalogName;
     String schemaName;
     String tableSuffix = "";
@@ -99,6 +114,7 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
     Throwable error;
     String lastPreparedDml;
     Map<TargetTableDefintion, WriteStats> statsMap = new HashMap<>();
+    Map<String, Result> resultsBySql = new LinkedHashMap<>();
     long lastStatsLogTime = System.currentTimeMillis();
     long sqlDuration = 0;
 
@@ -126,8 +142,12 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
         fitToColumn = properties.is(FIT_TO_COLUMN);
         tableSuffix = properties.get(TABLE_SUFFIX, "");
         autoCreateTable = properties.is(AUTO_CREATE_TABLE, false);
+        useUpsert = properties.is(USE_UPSERT, false);
+        commitInterval = properties.getInt(COMMIT_INTERVAL, 0);
+        insertRowsPerStatement = Math.max(1, properties.getInt(INSERT_ROWS_PER_STATEMENT, 1));
+        uncommittedRowCount = 0;
         
-        if (batchMode && insertFallback) {
+        if (batchMode && insertFallback && !useUpsert) {
             throw new MisconfiguredException("Insert fallback is not supported in batch mode");
         }
 
@@ -160,7 +180,7 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
     public void handle(final Message inputMessage, final ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
         if (inputMessage instanceof EntityDataMessage) {
             results.clear();
-            lastPreparedDml = null;
+            resultsBySql.clear();
 
             if (error == null) {
                 if (databasePlatform == null) {
@@ -190,30 +210,37 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
                             databasePlatform.createTables(false, false, table);
                         }
                         if (table != null) {
-                            targetTables.add(new TargetTableDefintion(entity, new TargetTable(DmlType.UPDATE, entity, table.copy()),
+                            TargetTableDefintion targetTable = new TargetTableDefintion(entity,
+                                    new TargetTable(DmlType.UPDATE, entity, table.copy()),
                                     new TargetTable(DmlType.INSERT, entity, table.copy()),
-                                    new TargetTable(DmlType.DELETE, entity, table.copy())));
+                                    new TargetTable(DmlType.DELETE, entity, table.copy()));
+                            prepareBulkDml(targetTable);
+                            targetTables.add(targetTable);
                         }
                     }
                 }
 
                 ArrayList<EntityData> inputRows = ((EntityDataMessage) inputMessage).getPayload();
                 if (inputRows != null && inputRows.size() > 0) {
-                    ISqlTransaction transaction = databasePlatform.getSqlTemplate().startSqlTransaction();
-                    transaction.setInBatchMode(batchMode);
+                    if (transaction == null) {
+                        transaction = databasePlatform.getSqlTemplate().startSqlTransaction();
+                        transaction.setInBatchMode(batchMode);
+                        lastPreparedDml = null;
+                    }
                     try {
                         write(transaction, (EntityDataMessage)inputMessage, callback, unitOfWorkBoundaryReached);
-                        transaction.commit();
+                        uncommittedRowCount += inputRows.size();
+                        if (unitOfWorkBoundaryReached || uncommittedRowCount >= commitInterval) {
+                            commit();
+                        }
                     } catch (Throwable ex) {
                         error = ex;
-                        transaction.rollback();
+                        rollback();
                         if (ex instanceof RuntimeException) {
                             throw (RuntimeException) ex;
                         } else {
                             throw new RuntimeException(ex);
                         }
-                    } finally {
-                        transaction.close();
                     }
                 }
                 if (callback != null && results.size() > 0) {
@@ -229,6 +256,54 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
                 }
             }
         } 
+
+        if (unitOfWorkBoundaryReached && error == null) {
+            try {
+                commit();
+            } catch (RuntimeException ex) {
+                error = ex;
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Rows are committed at the end of each unit of work and every
+     * {@link #COMMIT_INTERVAL} rows in between. Anything still open when the
+     * step stops is committed then.
+     */
+    protected void commit() {
+        if (transaction != null) {
+            try {
+                transaction.commit();
+            } finally {
+                transaction.close();
+                transaction = null;
+                uncommittedRowCount = 0;
+            }
+        }
+    }
+
+    protected void rollback() {
+        if (transaction != null) {
+            try {
+                transaction.rollback();
+            } finally {
+                transaction.close();
+                transaction = null;
+                uncommittedRowCount = 0;
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (error == null) {
+            commit();
+        } else {
+            rollback();
+        }
+        super.stop();
     }
     
     @Override
@@ -361,6 +436,11 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
         TargetTable targetUpdateTable = targetTableDefinition.getUpdateTable();
         TargetTable targetInsertTable = targetTableDefinition.getInsertTable();
 
+        if (insertFallback && targetTableDefinition.getUpsertSql() != null) {
+            executeSqlUpserts(targetTableDefinition, targetUpdateTable.getRowValues(), transaction, stats);
+            return;
+        }
+
         for (EntityData inputRow : targetUpdateTable.getRowValues()) {
             Object[] rowData = getValues(false, targetUpdateTable, inputRow);
             int count = executeSql(targetUpdateTable, transaction, rowData);
@@ -386,6 +466,14 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
         TargetTable targetUpdateTable = targetTableDefinition.getUpdateTable();
         TargetTable targetInsertTable = targetTableDefinition.getInsertTable();
 
+        if (replaceRows && targetTableDefinition.getUpsertSql() != null) {
+            executeSqlUpserts(targetTableDefinition, targetInsertTable.getRowValues(), transaction, stats);
+            return;
+        } else if (!replaceRows && !continueOnError && targetTableDefinition.getInsertBuilder() != null) {
+            executeSqlMultiRowInserts(targetTableDefinition, transaction, stats);
+            return;
+        }
+
         for (EntityData inputRow : targetInsertTable.getRowValues()) {
             try {
                 Object[] rowData = getValues(false, targetInsertTable, inputRow);
@@ -406,16 +494,136 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
         }
     }
 
+    /**
+     * Insert rows several at a time with one multi-row insert statement per
+     * group of {@link #insertRowsPerStatement} rows
+     */
+    private void executeSqlMultiRowInserts(TargetTableDefintion targetTableDefinition, ISqlTransaction transaction, WriteStats stats) {
+        TargetTable targetInsertTable = targetTableDefinition.getInsertTable();
+        BulkDmlBuilder builder = targetTableDefinition.getInsertBuilder();
+        List<EntityData> rows = targetInsertTable.getRowValues();
+        int[] rowTypes = targetInsertTable.getStatement().getTypes();
+        int rowsPerStatement = Math.max(1, Math.min(insertRowsPerStatement, MAX_PARAMETERS_PER_STATEMENT / Math.max(1, rowTypes.length)));
+        for (int start = 0; start < rows.size(); start += rowsPerStatement) {
+            int rowCount = Math.min(rowsPerStatement, rows.size() - start);
+            Object[] data = new Object[rowCount * rowTypes.length];
+            int[] types = new int[data.length];
+            for (int i = 0; i < rowCount; i++) {
+                Object[] rowData = getValues(false, targetInsertTable, rows.get(start + i));
+                System.arraycopy(rowData, 0, data, i * rowTypes.length, rowTypes.length);
+                System.arraycopy(rowTypes, 0, types, i * rowTypes.length, rowTypes.length);
+            }
+            String sql = null;
+            if (rowCount == rowsPerStatement) {
+                if (targetTableDefinition.getMultiRowInsertSql() == null) {
+                    targetTableDefinition.setMultiRowInsertSql(builder.buildMultiRowInsert(rowCount));
+                }
+                sql = targetTableDefinition.getMultiRowInsertSql();
+            } else {
+                sql = builder.buildMultiRowInsert(rowCount);
+            }
+            int count = executeSql(sql, transaction, data, types);
+            stats.insertCount += count;
+        }
+    }
+
+    private void executeSqlUpserts(TargetTableDefintion targetTableDefinition, List<EntityData> rows, ISqlTransaction transaction,
+            WriteStats stats) {
+        TargetTable targetInsertTable = targetTableDefinition.getInsertTable();
+        int[] types = targetInsertTable.getStatement().getTypes();
+        for (EntityData inputRow : rows) {
+            Object[] rowData = getValues(false, targetInsertTable, inputRow);
+            int count = executeSql(targetTableDefinition.getUpsertSql(), transaction, rowData, types);
+            stats.upsertCount += count;
+        }
+    }
+
     private int executeSql(TargetTable targetTable, ISqlTransaction transaction, Object[] rowData) {
-        int count = execute(transaction, targetTable.getStatement(), new Object(), rowData);
+        return executeSql(targetTable.getStatement().getSql(), transaction, rowData, targetTable.getStatement().getTypes());
+    }
+
+    private int executeSql(String sql, ISqlTransaction transaction, Object[] rowData, int[] types) {
+        int count = execute(transaction, sql, new Object(), rowData, types);
         if (count > 0) {
-            results.add(new Result(targetTable.getStatement().getSql(), count));
-            totalStatementCount++;
+            addResult(sql, count);
             getComponentStatistics().incrementNumberEntitiesProcessed(count);
         }
         return count;
     }
 
+    /**
+     * Results are reported per statement with the total number of rows it
+     * affected rather than one result per row
+     */
+    private void addResult(String sql, int count) {
+        Result result = resultsBySql.get(sql);
+        if (result == null) {
+            result = new Result(sql, count);
+            resultsBySql.put(sql, result);
+            results.add(result);
+        } else {
+            result.numberRowsAffected += count;
+        }
+        totalStatementCount++;
+    }
+
+    /**
+     * Work out the multi-row insert and upsert statements for a table up
+     * front. A table that they do not apply to is written a row at a time.
+     */
+    private void prepareBulkDml(TargetTableDefintion targetTableDefinition) {
+        if (insertRowsPerStatement > 1 || useUpsert) {
+            TargetTable targetInsertTable = targetTableDefinition.getInsertTable();
+            BulkDmlBuilder builder = BulkDmlBuilder.parse(targetInsertTable.getStatement().getSql());
+            List<TargetColumn> columns = targetInsertTable.getTargetColumns();
+            if (builder == null || builder.columns.size() != columns.size()) {
+                if (batchMode && insertFallback) {
+                    throw new MisconfiguredException("Insert fallback is not supported in batch mode without an upsert statement for %s",
+                            targetInsertTable.getTable().getFullyQualifiedTableName());
+                }
+                log(LogLevel.WARN, "Bulk statements are not supported for %s.  Rows will be written one at a time",
+                        targetInsertTable.getTable().getFullyQualifiedTableName());
+                return;
+            }
+            
+            if (insertRowsPerStatement > 1) {
+                targetTableDefinition.setInsertBuilder(builder);
+            }
+
+            if (useUpsert && (replaceRows || insertFallback)) {
+                Table updateTable = targetTableDefinition.getUpdateTable().getTable();
+                boolean[] keyColumns = new boolean[columns.size()];
+                boolean[] updateColumns = new boolean[columns.size()];
+                int updatedCount = 0;
+                for (int i = 0; i < columns.size(); i++) {
+                    Column column = columns.get(i).getColumn();
+                    keyColumns[i] = column.isPrimaryKey();
+                    updateColumns[i] = updateTable.findColumn(column.getName()) != null;
+                    if (updateColumns[i] && !keyColumns[i]) {
+                        updatedCount++;
+                    }
+                }
+                int updateTableCount = 0;
+                for (Column column : updateTable.getColumns()) {
+                    if (!column.isPrimaryKey()) {
+                        updateTableCount++;
+                    }
+                }
+                String upsertSql = updatedCount == updateTableCount
+                        ? builder.buildUpsert(databasePlatform.getName(), keyColumns, updateColumns) : null;
+                if (upsertSql != null) {
+                    targetTableDefinition.setUpsertSql(upsertSql);
+                } else if (batchMode && insertFallback) {
+                    throw new MisconfiguredException("Insert fallback is not supported in batch mode without an upsert statement for %s",
+                            targetInsertTable.getTable().getFullyQualifiedTableName());
+                } else {
+                    log(LogLevel.WARN, "An upsert statement is not supported for %s on %s.  Rows will be written one at a time",
+                            targetInsertTable.getTable().getFullyQualifiedTableName(), databasePlatform.getName());
+                }
+            }
+        }
+    }
+
     private void write(ISqlTransaction transaction, EntityDataMessage inputMessage, ISendMessageCallback callback, boolean unitOfWorkLastMessage) {
         sortAndStoreRowsByTableAndOperation(inputMessage.getPayload());
         executeSqlByTableAndOperation(transaction);
@@ -466,6 +674,14 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
                         msg.append(stats.fallbackInsertCount);
                         rowCount += stats.fallbackInsertCount * 2;
                     }
+                    if (stats.upsertCount > 0) {
+                        if (msg.length() > 0) {
+                            msg.append(", ");
+                        }
+                        msg.append("Upserted: ");
+                        msg.append(stats.upsertCount);
+                        rowCount += stats.upsertCount;
+                    }
                     if (stats.ignoredCount > 0) {
                         if (msg.length() > 0) {
                             msg.append(", ");
@@ -490,7 +706,10 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
     }
 
     private int execute(ISqlTransaction transaction, DmlStatement dmlStatement, Object marker, Object[] data) {
-        String sql = dmlStatement.getSql();
+        return execute(transaction, dmlStatement.getSql(), marker, data, dmlStatement.getTypes());
+    }
+
+    private int execute(ISqlTransaction transaction, String sql, Object marker, Object[] data, int[] types) {
         if (!sql.equals(lastPreparedDml)) {
             transaction.flush();
             if (log.isDebugEnabled()) {
@@ -500,21 +719,21 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
             lastPreparedDml = sql;
         }
         if (log.isDebugEnabled()) {
-            log.debug("Submitting data {} with types {}", Arrays.toString(data), Arrays.toString(dmlStatement.getTypes()));
+            log.debug("Submitting data {} with types {}", Arrays.toString(data), Arrays.toString(types));
         }
         long ts = System.currentTimeMillis();
         try {
-            return transaction.addRow(marker, data, dmlStatement.getTypes());
+            return transaction.addRow(marker, data, types);
         } catch (Exception ex) {
             if (!(replaceRows && ex instanceof UniqueKeyException)) {
                 if (continueOnError) {
                     log(LogLevel.WARN, String.format("Failed to run the following sql: \n%s\nWith values: \n%s\nWith types: \n%s\n."
                             + "Continue on Error flag set - Continuing load",
-                            dmlStatement.getSql(), Arrays.toString(data), Arrays.toString(dmlStatement.getTypes())));
+                            sql, Arrays.toString(data), Arrays.toString(types)));
                     return 0;
                 } else {
                     log(LogLevel.ERROR, String.format("Failed to run the following sql: \n%s\nWith values: \n%s\nWith types: \n%s\n",
-                            dmlStatement.getSql(), Arrays.toString(data), Arrays.toString(dmlStatement.getTypes())));
+                            sql, Arrays.toString(data), Arrays.toString(types)));
                     throw ex;
                 }
             } else {
@@ -596,6 +815,9 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
         TargetTable insertTable;
         TargetTable deleteTable;
         Integer order;
+        BulkDmlBuilder insertBuilder;
+        String multiRowInsertSql;
+        String upsertSql;
 
         public TargetTableDefintion(ModelEntity modelEntity, TargetTable updateTable, TargetTable insertTable, TargetTable deleteTable) {
 
@@ -630,6 +852,30 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
             this.order = order;
         }
 
+        public BulkDmlBuilder getInsertBuilder() {
+            return insertBuilder;
+        }
+
+        public void setInsertBuilder(BulkDmlBuilder insertBuilder) {
+            this.insertBuilder = insertBuilder;
+        }
+
+        public String getMultiRowInsertSql() {
+            return multiRowInsertSql;
+        }
+
+        public void setMultiRowInsertSql(String multiRowInsertSql) {
+            this.multiRowInsertSql = multiRowInsertSql;
+        }
+
+        public String getUpsertSql() {
+            return upsertSql;
+        }
+
+        public void setUpsertSql(String upsertSql) {
+            this.upsertSql = upsertSql;
+        }
+
         @Override
         public int compareTo(TargetTableDefintion o) {
             if (o.order == null && order != null) {
@@ -772,5 +1018,6 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
         int updateCount;
         int fallbackInsertCount;
         int fallbackUpdateCount;
+        int upsertCount;
     }
 }
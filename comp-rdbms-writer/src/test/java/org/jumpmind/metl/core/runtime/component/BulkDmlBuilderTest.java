@@ -0,0 +1,76 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class BulkDmlBuilderTest {
+
+    static final String INSERT = "insert into \"test\" (\"id\", \"name\", \"created\") values (?,cast(? as varchar),?)";
+
+    static final boolean[] KEYS = { true, false, false };
+
+    static final boolean[] UPDATES = { true, true, false };
+
+    @Test
+    public void testMultiRowInsert() {
+        BulkDmlBuilder builder = BulkDmlBuilder.parse(INSERT);
+        assertEquals("insert into \"test\" (\"id\", \"name\", \"created\") values (?, cast(? as varchar), ?), (?, cast(? as varchar), ?)",
+                builder.buildMultiRowInsert(2));
+    }
+
+    @Test
+    public void testNotAnInsert() {
+        assertNull(BulkDmlBuilder.parse("update test set name=? where id=?"));
+    }
+
+    @Test
+    public void testPostgresUpsert() {
+        assertEquals("insert into \"test\" (\"id\", \"name\", \"created\") values (?, cast(? as varchar), ?) "
+                + "on conflict (\"id\") do update set \"name\" = excluded.\"name\"",
+                BulkDmlBuilder.parse(INSERT).buildUpsert("postgres", KEYS, UPDATES));
+    }
+
+    @Test
+    public void testMsSqlUpsert() {
+        assertEquals("merge into \"test\" as t using (select ? as \"id\", cast(? as varchar) as \"name\", ? as \"created\") as s "
+                + "on (t.\"id\" = s.\"id\") when matched then update set t.\"name\" = s.\"name\" "
+                + "when not matched then insert (\"id\", \"name\", \"created\") values (s.\"id\", s.\"name\", s.\"created\");",
+                BulkDmlBuilder.parse(INSERT).buildUpsert("mssql2008", KEYS, UPDATES));
+    }
+
+    @Test
+    public void testH2UpsertOnlyWhenAllColumnsAreUpdated() {
+        BulkDmlBuilder builder = BulkDmlBuilder.parse(INSERT);
+        assertNull(builder.buildUpsert("h2", KEYS, UPDATES));
+        assertEquals("merge into \"test\" (\"id\", \"name\", \"created\") key (\"id\") values (?, cast(? as varchar), ?)",
+                builder.buildUpsert("h2", KEYS, new boolean[] { true, true, true }));
+    }
+
+    @Test
+    public void testNoUpsertWithoutKeys() {
+        assertNull(BulkDmlBuilder.parse(INSERT).buildUpsert("postgres", new boolean[3], UPDATES));
+    }
+
+}
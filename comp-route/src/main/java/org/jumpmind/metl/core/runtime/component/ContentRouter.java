@@ -31,16 +31,21 @@ import java.util.Map;
 import java.util.Set;
 
 import javax.script.Bindings;
-import javax.script.ScriptContext;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptEngine;
 import javax.script.ScriptException;
 
 import org.codehaus.groovy.jsr223.GroovyScriptEngineImpl;
 import org.jumpmind.exception.IoException;
 import org.jumpmind.metl.core.model.FlowStepLink;
+import org.jumpmind.metl.core.model.Model;
+import org.jumpmind.metl.core.model.ModelAttrib;
+import org.jumpmind.metl.core.model.ModelEntity;
 import org.jumpmind.metl.core.runtime.ControlMessage;
 import org.jumpmind.metl.core.runtime.EntityData;
 import org.jumpmind.metl.core.runtime.EntityDataMessage;
+import org.jumpmind.metl.core.runtime.LogLevel;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.MisconfiguredException;
 import org.jumpmind.metl.core.runtime.TextMessage;
@@ -60,6 +65,8 @@ public class ContentRouter extends AbstractComponentRuntime {
 
     List<Route> routes;
 
+    List<CompiledRoute> compiledRoutes;
+
     ScriptEngine scriptEngine;
 
     boolean onlyRouteFirstMatch;
@@ -90,9 +97,65 @@ public class ContentRouter extends AbstractComponentRuntime {
             } catch (Exception e) {
                 throw new IoException(e);
             }
+            compileRoutes();
         }
     }
 
+    protected void compileRoutes() {
+        compiledRoutes = new ArrayList<>(routes.size());
+        Map<String, String> flowParameters = context.getFlowParameters();
+        for (Route route : routes) {
+            CompiledRoute compiledRoute = new CompiledRoute(route);
+            try {
+                compiledRoute.script = ((Compilable) scriptEngine).compile(route.getMatchExpression());
+            } catch (ScriptException e) {
+                throw new MisconfiguredException("The match expression for the route to %s could not be compiled: %s",
+                        route.getTargetStepId(), e.getMessage());
+            }
+            SimplePredicate predicate = SimplePredicate.parse(route.getMatchExpression());
+            if (predicate != null) {
+                String[] operand = predicate.getOperand();
+                if (operand.length == 1) {
+                    compiledRoute.changeTypeOperand = operand[0].equals("CHANGE_TYPE");
+                    compiledRoute.textOperand = operand[0].equals("text");
+                } else if (flowParameters == null || !flowParameters.containsKey(operand[0])) {
+                    compiledRoute.entityName = operand[0];
+                    compiledRoute.attributeId = findAttributeId(operand[0], operand[1]);
+                }
+                if (compiledRoute.changeTypeOperand || compiledRoute.textOperand || compiledRoute.attributeId != null) {
+                    compiledRoute.predicate = predicate;
+                }
+            }
+            compiledRoutes.add(compiledRoute);
+        }
+    }
+
+    /**
+     * Script bindings are keyed by the exact entity and attribute names, so
+     * only an unambiguous, exact match can be read straight from the row
+     */
+    protected String findAttributeId(String entityName, String attributeName) {
+        Model model = getInputModel();
+        String attributeId = null;
+        if (model != null) {
+            int entityMatches = 0;
+            for (ModelEntity entity : model.getModelEntities()) {
+                if (entity.getName().equals(entityName)) {
+                    entityMatches++;
+                    for (ModelAttrib attribute : entity.getModelAttributes()) {
+                        if (attribute.getName().equals(attributeName)) {
+                            attributeId = attributeId == null ? attribute.getId() : null;
+                        }
+                    }
+                }
+            }
+            if (entityMatches != 1) {
+                attributeId = null;
+            }
+        }
+        return attributeId;
+    }
+
     @Override
     public boolean supportsStartupMessages() {
         return true;
@@ -118,14 +181,36 @@ public class ContentRouter extends AbstractComponentRuntime {
     void handleEntityListPayload(EntityDataMessage inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
         Map<String, ArrayList<EntityData>> outboundMessages = new HashMap<String, ArrayList<EntityData>>();
         ArrayList<EntityData> inputDatas = inputMessage.getPayload();
+        Set<String> headerNames = inputMessage.getHeader().keySet();
+        Bindings bindings = null;
 
         for (EntityData entityData : inputDatas) {
             getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber);
-            bindEntityData(scriptEngine, inputMessage, entityData);
-            if (routes != null) {
-                for (Route route : routes) {
+            boolean rowBound = false;
+            if (compiledRoutes != null) {
+                for (CompiledRoute compiledRoute : compiledRoutes) {
+                    Route route = compiledRoute.route;
                     try {
-                        if (Boolean.TRUE.equals(scriptEngine.eval(route.getMatchExpression()))) {
+                        Boolean matches = null;
+                        if (compiledRoute.predicate != null) {
+                            if (compiledRoute.changeTypeOperand) {
+                                matches = compiledRoute.predicate.test(entityData.getChangeType().name());
+                            } else if (compiledRoute.attributeId != null && !headerNames.contains(compiledRoute.entityName)) {
+                                matches = compiledRoute.predicate.test(entityData.get(compiledRoute.attributeId));
+                            }
+                        }
+                        if (matches == null) {
+                            if (bindings == null) {
+                                bindings = scriptEngine.createBindings();
+                                bindHeadersAndFlowParameters(bindings, inputMessage);
+                            }
+                            if (!rowBound) {
+                                rebindEntityData(bindings, entityData);
+                                rowBound = true;
+                            }
+                            matches = Boolean.TRUE.equals(compiledRoute.script.eval(bindings));
+                        }
+                        if (matches) {
                             ArrayList<EntityData> outboundPayload = outboundMessages.get(route.getTargetStepId());
                             if (outboundPayload != null && outboundPayload.size() >= rowsPerMessage) {
                                 outboundMessages.remove(route.getTargetStepId());
@@ -158,11 +243,11 @@ public class ContentRouter extends AbstractComponentRuntime {
     protected void handleControlMessages(ControlMessage inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
         Bindings bindings = scriptEngine.createBindings();
         bindHeadersAndFlowParameters(bindings, inputMessage);
-        scriptEngine.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
-        if (routes != null) {
-            for (Route route : routes) {
+        if (compiledRoutes != null) {
+            for (CompiledRoute compiledRoute : compiledRoutes) {
+                Route route = compiledRoute.route;
                 try {
-                    if (Boolean.TRUE.equals(scriptEngine.eval(route.getMatchExpression()))) {
+                    if (Boolean.TRUE.equals(compiledRoute.script.eval(bindings))) {
                         callback.sendControlMessage(inputMessage.getHeader(), route.getTargetStepId());
                         targetStepsThatNeedControlMessages.remove(route.getTargetStepId());
                         if (onlyRouteFirstMatch) {
@@ -179,22 +264,43 @@ public class ContentRouter extends AbstractComponentRuntime {
     protected void handleStringListPayload(TextMessage inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
         Map<String, ArrayList<String>> outboundMessages = new HashMap<String, ArrayList<String>>();
         ArrayList<String> inputDatas = (ArrayList<String>) inputMessage.getPayload();
+        Bindings bindings = null;
         for (String data : inputDatas) {
             getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber);
-            bindStringData(scriptEngine, inputMessage, data);
-            if (routes != null) {
-                for (Route route : routes) {
+            boolean rowBound = false;
+            if (compiledRoutes != null) {
+                for (CompiledRoute compiledRoute : compiledRoutes) {
+                    Route route = compiledRoute.route;
                     try {
-                        if (Boolean.TRUE.equals(scriptEngine.eval(route.getMatchExpression()))) {
-                            ArrayList<String> outboundPayload = outboundMessages.get(route.getTargetStepId());
-                            if (outboundPayload == null) {
-                                outboundPayload = new ArrayList<String>();
-                                outboundMessages.put(route.getTargetStepId(), outboundPayload);
+                        Boolean matches = null;
+                        if (compiledRoute.textOperand) {
+                            matches = compiledRoute.predicate.test(data);
+                        }
+                        if (matches == null) {
+                            if (bindings == null) {
+                                bindings = scriptEngine.createBindings();
+                                bindHeadersAndFlowParameters(bindings, inputMessage);
+                            }
+                            if (!rowBound) {
+                                if (data == null) {
+                                    log(LogLevel.WARN, "Binding was unsuccessful since the value was null");
+                                }
+                                bindings.put("text", data);
+                                rowBound = true;
                             }
-                            if (outboundPayload.size() >= rowsPerMessage) {
+                            matches = Boolean.TRUE.equals(compiledRoute.script.eval(bindings));
+                        }
+                        if (matches) {
+                            ArrayList<String> outboundPayload = outboundMessages.get(route.getTargetStepId());
+                            if (outboundPayload != null && outboundPayload.size() >= rowsPerMessage) {
                                 outboundMessages.remove(route.getTargetStepId());
                                 callback.sendTextMessage(null, outboundPayload, route.getTargetStepId());
                                 targetStepsThatNeedControlMessages.add(route.getTargetStepId());
+                                outboundPayload = null;
+                            }
+                            if (outboundPayload == null) {
+                                outboundPayload = new ArrayList<String>();
+                                outboundMessages.put(route.getTargetStepId(), outboundPayload);
                             }
                             outboundPayload.add(data);
                             if (onlyRouteFirstMatch) {
@@ -215,6 +321,27 @@ public class ContentRouter extends AbstractComponentRuntime {
 
     }
 
+    static class CompiledRoute {
+
+        Route route;
+
+        CompiledScript script;
+
+        SimplePredicate predicate;
+
+        boolean changeTypeOperand;
+
+        boolean textOperand;
+
+        String entityName;
+
+        String attributeId;
+
+        CompiledRoute(Route route) {
+            this.route = route;
+        }
+    }
+
     static public class Route implements Serializable {
         
         private static final long serialVersionUID = 1L;
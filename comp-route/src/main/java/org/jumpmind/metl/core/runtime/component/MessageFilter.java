@@ -20,7 +20,14 @@
  */
 package org.jumpmind.metl.core.runtime.component;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptEngine;
 import javax.script.ScriptException;
 
@@ -28,6 +35,7 @@ import org.codehaus.groovy.jsr223.GroovyScriptEngineImpl;
 import org.jumpmind.metl.core.runtime.ContentMessage;
 import org.jumpmind.metl.core.runtime.ControlMessage;
 import org.jumpmind.metl.core.runtime.Message;
+import org.jumpmind.metl.core.runtime.MisconfiguredException;
 import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
 
 public class MessageFilter extends AbstractComponentRuntime {
@@ -40,8 +48,35 @@ public class MessageFilter extends AbstractComponentRuntime {
 
     public final static String MESSAGE_TYPE_TO_FILTER_CONTROL = "CONTROL";
 
+    /* bound after the headers and flow parameters */
+    final static Set<String> SCRIPT_ONLY_NAMES = new HashSet<>(Arrays.asList("inputMessage", "text", "CHANGE_TYPE",
+            "ENTITY_NAMES"));
+
     ScriptEngine scriptEngine;
 
+    String messageTypeToFilter;
+
+    CompiledScript script;
+
+    SimplePredicate predicate;
+
+    @Override
+    public void start() {
+        scriptEngine = new GroovyScriptEngineImpl();
+        messageTypeToFilter = properties.get(SETTING_MESSAGE_TYPE_TO_FILTER);
+        String expression = properties.get(SETTING_FILTER_EXPRESSION);
+        try {
+            script = ((Compilable) scriptEngine).compile(expression);
+        } catch (ScriptException e) {
+            throw new MisconfiguredException("The filter expression could not be compiled: %s", e.getMessage());
+        }
+        predicate = SimplePredicate.parse(expression);
+        if (predicate != null && (predicate.getOperand().length != 1
+                || SCRIPT_ONLY_NAMES.contains(predicate.getOperand()[0]))) {
+            predicate = null;
+        }
+    }
+
     @Override
     public boolean supportsStartupMessages() {
         return true;
@@ -49,21 +84,13 @@ public class MessageFilter extends AbstractComponentRuntime {
 
     @Override
     public void handle(Message inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
-        if (scriptEngine == null) {
-            scriptEngine = new GroovyScriptEngineImpl();
-        }
-
-        String messageTypeToFilter = properties.get(SETTING_MESSAGE_TYPE_TO_FILTER);
-        String expression = properties.get(SETTING_FILTER_EXPRESSION);
-        Bindings bindings = scriptEngine.createBindings();
-        bindHeadersAndFlowParameters(bindings, inputMessage);
         try {
             if (MESSAGE_TYPE_TO_FILTER_CONTENT.equals(messageTypeToFilter) && inputMessage instanceof ContentMessage) {
-                if (Boolean.TRUE.equals(scriptEngine.eval(expression, bindings))) {
+                if (matches(inputMessage)) {
                     callback.forward(inputMessage);
                 }
             } else if (MESSAGE_TYPE_TO_FILTER_CONTROL.equals(messageTypeToFilter) && inputMessage instanceof ControlMessage) {
-                if (Boolean.TRUE.equals(scriptEngine.eval(expression, bindings))) {
+                if (matches(inputMessage)) {
                     callback.sendControlMessage();
                 }
             } else if (inputMessage instanceof ControlMessage) {
@@ -75,4 +102,28 @@ public class MessageFilter extends AbstractComponentRuntime {
 
     }
 
+    protected boolean matches(Message inputMessage) throws ScriptException {
+        Boolean matches = null;
+        if (predicate != null) {
+            /*
+             * Flow parameters are bound after the headers and win. Anything
+             * else, like a model entity or an unbound name, is left to the
+             * script
+             */
+            String name = predicate.getOperand()[0];
+            Map<String, String> flowParameters = context.getFlowParameters();
+            if (flowParameters != null && flowParameters.containsKey(name)) {
+                matches = predicate.test(flowParameters.get(name));
+            } else if (inputMessage.getHeader().containsKey(name)) {
+                matches = predicate.test(inputMessage.getHeader().get(name));
+            }
+        }
+        if (matches == null) {
+            Bindings bindings = scriptEngine.createBindings();
+            bindHeadersAndFlowParameters(bindings, inputMessage);
+            matches = Boolean.TRUE.equals(script.eval(bindings));
+        }
+        return matches;
+    }
+
 }
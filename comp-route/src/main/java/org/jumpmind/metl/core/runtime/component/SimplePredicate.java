@@ -0,0 +1,394 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A single comparison of a bound value against literals that can be evaluated
+ * without going through the script engine. The supported forms are
+ * <code>NAME op literal</code> and <code>ENTITY.ATTRIBUTE op literal</code>
+ * where op is one of <code>==</code>, <code>!=</code>, <code>==~</code> (a
+ * slashy or quoted regular expression) or <code>in</code> (a list of string or
+ * null literals).
+ * <p>
+ * {@link #test(Object)} follows Groovy's comparison rules for the value types
+ * it recognizes and returns null for anything else so the caller can fall back
+ * to the compiled script.
+ */
+class SimplePredicate {
+
+    static final Set<String> RESERVED_WORDS = new HashSet<>(Arrays.asList("true", "false", "null", "in", "as",
+            "new", "this", "super", "instanceof"));
+
+    enum Operator {
+        EQUALS, NOT_EQUALS, MATCHES, IN
+    }
+
+    final String[] operand;
+
+    final Operator operator;
+
+    final Object literal;
+
+    final List<Object> literals;
+
+    final Pattern pattern;
+
+    private SimplePredicate(String[] operand, Operator operator, Object literal, List<Object> literals, Pattern pattern) {
+        this.operand = operand;
+        this.operator = operator;
+        this.literal = literal;
+        this.literals = literals;
+        this.pattern = pattern;
+    }
+
+    public String[] getOperand() {
+        return operand;
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    /**
+     * @return {@link Boolean#TRUE} or {@link Boolean#FALSE} when the result is
+     *         known, or null when the script has to decide
+     */
+    public Boolean test(Object value) {
+        switch (operator) {
+            case EQUALS:
+                return isEqual(value, literal);
+            case NOT_EQUALS:
+                Boolean equal = isEqual(value, literal);
+                return equal == null ? null : !equal;
+            case IN:
+                return literals.contains(value);
+            case MATCHES:
+                if (value == null) {
+                    return false;
+                } else if (value instanceof String) {
+                    return pattern.matcher((String) value).matches();
+                } else {
+                    return null;
+                }
+            default:
+                return null;
+        }
+    }
+
+    static Boolean isEqual(Object value, Object literal) {
+        if (value == null || literal == null) {
+            return value == literal;
+        } else if (value instanceof String && literal instanceof String) {
+            return value.equals(literal);
+        } else if (value instanceof Boolean && literal instanceof Boolean) {
+            return value.equals(literal);
+        } else if (value instanceof Number && literal instanceof Number) {
+            if (value instanceof Double || value instanceof Float) {
+                double d = ((Number) value).doubleValue();
+                return Double.isNaN(d) ? null : d == ((Number) literal).doubleValue();
+            } else if (value instanceof BigDecimal || value instanceof BigInteger || value instanceof Long
+                    || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                return new BigDecimal(value.toString()).compareTo((BigDecimal) literal) == 0;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the predicate or null if the expression is not a simple
+     *         comparison
+     */
+    public static SimplePredicate parse(String expression) {
+        if (expression == null) {
+            return null;
+        }
+        try {
+            return new Parser(expression).parse();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    static class Parser {
+
+        final String text;
+
+        int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        SimplePredicate parse() {
+            skipWhitespace();
+            List<String> operand = new ArrayList<>();
+            operand.add(identifier());
+            if (peek() == '.') {
+                pos++;
+                operand.add(identifier());
+            }
+            for (String name : operand) {
+                if (RESERVED_WORDS.contains(name)) {
+                    throw new IllegalArgumentException();
+                }
+            }
+            skipWhitespace();
+            Operator operator;
+            if (consume("==~")) {
+                operator = Operator.MATCHES;
+            } else if (consume("==")) {
+                operator = Operator.EQUALS;
+            } else if (consume("!=")) {
+                operator = Operator.NOT_EQUALS;
+            } else if (consume("in") && (Character.isWhitespace(peek()) || peek() == '[')) {
+                operator = Operator.IN;
+            } else {
+                throw new IllegalArgumentException();
+            }
+            skipWhitespace();
+            Object literal = null;
+            List<Object> literals = null;
+            Pattern pattern = null;
+            switch (operator) {
+                case MATCHES:
+                    String regex = peek() == '/' ? slashyString() : (String) stringLiteral();
+                    try {
+                        pattern = Pattern.compile(regex);
+                    } catch (PatternSyntaxException e) {
+                        throw new IllegalArgumentException(e);
+                    }
+                    break;
+                case IN:
+                    literals = list();
+                    break;
+                default:
+                    literal = literal();
+                    if (literal instanceof Number) {
+                        literal = new BigDecimal(literal.toString());
+                    }
+                    break;
+            }
+            skipWhitespace();
+            if (pos != text.length()) {
+                throw new IllegalArgumentException();
+            }
+            return new SimplePredicate(operand.toArray(new String[operand.size()]), operator, literal, literals,
+                    pattern);
+        }
+
+        List<Object> list() {
+            expect('[');
+            List<Object> literals = new ArrayList<>();
+            skipWhitespace();
+            if (peek() != ']') {
+                do {
+                    skipWhitespace();
+                    Object literal = literal();
+                    /*
+                     * Groovy checks membership with equals(), so numeric
+                     * literals would have to reproduce Groovy's literal types
+                     */
+                    if (literal != null && !(literal instanceof String)) {
+                        throw new IllegalArgumentException();
+                    }
+                    literals.add(literal);
+                    skipWhitespace();
+                } while (consume(","));
+            }
+            expect(']');
+            return literals;
+        }
+
+        Object literal() {
+            char c = peek();
+            if (c == '\'' || c == '"') {
+                return stringLiteral();
+            } else if (c == '-' || Character.isDigit(c)) {
+                return number();
+            } else {
+                String word = identifier();
+                if (word.equals("null")) {
+                    return null;
+                } else if (word.equals("true")) {
+                    return Boolean.TRUE;
+                } else if (word.equals("false")) {
+                    return Boolean.FALSE;
+                } else {
+                    throw new IllegalArgumentException();
+                }
+            }
+        }
+
+        Object number() {
+            int start = pos;
+            if (peek() == '-') {
+                pos++;
+            }
+            digits();
+            if (peek() == '.') {
+                pos++;
+                digits();
+            }
+            if (peek() == 'e' || peek() == 'E') {
+                pos++;
+                if (peek() == '+' || peek() == '-') {
+                    pos++;
+                }
+                digits();
+            }
+            if (Character.isLetter(peek())) {
+                /* typed suffixes like 1L or 1.5d */
+                throw new IllegalArgumentException();
+            }
+            return new BigDecimal(text.substring(start, pos));
+        }
+
+        void digits() {
+            int start = pos;
+            while (Character.isDigit(peek())) {
+                pos++;
+            }
+            if (start == pos) {
+                throw new IllegalArgumentException();
+            }
+        }
+
+        Object stringLiteral() {
+            char quote = next();
+            if (quote != '\'' && quote != '"' || text.startsWith(quote + "" + quote, pos)) {
+                /* not a string or the start of a triple quoted one */
+                throw new IllegalArgumentException();
+            }
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == quote) {
+                    return value.toString();
+                } else if (c == '$' && quote == '"') {
+                    /* a GString */
+                    throw new IllegalArgumentException();
+                } else if (c == '\\') {
+                    c = next();
+                    switch (c) {
+                        case '\\':
+                        case '\'':
+                        case '"':
+                        case '$':
+                            value.append(c);
+                            break;
+                        case 'n':
+                            value.append('\n');
+                            break;
+                        case 't':
+                            value.append('\t');
+                            break;
+                        case 'r':
+                            value.append('\r');
+                            break;
+                        case 'b':
+                            value.append('\b');
+                            break;
+                        case 'f':
+                            value.append('\f');
+                            break;
+                        default:
+                            throw new IllegalArgumentException();
+                    }
+                } else if (c == '\n' || c == '\r') {
+                    throw new IllegalArgumentException();
+                } else {
+                    value.append(c);
+                }
+            }
+        }
+
+        String slashyString() {
+            expect('/');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '/') {
+                    return value.toString();
+                } else if (c == '$') {
+                    /* slashy strings are GStrings too */
+                    throw new IllegalArgumentException();
+                } else if (c == '\\' && peek() == '/') {
+                    value.append(next());
+                } else {
+                    value.append(c);
+                }
+            }
+        }
+
+        String identifier() {
+            int start = pos;
+            if (!Character.isJavaIdentifierStart(peek()) || peek() == '$') {
+                throw new IllegalArgumentException();
+            }
+            while (pos < text.length() && Character.isJavaIdentifierPart(peek()) && peek() != '$') {
+                pos++;
+            }
+            return text.substring(start, pos);
+        }
+
+        void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        boolean consume(String token) {
+            if (text.startsWith(token, pos)) {
+                pos += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) {
+            if (next() != c) {
+                throw new IllegalArgumentException();
+            }
+        }
+
+        char peek() {
+            return pos < text.length() ? text.charAt(pos) : 0;
+        }
+
+        char next() {
+            if (pos >= text.length()) {
+                throw new IllegalArgumentException();
+            }
+            return text.charAt(pos++);
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.junit.Test;
+
+public class SimplePredicateTest {
+
+    @Test
+    public void testEquals() {
+        SimplePredicate predicate = SimplePredicate.parse("TEST_TABLE_1.COL1=='Route to 1'");
+        assertArrayEquals(new String[] { "TEST_TABLE_1", "COL1" }, predicate.getOperand());
+        assertEquals(Boolean.TRUE, predicate.test("Route to 1"));
+        assertEquals(Boolean.FALSE, predicate.test("Route to 2"));
+        assertEquals(Boolean.FALSE, predicate.test(null));
+
+        predicate = SimplePredicate.parse(" CHANGE_TYPE != \"ADD\" ");
+        assertArrayEquals(new String[] { "CHANGE_TYPE" }, predicate.getOperand());
+        assertEquals(Boolean.FALSE, predicate.test("ADD"));
+        assertEquals(Boolean.TRUE, predicate.test("DEL"));
+
+        predicate = SimplePredicate.parse("T.C == null");
+        assertEquals(Boolean.TRUE, predicate.test(null));
+        assertEquals(Boolean.FALSE, predicate.test("x"));
+    }
+
+    @Test
+    public void testNumbersCompareNumerically() {
+        SimplePredicate predicate = SimplePredicate.parse("T.C == 1");
+        assertEquals(Boolean.TRUE, predicate.test(1L));
+        assertEquals(Boolean.TRUE, predicate.test(new BigDecimal("1.00")));
+        assertEquals(Boolean.TRUE, predicate.test(1.0d));
+        assertEquals(Boolean.FALSE, predicate.test(2));
+
+        predicate = SimplePredicate.parse("T.C != -1.5");
+        assertEquals(Boolean.FALSE, predicate.test(-1.5d));
+        assertEquals(Boolean.TRUE, predicate.test(1));
+    }
+
+    @Test
+    public void testMixedTypesAreLeftToTheScript() {
+        assertNull(SimplePredicate.parse("T.C == 1").test("1"));
+        assertNull(SimplePredicate.parse("T.C == '1'").test(1));
+        assertNull(SimplePredicate.parse("T.C != 'x'").test(new Date()));
+        assertNull(SimplePredicate.parse("T.C ==~ /x/").test(1));
+        assertNull(SimplePredicate.parse("T.C == 1").test(Double.NaN));
+    }
+
+    @Test
+    public void testIn() {
+        SimplePredicate predicate = SimplePredicate.parse("T.C in ['A', \"B\", null]");
+        assertEquals(Boolean.TRUE, predicate.test("A"));
+        assertEquals(Boolean.TRUE, predicate.test("B"));
+        assertEquals(Boolean.TRUE, predicate.test(null));
+        assertEquals(Boolean.FALSE, predicate.test("C"));
+
+        assertEquals(Boolean.FALSE, SimplePredicate.parse("text in[]").test("A"));
+    }
+
+    @Test
+    public void testRegex() {
+        SimplePredicate predicate = SimplePredicate.parse("text ==~ /\\d+\\/\\d+/");
+        assertEquals(Boolean.TRUE, predicate.test("12/34"));
+        assertEquals(Boolean.FALSE, predicate.test("12/34x"));
+        assertEquals(Boolean.FALSE, predicate.test(null));
+
+        predicate = SimplePredicate.parse("text ==~ 'a.*'");
+        assertEquals(Boolean.TRUE, predicate.test("abc"));
+    }
+
+    @Test
+    public void testStringEscapes() {
+        assertEquals(Boolean.TRUE, SimplePredicate.parse("text == 'it\\'s\\t$1'").test("it's\t$1"));
+        assertEquals(Boolean.TRUE, SimplePredicate.parse("text == ''").test(""));
+    }
+
+    @Test
+    public void testNotSimple() {
+        assertNull(SimplePredicate.parse(null));
+        assertNull(SimplePredicate.parse("T.C == 'a' && T.D == 'b'"));
+        assertNull(SimplePredicate.parse("T.C == \"${x}\""));
+        assertNull(SimplePredicate.parse("T.C ==~ /$x/"));
+        assertNull(SimplePredicate.parse("T.C == 1L"));
+        assertNull(SimplePredicate.parse("T.C in [1, 2]"));
+        assertNull(SimplePredicate.parse("T.C.D == 'a'"));
+        assertNull(SimplePredicate.parse("T.C == '''a'''"));
+        assertNull(SimplePredicate.parse("T.C == 'a"));
+        assertNull(SimplePredicate.parse("T.C == x"));
+        assertNull(SimplePredicate.parse("null == T.C"));
+        assertNull(SimplePredicate.parse("T.C.trim() == 'a'"));
+        assertNull(SimplePredicate.parse("T[0] == 'a'"));
+        assertNull(SimplePredicate.parse("T.C == 'a';"));
+    }
+
+}
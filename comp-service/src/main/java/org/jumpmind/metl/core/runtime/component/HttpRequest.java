@@ -23,8 +23,18 @@ package org.jumpmind.metl.core.runtime.component;
 import static org.apache.commons.lang.StringUtils.isNotBlank;
 import static org.jumpmind.metl.core.runtime.FlowConstants.REQUEST_VALUE_PARAMETER;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.jumpmind.exception.IoException;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
+import org.jumpmind.metl.core.runtime.web.IHttpStreams;
 
 public class HttpRequest extends AbstractHttpRequestResponse implements IHasSecurity {
 
@@ -38,6 +48,12 @@ public class HttpRequest extends AbstractHttpRequestResponse implements IHasSecu
 
     public static final String SECURE_PASSWORD = "secure.password";
 
+    public static final String STREAMING = "streaming";
+
+    public static final String STREAMING_BINARY = "streaming.binary";
+
+    public static final String SIZE_PER_MESSAGE = "size.per.message";
+
     public HttpRequest() {
     }
 
@@ -59,10 +75,59 @@ public class HttpRequest extends AbstractHttpRequestResponse implements IHasSecu
     @Override
     public void handle(Message inputMessage, ISendMessageCallback callback,
             boolean unitOfWorkBoundaryReached) {
-        String requestPayload = getComponentContext().getFlowParameters()
-                .get(REQUEST_VALUE_PARAMETER);
-        if (isNotBlank(requestPayload)) {
-            callback.sendTextMessage(inputMessage.getHeader(), requestPayload);
+        IHttpStreams httpStreams = getComponentContext().getHttpStreams();
+        if (properties.is(STREAMING, false) && httpStreams != null) {
+            try {
+                InputStream requestBody = httpStreams.getRequestBody();
+                if (properties.is(STREAMING_BINARY, false)) {
+                    streamBinary(requestBody, inputMessage, callback);
+                } else {
+                    String encoding = httpStreams.getRequestCharacterEncoding();
+                    streamText(requestBody, isNotBlank(encoding) ? encoding : "UTF-8", inputMessage, callback);
+                }
+            } catch (IOException e) {
+                throw new IoException(e);
+            }
+        } else {
+            String requestPayload = getComponentContext().getFlowParameters()
+                    .get(REQUEST_VALUE_PARAMETER);
+            if (isNotBlank(requestPayload)) {
+                callback.sendTextMessage(inputMessage.getHeader(), requestPayload);
+            }
+        }
+    }
+
+    /*
+     * The request body is not closed because it belongs to the servlet
+     * container
+     */
+    protected void streamText(InputStream requestBody, String encoding, Message inputMessage, ISendMessageCallback callback)
+            throws IOException {
+        int rowsPerMessage = properties.getInt(ROWS_PER_MESSAGE, 1000);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(requestBody, encoding));
+        ArrayList<String> payload = new ArrayList<>();
+        String line = null;
+        while ((line = reader.readLine()) != null) {
+            payload.add(line);
+            getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber);
+            if (payload.size() >= rowsPerMessage) {
+                checkForInterruption();
+                callback.sendTextMessage(inputMessage.getHeader(), payload);
+                payload = new ArrayList<>();
+            }
+        }
+        if (payload.size() > 0) {
+            callback.sendTextMessage(inputMessage.getHeader(), payload);
+        }
+    }
+
+    protected void streamBinary(InputStream requestBody, Message inputMessage, ISendMessageCallback callback) throws IOException {
+        byte[] buffer = new byte[properties.getInt(SIZE_PER_MESSAGE, 65536)];
+        int length = 0;
+        while ((length = IOUtils.read(requestBody, buffer)) > 0) {
+            checkForInterruption();
+            getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber);
+            callback.sendBinaryMessage(inputMessage.getHeader(), Arrays.copyOf(buffer, length));
         }
     }
 
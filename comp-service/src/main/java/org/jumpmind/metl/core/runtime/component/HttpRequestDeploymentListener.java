@@ -104,6 +104,7 @@ public class HttpRequestDeploymentListener implements IComponentDeploymentListen
         mapping.setFlowDescription(agentProjectVersionFlowDeployment.getFlow().getNotes());
         mapping.setResponseDescription(responseDescription);
         mapping.setDeployment(agentProjectVersionFlowDeployment.getAgentDeployment());
+        mapping.setStreaming(properties.is(HttpRequest.STREAMING, false));
         return mapping;
     }
 
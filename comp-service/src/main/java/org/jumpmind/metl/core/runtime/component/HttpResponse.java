@@ -26,24 +26,37 @@ import static org.jumpmind.metl.core.runtime.component.ComponentSettingsConstant
 import static org.jumpmind.metl.core.runtime.component.ComponentSettingsConstants.FORMAT_JSON;
 import static org.jumpmind.metl.core.runtime.component.ComponentSettingsConstants.FORMAT_XML;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.jumpmind.exception.IoException;
+import org.jumpmind.metl.core.runtime.BinaryMessage;
 import org.jumpmind.metl.core.runtime.ContentMessage;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
+import org.jumpmind.metl.core.runtime.web.IHttpStreams;
 
 public class HttpResponse extends AbstractHttpRequestResponse implements IHasResults {
 
     public static final String TYPE = "16170152-eee5-11e5-9ce9-5e5517507c66";
+
+    public static final String STREAMING = "streaming";
     
     StringBuilder response;
 
     String detectedFormat;
 
+    IHttpStreams httpStreams;
+
     public HttpResponse() {
     }
 
     @Override
     public void start() {
         response = new StringBuilder();
+        if (properties.is(STREAMING, false)) {
+            httpStreams = getComponentContext().getHttpStreams();
+        }
     }
 
     @Override
@@ -52,15 +65,42 @@ public class HttpResponse extends AbstractHttpRequestResponse implements IHasRes
         if (properties.is("returns.data")) {
             if (inputMessage instanceof ContentMessage) {
                 ContentMessage<?> textMessage = (ContentMessage<?>) inputMessage;
-                response.append(textMessage.getTextFromPayload());
                 detectedFormat = (String)textMessage.getHeader().get(FORMAT);
+                if (httpStreams != null) {
+                    stream(textMessage);
+                } else {
+                    response.append(textMessage.getTextFromPayload());
+                }
+            }
+        }
+    }
+
+    /*
+     * Each message is flushed to the client as it arrives. The streams are
+     * shared by the threads of this step.
+     */
+    protected void stream(ContentMessage<?> message) {
+        synchronized (httpStreams) {
+            try {
+                OutputStream out = httpStreams.getResponseBody(getContentType());
+                if (message instanceof BinaryMessage) {
+                    byte[] payload = ((BinaryMessage) message).getPayload();
+                    if (payload != null) {
+                        out.write(payload);
+                    }
+                } else {
+                    out.write(message.getTextFromPayload().getBytes(httpStreams.getResponseCharacterEncoding()));
+                }
+                out.flush();
+            } catch (IOException e) {
+                throw new IoException(e);
             }
         }
     }
 
     @Override
     public Results getResults() {
-        return new Results(getResponse(), getContentType());
+        return new Results(httpStreams != null ? null : getResponse(), getContentType());
     }
 
     private String getContentType() {
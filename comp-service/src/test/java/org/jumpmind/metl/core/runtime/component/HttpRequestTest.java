@@ -0,0 +1,122 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.jumpmind.metl.core.model.Component;
+import org.jumpmind.metl.core.model.FlowStep;
+import org.jumpmind.metl.core.model.Setting;
+import org.jumpmind.metl.core.runtime.ControlMessage;
+import org.jumpmind.metl.core.runtime.ExecutionTrackerNoOp;
+import org.jumpmind.metl.core.runtime.web.IHttpStreams;
+import org.jumpmind.metl.core.utils.TestUtils;
+import org.junit.Test;
+
+public class HttpRequestTest {
+
+    @Test
+    public void testStreamTextSendsRowsPerMessage() throws Exception {
+        HttpRequest request = createRequest("line1\nline2\nline3\nline4\nline5\n".getBytes("UTF-8"),
+                new Setting(HttpRequest.STREAMING, "true"),
+                new Setting(HttpRequest.ROWS_PER_MESSAGE, "2"));
+        SendMessageCallback<ArrayList<String>> callback = new SendMessageCallback<ArrayList<String>>();
+        request.handle(new ControlMessage(), callback, true);
+
+        assertEquals(3, callback.getPayloadList().size());
+        assertEquals(Arrays.asList("line1", "line2"), callback.getPayloadList().get(0));
+        assertEquals(Arrays.asList("line3", "line4"), callback.getPayloadList().get(1));
+        assertEquals(Arrays.asList("line5"), callback.getPayloadList().get(2));
+        assertEquals(5, request.getComponentStatistics().getNumberEntitiesProcessed(1));
+    }
+
+    @Test
+    public void testStreamBinarySendsSizePerMessage() throws Exception {
+        HttpRequest request = createRequest(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 },
+                new Setting(HttpRequest.STREAMING, "true"),
+                new Setting(HttpRequest.STREAMING_BINARY, "true"),
+                new Setting(HttpRequest.SIZE_PER_MESSAGE, "4"));
+        SendMessageCallback<byte[]> callback = new SendMessageCallback<byte[]>();
+        request.handle(new ControlMessage(), callback, true);
+
+        assertEquals(3, callback.getPayloadList().size());
+        assertArrayEquals(new byte[] { 1, 2, 3, 4 }, callback.getPayloadList().get(0));
+        assertArrayEquals(new byte[] { 5, 6, 7, 8 }, callback.getPayloadList().get(1));
+        assertArrayEquals(new byte[] { 9, 10 }, callback.getPayloadList().get(2));
+    }
+
+    private HttpRequest createRequest(byte[] requestBody, Setting... settings) {
+        Component component = TestUtils.createComponent("HttpRequest", false, null, null, null, null, null, settings);
+        FlowStep flowStep = new FlowStep(component);
+        ComponentContext context = new ComponentContext(null, flowStep, null, new ExecutionTrackerNoOp(), null, null, null, null);
+        context.setComponentStatistics(new ComponentStatistics());
+        context.setHttpStreams(new HttpStreams(requestBody));
+        HttpRequest request = new HttpRequest();
+        request.create(null, context, 1);
+        request.start();
+        return request;
+    }
+
+    static class HttpStreams implements IHttpStreams {
+
+        byte[] requestBody;
+
+        ByteArrayOutputStream responseBody = new ByteArrayOutputStream();
+
+        String contentType;
+
+        HttpStreams(byte[] requestBody) {
+            this.requestBody = requestBody;
+        }
+
+        @Override
+        public InputStream getRequestBody() throws IOException {
+            return new ByteArrayInputStream(requestBody);
+        }
+
+        @Override
+        public String getRequestCharacterEncoding() {
+            return null;
+        }
+
+        @Override
+        public OutputStream getResponseBody(String contentType) throws IOException {
+            this.contentType = contentType;
+            return responseBody;
+        }
+
+        @Override
+        public String getResponseCharacterEncoding() {
+            return "UTF-8";
+        }
+
+    }
+
+}
@@ -0,0 +1,60 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.jumpmind.metl.core.model.Component;
+import org.jumpmind.metl.core.model.FlowStep;
+import org.jumpmind.metl.core.model.Setting;
+import org.jumpmind.metl.core.runtime.BinaryMessage;
+import org.jumpmind.metl.core.runtime.ExecutionTrackerNoOp;
+import org.jumpmind.metl.core.utils.TestUtils;
+import org.junit.Test;
+
+public class HttpResponseTest {
+
+    @Test
+    public void testStreamingWritesEachMessageToTheResponse() throws Exception {
+        Component component = TestUtils.createComponent(HttpResponse.TYPE, false, null, null, null, null, null,
+                new Setting(HttpResponse.STREAMING, "true"), new Setting("returns.data", "true"),
+                new Setting("content.type", "application/octet-stream"));
+        ComponentContext context = new ComponentContext(null, new FlowStep(component), null, new ExecutionTrackerNoOp(), null,
+                null, null, null);
+        HttpRequestTest.HttpStreams httpStreams = new HttpRequestTest.HttpStreams(new byte[0]);
+        context.setHttpStreams(httpStreams);
+        HttpResponse response = new HttpResponse();
+        response.create(null, context, 1);
+        response.start();
+
+        SendMessageCallback<byte[]> callback = new SendMessageCallback<byte[]>();
+        response.handle(new BinaryMessage("test", new byte[] { 1, 2, 3, 4 }), callback, false);
+        assertArrayEquals(new byte[] { 1, 2, 3, 4 }, httpStreams.responseBody.toByteArray());
+        response.handle(new BinaryMessage("test", new byte[] { 5, 6 }), callback, true);
+        assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 6 }, httpStreams.responseBody.toByteArray());
+
+        assertEquals("application/octet-stream", httpStreams.contentType);
+        assertNull(response.getResults().getValue());
+    }
+
+}
@@ -0,0 +1,336 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.util.SpillFile;
+
+/**
+ * Sorts an unbounded number of rows within a fixed memory budget. Rows are
+ * buffered until the buffer reaches its share of the budget, then the buffer
+ * is sorted and written to a temporary run file. Runs can be sorted and
+ * written on an executor while the next buffer fills. Reading the result
+ * merges the runs, first in intermediate passes when there are more runs than
+ * can be merged at once.
+ * <p>
+ * The sort key of a row is computed once when the row is added and once when
+ * it is read back from a run, not on every comparison.
+ * <p>
+ * When everything fits in one buffer nothing is written to disk. The sort is
+ * stable.
+ */
+public class ExternalSorter implements Closeable {
+
+    public static final int DEFAULT_MAX_MERGE_WIDTH = 64;
+
+    SortKeyComparator comparator;
+
+    Comparator<KeyedRow> keyedComparator;
+
+    long bufferSizeLimit;
+
+    ExecutorService executor;
+
+    Semaphore runPermits;
+
+    int maxMergeWidth = DEFAULT_MAX_MERGE_WIDTH;
+
+    List<KeyedRow> buffer = new ArrayList<>();
+
+    long bufferSize;
+
+    long rowCount;
+
+    List<Future<SpillFile<EntityData>>> runs = new ArrayList<>();
+
+    List<SpillFile<EntityData>> spillFiles = Collections.synchronizedList(new ArrayList<>());
+
+    List<SpillFile<EntityData>.Reader> readers = new ArrayList<>();
+
+    /**
+     * @param comparator
+     *            The sort order
+     * @param memoryBudgetBytes
+     *            The approximate number of bytes of rows to hold in memory
+     * @param executor
+     *            The executor to sort and write runs on, or null to do it on
+     *            the calling thread
+     * @param parallelism
+     *            The number of runs that may be sorted and written at the same
+     *            time on the executor
+     */
+    public ExternalSorter(SortKeyComparator comparator, long memoryBudgetBytes, ExecutorService executor, int parallelism) {
+        this.comparator = comparator;
+        this.keyedComparator = (r1, r2) -> comparator.compareKeys(r1.key, r2.key);
+        this.executor = executor;
+        if (executor != null && parallelism > 0) {
+            this.runPermits = new Semaphore(parallelism);
+            this.bufferSizeLimit = memoryBudgetBytes / (parallelism + 1);
+        } else {
+            this.bufferSizeLimit = memoryBudgetBytes;
+        }
+    }
+
+    public void setMaxMergeWidth(int maxMergeWidth) {
+        this.maxMergeWidth = Math.max(2, maxMergeWidth);
+    }
+
+    public void add(EntityData row) {
+        buffer.add(new KeyedRow(comparator.key(row), row));
+        bufferSize += row.estimateSize();
+        rowCount++;
+        if (bufferSize >= bufferSizeLimit) {
+            spill();
+        }
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    protected void spill() {
+        final List<KeyedRow> rows = buffer;
+        buffer = new ArrayList<>();
+        bufferSize = 0;
+        if (runPermits != null) {
+            try {
+                runPermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            try {
+                runs.add(executor.submit(() -> {
+                    try {
+                        return writeRun(rows);
+                    } finally {
+                        runPermits.release();
+                    }
+                }));
+            } catch (RuntimeException e) {
+                runPermits.release();
+                throw e;
+            }
+        } else {
+            runs.add(CompletableFuture.completedFuture(writeRun(rows)));
+        }
+    }
+
+    protected SpillFile<EntityData> writeRun(List<KeyedRow> rows) {
+        Collections.sort(rows, keyedComparator);
+        SpillFile<EntityData> file = new SpillFile<>("sort");
+        spillFiles.add(file);
+        for (KeyedRow row : rows) {
+            file.write(row.row);
+        }
+        file.finish();
+        return file;
+    }
+
+    protected SpillFile<EntityData> write(Iterator<EntityData> rows) {
+        SpillFile<EntityData> file = new SpillFile<>("sort");
+        spillFiles.add(file);
+        while (rows.hasNext()) {
+            file.write(rows.next());
+        }
+        file.finish();
+        return file;
+    }
+
+    /**
+     * @return All of the rows that were added, in order. The sorter should be
+     *         closed once the rows have been read.
+     */
+    public Iterator<EntityData> sorted() {
+        if (runs.isEmpty()) {
+            Collections.sort(buffer, keyedComparator);
+            final Iterator<KeyedRow> rows = buffer.iterator();
+            return new Iterator<EntityData>() {
+                @Override
+                public boolean hasNext() {
+                    return rows.hasNext();
+                }
+
+                @Override
+                public EntityData next() {
+                    return rows.next().row;
+                }
+            };
+        }
+
+        if (buffer.size() > 0) {
+            spill();
+        }
+
+        List<SpillFile<EntityData>> files = new ArrayList<>(runs.size());
+        try {
+            for (Future<SpillFile<EntityData>> run : runs) {
+                files.add(run.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+
+        while (files.size() > maxMergeWidth) {
+            List<SpillFile<EntityData>> merged = new ArrayList<>();
+            for (int i = 0; i < files.size(); i += maxMergeWidth) {
+                List<SpillFile<EntityData>> group = files.subList(i, Math.min(i + maxMergeWidth, files.size()));
+                if (group.size() == 1) {
+                    merged.add(group.get(0));
+                } else {
+                    merged.add(write(new MergeIterator(group)));
+                    for (SpillFile<EntityData> file : group) {
+                        spillFiles.remove(file);
+                        file.delete();
+                    }
+                }
+            }
+            files = merged;
+        }
+        return new MergeIterator(files);
+    }
+
+    @Override
+    public void close() {
+        for (Future<SpillFile<EntityData>> run : runs) {
+            try {
+                run.get();
+            } catch (Exception e) {
+            }
+        }
+        for (SpillFile<EntityData>.Reader reader : readers) {
+            reader.close();
+        }
+        synchronized (spillFiles) {
+            for (SpillFile<EntityData> file : spillFiles) {
+                file.delete();
+            }
+            spillFiles.clear();
+        }
+        readers.clear();
+        runs.clear();
+        buffer = new ArrayList<>();
+        bufferSize = 0;
+        rowCount = 0;
+    }
+
+    static class KeyedRow {
+
+        Object[] key;
+
+        EntityData row;
+
+        KeyedRow(Object[] key, EntityData row) {
+            this.key = key;
+            this.row = row;
+        }
+    }
+
+    class RunCursor {
+
+        int index;
+
+        SpillFile<EntityData>.Reader reader;
+
+        EntityData head;
+
+        Object[] headKey;
+
+        RunCursor(int index, SpillFile<EntityData>.Reader reader) {
+            this.index = index;
+            this.reader = reader;
+        }
+
+        boolean advance() {
+            if (reader.hasNext()) {
+                head = reader.next();
+                headKey = comparator.key(head);
+                return true;
+            } else {
+                reader.close();
+                head = null;
+                headKey = null;
+                return false;
+            }
+        }
+    }
+
+    class MergeIterator implements Iterator<EntityData> {
+
+        PriorityQueue<RunCursor> queue;
+
+        MergeIterator(List<SpillFile<EntityData>> files) {
+            queue = new PriorityQueue<>(Math.max(1, files.size()), (c1, c2) -> {
+                int result = comparator.compareKeys(c1.headKey, c2.headKey);
+                return result != 0 ? result : Integer.compare(c1.index, c2.index);
+            });
+            for (int i = 0; i < files.size(); i++) {
+                SpillFile<EntityData>.Reader reader = files.get(i).read();
+                readers.add(reader);
+                RunCursor cursor = new RunCursor(i, reader);
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public EntityData next() {
+            RunCursor cursor = queue.poll();
+            if (cursor == null) {
+                throw new NoSuchElementException();
+            }
+            EntityData next = cursor.head;
+            if (cursor.advance()) {
+                queue.add(cursor);
+            }
+            return next;
+        }
+    }
+
+}
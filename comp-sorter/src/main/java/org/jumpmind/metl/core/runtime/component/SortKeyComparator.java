@@ -0,0 +1,168 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import java.math.BigDecimal;
+import java.text.ParseException;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.lang.time.DateUtils;
+import org.jumpmind.metl.core.model.DataType;
+import org.jumpmind.metl.core.model.ModelAttrib;
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.util.FormatUtils;
+
+/**
+ * Compares rows on an ordered list of sort attributes. The attribute ids and
+ * the way each value is compared are resolved once when the comparator is
+ * created.
+ * <p>
+ * Each value is converted once per row into the form it is compared in, see
+ * {@link #key(EntityData)}. Numbers are compared as numbers, and so are the
+ * strings of numeric attributes that parse as numbers. The strings of
+ * timestamp attributes that parse as dates are compared as dates. Values sort
+ * nulls first, then numbers, then dates, then everything else, so an
+ * attribute that mixes values that do and do not convert still has one
+ * consistent order.
+ */
+public class SortKeyComparator implements Comparator<EntityData> {
+
+    String[] attributeIds;
+
+    DataType[] dataTypes;
+
+    public SortKeyComparator(List<ModelAttrib> attributes) {
+        attributeIds = new String[attributes.size()];
+        dataTypes = new DataType[attributes.size()];
+        for (int i = 0; i < attributeIds.length; i++) {
+            attributeIds[i] = attributes.get(i).getId();
+            dataTypes[i] = attributes.get(i).getDataType();
+        }
+    }
+
+    public SortKeyComparator(String attributeId) {
+        attributeIds = new String[] { attributeId };
+        dataTypes = new DataType[1];
+    }
+
+    @Override
+    public int compare(EntityData o1, EntityData o2) {
+        return compareKeys(key(o1), key(o2));
+    }
+
+    /**
+     * @return The values of the sort attributes of the row converted to the
+     *         form they are compared in, to compare with
+     *         {@link #compareKeys(Object[], Object[])}
+     */
+    public Object[] key(EntityData row) {
+        Object[] key = new Object[attributeIds.length];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = normalize(row.get(attributeIds[i]), dataTypes[i]);
+        }
+        return key;
+    }
+
+    public int compareKeys(Object[] key1, Object[] key2) {
+        for (int i = 0; i < key1.length; i++) {
+            int result = compareValues(key1[i], key2[i]);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    protected int compareValues(Object value1, Object value2) {
+        int result = Integer.compare(category(value1), category(value2));
+        if (result != 0 || value1 == null) {
+            return result;
+        } else if (value1 instanceof BigDecimal) {
+            return ((BigDecimal) value1).compareTo((BigDecimal) value2);
+        } else if (value1 instanceof Date) {
+            return Long.compare(((Date) value1).getTime(), ((Date) value2).getTime());
+        } else if (!value1.getClass().equals(value2.getClass())) {
+            return value1.getClass().getName().compareTo(value2.getClass().getName());
+        } else if (value1 instanceof Comparable) {
+            return ((Comparable) value1).compareTo(value2);
+        } else {
+            return value1.toString().compareTo(value2.toString());
+        }
+    }
+
+    protected int category(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof BigDecimal) {
+            return 1;
+        } else if (value instanceof Date) {
+            return 2;
+        } else {
+            return 3;
+        }
+    }
+
+    protected Object normalize(Object value, DataType dataType) {
+        if (value == null || value instanceof BigDecimal || value instanceof Date) {
+            return value;
+        } else if (value instanceof Number) {
+            return toNumber((Number) value);
+        } else if (value instanceof CharSequence) {
+            String text = value.toString();
+            if (dataType != null && dataType.isNumeric()) {
+                try {
+                    return new BigDecimal(text.trim());
+                } catch (NumberFormatException e) {
+                    return text;
+                }
+            } else if (dataType != null && dataType.isTimestamp()) {
+                try {
+                    return DateUtils.parseDate(text.trim(), FormatUtils.TIMESTAMP_PATTERNS);
+                } catch (ParseException e) {
+                    return text;
+                }
+            } else {
+                return text;
+            }
+        } else {
+            return value;
+        }
+    }
+
+    protected Object toNumber(Number value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return BigDecimal.valueOf(value.longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            double number = value.doubleValue();
+            return Double.isNaN(number) || Double.isInfinite(number) ? value : BigDecimal.valueOf(number);
+        } else {
+            try {
+                return new BigDecimal(value.toString());
+            } catch (NumberFormatException e) {
+                return value;
+            }
+        }
+    }
+
+}
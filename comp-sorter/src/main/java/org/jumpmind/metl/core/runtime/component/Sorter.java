@@ -20,38 +20,27 @@
  */
 package org.jumpmind.metl.core.runtime.component;
 
-import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.ExecutorService;
 
-import org.apache.commons.lang.ObjectUtils;
-import org.h2.Driver;
+import org.jumpmind.metl.core.model.Component;
+import org.jumpmind.metl.core.model.ComponentAttribSetting;
 import org.jumpmind.metl.core.model.Model;
 import org.jumpmind.metl.core.model.ModelAttrib;
 import org.jumpmind.metl.core.model.ModelEntity;
-import org.jumpmind.metl.core.runtime.ControlMessage;
 import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityDataLayout;
 import org.jumpmind.metl.core.runtime.EntityDataMessage;
-import org.jumpmind.metl.core.runtime.LogLevel;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
+import org.jumpmind.metl.core.util.ThreadUtils;
 import org.jumpmind.properties.TypedProperties;
-import org.jumpmind.db.model.Column;
-import org.jumpmind.db.model.IIndex;
-import org.jumpmind.db.model.IndexColumn;
-import org.jumpmind.db.model.Table;
-import org.jumpmind.db.platform.IDatabasePlatform;
-import org.jumpmind.db.platform.JdbcDatabasePlatformFactory;
-import org.jumpmind.db.sql.SqlTemplateSettings;
-import org.jumpmind.db.util.ResettableBasicDataSource;
-import org.jumpmind.metl.core.model.Component;
-import org.jumpmind.metl.core.model.ComponentAttribSetting;
-import org.jumpmind.metl.core.model.DataType;
 
 public class Sorter extends AbstractComponentRuntime {
 
@@ -63,30 +52,42 @@ public class Sorter extends AbstractComponentRuntime {
 
     public final static String ATTRIBUTE_SORTER_ENABLED = "sort.enabled";
 
-    int rowsPerMessage;
+    public final static String SORT_MEMORY_BUDGET_MB = "sort.memory.budget.mb";
 
-    IDatabasePlatform databasePlatform;
+    public final static String SORT_PARALLELISM = "sort.parallelism";
+
+    int rowsPerMessage;
 
-    RdbmsWriter databaseWriter;
-    
     String sortAttributeId;
 
+    ModelAttrib sortModelAttribute;
+
+    SortKeyComparator entityComparator;
+
     ArrayList<ComponentAttribSetting> sortKeyAttributeIdList = new ArrayList<>();
     
-    List<EntityData> sortedRecords = new ArrayList<EntityData>();
-    
     List<ModelEntity> entities;
 
-    String databaseName;
-
-    Throwable error;
-    
     boolean entitySort = true;
+
+    long memoryBudgetBytes;
+
+    int parallelism;
+
+    ExecutorService runExecutor;
+
+    Map<ModelEntity, SortKeyComparator> comparatorsByEntity = new LinkedHashMap<>();
+
+    Map<ModelEntity, EntityDataLayout> layoutsByEntity = new LinkedHashMap<>();
+
+    Map<ModelEntity, ExternalSorter> sorters = new LinkedHashMap<>();
     
     @Override
     public void start() {
         TypedProperties properties = getTypedProperties();
         rowsPerMessage = properties.getInt(ROWS_PER_MESSAGE);
+        memoryBudgetBytes = properties.getLong(SORT_MEMORY_BUDGET_MB, 256) * 1024 * 1024;
+        parallelism = properties.getInt(SORT_PARALLELISM, 2);
         String sortAttribute = properties.get(SORT_ATTRIBUTE);
         Model inputModel = this.getComponent().getInputModel();
         Component component = context.getFlowStep().getComponent();
@@ -114,8 +115,9 @@ public class Sorter extends AbstractComponentRuntime {
 	            throw new IllegalStateException(
 	                    "The sort attribute must be specified as 'entity.attribute'");
 	        }
-	        sortAttributeId = inputModel.getAttributeByName(joinAttributeElements[0],
-	                joinAttributeElements[1]).getId();
+	        sortModelAttribute = inputModel.getAttributeByName(joinAttributeElements[0],
+	                joinAttributeElements[1]);
+	        sortAttributeId = sortModelAttribute.getId();
 	        ComponentAttribSetting attributeComponent = new ComponentAttribSetting(sortAttributeId, Sorter.SORTER_ATTRIBUTE_ORDINAL, "1");
 	    	sortKeyAttributeIdList.add(attributeComponent);
 	    }
@@ -131,7 +133,48 @@ public class Sorter extends AbstractComponentRuntime {
         	throw new IllegalStateException(
         			"Sort attribute must be a valid 'entity.attribute' in the input model. "
         			+ "Or at least one attribute must be specified to sort on in the component editor.");
-        }        
+        }
+
+        if (entitySort) {
+            entityComparator = new SortKeyComparator(Collections.singletonList(sortModelAttribute));
+        } else {
+            compileComparators();
+        }
+
+        if (parallelism > 1) {
+            runExecutor = ThreadUtils.createFixedThreadPool(
+                    "sorter-" + context.getFlowStep().getId() + "-" + threadNumber, parallelism, parallelism);
+        }
+    }
+
+    /**
+     * Resolve the sort attributes of each entity once, in sort order, so that
+     * rows are compared without looking up settings
+     */
+    protected void compileComparators() {
+        for (ModelEntity entity : entities) {
+            List<ModelAttrib> sortAttributes = new ArrayList<>();
+            for (ComponentAttribSetting componentAttribute : sortKeyAttributeIdList) {
+                for (ModelAttrib attribute : entity.getModelAttributes()) {
+                    if (componentAttribute.getAttributeId().equals(attribute.getId())) {
+                        sortAttributes.add(attribute);
+                        break;
+                    }
+                }
+            }
+            comparatorsByEntity.put(entity, new SortKeyComparator(sortAttributes));
+            layoutsByEntity.put(entity, new EntityDataLayout(true));
+        }
+    }
+
+    @Override
+    public void stop() {
+        closeSorters();
+        if (runExecutor != null) {
+            runExecutor.shutdownNow();
+            runExecutor = null;
+        }
+        super.stop();
     }
     
     @Override
@@ -142,226 +185,89 @@ public class Sorter extends AbstractComponentRuntime {
     @Override
     public void handle(Message inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
     	if (inputMessage instanceof EntityDataMessage) {
-            if (!entitySort) {
-	            createDatabase();
-	            loadIntoDatabase(inputMessage);
-            }
-            
             ArrayList<EntityData> payload = ((EntityDataMessage)inputMessage).getPayload();
             for (int i = 0; i < payload.size(); i++) {
                 getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber);
                 
+                EntityData record = payload.get(i);
                 if (entitySort) {
-                	EntityData record = payload.get(i);
-                	sortedRecords.add(record);
+                    getSorter(null, entityComparator).add(record);
+                } else {
+                    for (ModelEntity entity : entities) {
+                        EntityData entityRecord = project(record, entity);
+                        if (entityRecord != null) {
+                            getSorter(entity, comparatorsByEntity.get(entity)).add(entityRecord);
+                        }
+                    }
                 }
             }
     	}
 
-    	if (unitOfWorkBoundaryReached && error == null) {
-    		if (entitySort) {
-    			ArrayList<EntityData> dataToSend = new ArrayList<EntityData>();
-    			
-    			sort();
-
-    			for (EntityData record : sortedRecords) {
-    				if (dataToSend.size() >= rowsPerMessage) {
-    					callback.sendEntityDataMessage(null, dataToSend);
-    					dataToSend = new ArrayList<EntityData>();
-    				}
-    				dataToSend.add(record);
-    			}
-
-    			sortedRecords.clear();
-
-    			if (dataToSend != null && dataToSend.size() > 0) {
-    				callback.sendEntityDataMessage(null, dataToSend);
-    			}
-    		} else {
-    			sortData(callback);
-    		}
+    	if (unitOfWorkBoundaryReached) {
+    	    try {
+    	        for (Map.Entry<ModelEntity, ExternalSorter> entry : sorters.entrySet()) {
+    	            ExternalSorter sorter = entry.getValue();
+    	            sendSorted(sorter, callback);
+    	            if (entry.getKey() != null) {
+    	                info("Sorted %d records for %s using %d run(s)", sorter.getRowCount(), entry.getKey().getName(),
+    	                        Math.max(1, sorter.getRunCount()));
+    	            }
+    	        }
+    	    } finally {
+    	        closeSorters();
+    	    }
     	}
     }
 
-    private void sort() {
-    	Collections.sort(sortedRecords, new Comparator<EntityData>() {
-    		@Override
-    		public int compare(EntityData o1, EntityData o2) {
-    			Object obj1 = o1.get(sortAttributeId);
-    			Object obj2 = o2.get(sortAttributeId);
-    			if ((obj1 instanceof Comparable || obj1 == null)
-    					&& (obj2 instanceof Comparable || obj2 == null)) {
-    				return ObjectUtils.compare((Comparable<?>) obj1, (Comparable<?>) obj2);
-    			} else {
-    				String str1 = obj1 != null ? obj1.toString() : null;
-    				String str2 = obj2 != null ? obj2.toString() : null;
-    				return ObjectUtils.compare(str1, str2);
-    			}
-    		}
-    	});
+    protected ExternalSorter getSorter(ModelEntity entity, SortKeyComparator comparator) {
+        ExternalSorter sorter = sorters.get(entity);
+        if (sorter == null) {
+            long entityBudget = entitySort ? memoryBudgetBytes : memoryBudgetBytes / Math.max(1, entities.size());
+            sorter = new ExternalSorter(comparator, entityBudget, runExecutor, parallelism);
+            sorters.put(entity, sorter);
+        }
+        return sorter;
+    }
+
+    /**
+     * @return The attributes of the record that belong to the entity, or null
+     *         if the record has none of them
+     */
+    protected EntityData project(EntityData record, ModelEntity entity) {
+        EntityData entityRecord = null;
+        for (ModelAttrib attribute : entity.getModelAttributes()) {
+            if (record.containsKey(attribute.getId())) {
+                if (entityRecord == null) {
+                    entityRecord = new EntityData(layoutsByEntity.get(entity));
+                    entityRecord.setChangeType(record.getChangeType());
+                }
+                entityRecord.put(attribute.getId(), record.get(attribute.getId()));
+            }
+        }
+        return entityRecord;
+    }
+
+    protected void sendSorted(ExternalSorter sorter, ISendMessageCallback callback) {
+        ArrayList<EntityData> dataToSend = new ArrayList<EntityData>();
+        Iterator<EntityData> sorted = sorter.sorted();
+        while (sorted.hasNext()) {
+            if (dataToSend.size() >= rowsPerMessage) {
+                callback.sendEntityDataMessage(null, dataToSend);
+                dataToSend = new ArrayList<EntityData>();
+            }
+            dataToSend.add(sorted.next());
+        }
+
+        if (dataToSend.size() > 0) {
+            callback.sendEntityDataMessage(null, dataToSend);
+        }
+    }
+
+    protected void closeSorters() {
+        for (ExternalSorter sorter : sorters.values()) {
+            sorter.close();
+        }
+        sorters.clear();
     }
 
-	private void sortData(ISendMessageCallback callback) {
-		Map<ModelEntity, String> sqls = new HashMap<>();
-		boolean addOrderBy = false;
-		for (ModelEntity entity : entities) {
-			StringBuilder sql = new StringBuilder("select ");
-			appendColumns(sql, entity);
-			sql.append(" from " + entity.getName() + "_1 ");
-			
-			// check to see if any one attribute of the entity is flagged to sort by before adding the 'order by' clause 
-			for (ComponentAttribSetting componentAttribute : sortKeyAttributeIdList) {
-				for (ModelAttrib attribute : entity.getModelAttributes()) {
-					if (componentAttribute.getAttributeId().equals(attribute.getId())) {
-						addOrderBy = true;
-						break;
-					}
-				}
-				if (addOrderBy) {
-					break;
-				}
-			}
-			
-			if (addOrderBy) {
-				sql.append(" order by ");
-				appendSortColumns(sql, entity);
-			}
-			
-			log(LogLevel.INFO, "Generated sort sql: %s", sql);
-			sqls.put(entity, sql.toString());
-			addOrderBy = false;
-		}
-		
-		RdbmsReader reader = new RdbmsReader();
-		reader.setDataSource(databasePlatform.getDataSource());
-		reader.setContext(context);
-		reader.setComponentDefinition(componentDefinition);
-		reader.setRowsPerMessage(rowsPerMessage);
-		reader.setThreadNumber(threadNumber);
-		
-		for (ModelEntity entity : entities) {
-			reader.setSql(sqls.get(entity));
-			reader.handle(new ControlMessage(this.context.getFlowStep().getId()), callback, false);
-			info("Read %d  records for %s", reader.getRowReadDuringHandle(), entity.getName());
-		}
-		
-		ResettableBasicDataSource ds = databasePlatform.getDataSource();
-		
-		ds.close();
-		
-		databasePlatform = null;
-		databaseName = null;
-		databaseWriter = null;
-	}
-
-	
-	protected void appendColumns(StringBuilder sql, ModelEntity entity) {
-		for (ModelAttrib attribute : entity.getModelAttributes()) {
-			sql.append(attribute.getName()).append(" /* ")
-				.append(entity.getName()).append(".").append(attribute.getName())
-				.append(" */").append(",");
-		}
-		sql.replace(sql.length() - 1, sql.length(), "");
-	}
-
-
-	protected void appendSortColumns(StringBuilder sql, ModelEntity entity) {
-		for (ComponentAttribSetting componentAttribute : sortKeyAttributeIdList) {
-			for (ModelAttrib attribute : entity.getModelAttributes()) {
-				if (componentAttribute.getAttributeId().equals(attribute.getId())) {
-					sql.append(attribute.getName()).append(",");
-					break;
-				}
-			}
-		}
-		sql.replace(sql.length() - 1, sql.length(), "");
-	}
-
-	protected void loadIntoDatabase(Message message) {
-		String tableSuffix = "_1";
-		
-		if (databaseWriter == null) {
-			databaseWriter = new RdbmsWriter();
-			databaseWriter.setDatabasePlatform(databasePlatform);
-			databaseWriter.setComponentDefinition(componentDefinition);
-			databaseWriter.setReplaceRows(true);
-			databaseWriter.setContext(context);
-			databaseWriter.setThreadNumber(threadNumber);
-		}
-		
-		if (tableSuffix != null) {
-			databaseWriter.setTableSuffix(tableSuffix);
-			try {
-				databaseWriter.handle(message, null, false);
-			} finally {
-				error = databaseWriter.getError();
-			}
-		}
-	}
-
-	protected void createDatabase() {
-		if (databasePlatform == null) {
-			ResettableBasicDataSource ds = new ResettableBasicDataSource();
-			ds.setDriverClassName(Driver.class.getName());
-			ds.setMaxActive(1);
-			ds.setInitialSize(1);
-			ds.setMinIdle(1);
-			ds.setMaxIdle(1);
-			databaseName = UUID.randomUUID().toString();
-			ds.setUrl("jdbc:h2:mem:" + databaseName);
-			databasePlatform = JdbcDatabasePlatformFactory.createNewPlatformInstance(ds,
-					new SqlTemplateSettings(), true, false);
-			
-			Model inputModel = context.getFlowStep().getComponent().getInputModel();
-			List<ModelEntity> entities = inputModel.getModelEntities();
-			for (ModelEntity entity : entities) {
-				Table table = new Table();
-				table.setName(entity.getName() + "_1");
-				List<ModelAttrib> attributes = entity.getModelAttributes();
-				for (ModelAttrib attribute : attributes) {
-					DataType dataType = attribute.getDataType();
-					Column column = new Column(attribute.getName());
-					if (dataType.isNumeric()) {
-						column.setTypeCode(Types.DECIMAL);
-					} else if (dataType.isBoolean()) {
-						column.setTypeCode(Types.BOOLEAN);
-					} else if (dataType.isTimestamp()) {
-						column.setTypeCode(Types.TIMESTAMP);
-					} else if (dataType.isBinary()) {
-						column.setTypeCode(Types.BLOB);
-					} else {
-						column.setTypeCode(Types.LONGVARCHAR);
-					}
-					
-					column.setPrimaryKey(attribute.isPk());
-					table.addColumn(column);
-				}
-				
-				alterCaseToMatchLogicalCase(table);
-				databasePlatform.createTables(false, false, table);
-			}
-			
-			log(LogLevel.INFO, "Creating databasePlatform with the following url: %s", ds.getUrl());
-		}
-	}
-
-
-	private void alterCaseToMatchLogicalCase(Table table) {
-		table.setName(table.getName().toUpperCase());
-		
-		Column[] columns = table.getColumns();
-		for (Column column : columns) {
-			column.setName(column.getName().toUpperCase());
-		}
-		
-		IIndex[] indexes = table.getIndices();
-		for (IIndex index : indexes) {
-			index.setName(index.getName().toUpperCase());
-			
-			IndexColumn[] indexColumns = index.getColumns();
-			for (IndexColumn indexColumn : indexColumns) {
-				indexColumn.setName(indexColumn.getName().toUpperCase());
-			}
-		}
-	}
 }
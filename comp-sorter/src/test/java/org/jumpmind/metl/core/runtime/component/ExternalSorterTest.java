@@ -0,0 +1,207 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jumpmind.metl.core.model.DataType;
+import org.jumpmind.metl.core.model.ModelAttrib;
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.junit.Test;
+
+public class ExternalSorterTest {
+
+    @Test
+    public void testSortInMemory() {
+        ExternalSorter sorter = new ExternalSorter(new SortKeyComparator("key"), Long.MAX_VALUE, null, 0);
+        for (int i = 0; i < 100; i++) {
+            sorter.add(row(100 - i, i));
+        }
+        assertSorted(sorter, 100);
+        assertEquals(0, sorter.getRunCount());
+        sorter.close();
+    }
+
+    @Test
+    public void testSortSpillsRunsAndMerges() {
+        ExternalSorter sorter = new ExternalSorter(new SortKeyComparator("key"), 10 * 1024, null, 0);
+        sorter.setMaxMergeWidth(4);
+        addRandom(sorter, 5000);
+        assertTrue(sorter.getRunCount() > 4);
+        assertSorted(sorter, 5000);
+        sorter.close();
+    }
+
+    @Test
+    public void testSortWritesRunsInParallel() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            ExternalSorter sorter = new ExternalSorter(new SortKeyComparator("key"), 10 * 1024, executor, 2);
+            addRandom(sorter, 5000);
+            assertTrue(sorter.getRunCount() > 1);
+            assertSorted(sorter, 5000);
+            sorter.close();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSortIsStable() {
+        ExternalSorter sorter = new ExternalSorter(new SortKeyComparator("key"), 2 * 1024, null, 0);
+        for (int i = 0; i < 1000; i++) {
+            sorter.add(row(i % 3, i));
+        }
+        int lastKey = -1;
+        int lastSequence = -1;
+        Iterator<EntityData> sorted = sorter.sorted();
+        while (sorted.hasNext()) {
+            EntityData data = sorted.next();
+            int key = (Integer) data.get("key");
+            int sequence = (Integer) data.get("sequence");
+            if (key == lastKey) {
+                assertTrue(sequence > lastSequence);
+            }
+            lastKey = key;
+            lastSequence = sequence;
+        }
+        sorter.close();
+    }
+
+    @Test
+    public void testNumericAttributesCompareAsNumbers() {
+        ModelAttrib first = new ModelAttrib();
+        first.setId("key");
+        first.setDataType(DataType.INTEGER);
+        ModelAttrib second = new ModelAttrib();
+        second.setId("sequence");
+        second.setDataType(DataType.VARCHAR);
+        SortKeyComparator comparator = new SortKeyComparator(Arrays.asList(first, second));
+
+        List<EntityData> rows = new ArrayList<>();
+        rows.add(row("10", "b"));
+        rows.add(row("9", "b"));
+        rows.add(row(null, "c"));
+        rows.add(row("10", "a"));
+        rows.sort(comparator);
+        assertEquals(null, rows.get(0).get("key"));
+        assertEquals("9", rows.get(1).get("key"));
+        assertEquals("a", rows.get(2).get("sequence"));
+        assertEquals("b", rows.get(3).get("sequence"));
+    }
+
+    @Test
+    public void testMixedNumericValuesHaveOneOrder() {
+        ModelAttrib key = new ModelAttrib();
+        key.setId("key");
+        key.setDataType(DataType.INTEGER);
+        SortKeyComparator comparator = new SortKeyComparator(Arrays.asList(key));
+
+        Object[] values = { "10", "9", "abc", null, "x", 5, "ab", 7L };
+        List<EntityData> rows = new ArrayList<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            rows.add(row(values[random.nextInt(values.length)], i));
+        }
+        rows.sort(comparator);
+
+        List<Object> order = new ArrayList<>();
+        for (EntityData row : rows) {
+            Object value = row.get("key");
+            if (order.isEmpty() || comparator.compare(row(order.get(order.size() - 1), 0), row) != 0) {
+                order.add(value);
+            }
+        }
+        assertEquals(Arrays.asList(null, 5, 7L, "9", "10", "ab", "abc", "x"), order);
+    }
+
+    @Test
+    public void testTimestampStringsCompareAsDates() throws Exception {
+        ModelAttrib key = new ModelAttrib();
+        key.setId("key");
+        key.setDataType(DataType.TIMESTAMP);
+        SortKeyComparator comparator = new SortKeyComparator(Arrays.asList(key));
+        Date date = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse("2017-06-15 12:00:00");
+
+        assertTrue(comparator.compare(row("2017-06-15 11:59:59", 0), row(date, 0)) < 0);
+        assertTrue(comparator.compare(row("2017-06-15 12:00:01", 0), row(date, 0)) > 0);
+        assertEquals(0, comparator.compare(row("2017-06-15 12:00:00", 0), row(date, 0)));
+        assertTrue(comparator.compare(row("2017-06-16 00:00:00", 0), row("not a date", 0)) < 0);
+    }
+
+    @Test
+    public void testSortKeysAreComputedOncePerRow() {
+        final AtomicInteger keys = new AtomicInteger();
+        SortKeyComparator comparator = new SortKeyComparator("key") {
+            @Override
+            public Object[] key(EntityData row) {
+                keys.incrementAndGet();
+                return super.key(row);
+            }
+        };
+        ExternalSorter sorter = new ExternalSorter(comparator, 10 * 1024, null, 0);
+        sorter.setMaxMergeWidth(1000);
+        addRandom(sorter, 5000);
+        assertTrue(sorter.getRunCount() > 1);
+        assertSorted(sorter, 5000);
+        assertEquals(10000, keys.get());
+        sorter.close();
+    }
+
+    protected void addRandom(ExternalSorter sorter, int count) {
+        Random random = new Random(1);
+        for (int i = 0; i < count; i++) {
+            sorter.add(row(random.nextInt(1000), i));
+        }
+    }
+
+    protected void assertSorted(ExternalSorter sorter, int expectedCount) {
+        int count = 0;
+        int last = Integer.MIN_VALUE;
+        Iterator<EntityData> sorted = sorter.sorted();
+        while (sorted.hasNext()) {
+            int key = (Integer) sorted.next().get("key");
+            assertTrue(key >= last);
+            last = key;
+            count++;
+        }
+        assertEquals(expectedCount, count);
+    }
+
+    protected EntityData row(Object key, Object sequence) {
+        EntityData data = new EntityData();
+        data.put("key", key);
+        data.put("sequence", sequence);
+        return data;
+    }
+}
@@ -40,6 +40,7 @@ import org.jumpmind.metl.core.model.ModelAttrib;
 import org.jumpmind.metl.core.model.ModelEntity;
 import org.jumpmind.metl.core.runtime.ControlMessage;
 import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityDataLayout;
 import org.jumpmind.metl.core.runtime.EntityDataMessage;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
@@ -57,6 +58,8 @@ public class Transformer extends AbstractComponentRuntime {
     GroovyScriptEngineImpl scriptEngine;
     
     Map<String, ModelAttributeScriptHelper> helpers = new HashMap<>();
+
+    EntityDataLayout entityDataLayout = new EntityDataLayout(true);
        
     long totalTime = 0;
     long totalCalls = 0;
@@ -130,7 +133,7 @@ public class Transformer extends AbstractComponentRuntime {
     protected EntityData processEntity(EntityData inData, Message inputMessage, Model inputModel,
     		boolean isRoot) {
 
-    		EntityData outData = new EntityData();
+    		EntityData outData = new EntityData(entityDataLayout);
 		outData.setChangeType(inData.getChangeType());
 		Set<String> attributeIds = new HashSet<String>();
 		attributeIds.addAll(inData.keySet());					
@@ -237,7 +237,7 @@ public class EditTransformerPanel extends AbstractComponentEditPanel {
         }
 
         for (ComponentAttribSetting componentAttributeSetting : toRemove) {
-            componentAttributes.remove(componentAttributeSetting);
+            component.removeAttributeSetting(componentAttributeSetting);
             context.getConfigurationService().delete(componentAttributeSetting);
         }
     }
@@ -0,0 +1,82 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import java.io.Writer;
+import java.util.ArrayList;
+
+import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
+
+/**
+ * Sends text a number of lines at a time as it is written, so that large
+ * documents never have to be held in memory as a single string.
+ */
+class LineMessageWriter extends Writer {
+
+    ISendMessageCallback callback;
+
+    int linesPerMessage;
+
+    StringBuilder line = new StringBuilder();
+
+    ArrayList<String> lines = new ArrayList<String>();
+
+    LineMessageWriter(ISendMessageCallback callback, int linesPerMessage) {
+        this.callback = callback;
+        this.linesPerMessage = linesPerMessage;
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            char c = chars[i];
+            if (c == '\n') {
+                lines.add(line.toString());
+                line.setLength(0);
+                if (lines.size() >= linesPerMessage) {
+                    send();
+                }
+            } else if (c != '\r') {
+                line.append(c);
+            }
+        }
+    }
+
+    protected void send() {
+        callback.sendTextMessage(null, lines);
+        lines = new ArrayList<String>();
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+        if (line.length() > 0) {
+            lines.add(line.toString());
+            line.setLength(0);
+        }
+        if (lines.size() > 0) {
+            send();
+        }
+    }
+}
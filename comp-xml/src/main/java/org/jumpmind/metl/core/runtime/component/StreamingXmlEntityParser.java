@@ -0,0 +1,333 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityDataLayout;
+import org.jumpmind.metl.core.runtime.MisconfiguredException;
+
+/**
+ * Turns an XML stream into {@link EntityData} in one pass.
+ * <p>
+ * Only the names of the open elements, the entities that are open and the
+ * text of the elements that are being captured are kept, so memory is bounded
+ * by the size of one record no matter how big the document is.
+ * <p>
+ * An entity path is evaluated from the root element, like the XPath XML
+ * parser does. An attribute path is evaluated from its entity element unless
+ * it is absolute. An absolute attribute path that points outside of its
+ * entity, at an ancestor's attribute or at a preceding sibling's text, is
+ * remembered until the element that holds it goes out of scope and is copied
+ * into every entity that is finished while it is in scope.
+ */
+class StreamingXmlEntityParser {
+
+    interface EntityHandler {
+        void entityParsed(String elementName, EntityData data) throws Exception;
+    }
+
+    boolean ignoreNamespace;
+
+    List<EntityPath> entityPaths = new ArrayList<>();
+
+    StreamingXmlEntityParser(boolean ignoreNamespace) {
+        this.ignoreNamespace = ignoreNamespace;
+    }
+
+    EntityPath addEntity(String entityXPath) {
+        StreamingXmlPath path = StreamingXmlPath.compile(entityXPath);
+        if (path.isAttribute() || path.text) {
+            throw new MisconfiguredException("The entity XPath '%s' must select elements", entityXPath);
+        }
+        EntityPath entityPath = new EntityPath(entityXPath, path);
+        entityPaths.add(entityPath);
+        return entityPath;
+    }
+
+    void addAttribute(EntityPath entityPath, String attributeId, String attributeXPath) {
+        String xpath = attributeXPath.trim();
+        if (xpath.startsWith(entityPath.xpath + "/") && xpath.length() > entityPath.xpath.length() + 1) {
+            xpath = xpath.substring(entityPath.xpath.length() + 1);
+        }
+        entityPath.attributeIds.add(attributeId);
+        entityPath.attributePaths.add(StreamingXmlPath.compile(xpath));
+    }
+
+    int getEntityCount() {
+        return entityPaths.size();
+    }
+
+    void parse(XMLStreamReader reader, EntityHandler handler) throws Exception {
+        for (EntityPath entityPath : entityPaths) {
+            entityPath.reset();
+        }
+        List<String> elements = new ArrayList<>();
+        List<Record> records = new ArrayList<>();
+        List<Capture> captures = new ArrayList<>();
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    elements.add(name(reader.getName()));
+                    startElement(reader, elements, records, captures);
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    for (Capture capture : captures) {
+                        if (capture.depth == elements.size()) {
+                            capture.text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    endElement(elements, records, captures, handler);
+                    elements.remove(elements.size() - 1);
+                    break;
+            }
+        }
+    }
+
+    protected void startElement(XMLStreamReader reader, List<String> elements, List<Record> records, List<Capture> captures) {
+        int depth = elements.size();
+        for (EntityPath entityPath : entityPaths) {
+            StreamingXmlPath path = entityPath.path;
+            if (path.absolute ? path.matches(elements, 0, depth) : depth > 1 && path.matches(elements, 1, depth)) {
+                records.add(new Record(entityPath, depth, elements.get(depth - 1)));
+            }
+        }
+
+        for (EntityPath entityPath : entityPaths) {
+            for (int i = 0; i < entityPath.attributePaths.size(); i++) {
+                StreamingXmlPath path = entityPath.attributePaths.get(i);
+                if (path.absolute) {
+                    if (path.matches(elements, 0, depth)) {
+                        Record record = innermost(records, entityPath);
+                        if (record != null) {
+                            capture(reader, record.data, entityPath.attributeIds.get(i), path, depth, captures);
+                        } else {
+                            capture(reader, entityPath, i, path, depth, captures);
+                        }
+                    }
+                } else {
+                    for (Record record : records) {
+                        if (record.entityPath == entityPath && path.matches(elements, record.depth, depth)) {
+                            capture(reader, record.data, entityPath.attributeIds.get(i), path, depth, captures);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    protected void capture(XMLStreamReader reader, EntityData data, String attributeId, StreamingXmlPath path, int depth,
+            List<Capture> captures) {
+        if (path.isAttribute()) {
+            String value = attributeValue(reader, path.attributeName);
+            if (value != null) {
+                data.put(attributeId, value);
+            }
+        } else {
+            Capture capture = new Capture(depth, path.text);
+            capture.data = data;
+            capture.attributeId = attributeId;
+            captures.add(capture);
+        }
+    }
+
+    protected void capture(XMLStreamReader reader, EntityPath entityPath, int attributeIndex, StreamingXmlPath path, int depth,
+            List<Capture> captures) {
+        if (path.isAttribute()) {
+            String value = attributeValue(reader, path.attributeName);
+            if (value != null) {
+                entityPath.setContextValue(attributeIndex, value, depth);
+            }
+        } else {
+            Capture capture = new Capture(depth, path.text);
+            capture.entityPath = entityPath;
+            capture.attributeIndex = attributeIndex;
+            captures.add(capture);
+        }
+    }
+
+    protected void endElement(List<String> elements, List<Record> records, List<Capture> captures, EntityHandler handler)
+            throws Exception {
+        int depth = elements.size();
+        Iterator<Capture> i = captures.iterator();
+        while (i.hasNext()) {
+            Capture capture = i.next();
+            if (capture.depth == depth) {
+                String value = capture.rawText ? capture.text.toString() : capture.text.toString().trim();
+                if (capture.data != null) {
+                    capture.data.put(capture.attributeId, value);
+                } else {
+                    // the text of an element stays in scope for its siblings
+                    capture.entityPath.setContextValue(capture.attributeIndex, value, depth - 1);
+                }
+                i.remove();
+            }
+        }
+
+        for (int j = records.size() - 1; j >= 0; j--) {
+            Record record = records.get(j);
+            if (record.depth == depth) {
+                records.remove(j);
+                record.entityPath.applyContextValues(record.data);
+                handler.entityParsed(record.elementName, record.data);
+            }
+        }
+
+        for (EntityPath entityPath : entityPaths) {
+            entityPath.clearContextValues(depth);
+        }
+    }
+
+    protected Record innermost(List<Record> records, EntityPath entityPath) {
+        for (int i = records.size() - 1; i >= 0; i--) {
+            if (records.get(i).entityPath == entityPath) {
+                return records.get(i);
+            }
+        }
+        return null;
+    }
+
+    protected String attributeValue(XMLStreamReader reader, String attributeName) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (attributeName.equals(name(reader.getAttributeName(i)))) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    protected String name(QName name) {
+        String prefix = name.getPrefix();
+        if (ignoreNamespace || prefix == null || prefix.length() == 0) {
+            return name.getLocalPart();
+        } else {
+            return prefix + ":" + name.getLocalPart();
+        }
+    }
+
+    static class EntityPath {
+
+        String xpath;
+
+        StreamingXmlPath path;
+
+        List<String> attributeIds = new ArrayList<>();
+
+        List<StreamingXmlPath> attributePaths = new ArrayList<>();
+
+        String[] contextValues;
+
+        int[] contextDepths;
+
+        /*
+         * Every record of an entity has the same attributes, so they all
+         * share one layout
+         */
+        EntityDataLayout layout = new EntityDataLayout(true);
+
+        EntityPath(String xpath, StreamingXmlPath path) {
+            this.xpath = xpath.trim();
+            this.path = path;
+        }
+
+        void reset() {
+            contextValues = new String[attributePaths.size()];
+            contextDepths = new int[attributePaths.size()];
+        }
+
+        void setContextValue(int attributeIndex, String value, int depth) {
+            contextValues[attributeIndex] = value;
+            contextDepths[attributeIndex] = depth;
+        }
+
+        void clearContextValues(int depth) {
+            for (int i = 0; i < contextValues.length; i++) {
+                if (contextDepths[i] >= depth) {
+                    contextValues[i] = null;
+                }
+            }
+        }
+
+        void applyContextValues(EntityData data) {
+            for (int i = 0; i < contextValues.length; i++) {
+                if (contextValues[i] != null && !data.containsKey(attributeIds.get(i))) {
+                    data.put(attributeIds.get(i), contextValues[i]);
+                }
+            }
+        }
+    }
+
+    static class Record {
+
+        EntityPath entityPath;
+
+        /*
+         * The number of elements that are open when the entity element is
+         * the innermost one
+         */
+        int depth;
+
+        String elementName;
+
+        EntityData data;
+
+        Record(EntityPath entityPath, int depth, String elementName) {
+            this.entityPath = entityPath;
+            this.depth = depth;
+            this.elementName = elementName;
+            this.data = new EntityData(entityPath.layout);
+        }
+    }
+
+    static class Capture {
+
+        int depth;
+
+        boolean rawText;
+
+        StringBuilder text = new StringBuilder();
+
+        EntityData data;
+
+        String attributeId;
+
+        EntityPath entityPath;
+
+        int attributeIndex;
+
+        Capture(int depth, boolean rawText) {
+            this.depth = depth;
+            this.rawText = rawText;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.jumpmind.metl.core.runtime.MisconfiguredException;
+
+/**
+ * The subset of XPath that can be evaluated against the element names that are
+ * open while streaming a document: location paths made of element names or
+ * <code>*</code>, separated by <code>/</code> or <code>//</code>, that may
+ * end with an <code>@attribute</code> or <code>text()</code> step. Predicates
+ * and axes are not supported.
+ */
+final class StreamingXmlPath {
+
+    final String expression;
+
+    final boolean absolute;
+
+    final String[] steps;
+
+    /*
+     * Whether any number of elements may come before the step
+     */
+    final boolean[] descendant;
+
+    final String attributeName;
+
+    final boolean text;
+
+    private StreamingXmlPath(String expression, boolean absolute, String[] steps, boolean[] descendant, String attributeName,
+            boolean text) {
+        this.expression = expression;
+        this.absolute = absolute;
+        this.steps = steps;
+        this.descendant = descendant;
+        this.attributeName = attributeName;
+        this.text = text;
+    }
+
+    static StreamingXmlPath compile(String expression) {
+        String path = StringUtils.trimToEmpty(expression);
+        if (path.length() == 0 || StringUtils.containsAny(path, "[]|=,") || path.contains("::")) {
+            throw new MisconfiguredException("The XPath '%s' is not supported by the streaming XML reader", expression);
+        }
+
+        boolean absolute = path.startsWith("/");
+        List<String> steps = new ArrayList<>();
+        List<Boolean> descendant = new ArrayList<>();
+        String attributeName = null;
+        boolean text = false;
+        boolean nextIsDescendant = false;
+        String[] parts = path.split("/", -1);
+        for (int i = absolute ? 1 : 0; i < parts.length; i++) {
+            String part = parts[i].trim();
+            boolean last = i == parts.length - 1;
+            if (part.length() == 0) {
+                if (last) {
+                    throw new MisconfiguredException("The XPath '%s' is not supported by the streaming XML reader", expression);
+                }
+                nextIsDescendant = true;
+            } else if (part.equals(".")) {
+                continue;
+            } else if (part.startsWith("@") && last) {
+                attributeName = part.substring(1);
+            } else if (part.equals("text()") && last) {
+                text = true;
+            } else if (part.startsWith("@") || part.equals("..") || part.contains("(")) {
+                throw new MisconfiguredException("The XPath '%s' is not supported by the streaming XML reader", expression);
+            } else {
+                steps.add(part);
+                descendant.add(nextIsDescendant);
+                nextIsDescendant = false;
+            }
+        }
+
+        boolean[] descendantSteps = new boolean[descendant.size()];
+        for (int i = 0; i < descendantSteps.length; i++) {
+            descendantSteps[i] = descendant.get(i);
+        }
+        return new StreamingXmlPath(expression, absolute, steps.toArray(new String[steps.size()]), descendantSteps, attributeName,
+                text);
+    }
+
+    /**
+     * @return whether the element names from <code>from</code> up to, but not
+     *         including, <code>to</code> match every element step of this path
+     */
+    boolean matches(List<String> elements, int from, int to) {
+        return matches(elements, 0, from, to);
+    }
+
+    private boolean matches(List<String> elements, int step, int index, int to) {
+        if (step == steps.length) {
+            return index == to;
+        } else if (descendant[step]) {
+            for (int i = index; i < to; i++) {
+                if (matches(steps[step], elements.get(i)) && matches(elements, step + 1, i + 1, to)) {
+                    return true;
+                }
+            }
+            return false;
+        } else {
+            return index < to && matches(steps[step], elements.get(index)) && matches(elements, step + 1, index + 1, to);
+        }
+    }
+
+    private static boolean matches(String step, String element) {
+        return step.equals("*") || step.equals(element);
+    }
+
+    boolean isAttribute() {
+        return attributeName != null;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
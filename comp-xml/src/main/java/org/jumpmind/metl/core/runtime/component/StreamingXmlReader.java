@@ -0,0 +1,224 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import static org.apache.commons.io.IOUtils.closeQuietly;
+import static org.apache.commons.lang.StringUtils.isNotBlank;
+
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jumpmind.exception.IoException;
+import org.jumpmind.metl.core.model.Component;
+import org.jumpmind.metl.core.model.ComponentAttribSetting;
+import org.jumpmind.metl.core.model.ComponentEntitySetting;
+import org.jumpmind.metl.core.runtime.ControlMessage;
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.LogLevel;
+import org.jumpmind.metl.core.runtime.Message;
+import org.jumpmind.metl.core.runtime.MisconfiguredException;
+import org.jumpmind.metl.core.runtime.TextMessage;
+import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
+import org.jumpmind.metl.core.runtime.resource.IDirectory;
+import org.jumpmind.properties.TypedProperties;
+
+/**
+ * Reads XML files and parses them into entities in a single pass. Unlike the
+ * {@link XmlReader} followed by an XML parser, each file is opened once, no
+ * fragments are sent between steps and no document is built. See
+ * {@link StreamingXmlEntityParser} for the XPath that is supported.
+ */
+public class StreamingXmlReader extends AbstractXMLComponentRuntime {
+
+    public static final String TYPE = "StreamingXmlReader";
+
+    public final static String SETTING_GET_FILE_FROM_MESSAGE = XmlReader.SETTING_GET_FILE_FROM_MESSAGE;
+
+    public final static String SETTING_RELATIVE_PATH = XmlReader.SETTING_RELATIVE_PATH;
+
+    public static final String SETTING_MUST_EXIST = XmlReader.SETTING_MUST_EXIST;
+
+    String runWhen = PER_UNIT_OF_WORK;
+
+    boolean getFileNameFromMessage = false;
+
+    String relativePathAndFile;
+
+    boolean mustExist;
+
+    int rowsPerMessage = 1000;
+
+    StreamingXmlEntityParser entityParser;
+
+    XMLInputFactory inputFactory;
+
+    @Override
+    public void start() {
+        super.start();
+        TypedProperties properties = getTypedProperties();
+        getFileNameFromMessage = properties.is(SETTING_GET_FILE_FROM_MESSAGE, getFileNameFromMessage);
+        relativePathAndFile = properties.get(SETTING_RELATIVE_PATH, relativePathAndFile);
+        mustExist = properties.is(SETTING_MUST_EXIST, mustExist);
+        rowsPerMessage = properties.getInt(ROWS_PER_MESSAGE, rowsPerMessage);
+        runWhen = properties.get(RUN_WHEN, runWhen);
+
+        if (getComponent().getResource() == null) {
+            throw new MisconfiguredException("A resource has not been selected.  The resource is required");
+        }
+
+        if (getComponent().getOutputModel() == null) {
+            throw new MisconfiguredException("The output model must be defined");
+        }
+
+        Component component = getComponent();
+        entityParser = new StreamingXmlEntityParser(ignoreNamespace);
+        for (ComponentEntitySetting compEntitySetting : component.getEntitySettings()) {
+            if (compEntitySetting.getName().equals(XML_FORMATTER_XPATH) && isNotBlank(compEntitySetting.getValue())) {
+                StreamingXmlEntityParser.EntityPath entityPath = entityParser.addEntity(compEntitySetting.getValue());
+                for (ComponentAttribSetting componentAttributeSetting : component
+                        .getAttributeSettingsFor(compEntitySetting.getEntityId())) {
+                    if (componentAttributeSetting.getName().equals(XML_FORMATTER_XPATH)
+                            && isNotBlank(componentAttributeSetting.getValue())) {
+                        entityParser.addAttribute(entityPath, componentAttributeSetting.getAttributeId(),
+                                componentAttributeSetting.getValue());
+                    }
+                }
+            }
+        }
+
+        if (entityParser.getEntityCount() == 0) {
+            throw new MisconfiguredException("At least one XPATH setting must be provided.");
+        }
+
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    @Override
+    public void handle(Message inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
+        if ((PER_UNIT_OF_WORK.equals(runWhen) && inputMessage instanceof ControlMessage)
+                || (PER_MESSAGE.equals(runWhen) && !(inputMessage instanceof ControlMessage))) {
+            List<String> files = getFilesToRead(inputMessage);
+            try {
+                processFiles(files, inputMessage, callback);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IoException(e);
+            }
+        }
+    }
+
+    private List<String> getFilesToRead(Message inputMessage) {
+        ArrayList<String> files = null;
+        if (getFileNameFromMessage && inputMessage instanceof TextMessage) {
+            files = ((TextMessage) inputMessage).getPayload();
+        } else {
+            files = new ArrayList<String>(1);
+            files.add(relativePathAndFile);
+        }
+        return files;
+    }
+
+    protected void processFiles(List<String> files, Message inputMessage, ISendMessageCallback callback) throws Exception {
+        IDirectory directory = getResourceReference();
+        for (String file : files) {
+            if (isNotBlank(file)) {
+                log(LogLevel.INFO, "Reading %s", file);
+            }
+            Map<String, Serializable> headers = new HashMap<>();
+            headers.put("source.file.path", file);
+            InputStream is = null;
+            XMLStreamReader reader = null;
+            try {
+                is = directory.getInputStream(resolveParamsAndHeaders(file, inputMessage), mustExist);
+                if (is != null) {
+                    reader = inputFactory.createXMLStreamReader(is);
+                    EntityBatcher batcher = new EntityBatcher(headers, callback);
+                    entityParser.parse(reader, batcher);
+                    batcher.flush();
+                } else if (isNotBlank(file)) {
+                    info("File %s didn't exist, but must exist setting was false.  Continuing", file);
+                }
+            } finally {
+                if (reader != null) {
+                    reader.close();
+                }
+                closeQuietly(is);
+            }
+        }
+    }
+
+    class EntityBatcher implements StreamingXmlEntityParser.EntityHandler {
+
+        Map<String, Serializable> headers;
+
+        ISendMessageCallback callback;
+
+        ArrayList<EntityData> payload = new ArrayList<>();
+
+        EntityBatcher(Map<String, Serializable> headers, ISendMessageCallback callback) {
+            this.headers = headers;
+            this.callback = callback;
+        }
+
+        @Override
+        public void entityParsed(String elementName, EntityData data) {
+            checkForInterruption();
+            getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber);
+            if (data.size() > 0) {
+                payload.add(data);
+                if (payload.size() >= rowsPerMessage) {
+                    flush();
+                }
+            } else {
+                log(LogLevel.WARN,
+                        "Found entity element: <%s/> with no matching attributes.  Please make sure your xpath expressions match",
+                        elementName);
+            }
+        }
+
+        void flush() {
+            if (payload.size() > 0) {
+                callback.sendEntityDataMessage(headers, payload);
+                payload = new ArrayList<>();
+            }
+        }
+    }
+
+    @Override
+    public boolean supportsStartupMessages() {
+        return true;
+    }
+
+    public void setRunWhen(String runWhen) {
+        this.runWhen = runWhen;
+    }
+}
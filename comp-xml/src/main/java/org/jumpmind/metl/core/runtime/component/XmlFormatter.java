@@ -24,11 +24,14 @@ import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Stack;
 
+import javax.xml.stream.XMLStreamException;
+
 import org.apache.commons.lang.StringUtils;
 import org.jdom2.Attribute;
 import org.jdom2.Document;
@@ -75,6 +78,8 @@ public class XmlFormatter extends AbstractXMLComponentRuntime {
 
     public final static String XML_FORMATTER_TEMPLATE = "xml.formatter.template";
 
+    public final static String XML_FORMATTER_STREAM_OUTPUT = "xml.formatter.stream.output";
+
     boolean ignoreNamespace = true;
 
     String xmlFormat;
@@ -93,6 +98,18 @@ public class XmlFormatter extends AbstractXMLComponentRuntime {
 
     String runWhen;
 
+    boolean streamOutput;
+
+    int rowsPerMessage;
+
+    XmlTemplateWriter templateWriter;
+
+    LineMessageWriter templateTarget;
+
+    Map<String, XPathExpression<Object>> xpaths = new HashMap<String, XPathExpression<Object>>();
+
+    Map<String, XPathExpression<Element>> elementXPaths = new HashMap<String, XPathExpression<Element>>();
+
     @Override
     public void start() {
         super.start();
@@ -104,8 +121,18 @@ public class XmlFormatter extends AbstractXMLComponentRuntime {
         messagesToProcess = new ArrayList<Message>();
         inputModel = getComponent().getInputModel();
         templateDoc = getTemplateDoc();
-        entityAttributeDtls = fillEntityAttributeDetails(templateDoc);
+        Map<String, DocElement> entityDtls = fillEntityDetails(templateDoc);
+        Map<String, DocElement> attributeDtls = fillAttributeDetails(templateDoc);
+        entityAttributeDtls = new HashMap<String, DocElement>();
+        entityAttributeDtls.putAll(entityDtls);
+        entityAttributeDtls.putAll(attributeDtls);
         runWhen = getComponent().get(RUN_WHEN, PER_MESSAGE);
+        streamOutput = properties.is(XML_FORMATTER_STREAM_OUTPUT, false);
+        rowsPerMessage = properties.getInt(ROWS_PER_MESSAGE, 1000);
+        if (streamOutput) {
+            templateWriter = new XmlTemplateWriter(templateDoc.getRootElement(), getTemplateTargets(entityDtls),
+                    getTemplateTargets(attributeDtls), xmlFormat, nullHandling);
+        }
     }
 
     @Override
@@ -117,6 +144,11 @@ public class XmlFormatter extends AbstractXMLComponentRuntime {
     public void handle(Message inputMessage, ISendMessageCallback callback,
             boolean unitOfWorkBoundaryReached) {
 
+        if (streamOutput) {
+            streamXml(inputMessage, callback);
+            return;
+        }
+
         if (!(inputMessage instanceof ControlMessage)) {
             messagesToProcess.add(inputMessage);
         }
@@ -129,6 +161,74 @@ public class XmlFormatter extends AbstractXMLComponentRuntime {
         }
     }
 
+    private void streamXml(Message inputMessage, ISendMessageCallback callback) {
+        try {
+            if (inputMessage instanceof EntityDataMessage) {
+                if (!templateWriter.isOpen()) {
+                    templateTarget = new LineMessageWriter(callback, rowsPerMessage);
+                    templateWriter.open(templateTarget);
+                }
+                templateTarget.callback = callback;
+                writeMsgEntities((EntityDataMessage) inputMessage);
+            }
+
+            if ((PER_UNIT_OF_WORK.equals(runWhen) && inputMessage instanceof ControlMessage)
+                    || (!PER_UNIT_OF_WORK.equals(runWhen) && !(inputMessage instanceof ControlMessage))) {
+                if (templateWriter.isOpen()) {
+                    templateTarget.callback = callback;
+                    templateWriter.close();
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void writeMsgEntities(EntityDataMessage msg) throws XMLStreamException {
+        Map<String, Map<String, Object>> entities = new LinkedHashMap<String, Map<String, Object>>();
+        for (EntityData inputRow : msg.getPayload()) {
+            for (Entry<String, Object> attribute : inputRow.entrySet()) {
+                String entityId = inputModel.getAttributeById(attribute.getKey()).getEntityId();
+                Map<String, Object> values = entities.get(entityId);
+                if (values == null) {
+                    values = new HashMap<String, Object>();
+                    entities.put(entityId, values);
+                }
+                values.put(attribute.getKey(), attribute.getValue());
+            }
+            templateWriter.writeRow(entities);
+            entities.clear();
+            getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber);
+        }
+    }
+
+    private Map<String, Object> getTemplateTargets(Map<String, DocElement> docElements) {
+        Map<String, Object> targets = new HashMap<String, Object>();
+        for (Entry<String, DocElement> entry : docElements.entrySet()) {
+            DocElement docElement = entry.getValue();
+            targets.put(entry.getKey(), docElement.xmlElement != null ? docElement.xmlElement : docElement.xmlAttribute);
+        }
+        return targets;
+    }
+
+    private XPathExpression<Object> getXPath(String xpath) {
+        XPathExpression<Object> expression = xpaths.get(xpath);
+        if (expression == null) {
+            expression = XPathFactory.instance().compile(xpath);
+            xpaths.put(xpath, expression);
+        }
+        return expression;
+    }
+
+    private XPathExpression<Element> getElementXPath(String xpath) {
+        XPathExpression<Element> expression = elementXPaths.get(xpath);
+        if (expression == null) {
+            expression = XPathFactory.instance().compile(xpath, Filters.element());
+            elementXPaths.put(xpath, expression);
+        }
+        return expression;
+    }
+
     private void createXml(ISendMessageCallback callback) {
 
         Document generatedXml = new Document();
@@ -223,8 +323,7 @@ public class XmlFormatter extends AbstractXMLComponentRuntime {
             Element newRootElement = templateDoc.getRootElement().clone();
             generatedXml.setRootElement(newRootElement);
             namespaces = removeNamespaces(generatedXml);
-            XPathExpression<Element> expression = XPathFactory.instance()
-                    .compile(firstDocElement.xpath, Filters.element());
+            XPathExpression<Element> expression = getElementXPath(firstDocElement.xpath);
             List<Element> matches = expression.evaluate(generatedXml.getRootElement());
             if (matches.size() != 0 && matches.get(0).getParentElement() != null) {
                 elementToPutOnStack = matches.get(0).getParentElement();
@@ -240,8 +339,7 @@ public class XmlFormatter extends AbstractXMLComponentRuntime {
             // we already have a genertedXml going, but need other static
             // elements from the template
             namespaces = removeNamespaces(templateDoc);
-            XPathExpression<Element> expression = XPathFactory.instance()
-                    .compile(firstDocElement.xpath, Filters.element());
+            XPathExpression<Element> expression = getElementXPath(firstDocElement.xpath);
             List<Element> matches = expression.evaluate(templateDoc.getRootElement());
             // TODO: do something here for when the attribute is more than one
             // level away from the entity
@@ -318,8 +416,7 @@ public class XmlFormatter extends AbstractXMLComponentRuntime {
 
                 // first get the parent element for this model attribute, and
                 // gets its xpath
-                XPathExpression<Element> expression = XPathFactory.instance()
-                        .compile(templateDocElement.xpath, Filters.element());
+                XPathExpression<Element> expression = getElementXPath(templateDocElement.xpath);
                 List<Element> matches = expression.evaluate(templateDoc.getRootElement());
                 if (matches.size() != 0) {
                     templateParentElement = matches.get(0).getParentElement();
@@ -335,8 +432,7 @@ public class XmlFormatter extends AbstractXMLComponentRuntime {
                 do {
                     templateParentXPath = XPathHelper.getRelativePath(entityDocElement.xmlElement,
                             templateParentElement);
-                    expression = XPathFactory.instance().compile(templateParentXPath,
-                            Filters.element());
+                    expression = getElementXPath(templateParentXPath);
                     matches = expression.evaluate(parentStack.peek().xmlElement);
                     if (matches.size() == 0) {
                         Element elementToAdd = templateParentElement.clone();
@@ -369,7 +465,7 @@ public class XmlFormatter extends AbstractXMLComponentRuntime {
     }
 
     private void applyAttributeXPath(Document generatedXml, String xpath, String value) {
-        List<Object> matches = XPathFactory.instance().compile(xpath).evaluate(generatedXml.getRootElement());
+        List<Object> matches = getXPath(xpath).evaluate(generatedXml.getRootElement());
         if (matches.size() == 0) {
             log(LogLevel.WARN, "XPath expression " + xpath + " did not find any matches");
             return;
@@ -414,14 +510,6 @@ public class XmlFormatter extends AbstractXMLComponentRuntime {
         }
     }
 
-    private Map<String, DocElement> fillEntityAttributeDetails(Document templateDoc) {
-
-        Map<String, DocElement> entityAttributeLevels = new HashMap<String, DocElement>();
-        entityAttributeLevels.putAll(fillEntityDetails(templateDoc));
-        entityAttributeLevels.putAll(fillAttributeDetails(templateDoc));
-        return entityAttributeLevels;
-    }
-
     private Map<String, DocElement> fillAttributeDetails(Document templateDoc) {
 
         Map<String, DocElement> attributeLevels = new HashMap<String, DocElement>();
@@ -429,8 +517,7 @@ public class XmlFormatter extends AbstractXMLComponentRuntime {
         for (ComponentAttribSetting compAttributeSetting : getComponent()
                 .getAttributeSettings()) {
             if (compAttributeSetting.getName().equals(XML_FORMATTER_XPATH)) {
-                XPathExpression<Object> expression = XPathFactory.instance()
-                        .compile(compAttributeSetting.getValue());
+                XPathExpression<Object> expression = getXPath(compAttributeSetting.getValue());
                 List<Object> matches = expression.evaluate(templateDoc.getRootElement());
                 if (matches.size() == 0) {
                     log(LogLevel.WARN, "XPath expression " + compAttributeSetting.getValue()
@@ -476,8 +563,7 @@ public class XmlFormatter extends AbstractXMLComponentRuntime {
         Map<Element, Namespace> namespaces = removeNamespaces(templateDoc);
         for (ComponentEntitySetting compEntitySetting : getComponent().getEntitySettings()) {
             if (compEntitySetting.getName().equals(XML_FORMATTER_XPATH)) {
-                XPathExpression<Element> expression = XPathFactory.instance()
-                        .compile(compEntitySetting.getValue(), Filters.element());
+                XPathExpression<Element> expression = getElementXPath(compEntitySetting.getValue());
                 List<Element> matches = expression.evaluate(templateDoc.getRootElement());
                 if (matches.size() == 0) {
                     log(LogLevel.WARN, "XPath expression " + compEntitySetting.getValue()
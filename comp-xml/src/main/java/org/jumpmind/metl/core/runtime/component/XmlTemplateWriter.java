@@ -0,0 +1,394 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.commons.lang.StringUtils;
+import org.jdom2.Attribute;
+import org.jdom2.Content;
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+import org.jdom2.Text;
+import org.jumpmind.exception.IoException;
+
+/**
+ * Writes entity records into the shape of an {@link XmlFormatter} template as
+ * they arrive. The template is resolved into a tree of nodes once, so no XPath
+ * is evaluated while writing, and only the elements on the path to the
+ * current record are held open.
+ * <p>
+ * Each record is appended after the records already written under the same
+ * parent. Static template content around an entity is written once, when the
+ * first record needs it. Every record starts on a new line.
+ */
+class XmlTemplateWriter {
+
+    static final String XSI_PREFIX = "xsi";
+
+    static final String XSI_URI = "http://www.w3.org/2001/XMLSchema-instance";
+
+    Map<String, Node> entityNodes = new HashMap<String, Node>();
+
+    String xmlFormat;
+
+    String nullHandling;
+
+    XMLStreamWriter writer;
+
+    Writer target;
+
+    List<Node> openNodes = new ArrayList<Node>();
+
+    List<Boolean> openHasChildren = new ArrayList<Boolean>();
+
+    /**
+     * @param root
+     *            the root element of the template
+     * @param entityElements
+     *            the template element of each entity id
+     * @param attributeTargets
+     *            the template {@link Element} or {@link Attribute} of each
+     *            model attribute id
+     */
+    XmlTemplateWriter(Element root, Map<String, Object> entityElements, Map<String, Object> attributeTargets,
+            String xmlFormat, String nullHandling) {
+        this.xmlFormat = xmlFormat;
+        this.nullHandling = nullHandling;
+
+        Map<Element, Node> nodes = new IdentityHashMap<Element, Node>();
+        build(root, null, nodes);
+        for (Map.Entry<String, Object> entry : entityElements.entrySet()) {
+            Node node = nodes.get(entry.getValue());
+            if (node != null) {
+                node.entityId = entry.getKey();
+                entityNodes.put(entry.getKey(), node);
+                for (Node parent = node.parent; parent != null; parent = parent.parent) {
+                    parent.entityParent = true;
+                }
+            }
+        }
+        for (Map.Entry<String, Object> entry : attributeTargets.entrySet()) {
+            if (entry.getValue() instanceof Element) {
+                Node node = nodes.get(entry.getValue());
+                if (node != null) {
+                    node.textAttributeId = entry.getKey();
+                }
+            } else if (entry.getValue() instanceof Attribute) {
+                Attribute attribute = (Attribute) entry.getValue();
+                Node node = nodes.get(attribute.getParent());
+                if (node != null) {
+                    node.attributeIds.put(attribute, entry.getKey());
+                }
+            }
+        }
+    }
+
+    protected Node build(Element element, Node parent, Map<Element, Node> nodes) {
+        Node node = new Node(element, parent);
+        nodes.put(element, node);
+        for (Content content : element.getContent()) {
+            if (content instanceof Element) {
+                node.content.add(build((Element) content, node, nodes));
+            } else if (content instanceof Text) {
+                node.content.add(((Text) content).getText());
+            }
+        }
+        return node;
+    }
+
+    boolean isOpen() {
+        return writer != null;
+    }
+
+    void open(Writer target) throws XMLStreamException {
+        this.target = target;
+        this.writer = XMLOutputFactory.newInstance().createXMLStreamWriter(target);
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeCharacters("\n");
+    }
+
+    /**
+     * Writes the entity records of one row. Records are written parents
+     * first, whatever order the row holds its attributes in, so that a child
+     * record is nested in the record of its parent entity.
+     * 
+     * @param records
+     *            the attribute values of each entity id in the row
+     */
+    void writeRow(Map<String, Map<String, Object>> records) throws XMLStreamException {
+        List<String> entityIds = new ArrayList<String>(records.keySet());
+        Collections.sort(entityIds, new Comparator<String>() {
+            @Override
+            public int compare(String entityId1, String entityId2) {
+                return getDepth(entityId1) - getDepth(entityId2);
+            }
+        });
+        for (String entityId : entityIds) {
+            write(entityId, records.get(entityId));
+        }
+    }
+
+    protected int getDepth(String entityId) {
+        Node node = entityNodes.get(entityId);
+        return node != null ? node.depth : 0;
+    }
+
+    /**
+     * Writes one record of an entity along with any static parents it needs.
+     * 
+     * @return false if the entity is not mapped into the template
+     */
+    boolean write(String entityId, Map<String, Object> values) throws XMLStreamException {
+        Node node = entityNodes.get(entityId);
+        if (node == null) {
+            return false;
+        }
+
+        while (openNodes.size() > 0 && !openNodes.get(openNodes.size() - 1).isAncestorOf(node)) {
+            end();
+        }
+
+        List<Node> parents = new ArrayList<Node>();
+        Node openParent = openNodes.size() > 0 ? openNodes.get(openNodes.size() - 1) : null;
+        for (Node parent = node.parent; parent != null && parent != openParent; parent = parent.parent) {
+            parents.add(0, parent);
+        }
+        for (Node parent : parents) {
+            start(parent, null);
+        }
+
+        if (!XmlFormatter.PRETTY_FORMAT.equals(xmlFormat)) {
+            /*
+             * Only pretty output is broken into lines by indenting, so the
+             * other formats start each record on a line of its own. Output
+             * that is sent a number of lines at a time never has to hold
+             * more than a record.
+             */
+            writer.writeCharacters("\n");
+        }
+        start(node, values);
+        for (Object content : node.content) {
+            writeContent(content, values);
+        }
+        return true;
+    }
+
+    void close() throws XMLStreamException {
+        try {
+            while (openNodes.size() > 0) {
+                end();
+            }
+            writer.writeEndDocument();
+            writer.close();
+        } finally {
+            writer = null;
+            try {
+                target.close();
+            } catch (IOException e) {
+                throw new IoException(e);
+            }
+        }
+    }
+
+    protected void start(Node node, Map<String, Object> values) throws XMLStreamException {
+        indent();
+        writeStartElement(node.element, false);
+        writeAttributes(node, values);
+        openNodes.add(node);
+        openHasChildren.add(false);
+    }
+
+    protected void end() throws XMLStreamException {
+        openNodes.remove(openNodes.size() - 1);
+        if (openHasChildren.remove(openHasChildren.size() - 1)) {
+            indent(openNodes.size());
+        }
+        writer.writeEndElement();
+    }
+
+    protected void writeContent(Object content, Map<String, Object> values) throws XMLStreamException {
+        if (content instanceof String) {
+            String text = format((String) content);
+            if (text.length() > 0) {
+                writer.writeCharacters(text);
+            }
+        } else {
+            Node node = (Node) content;
+            if (!isWritten(node, values)) {
+                return;
+            }
+
+            if (node.textAttributeId != null) {
+                Object value = values.get(node.textAttributeId);
+                String text = value == null ? null : value.toString();
+                boolean nil = StringUtils.isEmpty(text) && XmlFormatter.NULL_HANDLING_XML_NIL.equalsIgnoreCase(nullHandling);
+                indent();
+                writeStartElement(node.element, StringUtils.isEmpty(text));
+                if (nil && !XSI_URI.equals(writer.getNamespaceContext().getNamespaceURI(XSI_PREFIX))) {
+                    writer.writeNamespace(XSI_PREFIX, XSI_URI);
+                    writer.setPrefix(XSI_PREFIX, XSI_URI);
+                }
+                writeAttributes(node, values);
+                if (nil) {
+                    writer.writeAttribute(XSI_PREFIX, XSI_URI, "nil", "true");
+                }
+                if (StringUtils.isNotEmpty(text)) {
+                    writer.writeCharacters(text);
+                    writer.writeEndElement();
+                }
+            } else {
+                boolean empty = true;
+                for (Object child : node.content) {
+                    if (child instanceof Node ? isWritten((Node) child, values) : format((String) child).length() > 0) {
+                        empty = false;
+                    }
+                }
+                indent();
+                writeStartElement(node.element, empty);
+                writeAttributes(node, values);
+                if (!empty) {
+                    openNodes.add(node);
+                    openHasChildren.add(false);
+                    for (Object child : node.content) {
+                        writeContent(child, values);
+                    }
+                    end();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false for elements that are written as part of another record
+     *         and for null values that are removed
+     */
+    protected boolean isWritten(Node node, Map<String, Object> values) {
+        if (node.entityId != null || node.entityParent) {
+            return false;
+        } else if (node.textAttributeId != null && values.get(node.textAttributeId) == null) {
+            return !XmlFormatter.NULL_HANDLING_REMOVE.equals(nullHandling);
+        } else {
+            return true;
+        }
+    }
+
+    protected void writeStartElement(Element element, boolean empty) throws XMLStreamException {
+        String prefix = element.getNamespacePrefix();
+        String uri = element.getNamespaceURI();
+        if (empty) {
+            writer.writeEmptyElement(prefix, element.getName(), uri);
+        } else {
+            writer.writeStartElement(prefix, element.getName(), uri);
+        }
+        for (Namespace namespace : element.getNamespacesIntroduced()) {
+            if (!Namespace.XML_NAMESPACE.equals(namespace)) {
+                if (namespace.getPrefix().length() == 0) {
+                    writer.writeDefaultNamespace(namespace.getURI());
+                    writer.setDefaultNamespace(namespace.getURI());
+                } else {
+                    writer.writeNamespace(namespace.getPrefix(), namespace.getURI());
+                    writer.setPrefix(namespace.getPrefix(), namespace.getURI());
+                }
+            }
+        }
+    }
+
+    protected void writeAttributes(Node node, Map<String, Object> values) throws XMLStreamException {
+        for (Attribute attribute : node.element.getAttributes()) {
+            String attributeId = node.attributeIds.get(attribute);
+            Object value = attributeId != null && values != null ? values.get(attributeId) : null;
+            String text = value != null ? value.toString() : attribute.getValue();
+            if (value != null || StringUtils.isNotEmpty(text)) {
+                writer.writeAttribute(attribute.getNamespacePrefix(), attribute.getNamespaceURI(), attribute.getName(), text);
+            }
+        }
+    }
+
+    protected void indent() throws XMLStreamException {
+        if (openNodes.size() > 0) {
+            openHasChildren.set(openHasChildren.size() - 1, true);
+            indent(openNodes.size());
+        }
+    }
+
+    protected void indent(int level) throws XMLStreamException {
+        if (XmlFormatter.PRETTY_FORMAT.equals(xmlFormat)) {
+            writer.writeCharacters("\n" + StringUtils.repeat("  ", level));
+        }
+    }
+
+    protected String format(String text) {
+        if (XmlFormatter.RAW_FORMAT.equals(xmlFormat)) {
+            return text;
+        } else if (XmlFormatter.COMPACT_FORMAT.equals(xmlFormat)) {
+            return StringUtils.isBlank(text) ? "" : text.trim().replaceAll("\\s+", " ");
+        } else {
+            return text.trim();
+        }
+    }
+
+    static class Node {
+
+        Element element;
+
+        Node parent;
+
+        String entityId;
+
+        String textAttributeId;
+
+        boolean entityParent;
+
+        int depth;
+
+        Map<Attribute, String> attributeIds = new IdentityHashMap<Attribute, String>();
+
+        List<Object> content = new ArrayList<Object>();
+
+        Node(Element element, Node parent) {
+            this.element = element;
+            this.parent = parent;
+            this.depth = parent != null ? parent.depth + 1 : 0;
+        }
+
+        boolean isAncestorOf(Node node) {
+            for (Node ancestor = node.parent; ancestor != null; ancestor = ancestor.parent) {
+                if (ancestor == this) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
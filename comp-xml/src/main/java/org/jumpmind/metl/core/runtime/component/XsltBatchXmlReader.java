@@ -0,0 +1,142 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jumpmind.metl.core.model.Model;
+import org.jumpmind.metl.core.model.ModelAttrib;
+import org.jumpmind.metl.core.model.ModelEntity;
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+/**
+ * Produces the SAX events of the batch document that
+ * {@link XsltProcessor#getBatchXml(Model, ArrayList, boolean)} writes, so that
+ * a batch can be fed to a transformer without building and parsing a string.
+ * The whitespace between elements matches the pretty format the string uses.
+ */
+class XsltBatchXmlReader extends XMLFilterImpl {
+
+    static final char[] INDENT = "\n            ".toCharArray();
+
+    Model model;
+
+    ArrayList<EntityData> inputRows;
+
+    boolean outputAllAttributes;
+
+    XsltBatchXmlReader(Model model, ArrayList<EntityData> inputRows, boolean outputAllAttributes) {
+        this.model = model;
+        this.inputRows = inputRows;
+        this.outputAllAttributes = outputAllAttributes;
+    }
+
+    @Override
+    public void parse(String systemId) throws SAXException, IOException {
+        parse((InputSource) null);
+    }
+
+    @Override
+    public void parse(InputSource input) throws SAXException, IOException {
+        SimpleDateFormat df = new SimpleDateFormat(XsltProcessor.DATE_FORMAT);
+        startDocument();
+        startElement("batch", null);
+
+        List<ModelEntity> entities = XsltProcessor.getModelEntities(model, inputRows);
+        for (ModelEntity entity : entities) {
+            indent(1);
+            startElement("entity", attributesOf("name", entity.getName()));
+            boolean hasRecords = false;
+            for (EntityData entityData : inputRows) {
+                List<ModelAttrib> attributes = XsltProcessor.getRecordAttributes(model, entity, entityData, outputAllAttributes);
+                if (attributes.size() > 0) {
+                    hasRecords = true;
+                    indent(2);
+                    startElement("record", null);
+                    for (ModelAttrib attribute : attributes) {
+                        indent(3);
+                        startElement("attribute", attributesOf("name", attribute.getName(), "value",
+                                XsltProcessor.getValue(attribute, entityData, df)));
+                        endElement("attribute");
+                    }
+                    indent(2);
+                    endElement("record");
+                }
+            }
+            if (hasRecords) {
+                indent(1);
+            }
+            endElement("entity");
+        }
+
+        if (entities.size() > 0) {
+            indent(0);
+        }
+        endElement("batch");
+        endDocument();
+    }
+
+    @Override
+    public void setFeature(String name, boolean value) {
+    }
+
+    @Override
+    public boolean getFeature(String name) {
+        return "http://xml.org/sax/features/namespaces".equals(name);
+    }
+
+    @Override
+    public void setProperty(String name, Object value) {
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return null;
+    }
+
+    protected void startElement(String name, AttributesImpl attributes) throws SAXException {
+        getContentHandler().startElement("", name, name, attributes != null ? attributes : new AttributesImpl());
+    }
+
+    protected void endElement(String name) throws SAXException {
+        getContentHandler().endElement("", name, name);
+    }
+
+    protected void indent(int level) throws SAXException {
+        getContentHandler().characters(INDENT, 0, 1 + level * 2);
+    }
+
+    protected static AttributesImpl attributesOf(String... namesAndValues) {
+        AttributesImpl attributes = new AttributesImpl();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            attributes.addAttribute("", namesAndValues[i], namesAndValues[i], "CDATA", namesAndValues[i + 1]);
+        }
+        return attributes;
+    }
+
+}
@@ -25,19 +25,30 @@ import java.io.StringReader;
 import java.io.StringWriter;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
 import org.apache.commons.lang.StringUtils;
 import org.jdom2.Document;
 import org.jdom2.Element;
-import org.jdom2.input.SAXBuilder;
-import org.jdom2.input.sax.XMLReaders;
 import org.jdom2.output.Format;
 import org.jdom2.output.XMLOutputter;
-import org.jdom2.transform.XSLTransformer;
+import org.jdom2.transform.JDOMResult;
 import org.jumpmind.metl.core.model.DataType;
 import org.jumpmind.metl.core.model.Model;
 import org.jumpmind.metl.core.model.ModelAttrib;
@@ -49,6 +60,7 @@ import org.jumpmind.metl.core.runtime.LogLevel;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
 import org.jumpmind.properties.TypedProperties;
+import org.xml.sax.InputSource;
 
 public class XsltProcessor extends AbstractComponentRuntime {
 
@@ -72,7 +84,7 @@ public class XsltProcessor extends AbstractComponentRuntime {
 
     public final static String XSLT_PROCESSOR_STYLESHEET = "xslt.processor.stylesheet";
 
-    private final static String DATE_FORMAT = "yyyy-MM-dd HH:mm:ss.SSS";
+    final static String DATE_FORMAT = "yyyy-MM-dd HH:mm:ss.SSS";
 
     Setting stylesheet;
     
@@ -83,10 +95,28 @@ public class XsltProcessor extends AbstractComponentRuntime {
     boolean omitXmlDeclaration = false;
     
     String xmlFormat;
+
+    int rowsPerMessage;
+
+    /*
+     * Compiled stylesheets are thread safe, so they are shared by every
+     * processor that uses the same stylesheet text
+     */
+    static final Map<String, Templates> templatesCache = Collections.synchronizedMap(new LinkedHashMap<String, Templates>(16, .75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Templates> eldest) {
+            return size() > MAX_CACHED_TEMPLATES;
+        }
+    });
+
+    static final int MAX_CACHED_TEMPLATES = 100;
     
     @Override
     public void start() {
         TypedProperties properties = getTypedProperties();
+        rowsPerMessage = properties.getInt(ROWS_PER_MESSAGE, 0);
         outputAllAttributes = properties.is(OUTPUT_ALL_ATTRIBUTES);
         useParameterReplacement = properties.is(PARAMETER_REPLACEMENT);
         xmlFormat = properties.get(XML_FORMAT);
@@ -107,19 +137,35 @@ public class XsltProcessor extends AbstractComponentRuntime {
         if (inputMessage instanceof EntityDataMessage) {
             ArrayList<EntityData> inputRows = ((EntityDataMessage)inputMessage).getPayload();
 
-            ArrayList<String> outputPayload = new ArrayList<String>();
-
-            String batchXml = getBatchXml(getComponent().getInputModel(), inputRows, outputAllAttributes);
             String stylesheetXml = stylesheet.getValue();
             if (useParameterReplacement) {
                 stylesheetXml = resolveParamsAndHeaders(stylesheetXml, inputMessage);
             }
-            String outputXml = getTransformedXml(batchXml, stylesheetXml, xmlFormat, omitXmlDeclaration);
-            outputPayload.add(outputXml);
-
-            log(LogLevel.DEBUG, outputPayload.toString());
 
-            callback.sendTextMessage(null, outputPayload);
+            Source batchXml = new SAXSource(new XsltBatchXmlReader(getComponent().getInputModel(), inputRows, outputAllAttributes),
+                    new InputSource());
+            try {
+                Transformer transformer = getTemplates(stylesheetXml).newTransformer();
+                if (rowsPerMessage > 0) {
+                    transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, omitXmlDeclaration ? "yes" : "no");
+                    if (PRETTY_FORMAT.equals(xmlFormat)) {
+                        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+                        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+                    }
+                    try (LineMessageWriter writer = new LineMessageWriter(callback, rowsPerMessage)) {
+                        transformer.transform(batchXml, new StreamResult(writer));
+                    }
+                } else {
+                    JDOMResult result = new JDOMResult();
+                    transformer.transform(batchXml, result);
+                    ArrayList<String> outputPayload = new ArrayList<String>(1);
+                    outputPayload.add(toXml(result.getDocument(), xmlFormat, omitXmlDeclaration));
+                    log(LogLevel.DEBUG, outputPayload.toString());
+                    callback.sendTextMessage(null, outputPayload);
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
         }
     }
 
@@ -134,12 +180,7 @@ public class XsltProcessor extends AbstractComponentRuntime {
             root.addContent(entityElement);
 
             for (EntityData entityData : inputRows) {
-                List<ModelAttrib> attributes = null;
-                if (outputAllAttributes) {
-                    attributes = entity.getModelAttributes();
-                } else {
-                    attributes = getModelAttributes(model, entity.getId(), entityData.keySet());
-                }
+                List<ModelAttrib> attributes = getRecordAttributes(model, entity, entityData, outputAllAttributes);
 
                 Element recordElement = new Element("record");
                 if (attributes.size() > 0) {
@@ -147,23 +188,10 @@ public class XsltProcessor extends AbstractComponentRuntime {
                 }
 
                 for (ModelAttrib attribute : attributes) {
-                    if (attribute != null && attribute.getEntityId().equals(entity.getId())) {
-                        Element attributeElement = new Element("attribute");
-                        attributeElement.setAttribute("name", attribute.getName());                       
-                        Object object = entityData.get(attribute.getId());
-                        String value = null;
-                        DataType type = attribute.getDataType();
-                        
-                        if (object != null) {
-                            if (type.isTimestamp() && object instanceof Date) {
-                                value = df.format(object);
-                            } else {
-                                value = object.toString();
-                            }
-                        }
-                        attributeElement.setAttribute("value", value == null ? "" : value);
-                        recordElement.addContent(attributeElement);
-                    }
+                    Element attributeElement = new Element("attribute");
+                    attributeElement.setAttribute("name", attribute.getName());                       
+                    attributeElement.setAttribute("value", getValue(attribute, entityData, df));
+                    recordElement.addContent(attributeElement);
                 }
             }
         }
@@ -180,6 +208,40 @@ public class XsltProcessor extends AbstractComponentRuntime {
         return writer.toString();
     }
 
+    /**
+     * @return the attributes of the entity that are written for a record
+     */
+    protected static List<ModelAttrib> getRecordAttributes(Model model, ModelEntity entity, EntityData entityData,
+            boolean outputAllAttributes) {
+        List<ModelAttrib> attributes = null;
+        if (outputAllAttributes) {
+            attributes = entity.getModelAttributes();
+        } else {
+            attributes = getModelAttributes(model, entity.getId(), entityData.keySet());
+        }
+        List<ModelAttrib> recordAttributes = new ArrayList<ModelAttrib>(attributes.size());
+        for (ModelAttrib attribute : attributes) {
+            if (attribute != null && attribute.getEntityId().equals(entity.getId())) {
+                recordAttributes.add(attribute);
+            }
+        }
+        return recordAttributes;
+    }
+
+    protected static String getValue(ModelAttrib attribute, EntityData entityData, SimpleDateFormat df) {
+        Object object = entityData.get(attribute.getId());
+        String value = null;
+        DataType type = attribute.getDataType();
+        if (object != null) {
+            if (type.isTimestamp() && object instanceof Date) {
+                value = df.format(object);
+            } else {
+                value = object.toString();
+            }
+        }
+        return value == null ? "" : value;
+    }
+
     protected static List<ModelEntity> getModelEntities(Model model, ArrayList<EntityData> inputRows) {
         Set<ModelEntity> entities = new LinkedHashSet<ModelEntity>();
         for (EntityData entityData : inputRows) {
@@ -208,32 +270,43 @@ public class XsltProcessor extends AbstractComponentRuntime {
     }
 
     public static String getTransformedXml(String inputXml, String stylesheetXml, String xmlFormat, boolean omitXmlDeclaration) {
-        StringWriter writer = new StringWriter();
-        SAXBuilder builder = new SAXBuilder();
-        builder.setXMLReaderFactory(XMLReaders.NONVALIDATING);
-        builder.setFeature("http://xml.org/sax/features/validation", false);
         try {
-            Document inputDoc = builder.build(new StringReader(inputXml));
-            StringReader reader = new StringReader(stylesheetXml);
-            XSLTransformer transformer = new XSLTransformer(reader);
-            Document outputDoc = transformer.transform(inputDoc);
-            XMLOutputter xmlOutput = new XMLOutputter();
-            Format format = null;
-            if (xmlFormat.equals(COMPACT_FORMAT)) {
-                format = Format.getCompactFormat();
-            } else if (xmlFormat.equals(RAW_FORMAT)) {
-                format = Format.getRawFormat();
-            } else {
-                format = Format.getPrettyFormat();
-            }
-            
-            format.setOmitDeclaration(omitXmlDeclaration);
-            xmlOutput.setFormat(format);
-            xmlOutput.output(outputDoc, writer);
-            writer.close();
+            JDOMResult result = new JDOMResult();
+            getTemplates(stylesheetXml).newTransformer().transform(new StreamSource(new StringReader(inputXml)), result);
+            return toXml(result.getDocument(), xmlFormat, omitXmlDeclaration);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
+    }
+
+    /**
+     * @return the compiled stylesheet, compiling it the first time it is seen
+     */
+    protected static Templates getTemplates(String stylesheetXml) throws TransformerConfigurationException {
+        Templates templates = templatesCache.get(stylesheetXml);
+        if (templates == null) {
+            templates = TransformerFactory.newInstance().newTemplates(new StreamSource(new StringReader(stylesheetXml)));
+            templatesCache.put(stylesheetXml, templates);
+        }
+        return templates;
+    }
+
+    protected static String toXml(Document outputDoc, String xmlFormat, boolean omitXmlDeclaration) throws IOException {
+        StringWriter writer = new StringWriter();
+        XMLOutputter xmlOutput = new XMLOutputter();
+        Format format = null;
+        if (COMPACT_FORMAT.equals(xmlFormat)) {
+            format = Format.getCompactFormat();
+        } else if (RAW_FORMAT.equals(xmlFormat)) {
+            format = Format.getRawFormat();
+        } else {
+            format = Format.getPrettyFormat();
+        }
+
+        format.setOmitDeclaration(omitXmlDeclaration);
+        xmlOutput.setFormat(format);
+        xmlOutput.output(outputDoc, writer);
+        writer.close();
         return writer.toString();
     }
 }
@@ -39,6 +39,7 @@ import org.jumpmind.metl.core.model.Model;
 import org.jumpmind.metl.core.model.ModelAttrib;
 import org.jumpmind.metl.core.model.ModelEntity;
 import org.jumpmind.metl.core.model.Setting;
+import org.jumpmind.metl.core.runtime.component.StreamingXmlReader;
 import org.jumpmind.metl.core.runtime.component.XPathXmlParser;
 import org.jumpmind.metl.core.runtime.component.XmlFormatter;
 import org.jumpmind.metl.core.runtime.component.XmlParser;
@@ -143,6 +144,8 @@ public class EditXmlFormatPanel extends AbstractComponentEditPanel {
             model = component.getOutputModel();
         } else if (component.getType().equals(XPathXmlParser.TYPE)) {
             model = component.getOutputModel();
+        } else if (component.getType().equals(StreamingXmlReader.TYPE)) {
+            model = component.getOutputModel();
         } else if (component.getType().equals(XmlFormatter.TYPE)){
             model = component.getInputModel();
         } else {
@@ -156,6 +159,7 @@ public class EditXmlFormatPanel extends AbstractComponentEditPanel {
                             .compareTo(entity2.getName().toLowerCase());
                 }
             });
+            model.invalidateIndexes();
 
             for (ModelEntity entity : model.getModelEntities()) {
                 boolean firstAttribute = true;
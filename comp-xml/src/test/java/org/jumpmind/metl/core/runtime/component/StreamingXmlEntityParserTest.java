@@ -0,0 +1,135 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.MisconfiguredException;
+import org.junit.Test;
+
+public class StreamingXmlEntityParserTest {
+
+    static final String ORDERS = "<?xml version=\"1.0\"?>\n" 
+            + "<orders xmlns:v=\"urn:vendor\" batch=\"7\">\n"
+            + "  <vendor>acme</vendor>\n" 
+            + "  <order id=\"1\">\n" 
+            + "    <customer><name> Joe </name></customer>\n"
+            + "    <v:total>10.50</v:total>\n" 
+            + "    <item sku=\"a\"/>\n" 
+            + "  </order>\n" 
+            + "  <order id=\"2\">\n"
+            + "    <customer><name><![CDATA[Ann & Co]]></name></customer>\n" 
+            + "    <item sku=\"b\"/><item sku=\"c\"/>\n"
+            + "  </order>\n" 
+            + "</orders>";
+
+    @Test
+    public void testEntitiesAndAttributes() throws Exception {
+        StreamingXmlEntityParser parser = new StreamingXmlEntityParser(true);
+        StreamingXmlEntityParser.EntityPath order = parser.addEntity("/orders/order");
+        parser.addAttribute(order, "id", "/orders/order/@id");
+        parser.addAttribute(order, "name", "customer/name");
+        parser.addAttribute(order, "total", "/orders/order/total/text()");
+        parser.addAttribute(order, "batch", "/orders/@batch");
+        parser.addAttribute(order, "vendor", "/orders/vendor");
+
+        List<EntityData> orders = parse(parser, ORDERS);
+        assertEquals(2, orders.size());
+        assertEquals("1", orders.get(0).get("id"));
+        assertEquals("Joe", orders.get(0).get("name"));
+        assertEquals("10.50", orders.get(0).get("total"));
+        assertEquals("7", orders.get(0).get("batch"));
+        assertEquals("acme", orders.get(0).get("vendor"));
+        assertEquals("2", orders.get(1).get("id"));
+        assertEquals("Ann & Co", orders.get(1).get("name"));
+        assertNull(orders.get(1).get("total"));
+        assertEquals("acme", orders.get(1).get("vendor"));
+        assertSame(orders.get(0).getLayout(), orders.get(1).getLayout());
+    }
+
+    @Test
+    public void testNestedAndDescendantEntities() throws Exception {
+        StreamingXmlEntityParser parser = new StreamingXmlEntityParser(true);
+        StreamingXmlEntityParser.EntityPath item = parser.addEntity("//item");
+        parser.addAttribute(item, "sku", "@sku");
+        parser.addAttribute(item, "order", "/orders/order/@id");
+        StreamingXmlEntityParser.EntityPath order = parser.addEntity("order");
+        parser.addAttribute(order, "id", "@id");
+
+        List<EntityData> entities = parse(parser, ORDERS);
+        assertEquals(5, entities.size());
+        assertEquals("a", entities.get(0).get("sku"));
+        assertEquals("1", entities.get(0).get("order"));
+        assertEquals("1", entities.get(1).get("id"));
+        assertEquals("b", entities.get(2).get("sku"));
+        assertEquals("2", entities.get(2).get("order"));
+        assertEquals("c", entities.get(3).get("sku"));
+        assertEquals("2", entities.get(4).get("id"));
+    }
+
+    @Test
+    public void testNamespacesAreKeptWhenNotIgnored() throws Exception {
+        StreamingXmlEntityParser parser = new StreamingXmlEntityParser(false);
+        StreamingXmlEntityParser.EntityPath order = parser.addEntity("/orders/order");
+        parser.addAttribute(order, "total", "v:total");
+        List<EntityData> orders = parse(parser, ORDERS);
+        assertEquals("10.50", orders.get(0).get("total"));
+    }
+
+    @Test
+    public void testPathMatching() {
+        StreamingXmlPath path = StreamingXmlPath.compile("/a//c/*");
+        assertTrue(path.absolute);
+        assertTrue(path.matches(Arrays.asList("a", "c", "d"), 0, 3));
+        assertTrue(path.matches(Arrays.asList("a", "b", "b", "c", "d"), 0, 5));
+        assertFalse(path.matches(Arrays.asList("a", "c"), 0, 2));
+        assertFalse(path.matches(Arrays.asList("x", "c", "d"), 0, 3));
+
+        path = StreamingXmlPath.compile("./b/@id");
+        assertFalse(path.absolute);
+        assertEquals("id", path.attributeName);
+        assertTrue(path.matches(Arrays.asList("a", "b"), 1, 2));
+    }
+
+    @Test(expected = MisconfiguredException.class)
+    public void testPredicatesAreNotSupported() {
+        StreamingXmlPath.compile("/orders/order[1]");
+    }
+
+    protected List<EntityData> parse(StreamingXmlEntityParser parser, String xml) throws Exception {
+        List<EntityData> entities = new ArrayList<>();
+        parser.parse(XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(xml)), (name, data) -> entities.add(data));
+        return entities;
+    }
+
+}
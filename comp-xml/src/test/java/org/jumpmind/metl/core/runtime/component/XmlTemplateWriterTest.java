@@ -0,0 +1,187 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+import org.jdom2.input.SAXBuilder;
+import org.junit.Test;
+
+public class XmlTemplateWriterTest {
+
+    static final String TEMPLATE = "<orders xmlns=\"urn:orders\" version=\"1\" empty=\"\">\n"
+            + "  <header><source>metl</source></header>\n"
+            + "  <order id=\"x\">\n"
+            + "    <customer><name>sample</name></customer>\n"
+            + "    <note>static</note>\n"
+            + "    <items>\n"
+            + "      <item sku=\"s\"><qty>0</qty></item>\n"
+            + "    </items>\n"
+            + "  </order>\n"
+            + "</orders>";
+
+    @Test
+    public void testNestedRecords() throws Exception {
+        StringWriter out = new StringWriter();
+        XmlTemplateWriter writer = newWriter(XmlFormatter.PRETTY_FORMAT, XmlFormatter.NULL_HANDLING_EMPTY);
+        writer.open(out);
+        assertTrue(writer.write("order", values("order.id", "1", "order.name", "Joe")));
+        writer.write("item", values("item.sku", "a", "item.qty", "2"));
+        writer.write("item", values("item.sku", "b", "item.qty", "3"));
+        writer.write("order", values("order.id", "2", "order.name", "Ann & Co"));
+        writer.write("item", values("item.sku", "c", "item.qty", "1"));
+        assertFalse(writer.write("unmapped", values()));
+        writer.close();
+
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<orders xmlns=\"urn:orders\" version=\"1\">\n"
+                + "  <order id=\"1\">\n"
+                + "    <customer>\n"
+                + "      <name>Joe</name>\n"
+                + "    </customer>\n"
+                + "    <note>static</note>\n"
+                + "    <items>\n"
+                + "      <item sku=\"a\">\n"
+                + "        <qty>2</qty>\n"
+                + "      </item>\n"
+                + "      <item sku=\"b\">\n"
+                + "        <qty>3</qty>\n"
+                + "      </item>\n"
+                + "    </items>\n"
+                + "  </order>\n"
+                + "  <order id=\"2\">\n"
+                + "    <customer>\n"
+                + "      <name>Ann &amp; Co</name>\n"
+                + "    </customer>\n"
+                + "    <note>static</note>\n"
+                + "    <items>\n"
+                + "      <item sku=\"c\">\n"
+                + "        <qty>1</qty>\n"
+                + "      </item>\n"
+                + "    </items>\n"
+                + "  </order>\n"
+                + "</orders>", out.toString());
+
+        Document document = new SAXBuilder().build(new StringReader(out.toString()));
+        Namespace namespace = Namespace.getNamespace("urn:orders");
+        assertEquals(2, document.getRootElement().getChildren("order", namespace).size());
+    }
+
+    @Test
+    public void testChildEntityFirstInRow() throws Exception {
+        StringWriter out = new StringWriter();
+        XmlTemplateWriter writer = newWriter(XmlFormatter.COMPACT_FORMAT, XmlFormatter.NULL_HANDLING_EMPTY);
+        writer.open(out);
+        for (int i = 1; i <= 2; i++) {
+            Map<String, Map<String, Object>> records = new LinkedHashMap<String, Map<String, Object>>();
+            records.put("item", values("item.sku", "s" + i, "item.qty", Integer.toString(i)));
+            records.put("order", values("order.id", Integer.toString(i), "order.name", "name" + i));
+            writer.writeRow(records);
+        }
+        writer.close();
+
+        assertEquals("<orders xmlns=\"urn:orders\" version=\"1\">"
+                + "\n<order id=\"1\"><customer><name>name1</name></customer><note>static</note>"
+                + "<items>\n<item sku=\"s1\"><qty>1</qty></item></items></order>"
+                + "\n<order id=\"2\"><customer><name>name2</name></customer><note>static</note>"
+                + "<items>\n<item sku=\"s2\"><qty>2</qty></item></items></order>"
+                + "</orders>", out.toString().substring(out.toString().indexOf('\n') + 1));
+    }
+
+    @Test
+    public void testCompactRecordsAreSentAsTheyAreWritten() throws Exception {
+        SendMessageCallback<ArrayList<String>> callback = new SendMessageCallback<ArrayList<String>>();
+        XmlTemplateWriter writer = newWriter(XmlFormatter.COMPACT_FORMAT, XmlFormatter.NULL_HANDLING_EMPTY);
+        writer.open(new LineMessageWriter(callback, 2));
+        for (int i = 1; i <= 5; i++) {
+            writer.write("order", values("order.id", Integer.toString(i), "order.name", "name" + i));
+        }
+        assertEquals(3, callback.getPayloadList().size());
+        writer.close();
+
+        assertEquals(4, callback.getPayloadList().size());
+        assertEquals("<order id=\"5\"><customer><name>name5</name></customer><note>static</note></order></orders>",
+                callback.getPayloadList().get(3).get(0));
+        for (ArrayList<String> lines : callback.getPayloadList()) {
+            for (String line : lines) {
+                assertTrue(line, line.length() < 100);
+            }
+        }
+    }
+
+    @Test
+    public void testNullHandling() throws Exception {
+        assertEquals("<orders xmlns=\"urn:orders\" version=\"1\">\n<order id=\"x\"><customer/><note>static</note></order></orders>",
+                writeOrder(XmlFormatter.NULL_HANDLING_REMOVE));
+        assertEquals("<orders xmlns=\"urn:orders\" version=\"1\">\n<order id=\"x\"><customer><name/></customer>"
+                + "<note>static</note></order></orders>", writeOrder(XmlFormatter.NULL_HANDLING_EMPTY));
+        assertEquals("<orders xmlns=\"urn:orders\" version=\"1\">\n<order id=\"x\"><customer>"
+                + "<name xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:nil=\"true\"/></customer>"
+                + "<note>static</note></order></orders>", writeOrder(XmlFormatter.NULL_HANDLING_XML_NIL));
+    }
+
+    protected String writeOrder(String nullHandling) throws Exception {
+        StringWriter out = new StringWriter();
+        XmlTemplateWriter writer = newWriter(XmlFormatter.COMPACT_FORMAT, nullHandling);
+        writer.open(out);
+        writer.write("order", values("order.id", null, "order.name", null));
+        writer.close();
+        return out.toString().substring(out.toString().indexOf('\n') + 1);
+    }
+
+    protected XmlTemplateWriter newWriter(String xmlFormat, String nullHandling) throws Exception {
+        Element root = new SAXBuilder().build(new StringReader(TEMPLATE)).getRootElement();
+        Namespace namespace = root.getNamespace();
+        Element order = root.getChild("order", namespace);
+        Element item = order.getChild("items", namespace).getChild("item", namespace);
+
+        Map<String, Object> entities = new HashMap<String, Object>();
+        entities.put("order", order);
+        entities.put("item", item);
+
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put("order.id", order.getAttribute("id"));
+        attributes.put("order.name", order.getChild("customer", namespace).getChild("name", namespace));
+        attributes.put("item.sku", item.getAttribute("sku"));
+        attributes.put("item.qty", item.getChild("qty", namespace));
+        return new XmlTemplateWriter(root, entities, attributes, xmlFormat, nullHandling);
+    }
+
+    protected Map<String, Object> values(String... idsAndValues) {
+        Map<String, Object> values = new HashMap<String, Object>();
+        for (int i = 0; i < idsAndValues.length; i += 2) {
+            values.put(idsAndValues[i], idsAndValues[i + 1]);
+        }
+        return values;
+    }
+}
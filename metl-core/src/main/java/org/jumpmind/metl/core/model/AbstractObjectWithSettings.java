@@ -23,7 +23,10 @@ package org.jumpmind.metl.core.model;
 import static org.apache.commons.lang.StringUtils.isBlank;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 import org.jumpmind.metl.core.plugin.XMLSetting;
@@ -35,6 +38,8 @@ abstract public class AbstractObjectWithSettings extends AbstractNamedObject {
 
     protected List<Setting> settings;
 
+    transient volatile Map<String, Setting> settingsByName;
+
     public AbstractObjectWithSettings(Setting... settings) {
         this.settings = new ArrayList<Setting>();
         if (settings != null) {
@@ -56,26 +61,60 @@ abstract public class AbstractObjectWithSettings extends AbstractNamedObject {
         settingData.setName(name);
         settingData.setValue(value);
         settings.add(settingData);
+        invalidateIndexes();
 
     }
 
+    public void addSetting(Setting settingData) {
+        settings.add(settingData);
+        invalidateIndexes();
+    }
+
     @SuppressWarnings("unchecked")
     public void setSettings(List<? extends Setting> settings) {
         this.settings = (List<Setting>) settings;
+        invalidateIndexes();
+    }
+
+    /**
+     * Builds a by name index for the settings lookups. The runtime builds the
+     * indexes when a flow is deployed. Settings that are added through this
+     * class drop the index; code that changes the settings list directly has
+     * to call {@link #invalidateIndexes()}.
+     */
+    public void buildIndexes() {
+        Map<String, Setting> settingsByName = new HashMap<>();
+        for (Setting settingData : settings) {
+            settingsByName.putIfAbsent(settingData.getName(), settingData);
+        }
+        this.settingsByName = Collections.unmodifiableMap(settingsByName);
+    }
+
+    public void invalidateIndexes() {
+        this.settingsByName = null;
     }
 
     abstract protected Setting createSettingData();
 
     public Setting findSetting(String name) {
-        for (Setting settingData : settings) {
-            if (name.equals(settingData.getName())) {
+        Map<String, Setting> settingsByName = this.settingsByName;
+        if (settingsByName != null) {
+            Setting settingData = settingsByName.get(name);
+            if (settingData != null) {
                 return settingData;
             }
+        } else {
+            for (Setting settingData : settings) {
+                if (name.equals(settingData.getName())) {
+                    return settingData;
+                }
+            }
         }
 
         Setting settingData = createSettingData();
         settingData.setName(name);
         settings.add(settingData);
+        invalidateIndexes();
         return settingData;
     }
 
@@ -90,6 +129,7 @@ abstract public class AbstractObjectWithSettings extends AbstractNamedObject {
         settingData.setName(name);
         settingData.setValue(value);
         settings.add(settingData);
+        invalidateIndexes();
         return settingData;
     }
 
@@ -105,10 +145,16 @@ abstract public class AbstractObjectWithSettings extends AbstractNamedObject {
 
     public String get(String name, String defaultValue) {
         String value = null;
-        for (Setting settingData : settings) {
-            if (name.equals(settingData.getName())) {
-                value = settingData.getValue();
-                break;
+        Map<String, Setting> settingsByName = this.settingsByName;
+        if (settingsByName != null) {
+            Setting settingData = settingsByName.get(name);
+            value = settingData != null ? settingData.getValue() : null;
+        } else {
+            for (Setting settingData : settings) {
+                if (name.equals(settingData.getName())) {
+                    value = settingData.getValue();
+                    break;
+                }
             }
         }
         return value != null ? value : defaultValue;
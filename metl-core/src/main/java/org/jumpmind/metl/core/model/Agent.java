@@ -61,6 +61,8 @@ public class Agent extends AbstractNamedObject {
     
     int execThreadCount = 1;
 
+    int stepThreadCount = 0;
+
     public Agent(String name) {
         this();
         this.name = name;
@@ -236,4 +238,16 @@ public class Agent extends AbstractNamedObject {
         return execThreadCount;
     }
 
+    public void setStepThreadCount(int stepThreadCount) {
+        this.stepThreadCount = stepThreadCount;
+    }
+
+    public int getStepThreadCount() {
+        return stepThreadCount;
+    }
+
+    public boolean isSharedStepThreads() {
+        return stepThreadCount > 0;
+    }
+
 }
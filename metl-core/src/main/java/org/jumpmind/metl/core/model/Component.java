@@ -21,7 +21,10 @@
 package org.jumpmind.metl.core.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.jumpmind.db.sql.Row;
@@ -56,6 +59,10 @@ public class Component extends AbstractObjectWithSettings implements IAuditable
 
     List<ComponentAttribSetting> attributeSettings;
 
+    transient volatile Map<String, List<ComponentEntitySetting>> entitySettingsByEntityId;
+
+    transient volatile Map<String, List<ComponentAttribSetting>> attributeSettingsByAttributeId;
+
     public Component() {
     }
 
@@ -165,6 +172,7 @@ public class Component extends AbstractObjectWithSettings implements IAuditable
 
     public void setEntitySettings(List<ComponentEntitySetting> entitySettings) {
         this.entitySettings = entitySettings;
+        invalidateIndexes();
     }
 
     public void addEntitySetting(ComponentEntitySetting entitySetting) {
@@ -172,6 +180,14 @@ public class Component extends AbstractObjectWithSettings implements IAuditable
             entitySettings = new ArrayList<ComponentEntitySetting>();
         }
         entitySettings.add(entitySetting);
+        invalidateIndexes();
+    }
+
+    public void removeEntitySetting(ComponentEntitySetting entitySetting) {
+        if (entitySettings != null) {
+            entitySettings.remove(entitySetting);
+            invalidateIndexes();
+        }
     }
 
     public ComponentEntitySetting getSingleEntitySetting(String entityId, String name) {
@@ -184,7 +200,12 @@ public class Component extends AbstractObjectWithSettings implements IAuditable
 
     public List<ComponentEntitySetting> getEntitySetting(String entityId, String name) {
         List<ComponentEntitySetting> list = new ArrayList<ComponentEntitySetting>();
-        for (ComponentEntitySetting setting : entitySettings) {
+        List<ComponentEntitySetting> candidates = entitySettings;
+        Map<String, List<ComponentEntitySetting>> entitySettingsByEntityId = this.entitySettingsByEntityId;
+        if (entitySettingsByEntityId != null) {
+            candidates = entitySettingsByEntityId.getOrDefault(entityId, Collections.emptyList());
+        }
+        for (ComponentEntitySetting setting : candidates) {
             if (setting.getEntityId().equals(entityId) && setting.getName().equalsIgnoreCase(name)) {
                 list.add(setting);
             }
@@ -220,6 +241,7 @@ public class Component extends AbstractObjectWithSettings implements IAuditable
 
     public void setAttributeSettings(List<ComponentAttribSetting> attributeSettings) {
         this.attributeSettings = attributeSettings;
+        invalidateIndexes();
     }
 
     public void addAttributeSetting(ComponentAttribSetting attributeSetting) {
@@ -227,6 +249,14 @@ public class Component extends AbstractObjectWithSettings implements IAuditable
             attributeSettings = new ArrayList<ComponentAttribSetting>();
         }
         attributeSettings.add(attributeSetting);
+        invalidateIndexes();
+    }
+
+    public void removeAttributeSetting(ComponentAttribSetting attributeSetting) {
+        if (attributeSettings != null) {
+            attributeSettings.remove(attributeSetting);
+            invalidateIndexes();
+        }
     }
 
     public ComponentAttribSetting getSingleAttributeSetting(String attributeId, String name) {
@@ -239,7 +269,12 @@ public class Component extends AbstractObjectWithSettings implements IAuditable
 
     public List<ComponentAttribSetting> getAttributeSetting(String attributeId, String name) {
         List<ComponentAttribSetting> list = new ArrayList<ComponentAttribSetting>();
-        for (ComponentAttribSetting setting : attributeSettings) {
+        List<ComponentAttribSetting> candidates = attributeSettings;
+        Map<String, List<ComponentAttribSetting>> attributeSettingsByAttributeId = this.attributeSettingsByAttributeId;
+        if (attributeSettingsByAttributeId != null) {
+            candidates = attributeSettingsByAttributeId.getOrDefault(attributeId, Collections.emptyList());
+        }
+        for (ComponentAttribSetting setting : candidates) {
             if (setting.getAttributeId().equals(attributeId)
                     && setting.getName().equalsIgnoreCase(name)) {
                 list.add(setting);
@@ -248,6 +283,42 @@ public class Component extends AbstractObjectWithSettings implements IAuditable
         return list;
     }
 
+    /**
+     * Also indexes the entity and attribute settings by entity and attribute
+     * id
+     */
+    @Override
+    public void buildIndexes() {
+        super.buildIndexes();
+        Map<String, List<ComponentEntitySetting>> entitySettingsByEntityId = new HashMap<>();
+        if (entitySettings != null) {
+            for (ComponentEntitySetting setting : entitySettings) {
+                entitySettingsByEntityId.computeIfAbsent(setting.getEntityId(), k -> new ArrayList<>()).add(setting);
+            }
+        }
+        Map<String, List<ComponentAttribSetting>> attributeSettingsByAttributeId = new HashMap<>();
+        if (attributeSettings != null) {
+            for (ComponentAttribSetting setting : attributeSettings) {
+                attributeSettingsByAttributeId.computeIfAbsent(setting.getAttributeId(), k -> new ArrayList<>()).add(setting);
+            }
+        }
+        this.entitySettingsByEntityId = Collections.unmodifiableMap(entitySettingsByEntityId);
+        this.attributeSettingsByAttributeId = Collections.unmodifiableMap(attributeSettingsByAttributeId);
+        if (inputModel != null) {
+            inputModel.buildIndexes();
+        }
+        if (outputModel != null) {
+            outputModel.buildIndexes();
+        }
+    }
+
+    @Override
+    public void invalidateIndexes() {
+        super.invalidateIndexes();
+        this.entitySettingsByEntityId = null;
+        this.attributeSettingsByAttributeId = null;
+    }
+
     @Override
     protected Setting createSettingData() {
         return new ComponentSetting(getId());
@@ -21,8 +21,10 @@
 package org.jumpmind.metl.core.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -60,6 +62,8 @@ public class Model extends AbstractNamedObject implements IAuditable {
 
     boolean deleted = false;
 
+    transient volatile Indexes indexes;
+
     public Model() {
         this.modelEntities = new ArrayList<ModelEntity>();
         this.modelRelations = new ArrayList<ModelRelation>();
@@ -117,6 +121,10 @@ public class Model extends AbstractNamedObject implements IAuditable {
 	}
 
 	public ModelEntity getEntityById(String entityId) {
+        Indexes indexes = this.indexes;
+        if (indexes != null) {
+            return indexes.entitiesById.get(toKey(entityId));
+        }
         for (ModelEntity entity : modelEntities) {
             if (entity.getId().equalsIgnoreCase(entityId)) {
                 return entity;
@@ -126,6 +134,10 @@ public class Model extends AbstractNamedObject implements IAuditable {
     }
 
     public ModelEntity getEntityByName(String entityName) {
+        Indexes indexes = this.indexes;
+        if (indexes != null) {
+            return indexes.entitiesByName.get(toKey(entityName));
+        }
         for (ModelEntity entity : modelEntities) {
             if (entity.getName().equalsIgnoreCase(entityName)) {
                 return entity;
@@ -135,6 +147,10 @@ public class Model extends AbstractNamedObject implements IAuditable {
     }
 
     public ModelAttrib getAttributeById(String attributeId) {
+        Indexes indexes = this.indexes;
+        if (indexes != null) {
+            return indexes.attributesById.get(toKey(attributeId));
+        }
         for (ModelEntity entity : modelEntities) {
             for (ModelAttrib modelAttribute : entity.getModelAttributes()) {
                 if (modelAttribute.getId().equalsIgnoreCase(attributeId)) {
@@ -148,6 +164,11 @@ public class Model extends AbstractNamedObject implements IAuditable {
     public ModelAttrib getAttributeByName(String entityName, String attributeName) {
         ModelEntity entity = getEntityByName(entityName);
         if (entity != null) {
+            Indexes indexes = this.indexes;
+            if (indexes != null) {
+                Map<String, ModelAttrib> attributes = indexes.attributesByEntityIdAndName.get(entity.getId());
+                return attributes != null ? attributes.get(toKey(attributeName)) : null;
+            }
             for (ModelAttrib modelAttribute : entity.getModelAttributes()) {
                 if (modelAttribute.getName().equalsIgnoreCase(attributeName)) {
                     return modelAttribute;
@@ -157,6 +178,39 @@ public class Model extends AbstractNamedObject implements IAuditable {
         return null;
     }
 
+    /**
+     * Builds hash indexes for the id and name lookups. The model is expected
+     * not to change while it is indexed. The runtime builds the indexes when a
+     * flow is deployed, and anything that changes the entities or attributes
+     * afterwards has to call {@link #invalidateIndexes()}.
+     */
+    public void buildIndexes() {
+        Map<String, ModelEntity> entitiesById = new HashMap<>();
+        Map<String, ModelEntity> entitiesByName = new HashMap<>();
+        Map<String, ModelAttrib> attributesById = new HashMap<>();
+        Map<String, Map<String, ModelAttrib>> attributesByEntityIdAndName = new HashMap<>();
+        for (ModelEntity entity : modelEntities) {
+            /* the first match wins, like it does for the scans */
+            entitiesById.putIfAbsent(toKey(entity.getId()), entity);
+            entitiesByName.putIfAbsent(toKey(entity.getName()), entity);
+            Map<String, ModelAttrib> attributesByName = new HashMap<>();
+            for (ModelAttrib attribute : entity.getModelAttributes()) {
+                attributesById.putIfAbsent(toKey(attribute.getId()), attribute);
+                attributesByName.putIfAbsent(toKey(attribute.getName()), attribute);
+            }
+            attributesByEntityIdAndName.putIfAbsent(entity.getId(), Collections.unmodifiableMap(attributesByName));
+        }
+        this.indexes = new Indexes(entitiesById, entitiesByName, attributesById, attributesByEntityIdAndName);
+    }
+
+    public void invalidateIndexes() {
+        this.indexes = null;
+    }
+
+    protected static String toKey(String value) {
+        return value != null ? value.toLowerCase(Locale.ROOT) : null;
+    }
+
     public List<ModelAttrib> getAttributesByName(String attributeName) {
         List<ModelAttrib> attributes = new ArrayList<ModelAttrib>();
         for (ModelEntity entity : modelEntities) {
@@ -175,6 +229,17 @@ public class Model extends AbstractNamedObject implements IAuditable {
 
     public void setModelEntities(List<ModelEntity> modelEntities) {
         this.modelEntities = modelEntities;
+        invalidateIndexes();
+    }
+
+    public void addModelEntity(ModelEntity modelEntity) {
+        modelEntities.add(modelEntity);
+        invalidateIndexes();
+    }
+
+    public void removeModelEntity(ModelEntity modelEntity) {
+        modelEntities.remove(modelEntity);
+        invalidateIndexes();
     }
     
     public List<ModelRelation> getModelRelations() {
@@ -218,6 +283,7 @@ public class Model extends AbstractNamedObject implements IAuditable {
         for (ModelEntity modelEntity : modelEntities) {
             AbstractObjectNameBasedSorter.sort(modelEntity.getModelAttributes());
         }
+        invalidateIndexes();
     }
 
     public Row toRow(EntityData data, boolean qualifyWithEntityName) {
@@ -287,4 +353,23 @@ public class Model extends AbstractNamedObject implements IAuditable {
         return null;
     }
     
+    static final class Indexes {
+
+        final Map<String, ModelEntity> entitiesById;
+
+        final Map<String, ModelEntity> entitiesByName;
+
+        final Map<String, ModelAttrib> attributesById;
+
+        final Map<String, Map<String, ModelAttrib>> attributesByEntityIdAndName;
+
+        Indexes(Map<String, ModelEntity> entitiesById, Map<String, ModelEntity> entitiesByName, Map<String, ModelAttrib> attributesById,
+                Map<String, Map<String, ModelAttrib>> attributesByEntityIdAndName) {
+            this.entitiesById = Collections.unmodifiableMap(entitiesById);
+            this.entitiesByName = Collections.unmodifiableMap(entitiesByName);
+            this.attributesById = Collections.unmodifiableMap(attributesById);
+            this.attributesByEntityIdAndName = Collections.unmodifiableMap(attributesByEntityIdAndName);
+        }
+    }
+
 }
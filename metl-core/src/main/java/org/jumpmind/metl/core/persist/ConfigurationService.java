@@ -496,7 +496,7 @@ public class ConfigurationService extends AbstractService
         Map<String, ModelRelation> byModelRelationId = new HashMap<String, ModelRelation>();
         for (ModelEntity entity : entities) {
             byModelEntityId.put(entity.getId(), entity);
-            model.getModelEntities().add(entity);
+            model.addModelEntity(entity);
         }
         for (ModelAttrib modelAttribute : attributes) {
             byModelEntityId.get(modelAttribute.getEntityId()).getModelAttributes()
@@ -505,6 +505,7 @@ public class ConfigurationService extends AbstractService
         for (ModelEntity entity : entities) {
             Collections.sort(entity.getModelAttributes());
         }
+        model.invalidateIndexes();
         for (ModelRelation relation : relations) {
             byModelRelationId.put(relation.getId(), relation);
         		model.getModelRelations().add(relation);
@@ -1019,7 +1020,7 @@ public class ConfigurationService extends AbstractService
             ResourceSetting cSetting = (ResourceSetting) copyWithNewUUID(oldToNewUUIDMapping,
                     setting);
             cSetting.setResourceId(newResource.getId());
-            newResource.getSettings().add(cSetting);
+            newResource.addSetting(cSetting);
         }
         return newResource;
     }
@@ -1041,7 +1042,7 @@ public class ConfigurationService extends AbstractService
                 newAttribute.setEntityId(newModelEntity.getId());
                 newModelEntity.addModelAttribute(newAttribute);
             }
-            newModel.getModelEntities().add(newModelEntity);
+            newModel.addModelEntity(newModelEntity);
         }
 
         for (ModelEntity modelEntity : newModel.getModelEntities()) {
@@ -1115,19 +1116,19 @@ public class ConfigurationService extends AbstractService
             ComponentSetting cSetting = (ComponentSetting) copyWithNewUUID(oldToNewUUIDMapping,
                     setting);
             cSetting.setComponentId(component.getId());
-            component.getSettings().add(cSetting);
+            component.addSetting(cSetting);
         }
 
         for (ComponentAttribSetting setting : original.getAttributeSettings()) {
             setting = (ComponentAttribSetting) copyWithNewUUID(oldToNewUUIDMapping, setting);
             setting.setComponentId(component.getId());
-            component.getAttributeSettings().add(setting);
+            component.addAttributeSetting(setting);
         }
 
         for (ComponentEntitySetting setting : original.getEntitySettings()) {
             setting = (ComponentEntitySetting) copyWithNewUUID(oldToNewUUIDMapping, setting);
             setting.setComponentId(component.getId());
-            component.getEntitySettings().add(setting);
+            component.addEntitySetting(setting);
         }
 
         return component;
@@ -1609,6 +1610,7 @@ public class ConfigurationService extends AbstractService
                 setting.setEntityId(newEntityId);
             }
         }
+        component.invalidateIndexes();
     }
     
     private void updateComponentAttributeSettingsWithNewModels(Component component,
@@ -1624,6 +1626,7 @@ public class ConfigurationService extends AbstractService
                 setting.setValue(newAttributeIdValue);
             }
         }
+        component.invalidateIndexes();
     }
     
     
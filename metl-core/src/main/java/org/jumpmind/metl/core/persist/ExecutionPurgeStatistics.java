@@ -0,0 +1,102 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.persist;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What one run of the execution purge did for one execution status
+ */
+public class ExecutionPurgeStatistics {
+
+    String status;
+
+    Date startTime;
+
+    long durationMs;
+
+    int batches;
+
+    long executionsPurged;
+
+    long executionStepsPurged;
+
+    AtomicLong logFilesDeleted = new AtomicLong();
+
+    public ExecutionPurgeStatistics(String status) {
+        this.status = status;
+        this.startTime = new Date();
+    }
+
+    void batchPurged(int executions, int executionSteps) {
+        batches++;
+        executionsPurged += executions;
+        executionStepsPurged += executionSteps;
+    }
+
+    void logFileDeleted() {
+        logFilesDeleted.incrementAndGet();
+    }
+
+    void finished() {
+        durationMs = System.currentTimeMillis() - startTime.getTime();
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public Date getStartTime() {
+        return startTime;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public int getBatches() {
+        return batches;
+    }
+
+    public long getExecutionsPurged() {
+        return executionsPurged;
+    }
+
+    public long getExecutionStepsPurged() {
+        return executionStepsPurged;
+    }
+
+    public long getLogFilesDeleted() {
+        return logFilesDeleted.get();
+    }
+
+    public double getExecutionsPurgedPerSecond() {
+        return durationMs > 0 ? executionsPurged * 1000d / durationMs : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d execution records, %d execution step records and %d log files with the status of %s in %d batches and %dms (%.1f executions/s)",
+                executionsPurged, executionStepsPurged, getLogFilesDeleted(), status, batches, durationMs, getExecutionsPurgedPerSecond());
+    }
+
+}
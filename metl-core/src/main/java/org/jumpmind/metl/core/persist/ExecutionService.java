@@ -24,8 +24,12 @@ import static org.apache.commons.lang.StringUtils.isNotBlank;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.charset.Charset;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
@@ -34,17 +38,20 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.time.DateUtils;
-import org.jumpmind.db.model.Table;
 import org.jumpmind.db.platform.IDatabasePlatform;
 import org.jumpmind.db.sql.ISqlRowMapper;
 import org.jumpmind.db.sql.ISqlTemplate;
+import org.jumpmind.db.sql.ISqlTransaction;
 import org.jumpmind.db.sql.Row;
 import org.jumpmind.db.sql.mapper.StringMapper;
+import org.jumpmind.exception.IoException;
 import org.jumpmind.metl.core.model.Agent;
 import org.jumpmind.metl.core.model.AgentProjectVersionFlowDeployment;
 import org.jumpmind.metl.core.model.Execution;
@@ -54,10 +61,14 @@ import org.jumpmind.metl.core.model.ExecutionStepLog;
 import org.jumpmind.metl.core.runtime.ExecutionTrackerLogger;
 import org.jumpmind.metl.core.runtime.ExecutionTrackerRecorder;
 import org.jumpmind.metl.core.runtime.IExecutionTracker;
+import org.jumpmind.metl.core.runtime.LogLevel;
+import org.jumpmind.metl.core.runtime.flow.AsyncRecorder;
 import org.jumpmind.metl.core.security.ISecurityService;
 import org.jumpmind.metl.core.util.LogUtils;
+import org.jumpmind.metl.core.util.ThreadUtils;
 import org.jumpmind.persist.IPersistenceManager;
 import org.jumpmind.symmetric.csv.CsvReader;
+import org.jumpmind.symmetric.csv.CsvWriter;
 import org.jumpmind.util.FormatUtils;
 import org.springframework.core.env.Environment;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
@@ -70,6 +81,10 @@ public class ExecutionService extends AbstractService implements IExecutionServi
     
     protected IDatabasePlatform databasePlatform;
 
+    volatile boolean executionTableCreated;
+
+    Map<String, ExecutionPurgeStatistics> lastPurgeStatistics = new ConcurrentHashMap<>();
+
     public ExecutionService(ISecurityService securityService, IPersistenceManager persistenceManager, IDatabasePlatform databasePlatform, String tablePrefix, Environment env) {
         super(securityService, persistenceManager, tablePrefix);
         this.databasePlatform = databasePlatform;
@@ -85,6 +100,82 @@ public class ExecutionService extends AbstractService implements IExecutionServi
         this.purgeScheduler.scheduleWithFixedDelay(new PurgeExecutionHandler(), firstScheduledRunTime, periodInMs);
     }
 
+    /**
+     * Save a batch of execution records in one transaction. {@link Execution}
+     * and {@link ExecutionStep} rows are upserted with prepared statements
+     * instead of going through the persistence manager one object at a time.
+     */
+    @Override
+    public void save(Collection<? extends AbstractObject> objects) {
+        if (objects.size() > 0) {
+            ISqlTransaction transaction = databasePlatform.getSqlTemplate().startSqlTransaction();
+            try {
+                for (AbstractObject object : objects) {
+                    if (object instanceof ExecutionStep) {
+                        save((ExecutionStep) object, transaction);
+                    } else if (object instanceof Execution) {
+                        save((Execution) object, transaction);
+                    } else {
+                        save(object);
+                    }
+                }
+                transaction.commit();
+            } catch (Throwable ex) {
+                transaction.rollback();
+                rethrow(ex);
+            } finally {
+                transaction.close();
+            }
+        }
+    }
+
+    protected void save(ExecutionStep step, ISqlTransaction transaction) {
+        step.setLastUpdateTime(new Date());
+        Object[] args = new Object[] { step.getExecutionId(), step.getThreadNumber(), step.getFlowStepId(), step.getComponentName(),
+                step.getApproximateOrder(), step.getStatus(), step.getMessagesReceived(), step.getMessagesProduced(),
+                step.getPayloadReceived(), step.getPayloadProduced(), step.getEntitiesProcessed(), step.getStartTime(),
+                step.getEndTime(), step.getHandleDuration(), step.getQueueDuration(), step.getId() };
+        int[] types = new int[] { Types.CHAR, Types.INTEGER, Types.CHAR, Types.VARCHAR, Types.INTEGER, Types.VARCHAR, Types.INTEGER,
+                Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.TIMESTAMP, Types.TIMESTAMP, Types.BIGINT,
+                Types.BIGINT, Types.CHAR };
+        int count = transaction.prepareAndExecute(String.format(
+                "update %1$s_execution_step set execution_id=?, thread_number=?, flow_step_id=?, component_name=?, approximate_order=?, "
+                        + "status=?, messages_received=?, messages_produced=?, payload_received=?, payload_produced=?, entities_processed=?, "
+                        + "start_time=?, end_time=?, handle_duration=?, queue_duration=? where id=?",
+                tablePrefix), args, types);
+        if (count == 0) {
+            transaction.prepareAndExecute(String.format(
+                    "insert into %1$s_execution_step (execution_id, thread_number, flow_step_id, component_name, approximate_order, "
+                            + "status, messages_received, messages_produced, payload_received, payload_produced, entities_processed, "
+                            + "start_time, end_time, handle_duration, queue_duration, id) values (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)",
+                    tablePrefix), args, types);
+        }
+    }
+
+    protected void save(Execution execution, ISqlTransaction transaction) {
+        execution.setLastUpdateTime(new Date());
+        Object[] args = new Object[] { execution.getAgentId(), execution.getFlowId(), execution.getDeploymentId(),
+                execution.getAgentName(), execution.getHostName(), execution.getFlowName(), execution.getDeploymentName(),
+                execution.getParameters(), execution.getStatus(), execution.getStartTime(), execution.getEndTime(),
+                execution.getCreateTime(), execution.getCreateBy(), execution.getLastUpdateBy(), execution.getLastUpdateTime(),
+                execution.getId() };
+        int[] types = new int[] { Types.CHAR, Types.CHAR, Types.CHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR,
+                Types.VARCHAR, Types.VARCHAR, Types.TIMESTAMP, Types.TIMESTAMP, Types.TIMESTAMP, Types.VARCHAR, Types.VARCHAR,
+                Types.TIMESTAMP, Types.CHAR };
+        int count = transaction.prepareAndExecute(String.format(
+                "update %1$s_execution set agent_id=?, flow_id=?, deployment_id=?, agent_name=?, host_name=?, flow_name=?, "
+                        + "deployment_name=?, parameters=?, status=?, start_time=?, end_time=?, create_time=?, create_by=?, "
+                        + "last_update_by=?, last_update_time=? where id=?",
+                tablePrefix), args, types);
+        if (count == 0) {
+            transaction.prepareAndExecute(String.format(
+                    "insert into %1$s_execution (agent_id, flow_id, deployment_id, agent_name, host_name, flow_name, deployment_name, "
+                            + "parameters, status, start_time, end_time, create_time, create_by, last_update_by, last_update_time, id) "
+                            + "values (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)",
+                    tablePrefix), args, types);
+        }
+    }
+
     public Execution findExecution(String id) {
         Execution e = new Execution();
         e.setId(id);
@@ -116,52 +207,144 @@ public class ExecutionService extends AbstractService implements IExecutionServi
     
     @Override
     public File getExecutionStepLog(String executionStepId) {
+        return new File(LogUtils.getLogDir(), executionStepId + ".logz");
+    }
+
+    /*
+     * Step logs used to be written as csv files. They are still read when
+     * they are around.
+     */
+    protected File getLegacyExecutionStepLog(String executionStepId) {
         return new File(LogUtils.getLogDir(), executionStepId + ".log");
     }
-    
-    protected List<ExecutionStepLog> findExecutionStepLogs(Set<String> executionStepIds, int limit, Set<String> statuses) {
+
+    protected boolean deleteExecutionStepLog(String executionStepId) {
+        File file = getExecutionStepLog(executionStepId);
+        boolean deleted = FileUtils.deleteQuietly(file);
+        FileUtils.deleteQuietly(ExecutionStepLogWriter.getIndexFile(file));
+        return FileUtils.deleteQuietly(getLegacyExecutionStepLog(executionStepId)) || deleted;
+    }
+
+    protected List<ExecutionStepLog> findExecutionStepLogs(Set<String> executionStepIds, int limit, Set<LogLevel> levels) {
         List<ExecutionStepLog> executionStepLogs = new ArrayList<>();
         for (String executionStepId : executionStepIds) {
-            File file = getExecutionStepLog(executionStepId);
+            if (executionStepLogs.size() < limit) {
+                executionStepLogs.addAll(findExecutionStepLogs(executionStepId, 0, limit - executionStepLogs.size(), levels));
+            }
+        }
+
+        Collections.sort(executionStepLogs);
+        return executionStepLogs;
+    }
+
+    @Override
+    public List<ExecutionStepLog> findExecutionStepLogs(String executionStepId, long offset, int limit, Set<LogLevel> levels) {
+        File file = getExecutionStepLog(executionStepId);
+        if (file.exists()) {
+            try {
+                return new ExecutionStepLogReader(executionStepId, file).read(offset, limit, levels);
+            } catch (IOException e) {
+                log.error("", e);
+                return new ArrayList<>();
+            }
+        } else {
+            List<ExecutionStepLog> executionStepLogs = findLegacyExecutionStepLogs(executionStepId, levels);
+            return new ArrayList<>(
+                    executionStepLogs.subList((int) Math.min(offset, executionStepLogs.size()),
+                            (int) Math.min(offset + limit, executionStepLogs.size())));
+        }
+    }
+
+    @Override
+    public List<ExecutionStepLog> findLastExecutionStepLogs(String executionStepId, int limit, Set<LogLevel> levels) {
+        File file = getExecutionStepLog(executionStepId);
+        if (file.exists()) {
+            try {
+                return new ExecutionStepLogReader(executionStepId, file).tail(limit, levels);
+            } catch (IOException e) {
+                log.error("", e);
+                return new ArrayList<>();
+            }
+        } else {
+            List<ExecutionStepLog> executionStepLogs = findLegacyExecutionStepLogs(executionStepId, levels);
+            return new ArrayList<>(executionStepLogs.subList(Math.max(0, executionStepLogs.size() - limit), executionStepLogs.size()));
+        }
+    }
+
+    @Override
+    public long countExecutionStepLogs(String executionStepId, Set<LogLevel> levels) {
+        File file = getExecutionStepLog(executionStepId);
+        if (file.exists()) {
+            try {
+                return new ExecutionStepLogReader(executionStepId, file).count(levels);
+            } catch (IOException e) {
+                log.error("", e);
+                return 0;
+            }
+        } else {
+            return findLegacyExecutionStepLogs(executionStepId, levels).size();
+        }
+    }
+
+    @Override
+    public void exportExecutionStepLog(String executionStepId, Writer writer) {
+        File file = getExecutionStepLog(executionStepId);
+        CsvWriter csvWriter = new CsvWriter(writer, ',');
+        try {
             if (file.exists()) {
-                CsvReader reader = null;
-                try {
-                    reader = new CsvReader(file.getAbsolutePath(),'"',Charset.forName("UTF-8"));
-                    long id = 1;
-                    while (reader.readRecord()) {
-                        if (limit > 0) {
-                            String[] values = reader.getValues();
-                            if (values != null && values.length > 2 && isNotBlank(values[0]) && isNotBlank(values[1])
-                                    && isNotBlank(values[2])) {
-                                String level = values[0];
-                                if (statuses == null || statuses.size() == 0
-                                        || statuses.contains(level)) {
-                                    ExecutionStepLog stepLog = new ExecutionStepLog();
-                                    stepLog.setExecutionStepId(executionStepId);
-                                    stepLog.setCreateTime(FormatUtils.parseDate(values[1],
-                                            FormatUtils.TIMESTAMP_PATTERNS));
-                                    stepLog.setLevel(level);
-                                    stepLog.setLogText(values[2]);
-                                    stepLog.setId(Long.toString(id++));
-                                    executionStepLogs.add(stepLog);
-                                }
-                            }
-                            limit--;
-                        } else {
-                            break;
+                new ExecutionStepLogReader(executionStepId, file).scan(null, (stepLog) -> writeCsv(csvWriter, stepLog));
+            } else {
+                for (ExecutionStepLog stepLog : findLegacyExecutionStepLogs(executionStepId, null)) {
+                    writeCsv(csvWriter, stepLog);
+                }
+            }
+            csvWriter.flush();
+        } catch (IOException e) {
+            throw new IoException(e);
+        }
+    }
+
+    protected void writeCsv(CsvWriter csvWriter, ExecutionStepLog stepLog) {
+        try {
+            csvWriter.writeRecord(new String[] { stepLog.getLevel(), FormatUtils.TIMESTAMP_FORMATTER.format(stepLog.getCreateTime()),
+                    stepLog.getLogText() });
+        } catch (IOException e) {
+            throw new IoException(e);
+        }
+    }
+
+    protected List<ExecutionStepLog> findLegacyExecutionStepLogs(String executionStepId, Set<LogLevel> levels) {
+        List<ExecutionStepLog> executionStepLogs = new ArrayList<>();
+        File file = getLegacyExecutionStepLog(executionStepId);
+        if (file.exists()) {
+            CsvReader reader = null;
+            try {
+                reader = new CsvReader(file.getAbsolutePath(), '"', Charset.forName("UTF-8"));
+                long id = 1;
+                while (reader.readRecord()) {
+                    String[] values = reader.getValues();
+                    if (values != null && values.length > 2 && isNotBlank(values[0]) && isNotBlank(values[1])
+                            && isNotBlank(values[2])) {
+                        String level = values[0];
+                        if (levels == null || levels.size() == 0 || levels.contains(ExecutionStepLogWriter.toLevel(level))) {
+                            ExecutionStepLog stepLog = new ExecutionStepLog();
+                            stepLog.setExecutionStepId(executionStepId);
+                            stepLog.setCreateTime(FormatUtils.parseDate(values[1], FormatUtils.TIMESTAMP_PATTERNS));
+                            stepLog.setLevel(level);
+                            stepLog.setLogText(values[2]);
+                            stepLog.setId(Long.toString(id++));
+                            executionStepLogs.add(stepLog);
                         }
                     }
-                } catch (IOException e) {
-                    log.error("", e);
-                } finally {
-                    if (reader != null) {
-                        reader.close();
-                    }
+                }
+            } catch (IOException e) {
+                log.error("", e);
+            } finally {
+                if (reader != null) {
+                    reader.close();
                 }
             }
         }
-
-        Collections.sort(executionStepLogs);
         return executionStepLogs;
     }
 
@@ -174,11 +357,7 @@ public class ExecutionService extends AbstractService implements IExecutionServi
     
     @Override
     public List<ExecutionStepLog> findExecutionStepLogsInError(String executionStepId) {
-        Set<String> executionStepIds = new HashSet<>();
-        executionStepIds.add(executionStepId);
-        Set<String> statuses = new HashSet<>();
-        statuses.add(ExecutionStatus.ERROR.name());
-        return findExecutionStepLogs(executionStepIds, Integer.MAX_VALUE, statuses);
+        return findExecutionStepLogs(executionStepId, 0, Integer.MAX_VALUE, Collections.singleton(LogLevel.ERROR));
     }
 
     class PurgeExecutionHandler implements Runnable {
@@ -270,8 +449,7 @@ public class ExecutionService extends AbstractService implements IExecutionServi
                 String.format("select id from %1$s_execution_step where execution_id = ?", tablePrefix),
                 new StringMapper(),  executionId );
         for (String executionStepId : executionStepIds) {
-            File file = new File(LogUtils.getLogDir(), executionStepId + ".log");
-            FileUtils.deleteQuietly(file);
+            deleteExecutionStepLog(executionStepId);
         }
         template.update(String.format(
                 "delete from %1$s_execution_step where execution_id in (select id from %1$s_execution where id=?)", tablePrefix),
@@ -280,45 +458,54 @@ public class ExecutionService extends AbstractService implements IExecutionServi
         log.info("Deleted execution with an id of {}", executionId);
     }
 
+    /*
+     * Executions are purged in batches. Each batch deletes its execution and
+     * execution step records with one statement per table in a short
+     * transaction, so the recorder is not blocked for long, and then hands the
+     * step log files to a pool of threads to delete.
+     */
     protected void purgeExecutions(String status, int retentionTimeInMs) {
         if (databasePlatform != null) {
-            Table table = databasePlatform.readTableFromDatabase(null, null, tableName(Execution.class));
-            if (table != null) {
+            if (isExecutionTableCreated()) {
                 Date purgeBefore = DateUtils.addMilliseconds(new Date(), -retentionTimeInMs);
                 log.debug("Purging executions with the status of {} before {}", status, purgeBefore);
                 ISqlTemplate template = databasePlatform.getSqlTemplate();
+                int batchSize = Integer.parseInt(environment.getProperty("execution.purge.batch.size", "500"));
+                int logFileThreads = Integer.parseInt(environment.getProperty("execution.purge.log.delete.threads", "4"));
+                ExecutionPurgeStatistics statistics = new ExecutionPurgeStatistics(status);
+                ExecutorService logFileDeleter = ThreadUtils.createFixedThreadPool("execution-purge-log-delete", 100, logFileThreads);
+                try {
+                    long ts = System.currentTimeMillis();
+                    List<String> executionIds = null;
+                    do {
+                        executionIds = template.query(
+                                String.format("select id from %1$s_execution where last_update_time <= ? and status=?", tablePrefix),
+                                batchSize, new StringMapper(), new Object[] { purgeBefore, status });
+                        if (executionIds.size() > 0) {
+                            List<String> executionStepIds = purgeExecutions(executionIds, statistics);
+                            deleteExecutionStepLogs(executionStepIds, logFileThreads, logFileDeleter, statistics);
+                        }
 
-                long ts = System.currentTimeMillis();
-                
-                List<String> executionIds = template.query(
-                        String.format("select id from %1$s_execution where last_update_time <= ? and status=?", tablePrefix),
-                        new StringMapper(), new Object[] { purgeBefore, status });
-                
-                if (0 > executionIds.size()) {
-                   log.info("It took {}ms to find {} executions to purge with a status of {}", System.currentTimeMillis()-ts, executionIds.size(), status);
-                }
-                int countSteps = 0;
-                int countExecutions = 0;
-                for (String id : executionIds) {
-                    List<String> executionStepIds = template.query(
-                            String.format("select id from %1$s_execution_step where execution_id = ?", tablePrefix),
-                            new StringMapper(), new Object[] { id });                    
-                    for (String executionStepId : executionStepIds) {
-                        File file = new File(LogUtils.getLogDir(), executionStepId + ".log");
-                        FileUtils.deleteQuietly(file);
-                        countSteps += template.update(String.format("delete from %1$s_execution_step where id=?", tablePrefix), executionStepId);
-                    }
-                    countExecutions += template.update(String.format("delete from %1$s_execution where id=?", tablePrefix), id);
-                    
-                    if (System.currentTimeMillis() - ts > 60000) {
-                        log.info("Purged {} execution records and {} execution step records with the status of {} so far ...", new Object[] { countExecutions, countSteps, status });
-                        ts = System.currentTimeMillis();
+                        if (System.currentTimeMillis() - ts > 60000) {
+                            log.info("Purged {} execution records and {} execution step records with the status of {} so far ...",
+                                    new Object[] { statistics.getExecutionsPurged(), statistics.getExecutionStepsPurged(), status });
+                            ts = System.currentTimeMillis();
+                        }
+                    } while (executionIds.size() >= batchSize);
+                } finally {
+                    logFileDeleter.shutdown();
+                    try {
+                        logFileDeleter.awaitTermination(1, TimeUnit.HOURS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
                     }
                 }
-                
-                log.debug("Purged {} execution records and {} execution step records with the status of {}", new Object[] { countExecutions, countSteps, status });
-                if (!log.isDebugEnabled() && (countSteps > 0 || countExecutions > 0)) {
-                    log.info("Finished purging {} execution records and {} execution step records with the status of {}", new Object[] { countExecutions, countSteps, status });
+
+                statistics.finished();
+                lastPurgeStatistics.put(status, statistics);
+                log.debug("Purged {}", statistics);
+                if (!log.isDebugEnabled() && statistics.getExecutionsPurged() > 0) {
+                    log.info("Finished purging {}", statistics);
                 }
             } else {
                 log.info("Could not run execution purge for status '{}' because table had not been created yet", status);
@@ -326,6 +513,87 @@ public class ExecutionService extends AbstractService implements IExecutionServi
         }
     }
 
+    /*
+     * The table is only looked up until it has been created
+     */
+    protected boolean isExecutionTableCreated() {
+        if (!executionTableCreated) {
+            executionTableCreated = databasePlatform.readTableFromDatabase(null, null, tableName(Execution.class)) != null;
+        }
+        return executionTableCreated;
+    }
+
+    /**
+     * Deletes a batch of executions and their steps in one transaction
+     * 
+     * @return the ids of the execution steps that were deleted
+     */
+    protected List<String> purgeExecutions(List<String> executionIds, ExecutionPurgeStatistics statistics) {
+        ISqlTemplate template = databasePlatform.getSqlTemplate();
+        String inList = StringUtils.repeat("?", ",", executionIds.size());
+        Object[] args = executionIds.toArray();
+
+        /*
+         * an execution can be deleted by someone else, from the ui for
+         * example, after it was selected for the purge
+         */
+        List<String> existingExecutionIds = template.query(
+                String.format("select id from %1$s_execution where id in (%2$s)", tablePrefix, inList), new StringMapper(), args);
+        if (existingExecutionIds.size() < executionIds.size()) {
+            for (String executionId : executionIds) {
+                if (!existingExecutionIds.contains(executionId)) {
+                    log.info("Execution with an id of {} was already deleted.  Skipping it", executionId);
+                }
+            }
+            if (existingExecutionIds.size() == 0) {
+                return new ArrayList<>(0);
+            }
+            inList = StringUtils.repeat("?", ",", existingExecutionIds.size());
+            args = existingExecutionIds.toArray();
+        }
+
+        int[] types = new int[args.length];
+        Arrays.fill(types, Types.CHAR);
+        List<String> executionStepIds = template.query(
+                String.format("select id from %1$s_execution_step where execution_id in (%2$s)", tablePrefix, inList), new StringMapper(),
+                args);
+        ISqlTransaction transaction = template.startSqlTransaction();
+        try {
+            int countSteps = transaction.prepareAndExecute(
+                    String.format("delete from %1$s_execution_step where execution_id in (%2$s)", tablePrefix, inList), args, types);
+            int countExecutions = transaction
+                    .prepareAndExecute(String.format("delete from %1$s_execution where id in (%2$s)", tablePrefix, inList), args, types);
+            transaction.commit();
+            statistics.batchPurged(countExecutions, countSteps);
+        } catch (Throwable ex) {
+            transaction.rollback();
+            rethrow(ex);
+        } finally {
+            transaction.close();
+        }
+        return executionStepIds;
+    }
+
+    protected void deleteExecutionStepLogs(List<String> executionStepIds, int threads, ExecutorService logFileDeleter,
+            ExecutionPurgeStatistics statistics) {
+        int partitionSize = Math.max(1, (executionStepIds.size() + threads - 1) / threads);
+        for (int i = 0; i < executionStepIds.size(); i += partitionSize) {
+            List<String> partition = executionStepIds.subList(i, Math.min(i + partitionSize, executionStepIds.size()));
+            logFileDeleter.execute(() -> {
+                for (String executionStepId : partition) {
+                    if (deleteExecutionStepLog(executionStepId)) {
+                        statistics.logFileDeleted();
+                    }
+                }
+            });
+        }
+    }
+
+    @Override
+    public Collection<ExecutionPurgeStatistics> getLastPurgeStatistics() {
+        return new ArrayList<>(lastPurgeStatistics.values());
+    }
+
     @Override
     public IExecutionTracker getExecutionTracker(ExecutorService threadService, IExecutionService executionService, 
             Agent agent, AgentProjectVersionFlowDeployment deployment, String userId, Map<String, String> flowParameters) {
@@ -333,11 +601,22 @@ public class ExecutionService extends AbstractService implements IExecutionServi
         IExecutionTracker executionTracker = null;
         if (threadService != null && executionService != null) {
             executionTracker = new ExecutionTrackerRecorder(agent, deployment, threadService,
-                    executionService, userId, flowParameters.toString());
+                    createAsyncRecorder(executionService), userId, flowParameters.toString());
         } else {
             executionTracker = new ExecutionTrackerLogger(deployment);
         }
         return executionTracker;
     }
 
+    protected AsyncRecorder createAsyncRecorder(IExecutionService executionService) {
+        int queueCapacity = Integer.parseInt(environment.getProperty("execution.recorder.queue.capacity",
+                Integer.toString(AsyncRecorder.DEFAULT_QUEUE_CAPACITY)));
+        boolean dropLogsWhenFull = "DROP".equalsIgnoreCase(environment.getProperty("execution.recorder.queue.full.policy", "BLOCK"));
+        long flushIntervalMs = Long.parseLong(environment.getProperty("execution.recorder.flush.interval.ms",
+                Long.toString(AsyncRecorder.DEFAULT_FLUSH_INTERVAL_MS)));
+        int flushSize = Integer.parseInt(environment.getProperty("execution.recorder.flush.size.bytes",
+                Integer.toString(AsyncRecorder.DEFAULT_FLUSH_SIZE)));
+        return new AsyncRecorder(executionService, queueCapacity, dropLogsWhenFull, flushIntervalMs, flushSize);
+    }
+
 }
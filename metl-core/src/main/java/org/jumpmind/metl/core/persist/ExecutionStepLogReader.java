@@ -0,0 +1,268 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.persist;
+
+import static org.jumpmind.metl.core.persist.ExecutionStepLogWriter.INDEX_ENTRY_SIZE;
+import static org.jumpmind.metl.core.persist.ExecutionStepLogWriter.LEVELS;
+import static org.jumpmind.metl.core.persist.ExecutionStepLogWriter.UTF8;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.jumpmind.metl.core.model.ExecutionStepLog;
+import org.jumpmind.metl.core.runtime.LogLevel;
+
+/**
+ * Reads a log file written by {@link ExecutionStepLogWriter}.
+ * <p>
+ * The index is read when the reader is created, so the reader sees the blocks
+ * that had been written at that point. Because the index keeps a count of
+ * records per level for every block, pages and tails are found without
+ * decompressing the blocks in front of them, and blocks that have no records
+ * at the requested levels are skipped.
+ * <p>
+ * The ids of the returned logs are their record numbers starting at 1.
+ */
+public class ExecutionStepLogReader {
+
+    String executionStepId;
+
+    File logFile;
+
+    int blockCount;
+
+    long[] offsets;
+
+    int[] compressedLengths;
+
+    int[] uncompressedLengths;
+
+    long[] firstRecords;
+
+    int[][] levelCounts;
+
+    public ExecutionStepLogReader(String executionStepId, File logFile) throws IOException {
+        this.executionStepId = executionStepId;
+        this.logFile = logFile;
+        File indexFile = ExecutionStepLogWriter.getIndexFile(logFile);
+        ByteBuffer index = ByteBuffer.wrap(indexFile.exists() ? Files.readAllBytes(indexFile.toPath()) : new byte[0]);
+        blockCount = index.capacity() / INDEX_ENTRY_SIZE;
+        offsets = new long[blockCount];
+        compressedLengths = new int[blockCount];
+        uncompressedLengths = new int[blockCount];
+        firstRecords = new long[blockCount];
+        levelCounts = new int[blockCount][LEVELS.length];
+        for (int i = 0; i < blockCount; i++) {
+            offsets[i] = index.getLong();
+            compressedLengths[i] = index.getInt();
+            uncompressedLengths[i] = index.getInt();
+            firstRecords[i] = index.getLong();
+            for (int j = 0; j < LEVELS.length; j++) {
+                levelCounts[i][j] = index.getInt();
+            }
+        }
+    }
+
+    /**
+     * @param levels
+     *            the levels to count. All levels are counted when null or
+     *            empty.
+     */
+    public long count(Set<LogLevel> levels) {
+        boolean[] includes = toIncludes(levels);
+        long count = 0;
+        for (int i = 0; i < blockCount; i++) {
+            count += count(i, includes);
+        }
+        return count;
+    }
+
+    /**
+     * Reads a page of logs
+     * 
+     * @param offset
+     *            the number of logs at the requested levels to skip
+     * @param limit
+     *            the maximum number of logs to return
+     * @param levels
+     *            the levels to return. All levels are returned when null or
+     *            empty.
+     */
+    public List<ExecutionStepLog> read(long offset, int limit, Set<LogLevel> levels) throws IOException {
+        boolean[] includes = toIncludes(levels);
+        List<ExecutionStepLog> logs = new ArrayList<>();
+        int block = 0;
+        while (block < blockCount && offset >= count(block, includes)) {
+            offset -= count(block++, includes);
+        }
+        read(block, offset, limit, includes, logs);
+        return logs;
+    }
+
+    /**
+     * Reads the last logs at the requested levels, oldest first
+     * 
+     * @param limit
+     *            the maximum number of logs to return
+     * @param levels
+     *            the levels to return. All levels are returned when null or
+     *            empty.
+     */
+    public List<ExecutionStepLog> tail(int limit, Set<LogLevel> levels) throws IOException {
+        boolean[] includes = toIncludes(levels);
+        List<ExecutionStepLog> logs = new ArrayList<>();
+        int block = blockCount;
+        long found = 0;
+        while (block > 0 && found < limit) {
+            found += count(--block, includes);
+        }
+        read(block, Math.max(0, found - limit), limit, includes, logs);
+        return logs;
+    }
+
+    /**
+     * Hands every log at the requested levels to the consumer one block at a
+     * time, without holding more than a block in memory
+     */
+    public void scan(Set<LogLevel> levels, Consumer<ExecutionStepLog> consumer) throws IOException {
+        boolean[] includes = toIncludes(levels);
+        List<ExecutionStepLog> logs = new ArrayList<>();
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "r")) {
+            Inflater inflater = new Inflater();
+            try {
+                for (int block = 0; block < blockCount; block++) {
+                    if (count(block, includes) > 0) {
+                        readBlock(file, inflater, block, 0, Integer.MAX_VALUE, includes, logs);
+                        logs.forEach(consumer);
+                        logs.clear();
+                    }
+                }
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    protected void read(int block, long skip, int limit, boolean[] includes, List<ExecutionStepLog> logs) throws IOException {
+        if (block < blockCount && limit > 0) {
+            try (RandomAccessFile file = new RandomAccessFile(logFile, "r")) {
+                Inflater inflater = new Inflater();
+                try {
+                    for (; block < blockCount && logs.size() < limit; block++) {
+                        int count = count(block, includes);
+                        if (count > skip) {
+                            readBlock(file, inflater, block, skip, limit, includes, logs);
+                            skip = 0;
+                        } else {
+                            skip -= count;
+                        }
+                    }
+                } finally {
+                    inflater.end();
+                }
+            }
+        }
+    }
+
+    protected void readBlock(RandomAccessFile file, Inflater inflater, int block, long skip, int limit, boolean[] includes,
+            List<ExecutionStepLog> logs) throws IOException {
+        byte[] compressed = new byte[compressedLengths[block]];
+        file.seek(offsets[block]);
+        file.readFully(compressed);
+        byte[] uncompressed = new byte[uncompressedLengths[block]];
+        try {
+            inflater.reset();
+            inflater.setInput(compressed);
+            int length = 0;
+            while (length < uncompressed.length && !inflater.finished()) {
+                length += inflater.inflate(uncompressed, length, uncompressed.length - length);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Block " + block + " of " + logFile.getName() + " is corrupt", e);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(uncompressed));
+        long recordNumber = firstRecords[block];
+        for (int records = recordCount(block); records > 0 && logs.size() < limit; records--) {
+            LogLevel level = LEVELS[in.readByte()];
+            long createTime = in.readLong();
+            int length = in.readInt();
+            recordNumber++;
+            if (includes[level.ordinal()]) {
+                if (skip > 0) {
+                    skip--;
+                    in.skipBytes(length);
+                } else {
+                    byte[] text = new byte[length];
+                    in.readFully(text);
+                    ExecutionStepLog stepLog = new ExecutionStepLog();
+                    stepLog.setId(Long.toString(recordNumber));
+                    stepLog.setExecutionStepId(executionStepId);
+                    stepLog.setLevel(level.name());
+                    stepLog.setCreateTime(new Date(createTime));
+                    stepLog.setLogText(new String(text, UTF8));
+                    logs.add(stepLog);
+                }
+            } else {
+                in.skipBytes(length);
+            }
+        }
+    }
+
+    protected int recordCount(int block) {
+        int count = 0;
+        for (int levelCount : levelCounts[block]) {
+            count += levelCount;
+        }
+        return count;
+    }
+
+    protected int count(int block, boolean[] includes) {
+        int count = 0;
+        for (int i = 0; i < includes.length; i++) {
+            if (includes[i]) {
+                count += levelCounts[block][i];
+            }
+        }
+        return count;
+    }
+
+    protected static boolean[] toIncludes(Set<LogLevel> levels) {
+        boolean[] includes = new boolean[LEVELS.length];
+        for (LogLevel level : LEVELS) {
+            includes[level.ordinal()] = levels == null || levels.isEmpty() || levels.contains(level);
+        }
+        return includes;
+    }
+
+}
@@ -0,0 +1,235 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.persist;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.zip.Deflater;
+
+import org.jumpmind.metl.core.model.ExecutionStepLog;
+import org.jumpmind.metl.core.runtime.LogLevel;
+
+/**
+ * Appends step logs to an execution step log file.
+ * <p>
+ * Logs are collected into a block that is compressed and appended to the log
+ * file when it reaches the block size or when the writer is flushed. Once the
+ * block is on disk, a fixed size entry is appended to the index file with the
+ * block's offset and length, the number of the block's first record and a
+ * count of the block's records for each {@link LogLevel}. Readers only look at
+ * blocks that have an index entry, so they never see a partly written block.
+ * See {@link ExecutionStepLogReader}.
+ */
+public class ExecutionStepLogWriter implements Closeable {
+
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    static final String INDEX_SUFFIX = ".idx";
+
+    static final LogLevel[] LEVELS = LogLevel.values();
+
+    /*
+     * offset, compressed length, uncompressed length, first record and one
+     * count per level
+     */
+    static final int INDEX_ENTRY_SIZE = 8 + 4 + 4 + 8 + 4 * LEVELS.length;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    File logFile;
+
+    FileOutputStream logOut;
+
+    FileOutputStream indexOut;
+
+    int blockSize;
+
+    ByteArrayOutputStream block;
+
+    DataOutputStream blockOut;
+
+    int[] levelCounts = new int[LEVELS.length];
+
+    int blockRecordCount;
+
+    long recordCount;
+
+    long offset;
+
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    byte[] compressed = new byte[1024];
+
+    public ExecutionStepLogWriter(File logFile) throws IOException {
+        this(logFile, DEFAULT_BLOCK_SIZE);
+    }
+
+    public ExecutionStepLogWriter(File logFile, int blockSize) throws IOException {
+        this.logFile = logFile;
+        this.blockSize = blockSize;
+        this.block = new ByteArrayOutputStream(blockSize + 1024);
+        this.blockOut = new DataOutputStream(block);
+        File indexFile = getIndexFile(logFile);
+        recover(indexFile);
+        this.logOut = new FileOutputStream(logFile, true);
+        this.indexOut = new FileOutputStream(indexFile, true);
+    }
+
+    public static File getIndexFile(File logFile) {
+        return new File(logFile.getParentFile(), logFile.getName() + INDEX_SUFFIX);
+    }
+
+    /*
+     * Continue after the last indexed block of an existing log. Anything that
+     * was written past it did not make it into the index and is dropped.
+     */
+    protected void recover(File indexFile) throws IOException {
+        long entries = indexFile.exists() ? indexFile.length() / INDEX_ENTRY_SIZE : 0;
+        if (entries > 0) {
+            try (RandomAccessFile index = new RandomAccessFile(indexFile, "rw")) {
+                index.seek((entries - 1) * INDEX_ENTRY_SIZE);
+                long lastOffset = index.readLong();
+                int lastLength = index.readInt();
+                index.readInt();
+                long lastFirstRecord = index.readLong();
+                int lastRecordCount = 0;
+                for (int i = 0; i < LEVELS.length; i++) {
+                    lastRecordCount += index.readInt();
+                }
+                index.setLength(entries * INDEX_ENTRY_SIZE);
+                offset = lastOffset + lastLength;
+                recordCount = lastFirstRecord + lastRecordCount;
+            }
+        } else if (indexFile.exists()) {
+            indexFile.delete();
+        }
+
+        if (logFile.exists() && logFile.length() != offset) {
+            try (RandomAccessFile log = new RandomAccessFile(logFile, "rw")) {
+                log.setLength(offset);
+            }
+        }
+    }
+
+    public void write(ExecutionStepLog stepLog) throws IOException {
+        Date createTime = stepLog.getCreateTime();
+        write(toLevel(stepLog.getLevel()), createTime != null ? createTime.getTime() : 0, stepLog.getLogText());
+    }
+
+    public void write(LogLevel level, long createTime, String logText) throws IOException {
+        byte[] text = logText != null ? logText.getBytes(UTF8) : new byte[0];
+        blockOut.writeByte(level.ordinal());
+        blockOut.writeLong(createTime);
+        blockOut.writeInt(text.length);
+        blockOut.write(text);
+        levelCounts[level.ordinal()]++;
+        blockRecordCount++;
+        if (block.size() >= blockSize) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Writes the current block, even if it is not full, so that readers can see
+     * everything that has been written so far
+     */
+    public void flush() throws IOException {
+        writeBlock();
+    }
+
+    protected void writeBlock() throws IOException {
+        if (blockRecordCount > 0) {
+            byte[] uncompressed = block.toByteArray();
+            deflater.reset();
+            deflater.setInput(uncompressed);
+            deflater.finish();
+            int compressedLength = 0;
+            while (!deflater.finished()) {
+                if (compressedLength == compressed.length) {
+                    byte[] larger = new byte[compressed.length * 2];
+                    System.arraycopy(compressed, 0, larger, 0, compressedLength);
+                    compressed = larger;
+                }
+                compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+            }
+            logOut.write(compressed, 0, compressedLength);
+
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+            entry.putLong(offset);
+            entry.putInt(compressedLength);
+            entry.putInt(uncompressed.length);
+            entry.putLong(recordCount);
+            for (int i = 0; i < levelCounts.length; i++) {
+                entry.putInt(levelCounts[i]);
+                levelCounts[i] = 0;
+            }
+            indexOut.write(entry.array());
+
+            offset += compressedLength;
+            recordCount += blockRecordCount;
+            blockRecordCount = 0;
+            block.reset();
+        }
+    }
+
+    /**
+     * @return the number of records written, including those that have not
+     *         been flushed yet
+     */
+    public long getRecordCount() {
+        return recordCount + blockRecordCount;
+    }
+
+    public File getLogFile() {
+        return logFile;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writeBlock();
+        } finally {
+            deflater.end();
+            try {
+                logOut.close();
+            } finally {
+                indexOut.close();
+            }
+        }
+    }
+
+    public static LogLevel toLevel(String level) {
+        try {
+            return level != null ? LogLevel.valueOf(level) : LogLevel.INFO;
+        } catch (IllegalArgumentException e) {
+            return LogLevel.INFO;
+        }
+    }
+
+}
@@ -21,6 +21,8 @@
 package org.jumpmind.metl.core.persist;
 
 import java.io.File;
+import java.io.Writer;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -33,11 +35,14 @@ import org.jumpmind.metl.core.model.Execution;
 import org.jumpmind.metl.core.model.ExecutionStep;
 import org.jumpmind.metl.core.model.ExecutionStepLog;
 import org.jumpmind.metl.core.runtime.IExecutionTracker;
+import org.jumpmind.metl.core.runtime.LogLevel;
 
 public interface IExecutionService {
 
     public void save(AbstractObject object);
 
+    public void save(Collection<? extends AbstractObject> objects);
+
     public List<Execution> findExecutions(Map<String, Object> params, int limit);
 
     public Execution findExecution(String id);
@@ -49,6 +54,29 @@ public interface IExecutionService {
     public List<ExecutionStepLog> findExecutionStepLogs(String executionStepId, int limit);
     
     public List<ExecutionStepLog> findExecutionStepLogs(Set<String> executionStepIds, int limit);
+
+    /**
+     * Reads a page of a step's logs
+     * 
+     * @param offset
+     *            the number of logs at the requested levels to skip
+     * @param levels
+     *            the levels to return. All levels are returned when null or
+     *            empty.
+     */
+    public List<ExecutionStepLog> findExecutionStepLogs(String executionStepId, long offset, int limit, Set<LogLevel> levels);
+
+    /**
+     * Reads the last logs of a step, oldest first
+     */
+    public List<ExecutionStepLog> findLastExecutionStepLogs(String executionStepId, int limit, Set<LogLevel> levels);
+
+    public long countExecutionStepLogs(String executionStepId, Set<LogLevel> levels);
+
+    /**
+     * Writes a step's logs as csv
+     */
+    public void exportExecutionStepLog(String executionStepId, Writer writer);
     
     public void markAbandoned(String agentId);
     
@@ -57,6 +85,12 @@ public interface IExecutionService {
     public List<String> findExecutedFlowIds();
 
     public File getExecutionStepLog(String executionStepId);
+
+    /**
+     * @return what the last run of the execution purge did for each execution
+     *         status
+     */
+    public Collection<ExecutionPurgeStatistics> getLastPurgeStatistics();
     
     public IExecutionTracker getExecutionTracker(ExecutorService threadService, IExecutionService executionService, 
             Agent agent, AgentProjectVersionFlowDeployment deployment, String userId, Map<String, String> flowParameters);
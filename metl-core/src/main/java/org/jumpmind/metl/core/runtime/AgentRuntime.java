@@ -34,6 +34,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledFuture;
 
@@ -65,6 +66,7 @@ import org.jumpmind.metl.core.runtime.component.IComponentDeploymentListener;
 import org.jumpmind.metl.core.runtime.component.IComponentRuntimeFactory;
 import org.jumpmind.metl.core.runtime.component.Results;
 import org.jumpmind.metl.core.runtime.flow.FlowRuntime;
+import org.jumpmind.metl.core.runtime.flow.FlowRuntimeTemplate;
 import org.jumpmind.metl.core.runtime.resource.IResourceRuntime;
 import org.jumpmind.metl.core.runtime.subscribe.ISubscribeManager;
 import org.jumpmind.metl.core.runtime.subscribe.ISubscribeManagerAware;
@@ -109,6 +111,8 @@ public class AgentRuntime {
 
     ExecutorService flowStepsExecutionThreads;
 
+    ExecutorService flowStepsSharedThreads;
+
     ThreadPoolTaskScheduler flowExecutionScheduler;
 
     ScheduledFuture<?> agentRequestHandler;
@@ -121,6 +125,12 @@ public class AgentRuntime {
 
     Map<AgentDeploy, List<FlowRuntime>> runningFlows = Collections.synchronizedMap(new HashMap<>());
 
+    /*
+     * Built the first time a deployment is executed by createFlowRuntime and
+     * dropped when the deployment is deployed again or stopped
+     */
+    Map<AgentDeploy, FlowRuntimeTemplate> flowRuntimeTemplates = new ConcurrentHashMap<>();
+
     public AgentRuntime(Agent agent, IOperationsService operationsService, IConfigurationService configurationService,
             IExecutionService executionService, IComponentRuntimeFactory componentFactory, IDefinitionFactory definitionFactory,
             IHttpRequestMappingRegistry httpRequestMappingRegistry, ISubscribeManager subscribeManager) {
@@ -179,6 +189,10 @@ public class AgentRuntime {
             final String namePrefix = LogUtils.normalizeName(agentName);
 
             this.flowStepsExecutionThreads = ThreadUtils.createUnboundedThreadPool(namePrefix);
+            if (agent.isSharedStepThreads()) {
+                log.info("Agent '{}' will run flow steps on a shared pool of {} threads", agent, agent.getStepThreadCount());
+                this.flowStepsSharedThreads = ThreadUtils.createWorkStealingPool(namePrefix + "-step", agent.getStepThreadCount());
+            }
 
             this.flowExecutionScheduler = new ThreadPoolTaskScheduler();
             this.flowExecutionScheduler.setDaemon(true);
@@ -264,6 +278,11 @@ public class AgentRuntime {
                 this.flowStepsExecutionThreads = null;
             }
 
+            if (flowStepsSharedThreads != null) {
+                this.flowStepsSharedThreads.shutdownNow();
+                this.flowStepsSharedThreads = null;
+            }
+
             Collection<IResourceRuntime> resourceCollection = deployedResources.values();
             for (IResourceRuntime resource : resourceCollection) {
                 log.info("Stopping the {} resource on the {} agent", resource.getResource().getName(), agent.getName());
@@ -271,6 +290,8 @@ public class AgentRuntime {
             }
             
             deployedResources.clear();
+            
+            flowRuntimeTemplates.clear();
 
             log.info("Agent '{}' has been stopped", agent);
         }
@@ -356,6 +377,7 @@ public class AgentRuntime {
                 deployment.setStatus(DeploymentStatus.ENABLED.name());
                 deployment.setMessage("");
                 deployed.add(agentProjectVersionFlowDeployment);
+                flowRuntimeTemplates.remove(deployment);
                 log.info("Flow '{}' has been deployed", deployment.getName());
             } catch (Exception e) {
                 log.warn("Failed to start '{}'", deployment.getName(), e);
@@ -486,9 +508,33 @@ public class AgentRuntime {
 
     public FlowRuntime createFlowRuntime(String userId, AgentDeploy deployment, Map<String, String> runtimeParameters) throws Exception {
         String executionId = createExecutionId();
-        return new FlowRuntime(executionId, userId, findDeployed(deployment), agent, componentRuntimeFactory, definitionFactory,
-                flowStepsExecutionThreads, operationsService, configurationService, executionService, deployedResources, null, globalSettings,
-                runtimeParameters);
+        FlowRuntime flowRuntime = null;
+        if (agent.isAutoRefresh()) {
+            flowRuntime = new FlowRuntime(executionId, userId, findDeployed(deployment), agent, componentRuntimeFactory,
+                    definitionFactory, flowStepsExecutionThreads, operationsService, configurationService, executionService,
+                    deployedResources, null, globalSettings, runtimeParameters);
+        } else {
+            flowRuntime = new FlowRuntime(executionId, userId, getFlowRuntimeTemplate(deployment), agent, componentRuntimeFactory,
+                    definitionFactory, flowStepsExecutionThreads, configurationService, executionService, deployedResources, null,
+                    globalSettings, runtimeParameters);
+        }
+        flowRuntime.setStepExecutor(flowStepsSharedThreads);
+        return flowRuntime;
+    }
+
+    protected FlowRuntimeTemplate getFlowRuntimeTemplate(AgentDeploy deployment) {
+        AgentProjectVersionFlowDeployment current = findDeployed(deployment);
+        FlowRuntimeTemplate template = flowRuntimeTemplates.computeIfAbsent(deployment,
+                d -> new FlowRuntimeTemplate(current, definitionFactory, configurationService));
+        /*
+         * a template built while the deployment was being deployed again can
+         * be for the flow that was replaced
+         */
+        if (template.getDeployment() != current) {
+            template = new FlowRuntimeTemplate(current, definitionFactory, configurationService);
+            flowRuntimeTemplates.put(deployment, template);
+        }
+        return template;
     }
 
     public Results execute(String userId, AgentDeploy deployment, Map<String, String> runtimeParameters) throws Exception {
@@ -507,6 +553,8 @@ public class AgentRuntime {
     }
 
     protected void stop(AgentDeploy deployment, DeploymentStatus nextStatus) {
+        flowRuntimeTemplates.remove(deployment);
+
         ScheduledFuture<?> future = scheduledDeployments.get(deployment);
         if (future != null) {
             future.cancel(true);
@@ -638,6 +686,7 @@ public class AgentRuntime {
                 flowRuntime = new FlowRuntime(executionId, userId, deployment, agent, componentRuntimeFactory, definitionFactory,
                         flowStepsExecutionThreads, operationsService, configurationService, executionService, deployedResources,
                         notifications, globalSettings, runtimeParameters);
+                flowRuntime.setStepExecutor(flowStepsSharedThreads);
                 addToRunning(deployment.getAgentDeployment(), flowRuntime);
                 flowRuntime.execute();
             } catch (Exception e) {
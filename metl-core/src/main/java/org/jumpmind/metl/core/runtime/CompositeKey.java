@@ -0,0 +1,82 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A key made from the values of one or more attributes of a row. Values keep
+ * their types and are hashed and compared directly, so no string is built for
+ * the key and values like "ab" + "c" and "a" + "bc" do not collide.
+ */
+public final class CompositeKey implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    final Object[] values;
+
+    final int hash;
+
+    public CompositeKey(Object... values) {
+        this.values = values;
+        this.hash = Arrays.deepHashCode(values);
+    }
+
+    public static CompositeKey of(EntityData row, String[] attributeIds) {
+        Object[] values = new Object[attributeIds.length];
+        for (int i = 0; i < attributeIds.length; i++) {
+            values[i] = row.get(attributeIds[i]);
+        }
+        return new CompositeKey(values);
+    }
+
+    public Object get(int index) {
+        return values[index];
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        } else if (obj instanceof CompositeKey) {
+            CompositeKey other = (CompositeKey) obj;
+            return hash == other.hash && Arrays.deepEquals(values, other.values);
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.deepToString(values);
+    }
+
+}
@@ -20,23 +20,65 @@
  */
 package org.jumpmind.metl.core.runtime;
 
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
 import org.jumpmind.metl.core.util.NameValue;
-import org.jumpmind.util.LinkedCaseInsensitiveMap;
 
-public class EntityData extends LinkedCaseInsensitiveMap<Object> {
+/**
+ * A row of entity values keyed by attribute id. Keys are case insensitive.
+ * <p>
+ * Values are stored in an array that is indexed by an
+ * {@link EntityDataLayout}. Components that create many rows should create
+ * them from one shared layout so that each row only carries its values.
+ * Copies share the layout of the row they were copied from.
+ */
+public class EntityData extends AbstractMap<String, Object> implements Serializable, Cloneable {
 
     private static final long serialVersionUID = 1L;
 
+    private static final Object[] EMPTY = new Object[0];
+
+    private static final int ROW_OVERHEAD_BYTES = 48;
+
     public enum ChangeType {
         ADD, CHG, DEL
     };
 
+    /**
+     * Stands in for a null value so that a null slot means the key is not
+     * present
+     */
+    enum NullValue {
+        INSTANCE
+    }
+
     ChangeType changeType = ChangeType.ADD;
 
+    EntityDataLayout layout;
+
+    Object[] values;
+
+    int size;
+
     public EntityData() {
+        this.layout = new EntityDataLayout();
+        this.values = EMPTY;
+    }
+
+    public EntityData(EntityDataLayout layout) {
+        this.layout = layout;
+        this.values = layout.size() > 0 ? new Object[layout.size()] : EMPTY;
     }
 
     public EntityData(NameValue... nameValues) {
+        this();
         if (nameValues != null) {
             for (NameValue nameValue : nameValues) {
                 put(nameValue.getName(), nameValue.getValue());
@@ -48,6 +90,18 @@ public class EntityData extends LinkedCaseInsensitiveMap<Object> {
         return (EntityData) this.clone();
     }
 
+    @Override
+    public Object clone() {
+        try {
+            EntityData copy = (EntityData) super.clone();
+            layout.share();
+            copy.values = values.clone();
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public ChangeType getChangeType() {
         return changeType;
     }
@@ -56,4 +110,211 @@ public class EntityData extends LinkedCaseInsensitiveMap<Object> {
         this.changeType = changeType;
     }
 
+    public EntityDataLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * @return A rough estimate of how much heap this row takes up. Used by
+     *         components that decide when to spill rows to disk.
+     */
+    public long estimateSize() {
+        long estimate = ROW_OVERHEAD_BYTES + 8 * values.length;
+        for (Object value : values) {
+            if (value instanceof String) {
+                estimate += 40 + 2 * ((String) value).length();
+            } else if (value instanceof byte[]) {
+                estimate += 16 + ((byte[]) value).length;
+            } else if (value != null && value != NullValue.INSTANCE) {
+                estimate += 24;
+            }
+        }
+        return estimate;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int index = layout.indexOf(key);
+        return index >= 0 && index < values.length && values[index] != null;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int index = layout.indexOf(key);
+        return index >= 0 && index < values.length ? unwrap(values[index]) : null;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        return putAt(layout.indexOfOrAdd(key), value);
+    }
+
+    /**
+     * Puts a value into a slot that was resolved ahead of time with
+     * {@link EntityDataLayout#indexOfOrAdd(String)} on this row's layout.
+     * Components that build many rows from one layout use this to skip the
+     * key lookup for every value.
+     */
+    public Object putAt(int index, Object value) {
+        if (index >= values.length) {
+            int length = Math.max(index + 1, Math.max(layout.size(), values.length + (values.length >> 1)));
+            values = Arrays.copyOf(values, Math.max(length, 4));
+        }
+        Object old = values[index];
+        if (old == null) {
+            size++;
+        }
+        values[index] = value != null ? value : NullValue.INSTANCE;
+        return unwrap(old);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int index = layout.indexOf(key);
+        if (index >= 0 && index < values.length) {
+            return removeAt(index);
+        } else {
+            return null;
+        }
+    }
+
+    protected Object removeAt(int index) {
+        Object old = values[index];
+        if (old != null) {
+            values[index] = null;
+            size--;
+        }
+        return unwrap(old);
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new EntrySet();
+    }
+
+    private static Object unwrap(Object value) {
+        return value == NullValue.INSTANCE ? null : value;
+    }
+
+    class EntrySet extends AbstractSet<Map.Entry<String, Object>> {
+
+        @Override
+        public Iterator<Map.Entry<String, Object>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            EntityData.this.clear();
+        }
+    }
+
+    class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+
+        int next = advance(0);
+
+        int current = -1;
+
+        int advance(int from) {
+            Object[] values = EntityData.this.values;
+            while (from < values.length && values[from] == null) {
+                from++;
+            }
+            return from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < values.length;
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            current = next;
+            next = advance(next + 1);
+            return new Entry(current);
+        }
+
+        @Override
+        public void remove() {
+            if (current < 0) {
+                throw new IllegalStateException();
+            }
+            removeAt(current);
+            current = -1;
+        }
+    }
+
+    class Entry implements Map.Entry<String, Object> {
+
+        int index;
+
+        Entry(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getKey() {
+            return layout.getKey(index);
+        }
+
+        @Override
+        public Object getValue() {
+            return unwrap(values[index]);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            Object old = values[index];
+            values[index] = value != null ? value : NullValue.INSTANCE;
+            return unwrap(old);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object key = getKey();
+            Object value = getValue();
+            return key.equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = getValue();
+            return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+
 }
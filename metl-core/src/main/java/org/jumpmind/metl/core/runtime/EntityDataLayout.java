@@ -0,0 +1,144 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assigns attribute ids to slot indexes for {@link EntityData}. Rows that are
+ * built from the same layout only carry an array of values; the key lookup
+ * structure is resolved once and shared between them.
+ * <p>
+ * A layout only ever grows. Until it is shared it is modified in place by the
+ * row that owns it. After it is shared new keys are added copy on write so
+ * that rows on other threads can keep reading it without locking.
+ * <p>
+ * Keys are case insensitive, like they were when {@link EntityData} was backed
+ * by a case insensitive map.
+ */
+public class EntityDataLayout implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    volatile Map<String, Integer> slots;
+
+    volatile String[] keys;
+
+    volatile int size;
+
+    volatile boolean shared;
+
+    public EntityDataLayout() {
+        this(false);
+    }
+
+    /**
+     * @param shared
+     *            Set to true when the layout will be used by more than one row
+     *            from the start, for example by a component that creates all
+     *            of its output rows from the same layout
+     */
+    public EntityDataLayout(boolean shared) {
+        this.slots = new HashMap<>();
+        this.keys = new String[8];
+        this.shared = shared;
+    }
+
+    public int indexOf(Object key) {
+        if (key instanceof String) {
+            Map<String, Integer> slots = this.slots;
+            Integer index = slots.get(key);
+            if (index == null) {
+                index = slots.get(((String) key).toLowerCase());
+            }
+            return index != null ? index : -1;
+        } else {
+            return -1;
+        }
+    }
+
+    public int indexOfOrAdd(String key) {
+        int index = indexOf(key);
+        return index >= 0 ? index : add(key);
+    }
+
+    protected int add(String key) {
+        if (shared) {
+            synchronized (this) {
+                int index = indexOf(key);
+                if (index < 0) {
+                    index = size;
+                    String[] keys = this.keys;
+                    if (index >= keys.length) {
+                        keys = Arrays.copyOf(keys, keys.length * 2);
+                    }
+                    keys[index] = key;
+                    Map<String, Integer> slots = new HashMap<>(this.slots);
+                    addSlot(slots, key, index);
+                    this.keys = keys;
+                    this.size = index + 1;
+                    this.slots = slots;
+                }
+                return index;
+            }
+        } else {
+            int index = size;
+            if (index >= keys.length) {
+                keys = Arrays.copyOf(keys, keys.length * 2);
+            }
+            keys[index] = key;
+            addSlot(slots, key, index);
+            size = index + 1;
+            return index;
+        }
+    }
+
+    private void addSlot(Map<String, Integer> slots, String key, int index) {
+        Integer slot = index;
+        slots.put(key, slot);
+        String lowerCaseKey = key.toLowerCase();
+        if (!lowerCaseKey.equals(key)) {
+            slots.put(lowerCaseKey, slot);
+        }
+    }
+
+    public String getKey(int index) {
+        return keys[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isShared() {
+        return shared;
+    }
+
+    protected void share() {
+        if (!shared) {
+            shared = true;
+        }
+    }
+
+}
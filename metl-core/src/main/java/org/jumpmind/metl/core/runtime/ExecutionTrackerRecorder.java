@@ -59,11 +59,16 @@ public class ExecutionTrackerRecorder extends ExecutionTrackerLogger {
 
     public ExecutionTrackerRecorder(Agent agent, AgentProjectVersionFlowDeployment agentDeployment, ExecutorService threadService,
             IExecutionService executionService, String userId, String parameters) {
+        this(agent, agentDeployment, threadService, new AsyncRecorder(executionService), userId, parameters);
+    }
+
+    public ExecutionTrackerRecorder(Agent agent, AgentProjectVersionFlowDeployment agentDeployment, ExecutorService threadService,
+            AsyncRecorder recorder, String userId, String parameters) {
         super(agentDeployment);
         this.agent = agent;
         this.userId = userId;
         this.parameters = parameters;
-        this.recorder = new AsyncRecorder(executionService);
+        this.recorder = recorder;
         threadService.execute(this.recorder);
     }
 
@@ -168,17 +173,7 @@ public class ExecutionTrackerRecorder extends ExecutionTrackerLogger {
         ExecutionStep step = getExecutionStep(threadNumber, context);
         Date lastUpdateTime = lastStatUpdate.get(step);
         if (lastUpdateTime == null || (System.currentTimeMillis() - lastUpdateTime.getTime() > TIME_BETWEEN_MESSAGE_UPDATES_IN_MS)) {
-            ComponentStatistics stats = context.getComponentStatistics();
-            if (stats != null) {
-                step.setEntitiesProcessed(stats.getNumberEntitiesProcessed(threadNumber));
-                step.setMessagesReceived(stats.getNumberInboundMessages(threadNumber));
-                step.setMessagesProduced(stats.getNumberOutboundMessages(threadNumber));
-                step.setPayloadProduced(stats.getNumberOutboundPayload(threadNumber));
-                step.setPayloadReceived(stats.getNumberInboundPayload(threadNumber));
-                step.setHandleDuration(stats.getTimeSpentInHandle(threadNumber));
-                step.setQueueDuration(stats.getTimeSpentWaiting(threadNumber));
-                lastStatUpdate.put(step, new Date());
-            }
+            updateStatistics(step, threadNumber, context.getComponentStatistics());
             step.setLastUpdateTime(new Date());
             if (!deployment.getAgentDeployment().getLogLevel().equals(LogLevel.OFF.toString())) {
                this.recorder.record(step);
@@ -186,6 +181,20 @@ public class ExecutionTrackerRecorder extends ExecutionTrackerLogger {
         }
     }
 
+    protected void updateStatistics(ExecutionStep step, int threadNumber, ComponentStatistics stats) {
+        if (stats != null) {
+            ComponentStatistics.Snapshot snapshot = stats.snapshot(threadNumber);
+            step.setEntitiesProcessed(snapshot.getNumberEntitiesProcessed());
+            step.setMessagesReceived(snapshot.getNumberInboundMessages());
+            step.setMessagesProduced(snapshot.getNumberOutboundMessages());
+            step.setPayloadProduced(snapshot.getNumberOutboundPayload());
+            step.setPayloadReceived(snapshot.getNumberInboundPayload());
+            step.setHandleDuration(snapshot.getTimeSpentInHandle());
+            step.setQueueDuration(snapshot.getTimeSpentWaiting());
+            lastStatUpdate.put(step, new Date());
+        }
+    }
+
     @Override
     public void afterHandle(int threadNumber, ComponentContext context, Throwable error) {
         super.afterHandle(threadNumber, context, error);
@@ -194,17 +203,7 @@ public class ExecutionTrackerRecorder extends ExecutionTrackerLogger {
 
         if (lastUpdateTime == null || (System.currentTimeMillis() - lastUpdateTime.getTime() > TIME_BETWEEN_MESSAGE_UPDATES_IN_MS)) {
             step.setStatus(error != null ? ExecutionStatus.ERROR.name() : ExecutionStatus.READY.name());
-            ComponentStatistics stats = context.getComponentStatistics();
-            if (stats != null) {
-                step.setEntitiesProcessed(stats.getNumberEntitiesProcessed(threadNumber));
-                step.setMessagesReceived(stats.getNumberInboundMessages(threadNumber));
-                step.setMessagesProduced(stats.getNumberOutboundMessages(threadNumber));
-                step.setPayloadProduced(stats.getNumberOutboundPayload(threadNumber));
-                step.setPayloadReceived(stats.getNumberInboundPayload(threadNumber));
-                step.setHandleDuration(stats.getTimeSpentInHandle(threadNumber));
-                step.setQueueDuration(stats.getTimeSpentWaiting(threadNumber));
-                lastStatUpdate.put(step, new Date());
-            }
+            updateStatistics(step, threadNumber, context.getComponentStatistics());
             step.setLastUpdateTime(new Date());
             if (!deployment.getAgentDeployment().getLogLevel().equals(LogLevel.OFF.toString())) {
                 this.recorder.record(step);
@@ -229,17 +228,7 @@ public class ExecutionTrackerRecorder extends ExecutionTrackerLogger {
             status = ExecutionStatus.DONE;
         }
         step.setStatus(status.name());
-        ComponentStatistics stats = context.getComponentStatistics();
-        if (stats != null) {
-            step.setEntitiesProcessed(stats.getNumberEntitiesProcessed(threadNumber));
-            step.setMessagesReceived(stats.getNumberInboundMessages(threadNumber));
-            step.setMessagesProduced(stats.getNumberOutboundMessages(threadNumber));
-            step.setPayloadProduced(stats.getNumberOutboundPayload(threadNumber));
-            step.setPayloadReceived(stats.getNumberInboundPayload(threadNumber));
-            step.setHandleDuration(stats.getTimeSpentInHandle(threadNumber));
-            step.setQueueDuration(stats.getTimeSpentWaiting(threadNumber));
-            lastStatUpdate.put(step, new Date());
-        }
+        updateStatistics(step, threadNumber, context.getComponentStatistics());
         step.setLastUpdateTime(new Date());
         if (!deployment.getAgentDeployment().getLogLevel().equals(LogLevel.OFF.toString()) || 
                 ExecutionStatus.ERROR.toString().equals(step.getStatus())) {
@@ -29,6 +29,7 @@ import org.jumpmind.metl.core.model.Flow;
 import org.jumpmind.metl.core.model.FlowStep;
 import org.jumpmind.metl.core.runtime.IExecutionTracker;
 import org.jumpmind.metl.core.runtime.resource.IResourceRuntime;
+import org.jumpmind.metl.core.runtime.web.IHttpStreams;
 import org.jumpmind.util.LinkedCaseInsensitiveMap;
 
 public class ComponentContext {
@@ -55,6 +56,8 @@ public class ComponentContext {
     
     Map<Integer, IComponentRuntime> componentRuntimeByThread = new HashMap<>();
     
+    IHttpStreams httpStreams;
+
     boolean startStep = false;
     
     static public final ThreadLocal<String> projectVersionId = new ThreadLocal<>();
@@ -137,4 +140,16 @@ public class ComponentContext {
         return flowVariables;
     }
 
+    public void setHttpStreams(IHttpStreams httpStreams) {
+        this.httpStreams = httpStreams;
+    }
+
+    /**
+     * @return the request and response bodies when the flow was called as a
+     *         web service, otherwise null
+     */
+    public IHttpStreams getHttpStreams() {
+        return httpStreams;
+    }
+
 }
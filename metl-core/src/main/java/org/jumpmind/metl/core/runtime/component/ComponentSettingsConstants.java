@@ -32,6 +32,8 @@ final public class ComponentSettingsConstants {
     public final static String LOG_INPUT = "logInput";
 
     public final static String LOG_OUTPUT = "logOutput";
+
+    public final static String PAYLOAD_HAND_OFF = "payload.hand.off";
     
     public final static String NOTES = "notes";
     
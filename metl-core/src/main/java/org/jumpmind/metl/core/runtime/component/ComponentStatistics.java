@@ -20,128 +20,250 @@
  */
 package org.jumpmind.metl.core.runtime.component;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
 
+/**
+ * Counts what a step has done for each of its threads.
+ * <p>
+ * These counters are updated for every message and, by most components, for
+ * every row, so each thread number gets its own slot of primitive counters.
+ * A slot is padded so that two threads never update the same cache line, and
+ * its counters are updated atomically without boxing or locking. Slots are
+ * created the first time a thread number is seen and are never replaced, so
+ * growing the table does not lose any counts.
+ */
 public class ComponentStatistics {
 
-    private Map<Integer, Integer> numberInboundMessages = new ConcurrentHashMap<>();
-    private Map<Integer, Integer> numberOutboundMessages = new ConcurrentHashMap<>();
-    private Map<Integer, Integer> numberEntitiesProcessed = new ConcurrentHashMap<>();
-    private Map<Integer, Integer> numberInboundPayload = new ConcurrentHashMap<>();
-    private Map<Integer, Integer> numberOutboundPayload = new ConcurrentHashMap<>();
-    private Map<Integer, Long> timeSpentInHandle = new ConcurrentHashMap<>();
-    private Map<Integer, Long> timeSpentWaiting = new ConcurrentHashMap<>();
-    
-    
+    static final int INBOUND_MESSAGES = 0;
+    static final int OUTBOUND_MESSAGES = 1;
+    static final int ENTITIES_PROCESSED = 2;
+    static final int INBOUND_PAYLOAD = 3;
+    static final int OUTBOUND_PAYLOAD = 4;
+    static final int TIME_SPENT_IN_HANDLE = 5;
+    static final int TIME_SPENT_WAITING = 6;
+
+    static final int COUNTERS = 7;
+
+    /*
+     * Longs on either side of the counters to keep them off of the cache lines
+     * of neighboring slots
+     */
+    static final int PADDING = 8;
+
+    private volatile AtomicLongArray[] slots;
+
+    public ComponentStatistics() {
+        this(1);
+    }
+
+    /**
+     * @param threadCount
+     *            the number of threads the step runs with. Thread numbers start
+     *            at 1.
+     */
+    public ComponentStatistics(int threadCount) {
+        AtomicLongArray[] slots = new AtomicLongArray[threadCount + 1];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = newSlot();
+        }
+        this.slots = slots;
+    }
+
+    protected static AtomicLongArray newSlot() {
+        return new AtomicLongArray(PADDING + COUNTERS + PADDING);
+    }
+
+    protected AtomicLongArray slot(int thread) {
+        AtomicLongArray[] slots = this.slots;
+        if (thread >= 0 && thread < slots.length) {
+            return slots[thread];
+        } else {
+            return growTo(thread);
+        }
+    }
+
+    protected synchronized AtomicLongArray growTo(int thread) {
+        if (thread < 0) {
+            throw new IllegalArgumentException("Invalid thread number: " + thread);
+        }
+        AtomicLongArray[] slots = this.slots;
+        if (thread >= slots.length) {
+            AtomicLongArray[] grown = new AtomicLongArray[Math.max(thread + 1, slots.length * 2)];
+            System.arraycopy(slots, 0, grown, 0, slots.length);
+            for (int i = slots.length; i < grown.length; i++) {
+                grown[i] = newSlot();
+            }
+            this.slots = slots = grown;
+        }
+        return slots[thread];
+    }
+
+    protected long get(int thread, int counter) {
+        return slot(thread).get(PADDING + counter);
+    }
+
+    protected void add(int thread, int counter, long amount) {
+        slot(thread).getAndAdd(PADDING + counter, amount);
+    }
+
+    protected void set(int thread, int counter, long value) {
+        slot(thread).set(PADDING + counter, value);
+    }
+
+    /**
+     * @return all of a thread's counters read in one pass
+     */
+    public Snapshot snapshot(int thread) {
+        AtomicLongArray slot = slot(thread);
+        long[] values = new long[COUNTERS];
+        for (int i = 0; i < COUNTERS; i++) {
+            values[i] = slot.get(PADDING + i);
+        }
+        return new Snapshot(values);
+    }
+
+    /**
+     * @return the counters summed across all threads
+     */
+    public Snapshot snapshot() {
+        long[] values = new long[COUNTERS];
+        for (AtomicLongArray slot : slots) {
+            for (int i = 0; i < COUNTERS; i++) {
+                values[i] += slot.get(PADDING + i);
+            }
+        }
+        return new Snapshot(values);
+    }
+
     public long getTimeSpentInHandle(int thread) {
-        Long number = timeSpentInHandle.get(thread);
-        return number != null ? number : 0;
+        return get(thread, TIME_SPENT_IN_HANDLE);
     }
     
     public long getTimeSpentWaiting(int thread) {
-        Long number = timeSpentWaiting.get(thread);
-        return number != null ? number : 0;
+        return get(thread, TIME_SPENT_WAITING);
     }
     
     public void incrementTimeSpentInHandle(int thread, long amount) {
         if (amount > 0) {
-            Long number = timeSpentInHandle.get(thread);
-            if (number != null) {
-                number = number + amount;
-            } else {
-                number = amount;
-            }
-            timeSpentInHandle.put(thread, number);
+            add(thread, TIME_SPENT_IN_HANDLE, amount);
         }
     }
 
     public void incrementTimeSpentWaiting(int thread, long amount) {
         if (amount > 0) {
-            Long number = timeSpentWaiting.get(thread);
-            if (number != null) {
-                number = number + amount;
-            } else {
-                number = amount;
-            }
-            timeSpentWaiting.put(thread, number);
+            add(thread, TIME_SPENT_WAITING, amount);
         }
     }
 
     public int getNumberInboundMessages(int thread) {
-        Integer number = numberInboundMessages.get(thread);
-        return number != null ? number : 0;
+        return (int) get(thread, INBOUND_MESSAGES);
     }
 
     public void setNumberInboundMessages(int thread, int numberInboundMessages) {
-        this.numberInboundMessages.put(thread, numberInboundMessages);
+        set(thread, INBOUND_MESSAGES, numberInboundMessages);
     }
 
     public void incrementInboundMessages(int thread) {
-        this.numberInboundMessages.put(thread, getNumberInboundMessages(thread)+1);
+        add(thread, INBOUND_MESSAGES, 1);
     }
 
     public void setNumberOutboundMessages(int thread, int numberOutboundMessages) {
-        this.numberOutboundMessages.put(thread, numberOutboundMessages);
+        set(thread, OUTBOUND_MESSAGES, numberOutboundMessages);
     }
 
     public int getNumberOutboundMessages(int thread) {
-        Integer number = numberOutboundMessages.get(thread);
-        return number != null ? number : 0;
+        return (int) get(thread, OUTBOUND_MESSAGES);
     }
 
     public void incrementOutboundMessages(int thread) {
-        this.numberOutboundMessages.put(thread, getNumberOutboundMessages(thread)+1);
+        add(thread, OUTBOUND_MESSAGES, 1);
     }
 
     public void setNumberEntitiesProcessed(int thread, int numberEntitiesProcessed) {
-        this.numberEntitiesProcessed.put(thread, getNumberEntitiesProcessed(thread)+1);
+        set(thread, ENTITIES_PROCESSED, numberEntitiesProcessed);
     }
 
     public int getNumberEntitiesProcessed(int thread) {
-        Integer number = numberEntitiesProcessed.get(thread);
-        return number != null ? number : 0;
+        return (int) get(thread, ENTITIES_PROCESSED);
     }
 
     public void incrementNumberEntitiesProcessed(int thread) {
-        this.numberEntitiesProcessed.put(thread, getNumberEntitiesProcessed(thread)+1);
+        add(thread, ENTITIES_PROCESSED, 1);
     }
 
     public void incrementNumberEntitiesProcessed(int thread, int count) {
-        this.numberEntitiesProcessed.put(thread, getNumberEntitiesProcessed(thread)+count);
+        add(thread, ENTITIES_PROCESSED, count);
     }
     
     public void setNumberInboundPayload(int thread, int numberInboundPayload) {
-        this.numberInboundPayload.put(thread, getNumberInboundPayload(thread)+1);
+        set(thread, INBOUND_PAYLOAD, numberInboundPayload);
     }
 
     public int getNumberInboundPayload(int thread) {
-        Integer number = numberInboundPayload.get(thread);
-        return number != null ? number : 0;
+        return (int) get(thread, INBOUND_PAYLOAD);
     }
 
     public void incrementNumberInboundPayload(int thread) {
-        this.numberInboundPayload.put(thread, getNumberInboundPayload(thread)+1);
+        add(thread, INBOUND_PAYLOAD, 1);
     }
 
     public void incrementNumberInboundPayload(int thread, int count) {
-        this.numberInboundPayload.put(thread, getNumberInboundPayload(thread)+count);
+        add(thread, INBOUND_PAYLOAD, count);
     }
     
     public void setNumberOutboundPayload(int thread, int numberOutboundPayload) {
-        this.numberOutboundPayload.put(thread, getNumberOutboundPayload(thread)+1);
+        set(thread, OUTBOUND_PAYLOAD, numberOutboundPayload);
     }
 
     public int getNumberOutboundPayload(int thread) {
-        Integer number = numberOutboundPayload.get(thread);
-        return number != null ? number : 0;
+        return (int) get(thread, OUTBOUND_PAYLOAD);
     }
 
     public void incrementNumberOutboundPayload(int thread) {
-        this.numberOutboundPayload.put(thread, getNumberOutboundPayload(thread)+1);
+        add(thread, OUTBOUND_PAYLOAD, 1);
     }
 
     public void incrementNumberOutboundPayload(int thread, int count) {
-        this.numberOutboundPayload.put(thread, getNumberOutboundPayload(thread)+count);
+        add(thread, OUTBOUND_PAYLOAD, count);
+    }
+
+    /**
+     * The counters of a thread, or of all threads, at one point in time
+     */
+    public static class Snapshot {
+
+        private final long[] values;
+
+        Snapshot(long[] values) {
+            this.values = values;
+        }
+
+        public long getNumberInboundMessages() {
+            return values[INBOUND_MESSAGES];
+        }
+
+        public long getNumberOutboundMessages() {
+            return values[OUTBOUND_MESSAGES];
+        }
+
+        public long getNumberEntitiesProcessed() {
+            return values[ENTITIES_PROCESSED];
+        }
+
+        public long getNumberInboundPayload() {
+            return values[INBOUND_PAYLOAD];
+        }
+
+        public long getNumberOutboundPayload() {
+            return values[OUTBOUND_PAYLOAD];
+        }
+
+        public long getTimeSpentInHandle() {
+            return values[TIME_SPENT_IN_HANDLE];
+        }
+
+        public long getTimeSpentWaiting() {
+            return values[TIME_SPENT_WAITING];
+        }
     }
 }
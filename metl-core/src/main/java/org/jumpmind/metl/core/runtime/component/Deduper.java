@@ -20,20 +20,33 @@
  */
 package org.jumpmind.metl.core.runtime.component;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.type.ObjectDataType;
+import org.jumpmind.exception.IoException;
 import org.jumpmind.metl.core.model.Component;
 import org.jumpmind.metl.core.model.ComponentAttribSetting;
 import org.jumpmind.metl.core.model.Model;
 import org.jumpmind.metl.core.model.ModelAttrib;
 import org.jumpmind.metl.core.model.ModelEntity;
+import org.jumpmind.metl.core.runtime.CompositeKey;
 import org.jumpmind.metl.core.runtime.EntityData;
 import org.jumpmind.metl.core.runtime.EntityDataMessage;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.MisconfiguredException;
 import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
+import org.jumpmind.metl.core.util.SpillBuffer;
 import org.jumpmind.properties.TypedProperties;
 
 public class Deduper extends AbstractComponentRuntime {
@@ -51,6 +64,12 @@ public class Deduper extends AbstractComponentRuntime {
     public final static String PRESERVE_RECORD = "preserve.record";
 
     public final static String ATTRIBUTE_DEDUPE_ENABLED = "dedupe.enabled";
+
+    public final static String SEND_FIRST_RECORDS_IMMEDIATELY = "send.first.records.immediately";
+
+    public final static String MEMORY_BUDGET_MB = "memory.budget.mb";
+
+    static final int SPILL_PARTITION_COUNT = 64;
     
     int rowsPerMessage = 1000;
     
@@ -59,10 +78,28 @@ public class Deduper extends AbstractComponentRuntime {
     String dedupeKeyAttribute;
     
     ArrayList<String> dedupeKeyAttributeIdList = new ArrayList<>();
+
+    String[] keyAttributeIds;
     
     String preserveRecord = PRESERVE_FIRST;
 
-    LinkedHashMap<String, EntityData> deduped = new LinkedHashMap<String, EntityData>();
+    boolean sendFirstRecordsImmediately;
+
+    long memoryBudgetBytes;
+
+    long memoryUsed;
+
+    LinkedHashMap<CompositeKey, EntityData> deduped = new LinkedHashMap<CompositeKey, EntityData>();
+
+    Set<CompositeKey> sent = new HashSet<>();
+
+    MVStore sentStore;
+
+    File sentStoreFile;
+
+    MVMap<byte[], Boolean> spilledSent;
+
+    List<SpillBuffer<EntityData>> partitions;
 
     @Override
     public void start() {
@@ -70,14 +107,16 @@ public class Deduper extends AbstractComponentRuntime {
         rowsPerMessage = getComponent().getInt(ROWS_PER_MESSAGE, rowsPerMessage);
         dedupeType = properties.get(DEDUPE_TYPE);
         preserveRecord = properties.get(PRESERVE_RECORD);
+        sendFirstRecordsImmediately = !PRESERVE_LAST.equals(preserveRecord) && properties.is(SEND_FIRST_RECORDS_IMMEDIATELY, false);
+        memoryBudgetBytes = properties.getLong(MEMORY_BUDGET_MB, 0) * 1024 * 1024;
         Model inputModel = this.getComponent().getInputModel();
         if (inputModel == null) {
             throw new MisconfiguredException("The input model is not set and it is required");
         }
         Component component = context.getFlowStep().getComponent();
         
+        List<ModelEntity> entities = new ArrayList<>(inputModel.getModelEntities());
         if (DEDUPE_ATTRIBUTE.equals(dedupeType)) {
-        	List<ModelEntity> entities = new ArrayList<>(inputModel.getModelEntities());
             for (ModelEntity entity : entities) {
                 for (ModelAttrib attribute : entity.getModelAttributes()) {
                 	ComponentAttribSetting matchColumnSetting = component.getSingleAttributeSetting(attribute.getId(),
@@ -95,7 +134,15 @@ public class Deduper extends AbstractComponentRuntime {
 	        	throw new IllegalStateException(
 	    				"At least one attribute must be specified when Dedupe Type of 'ATTRIBUTE' is selected.");
 	        }	
+        } else {
+            for (ModelEntity entity : entities) {
+                for (ModelAttrib attribute : entity.getModelAttributes()) {
+                    dedupeKeyAttributeIdList.add(attribute.getId());
+                }
+            }
         }
+
+        keyAttributeIds = dedupeKeyAttributeIdList.toArray(new String[dedupeKeyAttributeIdList.size()]);
     }
     
     @Override
@@ -103,51 +150,211 @@ public class Deduper extends AbstractComponentRuntime {
         return false;
     }
 
+    @Override
+    public void stop() {
+        clear();
+        super.stop();
+    }
+
     @Override
     public void handle(Message inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
         if (inputMessage instanceof EntityDataMessage) {
             ArrayList<EntityData> payload = ((EntityDataMessage)inputMessage).getPayload();
-            for (EntityData entityData : payload) {
-                String key = "";
+            if (sendFirstRecordsImmediately) {
+                sendFirstRecords(payload, callback);
+            } else if (partitions != null) {
+                partition(payload);
+            } else {
+                dedupe(payload);
+            }
+        }
 
-                if (DEDUPE_ATTRIBUTE.equals(dedupeType)) {
-                	for (String attributeId : dedupeKeyAttributeIdList) {
-                		key += entityData.get(attributeId);
-                	}
+        if (unitOfWorkBoundaryReached) {
+            try {
+                if (partitions != null) {
+                    sendPartitions(callback);
                 } else {
-                	key = entityData.toString();
+                    send(deduped.values().iterator(), callback);
                 }
-                
-                if (!deduped.containsKey(key)) {
-                    getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber);
+            } finally {
+                clear();
+            }
+        }
+    }
+
+    /**
+     * Only the keys of rows that were already sent are held on to
+     */
+    protected void sendFirstRecords(List<EntityData> payload, ISendMessageCallback callback) {
+        ArrayList<EntityData> firstRecords = new ArrayList<EntityData>();
+        for (EntityData entityData : payload) {
+            if (markSent(CompositeKey.of(entityData, keyAttributeIds), entityData)) {
+                firstRecords.add(entityData);
+            }
+        }
+        send(firstRecords.iterator(), callback);
+    }
+
+    /**
+     * @return true if the key had not been sent yet
+     */
+    protected boolean markSent(CompositeKey key, EntityData entityData) {
+        if (spilledSent != null) {
+            return spilledSent.putIfAbsent(ObjectDataType.serialize(key), Boolean.TRUE) == null;
+        } else if (sent.add(key)) {
+            /*
+             * The size of the whole row is used for the key, which overstates
+             * the memory of keys made from a few attributes
+             */
+            memoryUsed += entityData.estimateSize();
+            if (memoryBudgetBytes > 0 && memoryUsed > memoryBudgetBytes) {
+                spillSentKeys();
+            }
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Once the keys of the sent rows no longer fit in memory, they are moved
+     * to an H2 MVStore file so that only a cache of them is held on the heap.
+     * Keys are stored serialized because the store would otherwise serialize
+     * both keys on every comparison.
+     */
+    protected void spillSentKeys() {
+        info("The sent keys exceeded the memory budget of %d bytes. Moving keys to disk", memoryBudgetBytes);
+        try {
+            sentStoreFile = File.createTempFile("dedupe", ".mv.db");
+            sentStoreFile.deleteOnExit();
+        } catch (IOException e) {
+            throw new IoException(e);
+        }
+        sentStore = new MVStore.Builder().fileName(sentStoreFile.getAbsolutePath()).cacheSize(16).open();
+        spilledSent = sentStore.openMap("sent");
+        for (CompositeKey key : sent) {
+            spilledSent.put(ObjectDataType.serialize(key), Boolean.TRUE);
+        }
+        sent.clear();
+        memoryUsed = 0;
+    }
+
+    protected void dedupe(List<EntityData> payload) {
+        for (EntityData entityData : payload) {
+            CompositeKey key = CompositeKey.of(entityData, keyAttributeIds);
+            EntityData existing = deduped.get(key);
+            if (existing == null) {
+                deduped.put(key, entityData);
+                memoryUsed += entityData.estimateSize();
+            } else if (PRESERVE_LAST.equals(preserveRecord)) {
+                // it exists, replace it if the last value is the one to save
+                deduped.put(key, entityData);
+                memoryUsed += entityData.estimateSize() - existing.estimateSize();
+            }
+        }
+
+        if (memoryBudgetBytes > 0 && memoryUsed > memoryBudgetBytes) {
+            startPartitioning();
+        }
+    }
+
+    /**
+     * Once the rows no longer fit in memory, they are hash partitioned by key
+     * into buffers that can be spilled and each partition is deduped on its
+     * own at the end of the unit of work
+     */
+    protected void startPartitioning() {
+        info("The deduped rows exceeded the memory budget of %d bytes. Partitioning rows to disk", memoryBudgetBytes);
+        partitions = new ArrayList<>(SPILL_PARTITION_COUNT);
+        for (int i = 0; i < SPILL_PARTITION_COUNT; i++) {
+            partitions.add(new SpillBuffer<>("dedupe"));
+        }
+        memoryUsed = 0;
+        for (Map.Entry<CompositeKey, EntityData> entry : deduped.entrySet()) {
+            addToPartition(entry.getKey(), entry.getValue());
+        }
+        deduped.clear();
+        spillPartitions();
+    }
+
+    protected void partition(List<EntityData> payload) {
+        for (EntityData entityData : payload) {
+            addToPartition(CompositeKey.of(entityData, keyAttributeIds), entityData);
+        }
+        if (memoryUsed > memoryBudgetBytes) {
+            spillPartitions();
+        }
+    }
+
+    protected void addToPartition(CompositeKey key, EntityData entityData) {
+        long size = entityData.estimateSize();
+        partitions.get((key.hashCode() & Integer.MAX_VALUE) % partitions.size()).add(entityData, size);
+        memoryUsed += size;
+    }
+
+    protected void spillPartitions() {
+        List<SpillBuffer<EntityData>> bySize = new ArrayList<>(partitions);
+        Collections.sort(bySize, (b1, b2) -> Long.compare(b2.getMemorySize(), b1.getMemorySize()));
+        for (SpillBuffer<EntityData> partition : bySize) {
+            if (memoryUsed <= memoryBudgetBytes / 2) {
+                break;
+            }
+            memoryUsed -= partition.spill();
+        }
+    }
+
+    protected void sendPartitions(ISendMessageCallback callback) {
+        for (SpillBuffer<EntityData> partition : partitions) {
+            Iterator<EntityData> rows = partition.iterator();
+            while (rows.hasNext()) {
+                EntityData entityData = rows.next();
+                CompositeKey key = CompositeKey.of(entityData, keyAttributeIds);
+                if (!deduped.containsKey(key) || PRESERVE_LAST.equals(preserveRecord)) {
                     deduped.put(key, entityData);
-                } else {
-                    // else it exists, check if we need to save the first or last value and replace if necessary
-                	if (PRESERVE_LAST.equals(preserveRecord)) {
-                		deduped.put(key, entityData);
-                	}
                 }
             }
+            partition.close();
+            send(deduped.values().iterator(), callback);
+            deduped.clear();
         }
+    }
 
-        if (unitOfWorkBoundaryReached) {
-            if (deduped.size() > 0) {
-                int count = 0;
-                ArrayList<EntityData> payload = new ArrayList<EntityData>(rowsPerMessage);
-                for (EntityData data : deduped.values()) {
-                    if (count >= rowsPerMessage) {
-                        callback.sendEntityDataMessage(null, payload);
-                        payload = new ArrayList<EntityData>();
-                        count = 0;
-                    }
-                    payload.add(data);
-                    count++;
-                }
+    /**
+     * Rows are counted as processed when they are sent, so that a row that
+     * was moved to a partition is only counted once
+     */
+    protected void send(Iterator<EntityData> rows, ISendMessageCallback callback) {
+        ArrayList<EntityData> payload = new ArrayList<EntityData>(rowsPerMessage);
+        while (rows.hasNext()) {
+            if (payload.size() >= rowsPerMessage) {
+                getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber, payload.size());
+                callback.sendEntityDataMessage(null, payload);
+                payload = new ArrayList<EntityData>();
+            }
+            payload.add(rows.next());
+        }
 
-                deduped.clear();
+        if (payload.size() > 0) {
+            getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber, payload.size());
+            callback.sendEntityDataMessage(null, payload);
+        }
+    }
 
-                callback.sendEntityDataMessage(null, payload);
+    protected void clear() {
+        deduped.clear();
+        sent.clear();
+        memoryUsed = 0;
+        if (sentStore != null) {
+            sentStore.close();
+            sentStore = null;
+            spilledSent = null;
+            sentStoreFile.delete();
+        }
+        if (partitions != null) {
+            for (SpillBuffer<EntityData> partition : partitions) {
+                partition.close();
             }
+            partitions = null;
         }
     }
 
@@ -22,20 +22,28 @@ package org.jumpmind.metl.core.runtime.component;
 
 import static org.apache.commons.lang.StringUtils.isBlank;
 
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.lang.ObjectUtils;
+import org.h2.mvstore.MVStore;
+import org.jumpmind.exception.IoException;
+import org.jumpmind.metl.core.model.DataType;
 import org.jumpmind.metl.core.model.FlowStepLink;
+import org.jumpmind.metl.core.model.ModelAttrib;
 import org.jumpmind.metl.core.runtime.ControlMessage;
 import org.jumpmind.metl.core.runtime.EntityData;
 import org.jumpmind.metl.core.runtime.EntityDataMessage;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.MisconfiguredException;
 import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
+import org.jumpmind.metl.core.util.SpillBuffer;
 import org.jumpmind.properties.TypedProperties;
 
 public class Lookup extends AbstractComponentRuntime {
@@ -47,6 +55,24 @@ public class Lookup extends AbstractComponentRuntime {
     public final static String LOOKUP_VALUE = "lookup.value.attribute";
     public final static String REPLACEMENT_VALUE_ATTRIBUTE = "replacement.value.attribute";
     public final static String REPLACEMENT_KEY_ATTRIBUTE = "replacement.key.attribute";
+    public final static String LOOKUP_STORE = "lookup.store";
+    public final static String LOOKUP_STORE_FILE = "lookup.store.file";
+    public final static String LOOKUP_STORE_REUSE_MINUTES = "lookup.store.reuse.minutes";
+    public final static String QUEUE_MEMORY_MB = "queue.memory.mb";
+
+    public final static String STORE_MEMORY = "MEMORY";
+    public final static String STORE_DISK = "DISK";
+
+    final static String LOADED_TIME = "loaded.time";
+
+    static final Map<String, SharedStore> sharedStores = new HashMap<String, SharedStore>();
+
+    /**
+     * The disk store does not accept null values so they are stored as this
+     */
+    enum NullValue {
+        INSTANCE
+    }
 
     boolean lookupInitialized = false;
 
@@ -55,10 +81,25 @@ public class Lookup extends AbstractComponentRuntime {
     String valueAttributeId;
     String replacementKeyAttributeId;
     String replacementValueAttributeId;
+    DataType keyDataType;
 
     Map<Object, Object> lookup = new HashMap<Object, Object>();
 
-    List<Message> queuedWhileWaitingForLookup = new ArrayList<Message>();
+    MVStore store;
+
+    SharedStore sharedStore;
+
+    File storeFile;
+
+    boolean deleteStoreFile;
+
+    boolean reusingStore;
+
+    long queueMemoryBytes;
+
+    long queuedMemory;
+
+    SpillBuffer<Message> queuedWhileWaitingForLookup;
 
     @Override
     public void start() {
@@ -69,6 +110,7 @@ public class Lookup extends AbstractComponentRuntime {
         valueAttributeId = properties.get(LOOKUP_VALUE);
         replacementKeyAttributeId = properties.get(REPLACEMENT_KEY_ATTRIBUTE);
         replacementValueAttributeId = properties.get(REPLACEMENT_VALUE_ATTRIBUTE);
+        queueMemoryBytes = properties.getLong(QUEUE_MEMORY_MB, 64) * 1024 * 1024;
         
         if (getInputModel() == null) {
             throw new MisconfiguredException("The input model must be specified");
@@ -84,6 +126,104 @@ public class Lookup extends AbstractComponentRuntime {
         if (link == null) {
             throw new MisconfiguredException("The lookup data source is missing"); 
         }
+
+        ModelAttrib keyAttribute = getInputModel().getAttributeById(keyAttributeId);
+        keyDataType = keyAttribute != null ? keyAttribute.getDataType() : null;
+
+        queuedWhileWaitingForLookup = new SpillBuffer<>("lookup");
+        queuedMemory = 0;
+
+        if (STORE_DISK.equals(properties.get(LOOKUP_STORE, STORE_MEMORY))) {
+            openStore(properties.get(LOOKUP_STORE_FILE), properties.getLong(LOOKUP_STORE_REUSE_MINUTES, 0));
+        } else {
+            lookup = new HashMap<Object, Object>();
+        }
+    }
+
+    /**
+     * The lookup table is kept in an H2 MVStore file so that only a cache of
+     * it is held on the heap. When a file name is given the store is kept
+     * after the flow finishes and a fully loaded store is reused for the
+     * configured number of minutes instead of being loaded again.
+     */
+    protected void openStore(String fileName, long reuseMinutes) {
+        if (!isBlank(fileName)) {
+            File file = new File(fileName);
+            try {
+                openSharedStore(file.getCanonicalPath(), reuseMinutes);
+                return;
+            } catch (IOException e) {
+                throw new IoException(e);
+            } catch (IllegalStateException e) {
+                warn("The lookup store at %s could not be opened, it may be in use by another process: %s.  Loading the lookup into a temporary store instead",
+                        file.getAbsolutePath(), e.getMessage());
+            }
+        }
+
+        try {
+            storeFile = File.createTempFile("lookup", ".mv.db");
+            storeFile.deleteOnExit();
+        } catch (IOException e) {
+            throw new IoException(e);
+        }
+        deleteStoreFile = true;
+        reusingStore = false;
+        store = new MVStore.Builder().fileName(storeFile.getAbsolutePath()).cacheSize(16).open();
+        lookup = store.openMap("lookup");
+    }
+
+    /**
+     * MVStore locks its file, so a named store is opened once and shared by
+     * every step thread and flow run in this server that uses it. Whether the
+     * store is reused or loaded again is decided by the first one to open it.
+     */
+    protected void openSharedStore(String path, long reuseMinutes) {
+        synchronized (sharedStores) {
+            SharedStore shared = sharedStores.get(path);
+            if (shared == null) {
+                File file = new File(path);
+                if (file.getParentFile() != null) {
+                    file.getParentFile().mkdirs();
+                }
+                shared = new SharedStore(new MVStore.Builder().fileName(path).cacheSize(16).open());
+                Map<String, Long> meta = shared.store.openMap("meta");
+                Long loadedTime = meta.get(LOADED_TIME);
+                if (loadedTime != null && reuseMinutes > 0 && System.currentTimeMillis() - loadedTime < reuseMinutes * 60000) {
+                    info("Reusing the lookup store at %s that was loaded at %s", path, new Date(loadedTime));
+                    shared.reusing = true;
+                } else {
+                    meta.remove(LOADED_TIME);
+                    shared.store.openMap("lookup").clear();
+                }
+                sharedStores.put(path, shared);
+            }
+            shared.users++;
+            sharedStore = shared;
+            store = shared.store;
+            storeFile = new File(path);
+            deleteStoreFile = false;
+            reusingStore = shared.reusing;
+            lookupInitialized = shared.reusing;
+            lookup = store.openMap("lookup");
+        }
+    }
+
+    protected void closeStore() {
+        if (sharedStore != null) {
+            synchronized (sharedStores) {
+                if (--sharedStore.users == 0) {
+                    sharedStore.store.close();
+                    sharedStores.remove(storeFile.getPath());
+                }
+            }
+            sharedStore = null;
+        } else {
+            store.close();
+            if (deleteStoreFile) {
+                storeFile.delete();
+            }
+        }
+        store = null;
     }
 
     @Override
@@ -98,18 +238,41 @@ public class Lookup extends AbstractComponentRuntime {
         }
     }
 
+    @Override
+    public void stop() {
+        if (queuedWhileWaitingForLookup != null) {
+            queuedWhileWaitingForLookup.close();
+        }
+        if (store != null) {
+            closeStore();
+        }
+        lookup = new HashMap<Object, Object>();
+        super.stop();
+    }
+
     @Override
     public void handle(Message inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
         if (sourceStepId.equals(inputMessage.getHeader().getOriginatingStepId())) {
+            if (reusingStore) {
+                return;
+            }
             if (inputMessage instanceof EntityDataMessage) {
                 List<EntityData> datas = ((EntityDataMessage)inputMessage).getPayload();
                 for (EntityData entityData : datas) {
-                    lookup.put(ObjectUtils.toString(entityData.get(keyAttributeId)), entityData.get(valueAttributeId));
+                    Object key = toKey(entityData.get(keyAttributeId));
+                    if (key != null) {
+                        Object value = entityData.get(valueAttributeId);
+                        lookup.put(key, value != null || store == null ? value : NullValue.INSTANCE);
+                    }
                 }
             }
             lookupInitialized = inputMessage instanceof ControlMessage;
 
             if (lookupInitialized) {
+                if (store != null) {
+                    store.<String, Long>openMap("meta").put(LOADED_TIME, System.currentTimeMillis());
+                    store.commit();
+                }
                 Iterator<Message> messages = queuedWhileWaitingForLookup.iterator();
                 while (messages.hasNext()) {
                     Message message = messages.next();
@@ -117,9 +280,11 @@ public class Lookup extends AbstractComponentRuntime {
                         enhanceAndSend((EntityDataMessage)message, callback, unitOfWorkBoundaryReached);
                     }
                 }
+                queuedWhileWaitingForLookup.close();
+                queuedMemory = 0;
             }
         } else if (!lookupInitialized) {
-            queuedWhileWaitingForLookup.add(inputMessage);
+            queue(inputMessage);
         } else if (lookupInitialized && !(inputMessage instanceof ControlMessage)) {
             if (inputMessage instanceof EntityDataMessage) {
                 enhanceAndSend((EntityDataMessage)inputMessage, callback, unitOfWorkBoundaryReached);
@@ -127,23 +292,89 @@ public class Lookup extends AbstractComponentRuntime {
         }
     }
 
+    /**
+     * Main side messages that arrive before the lookup table is loaded are
+     * held in memory up to the configured limit and spilled to disk after that
+     */
+    protected void queue(Message inputMessage) {
+        if (inputMessage instanceof EntityDataMessage) {
+            long size = 0;
+            List<EntityData> datas = ((EntityDataMessage)inputMessage).getPayload();
+            if (datas != null) {
+                for (EntityData entityData : datas) {
+                    size += entityData.estimateSize();
+                }
+            }
+            queuedWhileWaitingForLookup.add(inputMessage, size);
+            queuedMemory += size;
+            if (queuedMemory > queueMemoryBytes) {
+                queuedMemory -= queuedWhileWaitingForLookup.spill();
+            }
+        }
+    }
+
+    /**
+     * Lookup keys keep the type of the lookup key attribute so that the
+     * lookup and replacement sides match on value instead of on how the value
+     * happens to be formatted. Numbers are compared by their numeric value.
+     */
+    protected Object toKey(Object value) {
+        if (value == null) {
+            return null;
+        } else if (keyDataType != null && keyDataType.isNumeric()) {
+            BigDecimal number = null;
+            if (value instanceof BigDecimal) {
+                number = (BigDecimal) value;
+            } else if (value instanceof Number || value instanceof CharSequence) {
+                try {
+                    number = new BigDecimal(value.toString().trim());
+                } catch (NumberFormatException e) {
+                    return value.toString();
+                }
+            }
+            return number != null ? number.stripTrailingZeros() : value;
+        } else if (keyDataType != null && keyDataType.isBoolean() && value instanceof CharSequence) {
+            return Boolean.valueOf(value.toString().trim());
+        } else if (value instanceof Date) {
+            return ((Date) value).getTime();
+        } else if (value instanceof CharSequence) {
+            return value.toString();
+        } else {
+            return value;
+        }
+    }
+
     protected void enhanceAndSend(EntityDataMessage message, ISendMessageCallback callback, boolean unitOfWorkLastMessage) {
         List<EntityData> datas = message.getPayload();
         if (datas != null) {
-            debug("Using lookup table: {}", lookup);
+            if (store == null) {
+                debug("Using lookup table: {}", lookup);
+            }
             ArrayList<EntityData> payload = new ArrayList<EntityData>();
             for (int j = 0; j < datas.size(); j++) {
                 getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber);
                 EntityData oldData = datas.get(j);
-                EntityData newData = new EntityData();   
-                newData.setChangeType(oldData.getChangeType());
-                newData.putAll(oldData);
-                newData.put(replacementValueAttributeId, 
-                        lookup.get(ObjectUtils.toString(oldData.get(replacementKeyAttributeId))));
+                EntityData newData = oldData.copy();
+                Object key = toKey(oldData.get(replacementKeyAttributeId));
+                Object value = key != null ? lookup.get(key) : null;
+                newData.put(replacementValueAttributeId, value != NullValue.INSTANCE ? value : null);
                 payload.add(newData);
             }
             callback.sendEntityDataMessage(null, payload);
         }   
     }
 
+    static class SharedStore {
+
+        MVStore store;
+
+        boolean reusing;
+
+        int users;
+
+        SharedStore(MVStore store) {
+            this.store = store;
+        }
+    }
+
 }
@@ -71,7 +71,7 @@ public class ModelBuilder {
 	}
 	
 	public ModelBuilder withEntity(ModelEntity entity) {
-		this.model.getModelEntities().add(entity);
+		this.model.addModelEntity(entity);
 		return this;
 	}
 	
@@ -20,120 +20,244 @@
  */
 package org.jumpmind.metl.core.runtime.flow;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.commons.lang.StringUtils;
 import org.jumpmind.metl.core.model.AbstractObject;
 import org.jumpmind.metl.core.model.ExecutionStepLog;
+import org.jumpmind.metl.core.persist.ExecutionStepLogWriter;
 import org.jumpmind.metl.core.persist.IExecutionService;
-import org.jumpmind.metl.core.util.LogUtils;
-import org.jumpmind.symmetric.csv.CsvWriter;
-import org.jumpmind.util.AppUtils;
-import org.jumpmind.util.FormatUtils;
+import org.jumpmind.metl.core.runtime.LogLevel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Persists execution state and step logs off of the flow threads.
+ * <p>
+ * Execution and execution step records are coalesced by id so that only the
+ * latest state of each is written, and every drain writes them in one
+ * transaction. Step logs go through a bounded queue and are written to
+ * {@link ExecutionStepLogWriter}s that are flushed on a time or size policy. When the log
+ * queue is full, callers either wait for room or, if configured to drop, the
+ * log line is discarded and counted. Error logs are never dropped.
+ */
 public class AsyncRecorder implements Runnable {
 
+    public static final int DEFAULT_QUEUE_CAPACITY = 100000;
+
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+
+    public static final int DEFAULT_FLUSH_SIZE = 64 * 1024;
+
+    static final long MAX_LAG_BEFORE_WARNING_MS = 10000;
+
     final Logger log = LoggerFactory.getLogger(getClass());
 
-    protected BlockingQueue<AbstractObject> inQueue;
+    protected BlockingQueue<ExecutionStepLog> inQueue;
+
+    protected Map<String, AbstractObject> stateChanges = new ConcurrentHashMap<>();
 
     protected IExecutionService executionService;
 
-    protected boolean running = false;
+    protected volatile boolean running = false;
+
+    protected volatile boolean stopping = false;
+
+    protected volatile Thread recorderThread;
+
+    protected AtomicBoolean workAvailable = new AtomicBoolean();
+
+    protected CountDownLatch finished = new CountDownLatch(1);
+
+    protected Map<String, ExecutionStepLogWriter> logWriters = new HashMap<>();
+
+    protected boolean dropLogsWhenFull;
+
+    protected long flushIntervalMs;
+
+    protected int flushSize;
+
+    protected long lastFlushTime = System.currentTimeMillis();
+
+    protected int unflushedSize;
+
+    protected AtomicLong oldestUnrecordedTime = new AtomicLong();
+
+    protected AtomicLong droppedLogCount = new AtomicLong();
 
-    protected boolean stopping = false;
+    protected volatile long lagMs;
 
-    protected Map<String, CsvWriter> logWriters = new HashMap<>();
+    protected long lastLagWarningTime;
 
     public AsyncRecorder(IExecutionService executionService) {
-        this.inQueue = new LinkedBlockingQueue<AbstractObject>();
+        this(executionService, DEFAULT_QUEUE_CAPACITY, false, DEFAULT_FLUSH_INTERVAL_MS, DEFAULT_FLUSH_SIZE);
+    }
+
+    public AsyncRecorder(IExecutionService executionService, int queueCapacity, boolean dropLogsWhenFull, long flushIntervalMs,
+            int flushSize) {
+        this.inQueue = new LinkedBlockingQueue<ExecutionStepLog>(queueCapacity);
         this.executionService = executionService;
+        this.dropLogsWhenFull = dropLogsWhenFull;
+        this.flushIntervalMs = flushIntervalMs;
+        this.flushSize = flushSize;
     }
 
     public void record(AbstractObject object) {
-        try {
-            synchronized (inQueue) {
-                inQueue.put(object);
-                inQueue.notify();
+        oldestUnrecordedTime.compareAndSet(0, System.currentTimeMillis());
+        if (object instanceof ExecutionStepLog) {
+            ExecutionStepLog stepLog = (ExecutionStepLog) object;
+            if (!inQueue.offer(stepLog)) {
+                if (dropLogsWhenFull && !LogLevel.ERROR.name().equals(stepLog.getLevel())) {
+                    droppedLogCount.incrementAndGet();
+                } else {
+                    try {
+                        signalWorkAvailable();
+                        inQueue.put(stepLog);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }
+        } else if (object != null) {
+            stateChanges.put(object.getId(), object);
+        }
+        signalWorkAvailable();
+    }
+
+    protected void signalWorkAvailable() {
+        if (workAvailable.compareAndSet(false, true)) {
+            Thread thread = recorderThread;
+            if (thread != null) {
+                LockSupport.unpark(thread);
             }
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
         }
     }
 
     protected void logAll() {
         try {
-            HashSet<String> processed = new HashSet<>();
-            List<AbstractObject> toProcess = new ArrayList<>();
-            synchronized (inQueue) {
-                inQueue.drainTo(toProcess);
-                if (toProcess.isEmpty()) {
-                    inQueue.wait();
-                }
-            }
-            
-            for (int i = toProcess.size() - 1; i >= 0; i--) {
-                AbstractObject object = toProcess.get(i);
-                if (object != null && !(object instanceof ExecutionStepLog)) {
-                    if (!processed.contains(object.getId())) {
-                        executionService.save(object);
-                        processed.add(object.getId());
-                    }
-                }
+            if (!workAvailable.getAndSet(false) && !stopping) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(flushIntervalMs));
+                workAvailable.set(false);
             }
 
-            for (int i = 0; i < toProcess.size(); i++) {
-                AbstractObject object = toProcess.get(i);
-                if (object instanceof ExecutionStepLog) {
-                    ExecutionStepLog stepLog = (ExecutionStepLog) object;
-                    String executionStepId = stepLog.getExecutionStepId();
-                    CsvWriter writer = logWriters.get(executionStepId);
-                    if (writer == null) {
-                        File logFile = new File(LogUtils.getLogDir(), executionStepId + ".log");
-                        writer = new CsvWriter(logFile.getAbsolutePath(), '"',
-                                Charset.forName("UTF-8"));
-                        logWriters.put(executionStepId, writer);
-                    }
-                    try {
-                        writer.writeRecord(new String[] { stepLog.getLevel(),
-                                FormatUtils.TIMESTAMP_FORMATTER.format(stepLog.getCreateTime()),
-                                StringUtils.abbreviate(stepLog.getLogText(), 100000) });
-                        writer.flush();
-                    } catch (IOException e) {
-                        writer.close();
-                        logWriters.remove(executionStepId);
-                        log.error("", e);
-                    }
-                }
-            }
+            long oldest = oldestUnrecordedTime.getAndSet(0);
+
+            saveStateChanges();
 
-            if (toProcess.size() == 0) {
-                AppUtils.sleep(5);
+            List<ExecutionStepLog> toProcess = new ArrayList<>();
+            inQueue.drainTo(toProcess);
+            for (ExecutionStepLog stepLog : toProcess) {
+                writeLog(stepLog);
             }
 
+            flushLogs(stopping);
+
+            updateLag(oldest);
+
         } catch (Throwable e) {
             log.error("Failed to persist log message", e);
         }
     }
 
+    protected void saveStateChanges() {
+        List<AbstractObject> toSave = new ArrayList<>(stateChanges.size());
+        Iterator<String> ids = stateChanges.keySet().iterator();
+        while (ids.hasNext()) {
+            AbstractObject object = stateChanges.remove(ids.next());
+            if (object != null) {
+                toSave.add(object);
+            }
+        }
+        executionService.save(toSave);
+    }
+
+    protected void writeLog(ExecutionStepLog stepLog) {
+        String executionStepId = stepLog.getExecutionStepId();
+        String logText = StringUtils.abbreviate(stepLog.getLogText(), 100000);
+        ExecutionStepLogWriter writer = logWriters.get(executionStepId);
+        try {
+            if (writer == null) {
+                writer = new ExecutionStepLogWriter(executionService.getExecutionStepLog(executionStepId), flushSize);
+                logWriters.put(executionStepId, writer);
+            }
+            Date createTime = stepLog.getCreateTime();
+            writer.write(ExecutionStepLogWriter.toLevel(stepLog.getLevel()), createTime != null ? createTime.getTime() : 0, logText);
+            unflushedSize += logText != null ? logText.length() : 0;
+        } catch (IOException e) {
+            close(writer);
+            logWriters.remove(executionStepId);
+            log.error("", e);
+        }
+    }
+
+    protected void flushLogs(boolean force) {
+        long now = System.currentTimeMillis();
+        if (unflushedSize > 0 && (force || unflushedSize >= flushSize || now - lastFlushTime >= flushIntervalMs)) {
+            for (ExecutionStepLogWriter writer : logWriters.values()) {
+                try {
+                    writer.flush();
+                } catch (IOException e) {
+                    log.error("Failed to flush " + writer.getLogFile(), e);
+                }
+            }
+            unflushedSize = 0;
+            lastFlushTime = now;
+        }
+    }
+
+    protected void updateLag(long oldestUnrecordedTime) {
+        long now = System.currentTimeMillis();
+        lagMs = oldestUnrecordedTime > 0 ? now - oldestUnrecordedTime : 0;
+        if (lagMs > MAX_LAG_BEFORE_WARNING_MS && now - lastLagWarningTime > MAX_LAG_BEFORE_WARNING_MS) {
+            log.warn("Execution recording is {}ms behind. There are {} step logs waiting and {} have been dropped", lagMs,
+                    inQueue.size(), droppedLogCount.get());
+            lastLagWarningTime = now;
+        } else if (log.isDebugEnabled()) {
+            log.debug("Execution recording lag is {}ms with {} step logs waiting", lagMs, inQueue.size());
+        }
+    }
+
+    /**
+     * @return How far behind, in milliseconds, the last drain was from the
+     *         oldest record it persisted
+     */
+    public long getLagMs() {
+        return lagMs;
+    }
+
+    public int getQueueSize() {
+        return inQueue.size();
+    }
+
+    public long getDroppedLogCount() {
+        return droppedLogCount.get();
+    }
+
+    protected boolean hasWork() {
+        return inQueue.size() > 0 || stateChanges.size() > 0;
+    }
+
     @Override
     public void run() {
+        recorderThread = Thread.currentThread();
         running = true;
 
         try {
-            while (!stopping || inQueue.size() > 0) {
+            while (!stopping || hasWork()) {
                 try {
                     logAll();
                 } catch (Throwable e) {
@@ -142,20 +266,40 @@ public class AsyncRecorder implements Runnable {
             }
 
         } finally {
+            flushLogs(true);
             running = false;
+            recorderThread = null;
+            finished.countDown();
         }
     }
 
     public void shutdown() {
         this.stopping = true;
+        Thread thread = recorderThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
 
-        while (this.running) {
-            AppUtils.sleep(10);
+        if (this.running) {
+            try {
+                finished.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
 
-        Collection<CsvWriter> writers = logWriters.values();
-        for (CsvWriter csvWriter : writers) {
-            csvWriter.close();
+        for (ExecutionStepLogWriter writer : logWriters.values()) {
+            close(writer);
+        }
+    }
+
+    protected void close(ExecutionStepLogWriter writer) {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.error("Failed to close " + writer.getLogFile(), e);
+            }
         }
     }
 
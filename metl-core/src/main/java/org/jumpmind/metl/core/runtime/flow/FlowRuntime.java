@@ -54,12 +54,10 @@ import org.jumpmind.metl.core.persist.IConfigurationService;
 import org.jumpmind.metl.core.persist.IExecutionService;
 import org.jumpmind.metl.core.persist.IOperationsService;
 import org.jumpmind.metl.core.plugin.IDefinitionFactory;
-import org.jumpmind.metl.core.plugin.XMLComponentDefinition;
 import org.jumpmind.metl.core.runtime.ControlMessage;
 import org.jumpmind.metl.core.runtime.ExecutionTrackerLogger;
 import org.jumpmind.metl.core.runtime.ExecutionTrackerRecorder;
 import org.jumpmind.metl.core.runtime.IExecutionTracker;
-import org.jumpmind.metl.core.runtime.component.AbstractComponentRuntime;
 import org.jumpmind.metl.core.runtime.component.ComponentContext;
 import org.jumpmind.metl.core.runtime.component.ComponentStatistics;
 import org.jumpmind.metl.core.runtime.component.IComponentRuntime;
@@ -69,6 +67,7 @@ import org.jumpmind.metl.core.runtime.component.IHasSecurity;
 import org.jumpmind.metl.core.runtime.component.Results;
 import org.jumpmind.metl.core.runtime.resource.IResourceRuntime;
 import org.jumpmind.metl.core.runtime.resource.MailSession;
+import org.jumpmind.metl.core.runtime.web.IHttpStreams;
 import org.jumpmind.util.AppUtils;
 import org.jumpmind.util.FormatUtils;
 import org.slf4j.Logger;
@@ -96,6 +95,8 @@ public class FlowRuntime {
 
     ExecutorService threadService;
 
+    ExecutorService stepExecutor;
+
     Map<String, StepRuntime> stepRuntimes;
 
     Agent agent;
@@ -138,12 +139,19 @@ public class FlowRuntime {
             IConfigurationService configurationService, IExecutionService executionService,
             Map<String, IResourceRuntime> deployedResources, List<Notification> notifications,
             Map<String, String> globalSettings, Map<String, String> runtimeParameters) {
-        
-        if (agent.isAutoRefresh() && configurationService != null && operationsService != null) {
-            deployment.setFlow(configurationService.findFlow(deployment.getFlow().getId()));
-            deployment.setAgentDeployment(operationsService.findAgentDeployment(deployment.getAgentDeployment().getId()));
-            operationsService.refreshAgentParameters(agent);
-        }
+        this(executionId, userId, createTemplate(deployment, agent, definitionFactory, operationsService, configurationService), agent,
+                componentRuntimeFactory, definitionFactory, threadService, configurationService, executionService,
+                deployedResources, notifications, globalSettings, runtimeParameters);
+    }
+
+    public FlowRuntime(String executionId, String userId, FlowRuntimeTemplate template, Agent agent,
+            IComponentRuntimeFactory componentRuntimeFactory,
+            IDefinitionFactory definitionFactory,
+            ExecutorService threadService,
+            IConfigurationService configurationService, IExecutionService executionService,
+            Map<String, IResourceRuntime> deployedResources, List<Notification> notifications,
+            Map<String, String> globalSettings, Map<String, String> runtimeParameters) {
+        AgentProjectVersionFlowDeployment deployment = template.getDeployment();
         this.executionId = executionId;
         this.agentProjectVersionFlowDeployment = deployment;
         this.agent = agent;
@@ -166,51 +174,46 @@ public class FlowRuntime {
                 
         this.stepRuntimes = new HashMap<String, StepRuntime>();
 
-        manipulatedFlow = manipulateFlow(deployment.getFlow());
-        
-        /* create a step runtime for every component in the flow */
-        for (FlowStep flowStep : manipulatedFlow.getFlowSteps()) {
-            boolean enabled = flowStep.getComponent().getBoolean(AbstractComponentRuntime.ENABLED,
-                    true);
-            if (enabled) {
-                ComponentContext context = new ComponentContext(deployment.getAgentDeployment(), flowStep,
-                        manipulatedFlow, executionTracker, deployedResources, flowParameters,
-                        globalSettings, flowVariables);
-                StepRuntime stepRuntime = new StepRuntime(componentRuntimeFactory,
-                        definitionFactory, context, this);
-                stepRuntimes.put(flowStep.getId(), stepRuntime);
-            }
-        }
+        manipulatedFlow = template.getManipulatedFlow();
 
-        List<FlowStepLink> links = manipulatedFlow.getFlowStepLinks();
+        /* create a step runtime for every enabled component in the flow */
+        for (FlowStep flowStep : template.getEnabledFlowSteps()) {
+            ComponentContext context = new ComponentContext(deployment.getAgentDeployment(), flowStep,
+                    manipulatedFlow, executionTracker, deployedResources, flowParameters,
+                    globalSettings, flowVariables);
+            StepRuntime stepRuntime = new StepRuntime(componentRuntimeFactory,
+                    definitionFactory, context, this);
+            stepRuntimes.put(flowStep.getId(), stepRuntime);
+        }
 
         /* for each step runtime, set their list of msgTarget step runtimes */
-        for (String stepId : stepRuntimes.keySet()) {
-            List<StepRuntime> targetStepRuntimes = new ArrayList<StepRuntime>();
-            List<StepRuntime> sourceStepRuntimes = new ArrayList<StepRuntime>();
-            for (FlowStepLink flowStepLink : links) {
-                if (stepId.equals(flowStepLink.getSourceStepId())) {
-                    StepRuntime runtime = stepRuntimes.get(flowStepLink.getTargetStepId());
-                    if (runtime != null) {
-                        targetStepRuntimes.add(runtime);
-                    }
-                }
-                if (stepId.equals(flowStepLink.getTargetStepId())) {
-                    StepRuntime runtime = stepRuntimes.get(flowStepLink.getSourceStepId());
-                    if (runtime != null) {
-                        sourceStepRuntimes.add(runtime);
-                    }
-                }
-            }
-            StepRuntime runtime = stepRuntimes.get(stepId);
-            if (runtime != null) {
-                runtime.setTargetStepRuntimes(targetStepRuntimes);
-                runtime.setSourceStepRuntimes(sourceStepRuntimes);
-            }
+        for (StepRuntime runtime : stepRuntimes.values()) {
+            String stepId = runtime.getComponentContext().getFlowStep().getId();
+            runtime.setTargetStepRuntimes(toStepRuntimes(template.getTargetStepIds(stepId)));
+            runtime.setSourceStepRuntimes(toStepRuntimes(template.getSourceStepIds(stepId)));
         }
+    }
 
-        /* start up each step runtime */
-        manipulatedFlow.calculateApproximateOrder();        
+    /*
+     * Builds a template for a single execution. Agents that auto refresh
+     * reload the flow and the deployment first.
+     */
+    private static FlowRuntimeTemplate createTemplate(AgentProjectVersionFlowDeployment deployment, Agent agent,
+            IDefinitionFactory definitionFactory, IOperationsService operationsService, IConfigurationService configurationService) {
+        if (agent.isAutoRefresh() && configurationService != null && operationsService != null) {
+            deployment.setFlow(configurationService.findFlow(deployment.getFlow().getId()));
+            deployment.setAgentDeployment(operationsService.findAgentDeployment(deployment.getAgentDeployment().getId()));
+            operationsService.refreshAgentParameters(agent);
+        }
+        return new FlowRuntimeTemplate(deployment, definitionFactory, configurationService);
+    }
+
+    private List<StepRuntime> toStepRuntimes(List<String> stepIds) {
+        List<StepRuntime> runtimes = new ArrayList<StepRuntime>(stepIds.size());
+        for (String stepId : stepIds) {
+            runtimes.add(stepRuntimes.get(stepId));
+        }
+        return runtimes;
     }
 
     public AgentProjectVersionFlowDeployment getAgentProjectVersionFlowDeployment() {
@@ -298,10 +301,17 @@ public class FlowRuntime {
             }
         }
 
-        /* each step is started as a thread */
+        /*
+         * each step is started as a thread unless the agent shares a pool of
+         * threads between steps
+         */
         for (StepRuntime stepRuntime : stepRuntimes.values()) {
-            stepRuntime.startRunning();
-            threadService.execute(stepRuntime);
+            if (stepExecutor != null) {
+                stepRuntime.startRunning(stepExecutor);
+            } else {
+                stepRuntime.startRunning();
+                threadService.execute(stepRuntime);
+            }
         }
 
         ControlMessage startMessage = new ControlMessage();
@@ -314,33 +324,6 @@ public class FlowRuntime {
         }
     }
 
-    protected Flow manipulateFlow(Flow flow) {        
-        Flow clone = (Flow)flow.clone();
-        clone.setFlowParameters(new ArrayList<>());
-        clone.getFlowParameters().addAll(flow.getFlowParameters());
-        clone.setFlowSteps(new ArrayList<>());
-        clone.getFlowSteps().addAll(flow.getFlowSteps());
-        clone.setFlowStepLinks(new ArrayList<>());
-        clone.getFlowStepLinks().addAll(flow.getFlowStepLinks());
-
-        for (FlowStep flowStep : new ArrayList<>(clone.getFlowSteps())) {
-            XMLComponentDefinition componentDefintion = definitionFactory.getComponentDefinition(flow.getProjectVersionId(), flowStep.getComponent().getType());
-            if (isNotBlank(componentDefintion.getFlowManipulatorClassName())) {
-                try {
-                    IFlowManipulator flowManipulator = (IFlowManipulator) Class
-                            .forName(componentDefintion.getFlowManipulatorClassName())
-                            .newInstance();
-                    clone = flowManipulator.manipulate(clone, flowStep, configurationService);
-                } catch (RuntimeException e) {
-                    throw e;
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-            }
-        }
-        return clone;
-    }
-
     public static Map<String, String> getFlowParameters(Agent agent,
             AgentProjectVersionFlowDeployment agentDeployment) {
         Map<String, String> params = new HashMap<String, String>();
@@ -534,4 +517,23 @@ public class FlowRuntime {
     public Agent getAgent() {
         return agent;
     }
+
+    public void setStepExecutor(ExecutorService stepExecutor) {
+        this.stepExecutor = stepExecutor;
+    }
+
+    public ExecutorService getStepExecutor() {
+        return stepExecutor;
+    }
+
+    /**
+     * Makes the body of the web service request and response that started
+     * this flow available to its components. Must be called before the flow
+     * is started.
+     */
+    public void setHttpStreams(IHttpStreams httpStreams) {
+        for (StepRuntime stepRuntime : stepRuntimes.values()) {
+            stepRuntime.getComponentContext().setHttpStreams(httpStreams);
+        }
+    }
 }
@@ -0,0 +1,148 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.flow;
+
+import static org.apache.commons.lang.StringUtils.isNotBlank;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jumpmind.metl.core.model.AgentProjectVersionFlowDeployment;
+import org.jumpmind.metl.core.model.Flow;
+import org.jumpmind.metl.core.model.FlowStep;
+import org.jumpmind.metl.core.model.FlowStepLink;
+import org.jumpmind.metl.core.persist.IConfigurationService;
+import org.jumpmind.metl.core.plugin.IDefinitionFactory;
+import org.jumpmind.metl.core.plugin.XMLComponentDefinition;
+import org.jumpmind.metl.core.runtime.component.AbstractComponentRuntime;
+
+/**
+ * The part of a {@link FlowRuntime} that only depends on the deployment: the
+ * manipulated flow with its indexes, the steps that are enabled and how they
+ * are linked. A template can be built once for a deployment and shared by any
+ * number of executions, so an execution only creates its own step and
+ * component runtimes.
+ */
+public class FlowRuntimeTemplate {
+
+    AgentProjectVersionFlowDeployment deployment;
+
+    Flow manipulatedFlow;
+
+    List<FlowStep> enabledFlowSteps;
+
+    Map<String, List<String>> targetStepIdsByStepId;
+
+    Map<String, List<String>> sourceStepIdsByStepId;
+
+    public FlowRuntimeTemplate(AgentProjectVersionFlowDeployment deployment, IDefinitionFactory definitionFactory,
+            IConfigurationService configurationService) {
+        this.deployment = deployment;
+        this.manipulatedFlow = manipulateFlow(deployment.getFlow(), definitionFactory, configurationService);
+
+        /*
+         * index the settings and models so the lookups made for every message
+         * don't scan. a template is built for each deployment, so this picks
+         * up configuration changes
+         */
+        for (FlowStep flowStep : manipulatedFlow.getFlowSteps()) {
+            flowStep.getComponent().buildIndexes();
+        }
+
+        List<FlowStep> enabledFlowSteps = new ArrayList<>();
+        Map<String, List<String>> targetStepIdsByStepId = new HashMap<>();
+        Map<String, List<String>> sourceStepIdsByStepId = new HashMap<>();
+        for (FlowStep flowStep : manipulatedFlow.getFlowSteps()) {
+            if (flowStep.getComponent().getBoolean(AbstractComponentRuntime.ENABLED, true)) {
+                enabledFlowSteps.add(flowStep);
+                targetStepIdsByStepId.put(flowStep.getId(), new ArrayList<>());
+                sourceStepIdsByStepId.put(flowStep.getId(), new ArrayList<>());
+            }
+        }
+
+        /* only links between enabled steps are kept */
+        for (FlowStepLink flowStepLink : manipulatedFlow.getFlowStepLinks()) {
+            List<String> targetStepIds = targetStepIdsByStepId.get(flowStepLink.getSourceStepId());
+            List<String> sourceStepIds = sourceStepIdsByStepId.get(flowStepLink.getTargetStepId());
+            if (targetStepIds != null && sourceStepIds != null) {
+                targetStepIds.add(flowStepLink.getTargetStepId());
+                sourceStepIds.add(flowStepLink.getSourceStepId());
+            }
+        }
+
+        this.enabledFlowSteps = Collections.unmodifiableList(enabledFlowSteps);
+        this.targetStepIdsByStepId = Collections.unmodifiableMap(targetStepIdsByStepId);
+        this.sourceStepIdsByStepId = Collections.unmodifiableMap(sourceStepIdsByStepId);
+
+        manipulatedFlow.calculateApproximateOrder();
+    }
+
+    protected Flow manipulateFlow(Flow flow, IDefinitionFactory definitionFactory, IConfigurationService configurationService) {
+        Flow clone = (Flow)flow.clone();
+        clone.setFlowParameters(new ArrayList<>());
+        clone.getFlowParameters().addAll(flow.getFlowParameters());
+        clone.setFlowSteps(new ArrayList<>());
+        clone.getFlowSteps().addAll(flow.getFlowSteps());
+        clone.setFlowStepLinks(new ArrayList<>());
+        clone.getFlowStepLinks().addAll(flow.getFlowStepLinks());
+
+        for (FlowStep flowStep : new ArrayList<>(clone.getFlowSteps())) {
+            XMLComponentDefinition componentDefintion = definitionFactory.getComponentDefinition(flow.getProjectVersionId(), flowStep.getComponent().getType());
+            if (isNotBlank(componentDefintion.getFlowManipulatorClassName())) {
+                try {
+                    IFlowManipulator flowManipulator = (IFlowManipulator) Class
+                            .forName(componentDefintion.getFlowManipulatorClassName())
+                            .newInstance();
+                    clone = flowManipulator.manipulate(clone, flowStep, configurationService);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        return clone;
+    }
+
+    public AgentProjectVersionFlowDeployment getDeployment() {
+        return deployment;
+    }
+
+    public Flow getManipulatedFlow() {
+        return manipulatedFlow;
+    }
+
+    public List<FlowStep> getEnabledFlowSteps() {
+        return enabledFlowSteps;
+    }
+
+    public List<String> getTargetStepIds(String stepId) {
+        return targetStepIdsByStepId.get(stepId);
+    }
+
+    public List<String> getSourceStepIds(String stepId) {
+        return sourceStepIdsByStepId.get(stepId);
+    }
+
+}
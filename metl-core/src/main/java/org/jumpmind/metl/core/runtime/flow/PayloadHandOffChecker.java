@@ -0,0 +1,106 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.flow;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.jumpmind.metl.core.runtime.ContentMessage;
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.Message;
+
+/**
+ * Catches components that change a payload after handing it off to the
+ * targets without a copy. A checksum of the payload is taken when it is sent
+ * and compared when a target starts to handle the message. Checking costs a
+ * pass over every payload, so it is off unless the
+ * {@value #ENABLED_PROPERTY} system property is set to true, which is meant
+ * for test runs.
+ */
+public final class PayloadHandOffChecker {
+
+    public static final String ENABLED_PROPERTY = "metl.payload.hand.off.check";
+
+    static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    static final Map<Message, Long> checksums = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private PayloadHandOffChecker() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        PayloadHandOffChecker.enabled = enabled;
+        if (!enabled) {
+            checksums.clear();
+        }
+    }
+
+    public static void handedOff(Message message) {
+        if (enabled && message instanceof ContentMessage<?>) {
+            checksums.put(message, checksum(((ContentMessage<?>) message).getPayload()));
+        }
+    }
+
+    /**
+     * @throws IllegalStateException
+     *             if the payload changed since it was handed off
+     */
+    public static void verify(Message message, String targetStepName) {
+        if (enabled && message instanceof ContentMessage<?>) {
+            Long expected = checksums.remove(message);
+            if (expected != null && expected != checksum(((ContentMessage<?>) message).getPayload())) {
+                throw new IllegalStateException(String.format(
+                        "The payload of a message from step %s was changed after it was sent and before %s handled it.  "
+                                + "Turn off payload hand off for the sending step or stop it from changing what it sends",
+                        message.getHeader().getOriginatingStepId(), targetStepName));
+            }
+        }
+    }
+
+    static long checksum(Object payload) {
+        long checksum = 17;
+        if (payload instanceof Collection<?>) {
+            Collection<?> collection = (Collection<?>) payload;
+            checksum = checksum * 31 + collection.size();
+            for (Object object : collection) {
+                checksum = checksum * 31 + System.identityHashCode(object);
+                if (object instanceof EntityData) {
+                    EntityData data = (EntityData) object;
+                    checksum = checksum * 31 + (data.getChangeType() != null ? data.getChangeType().ordinal() : -1);
+                }
+                checksum = checksum * 31 + (object != null ? object.hashCode() : 0);
+            }
+        } else if (payload instanceof byte[]) {
+            checksum = checksum * 31 + Arrays.hashCode((byte[]) payload);
+        } else if (payload != null) {
+            checksum = checksum * 31 + payload.hashCode();
+        }
+        return checksum;
+    }
+
+}
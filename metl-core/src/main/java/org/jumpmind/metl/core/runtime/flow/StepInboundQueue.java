@@ -0,0 +1,180 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.flow;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jumpmind.metl.core.runtime.Message;
+
+/**
+ * Bounded, lock free inbound message queue for a {@link StepRuntime}. Many
+ * steps can send to a step concurrently while the step itself is normally the
+ * only one taking messages off of the queue. The queue is an array based ring
+ * buffer where each slot carries a sequence number that tells producers and
+ * consumers whether the slot is free or filled, so neither side ever takes a
+ * lock.
+ * <p>
+ * Consumers are also coordinated through the slot sequence, which keeps
+ * {@link #clear()} safe when a flow is cancelled from another thread.
+ */
+public class StepInboundQueue {
+
+    static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    final int capacity;
+
+    final int mask;
+
+    final AtomicReferenceArray<Message> buffer;
+
+    final AtomicLongArray sequences;
+
+    final AtomicLong tail = new AtomicLong();
+
+    final AtomicLong head = new AtomicLong();
+
+    public StepInboundQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The queue capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        int bufferSize = Integer.highestOneBit(capacity);
+        if (bufferSize < capacity) {
+            bufferSize <<= 1;
+        }
+        this.mask = bufferSize - 1;
+        this.buffer = new AtomicReferenceArray<>(bufferSize);
+        this.sequences = new AtomicLongArray(bufferSize);
+        for (int i = 0; i < bufferSize; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public boolean offer(Message message) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (position - head.get() >= capacity) {
+                    return false;
+                } else if (tail.compareAndSet(position, position + 1)) {
+                    buffer.set(index, message);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Offer the message, backing off until there is room, the timeout expires
+     * or the thread is interrupted. There is nobody to signal a waiting
+     * producer so it parks for short periods and retries.
+     */
+    public boolean offer(Message message, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!offer(message)) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(this, Math.min(remaining, MAX_PARK_NANOS));
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return true;
+    }
+
+    public Message poll() {
+        while (true) {
+            long position = head.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    Message message = buffer.get(index);
+                    buffer.set(index, null);
+                    sequences.set(index, position + mask + 1);
+                    return message;
+                }
+            } else if (difference < 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * A best effort look at the next message. It might already have been
+     * taken by the time the caller looks at it.
+     */
+    public Message peek() {
+        long position = head.get();
+        int index = (int) position & mask;
+        if (sequences.get(index) == position + 1) {
+            return buffer.get(index);
+        } else {
+            return null;
+        }
+    }
+
+    public int drainTo(Collection<? super Message> messages) {
+        int count = 0;
+        Message message = null;
+        while ((message = poll()) != null) {
+            messages.add(message);
+            count++;
+        }
+        return count;
+    }
+
+    public void clear() {
+        while (poll() != null) {
+        }
+    }
+
+    public int size() {
+        long currentHead = head.get();
+        long size = tail.get() - currentHead;
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int remainingCapacity() {
+        return capacity - size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+}
@@ -30,12 +30,16 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
@@ -57,12 +61,12 @@ import org.jumpmind.metl.core.runtime.TextMessage;
 import org.jumpmind.metl.core.runtime.component.AbstractComponentRuntime;
 import org.jumpmind.metl.core.runtime.component.AssertException;
 import org.jumpmind.metl.core.runtime.component.ComponentContext;
+import org.jumpmind.metl.core.runtime.component.ComponentSettingsConstants;
 import org.jumpmind.metl.core.runtime.component.ComponentStatistics;
 import org.jumpmind.metl.core.runtime.component.IComponentRuntime;
 import org.jumpmind.metl.core.runtime.component.IComponentRuntimeFactory;
 import org.jumpmind.metl.core.util.LogUtils;
 import org.jumpmind.metl.core.util.ThreadUtils;
-import org.jumpmind.util.AppUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -76,13 +80,41 @@ public class StepRuntime implements Runnable {
 
     public static final String UNIT_OF_WORK_FLOW = "Flow";
 
-    protected BlockingQueue<Message> inQueue;
+    /*
+     * Upper bound on how long the dispatch loop waits for a message before it
+     * re-checks the running and cancelled flags. Message arrival, cancellation
+     * and shutdown all wake the loop up explicitly, so this is only a safety
+     * net.
+     */
+    static final long MAX_WAIT_FOR_MESSAGE_MS = 500;
+
+    /*
+     * When running on a shared pool, the number of messages a step handles
+     * before it gives the pool thread back to other steps
+     */
+    static final int MAX_MESSAGES_PER_TASK = 16;
+
+    protected StepInboundQueue inQueue;
 
     protected Executor componentRuntimeExecutor;
+
+    /*
+     * Set when the agent runs steps as tasks on a shared pool instead of on a
+     * dedicated thread per step
+     */
+    protected ExecutorService sharedExecutor;
+
+    protected BlockingQueue<Integer> availableThreadNumbers;
+
+    protected SendMessageCallback sharedExecutorCallback;
+
+    final AtomicBoolean dispatchScheduled = new AtomicBoolean();
     
-    boolean running = false;
+    volatile boolean running = false;
     
-    boolean cancelling = false;
+    volatile boolean cancelling = false;
+
+    volatile boolean waitingForMessage = false;
 
     boolean cancelled = false;
 
@@ -116,17 +148,42 @@ public class StepRuntime implements Runnable {
 
     int controlMessagesSentCount;
 
-    int activeCount;
+    /*
+     * Messages that have been dequeued and are being handled. Used to hold a
+     * unit of work boundary message until the other threads are done.
+     */
+    final AtomicInteger activeCount = new AtomicInteger();
+
+    /*
+     * Messages (other than shutdown messages) that are being queued, are
+     * queued or are being handled. It is incremented before a message is
+     * queued and decremented after it is handled so there is never a window
+     * where a message is not accounted for.
+     */
+    final AtomicInteger pendingCount = new AtomicInteger();
+
+    volatile Thread unitOfWorkWaiter;
     
     int queueCapacity;
     
     int threadCount;
 
+    /*
+     * When set the component gives up what it sends, so payloads are not
+     * copied unless a message goes to more than one target
+     */
+    boolean handOffPayloads;
+
+    boolean logInput;
+
+    boolean logOutput;
+
     public StepRuntime(IComponentRuntimeFactory componentFactory, IDefinitionFactory componentDefinitionFactory, ComponentContext componentContext, FlowRuntime flowRuntime) {
         this.flowRuntime = flowRuntime;
         this.componentContext = componentContext;
         this.queueCapacity = componentContext.getFlowStep().getComponent().getInt(AbstractComponentRuntime.INBOUND_QUEUE_CAPACITY, 1000);
-        this.inQueue = new LinkedBlockingQueue<Message>(queueCapacity);
+        this.inQueue = new StepInboundQueue(queueCapacity);
+        this.handOffPayloads = componentContext.getFlowStep().getComponent().getBoolean(ComponentSettingsConstants.PAYLOAD_HAND_OFF, false);
         this.sourceStepRuntimeUnitOfWorkReceived = new HashMap<String, Boolean>();
         this.targetStepRuntimeUnitOfWorkSent = new HashSet<String>();
         this.componentRuntimeFactory = componentFactory;
@@ -134,6 +191,8 @@ public class StepRuntime implements Runnable {
         this.componentDefintion = componentDefintionFactory.getComponentDefinition(componentContext.getFlowStep().getComponent().getProjectVersionId(), getComponentType());        
         Component component = componentContext.getFlowStep().getComponent();
         this.threadCount = component.getInt(StepRuntime.THREAD_COUNT, 1);        
+        this.logInput = component.getBoolean(AbstractComponentRuntime.LOG_INPUT, false);
+        this.logOutput = component.getBoolean(AbstractComponentRuntime.LOG_OUTPUT, false);
         for (int threadNumber = 1; threadNumber <= threadCount; threadNumber++) {
             createComponentRuntime(threadNumber);
         }
@@ -184,18 +243,40 @@ public class StepRuntime implements Runnable {
                     + " not sufficient to handle inbound messages from other components in addition to inbound messages from itself.");
         }
         if (running) {
-            while (!inQueue.offer(message, 500, TimeUnit.MILLISECONDS)) {
-                if (cancelling) {
-                    throw new CancellationException();
+            boolean counted = !(message instanceof ShutdownMessage);
+            if (counted) {
+                pendingCount.incrementAndGet();
+            }
+            QueueOffer offer = new QueueOffer(message);
+            ForkJoinPool.managedBlock(offer);
+            if (!offer.offered) {
+                if (counted) {
+                    pendingCount.decrementAndGet();
                 }
+                throw new CancellationException();
+            }
+            if (sharedExecutor != null) {
+                scheduleDispatch();
+            } else if (waitingForMessage) {
+                wakeUp();
             }
         }
     }
 
+    protected synchronized void wakeUp() {
+        notifyAll();
+    }
+
     public void start() {
         try {
-            componentContext.setComponentStatistics(new ComponentStatistics());    
-            if (threadCount > 1) {
+            componentContext.setComponentStatistics(new ComponentStatistics(threadCount));
+            if (threadCount > 1 && sharedExecutor != null) {
+                this.availableThreadNumbers = new ArrayBlockingQueue<>(threadCount);
+                for (int threadNumber = 1; threadNumber <= threadCount; threadNumber++) {
+                    availableThreadNumbers.add(threadNumber);
+                }
+                this.componentRuntimeExecutor = (r) -> executeOnSharedExecutor(r);
+            } else if (threadCount > 1) {
                 String prefix = String.format("%s-%s", LogUtils.normalizeName(flowRuntime.getAgent().getName()),
                         LogUtils.normalizeName(componentContext.getFlowStep().getName()));
                 this.componentRuntimeExecutor = ThreadUtils.createFixedThreadPool(prefix, queueCapacity, threadCount);
@@ -264,40 +345,143 @@ public class StepRuntime implements Runnable {
              */
             while (running && !cancelled) {
                 /*
-                 * Continue to poll as long as the flow is running. other
-                 * components could be generating messages which could block if
-                 * we don't continue to poll
+                 * Continue to take messages as long as the flow is running.
+                 * Other components could be generating messages which could
+                 * block if we don't continue to drain the queue
                  */
-                Message inputMessage = null;
-                synchronized (this) {
-                    inputMessage = inQueue.poll();
-                    if (inputMessage != null && !(inputMessage instanceof ShutdownMessage)) {
-                        activeCount++;
-                    }
+                Message inputMessage = nextMessage(true);
+                if (inputMessage != null && running && !cancelled) {
+                    dispatch(inputMessage, target);
                 }
-                if (running && !cancelled) {
-                    if (inputMessage != null) {
-                        if (inputMessage instanceof ShutdownMessage) {
-                            process((ShutdownMessage) inputMessage, target);
-                        } else {
-                            process(inputMessage, target);
-                        }
-                    } else if (running && !cancelled) {
-                        AppUtils.sleep(50);
-                    }
+            }
+        } catch (Throwable ex) {
+            recordError(1, ex);
+        }
+    }
+
+    /**
+     * Run this step as tasks on a shared executor instead of on a dedicated
+     * thread. A task is scheduled whenever a message is queued and no task is
+     * already scheduled, so a step that has nothing to do does not hold a
+     * thread.
+     */
+    public void startRunning(ExecutorService sharedExecutor) {
+        this.sharedExecutor = sharedExecutor;
+        this.sharedExecutorCallback = createSendMessageCallback();
+        startRunning();
+        if (!inQueue.isEmpty()) {
+            scheduleDispatch();
+        }
+    }
+
+    protected void scheduleDispatch() {
+        if (dispatchScheduled.compareAndSet(false, true)) {
+            sharedExecutor.execute(() -> dispatchQueuedMessages());
+        }
+    }
+
+    protected void dispatchQueuedMessages() {
+        try {
+            int count = 0;
+            while (running && !cancelled && count++ < MAX_MESSAGES_PER_TASK) {
+                Message inputMessage = nextMessage(false);
+                if (inputMessage == null) {
+                    break;
+                } else if (running && !cancelled) {
+                    dispatch(inputMessage, sharedExecutorCallback);
                 }
             }
         } catch (Throwable ex) {
             recordError(1, ex);
+        } finally {
+            dispatchScheduled.set(false);
+            /*
+             * A message might have been queued after the last poll but before
+             * the flag was cleared
+             */
+            if (running && !cancelled && !inQueue.isEmpty()) {
+                scheduleDispatch();
+            }
         }
     }
-    
-    protected synchronized void decrementActiveCount() {
-        activeCount--;
+
+    protected void dispatch(Message inputMessage, SendMessageCallback target) {
+        if (inputMessage instanceof ShutdownMessage) {
+            process((ShutdownMessage) inputMessage, target);
+        } else {
+            process(inputMessage, target);
+        }
+    }
+
+    /*
+     * Multi-threaded steps on a shared executor borrow a thread number for
+     * each message so that each component runtime is still only used by one
+     * thread at a time
+     */
+    protected void executeOnSharedExecutor(Runnable runnable) {
+        try {
+            ThreadUtils.waitUntil(() -> !availableThreadNumbers.isEmpty() || cancelling, 5);
+            Integer threadNumber = availableThreadNumbers.poll();
+            if (threadNumber == null) {
+                throw new CancellationException();
+            }
+            sharedExecutor.execute(() -> {
+                try {
+                    ThreadUtils.runAsThreadNumber(threadNumber, runnable);
+                } finally {
+                    availableThreadNumbers.add(threadNumber);
+                }
+            });
+        } catch (InterruptedException e) {
+            throw new CancellationException();
+        }
     }
     
-    protected synchronized int getActiveCountPlusQueueSize() {
-        return activeCount + inQueue.size();
+    /*
+     * Remove the next message from the inbound queue, optionally waiting until
+     * one is queued, the step is cancelled or the step is shut down.
+     */
+    protected Message nextMessage(boolean waitForMessage) throws InterruptedException {
+        Message inputMessage = inQueue.poll();
+        if (inputMessage == null && waitForMessage && running && !cancelled) {
+            inputMessage = waitForMessage();
+        }
+        if (inputMessage != null && !(inputMessage instanceof ShutdownMessage)) {
+            activeCount.incrementAndGet();
+        }
+        return inputMessage;
+    }
+
+    protected synchronized Message waitForMessage() throws InterruptedException {
+        waitingForMessage = true;
+        try {
+            /*
+             * Poll again after raising the flag so that a message queued
+             * before the flag was visible to the sender is not missed
+             */
+            Message inputMessage = inQueue.poll();
+            if (inputMessage == null) {
+                wait(MAX_WAIT_FOR_MESSAGE_MS);
+                inputMessage = inQueue.poll();
+            }
+            return inputMessage;
+        } finally {
+            waitingForMessage = false;
+        }
+    }
+
+    protected void messageHandled() {
+        pendingCount.decrementAndGet();
+        if (activeCount.decrementAndGet() <= 1) {
+            Thread waiter = unitOfWorkWaiter;
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+            }
+        }
+    }
+
+    protected int getPendingCount() {
+        return pendingCount.get();
     }
 
     protected void process(Message inputMessage, SendMessageCallback target) {
@@ -308,8 +492,12 @@ public class StepRuntime implements Runnable {
          * race conditions.
          */
         if (threadCount > 1) {
-            while (unitOfWorkBoundaryReached && activeCount > 1) {
-                AppUtils.sleep(5);
+            if (unitOfWorkBoundaryReached) {
+                try {
+                    ForkJoinPool.managedBlock(new UnitOfWorkBarrier());
+                } catch (InterruptedException e) {
+                    throw new CancellationException();
+                }
             }
             this.componentRuntimeExecutor.execute(() -> processOnAnotherThread(inputMessage, unitOfWorkBoundaryReached, target));    
         } else {
@@ -335,13 +523,13 @@ public class StepRuntime implements Runnable {
 
             IComponentRuntime componentRuntime = componentContext.getComponentRuntimeByThread().get(threadNumber);
 
-            Component component = componentContext.getFlowStep().getComponent();
-            boolean logInput = component.getBoolean(AbstractComponentRuntime.LOG_INPUT, false);
-
             if (logInput) {
                 logInput(inputMessage, callback, unitOfWorkBoundaryReached);
             }
             callback.setCurrentInputMessage(threadNumber, inputMessage);
+            if (PayloadHandOffChecker.isEnabled()) {
+                PayloadHandOffChecker.verify(inputMessage, componentContext.getFlowStep().getName());
+            }
             long ts = System.currentTimeMillis();
             
             try {
@@ -355,7 +543,7 @@ public class StepRuntime implements Runnable {
             statistics.incrementTimeSpentInHandle(threadNumber, System.currentTimeMillis()-ts-callback.useQueueTime(threadNumber));
 
             boolean recursionDone = liveSourceStepIds.size() == 1 && liveSourceStepIds.contains(componentContext.getFlowStep().getId())
-                    && getActiveCountPlusQueueSize() == 1;
+                    && getPendingCount() == 1;
             
             /* When multi-threaded, if a unit of work is received we will have waited for all threads to finish before processing the
                this message */
@@ -374,12 +562,12 @@ public class StepRuntime implements Runnable {
             recordError(ThreadUtils.getThreadNumber(threadCount), ex);
         } finally {
             componentContext.getExecutionTracker().afterHandle(threadNumber, componentContext, error);
-            decrementActiveCount();
+            messageHandled();
         }
     }
 
-    protected synchronized boolean idle() {
-        return activeCount <= 0;
+    protected boolean idle() {
+        return pendingCount.get() <= 0;
     }
 
     protected void process(ShutdownMessage shutdownMessage, SendMessageCallback target) {
@@ -498,12 +686,21 @@ public class StepRuntime implements Runnable {
         if (cancelling) {
             cancelled = true;
         }
+        wakeUp();
 
         recordFlowStepFinished();
     }
 
     private void shutdownThreads(boolean waitForShutdown) {
-        if (this.componentRuntimeExecutor instanceof ExecutorService) {
+        if (this.availableThreadNumbers != null) {
+            try {
+                if (waitForShutdown) {
+                    ThreadUtils.waitUntil(() -> availableThreadNumbers.size() == threadCount, 5);
+                }
+            } catch (Exception e) {
+                recordError(1, e);
+            }
+        } else if (this.componentRuntimeExecutor instanceof ExecutorService) {
             try {
                 ExecutorService service = (ExecutorService) this.componentRuntimeExecutor;
                 service.shutdown();
@@ -529,7 +726,13 @@ public class StepRuntime implements Runnable {
         cancelling = true;
         if (isRunning()) {
             try {
-                inQueue.clear();
+                List<Message> cleared = new ArrayList<>();
+                inQueue.drainTo(cleared);
+                for (Message message : cleared) {
+                    if (!(message instanceof ShutdownMessage)) {
+                        pendingCount.decrementAndGet();
+                    }
+                }
                 queue(new ShutdownMessage(componentContext.getFlowStep().getId(), true));
                 for (IComponentRuntime componentRuntime : getComponentRuntimes()) {
                     componentRuntime.interrupt();
@@ -658,6 +861,62 @@ public class StepRuntime implements Runnable {
         }
     }
 
+    @SuppressWarnings("unchecked")
+    static <T extends Serializable> T copy(T payload) {
+        if (payload instanceof ArrayList) {
+            ArrayList<?> old = (ArrayList<?>) payload;
+            ArrayList<Object> copied = new ArrayList<>(old.size());
+            for (Object object : old) {
+                if (object instanceof EntityData) {
+                    object = ((EntityData) object).copy();
+                }
+                copied.add(object);
+            }
+            payload = (T) copied;
+        } else if (payload instanceof byte[]) {
+            payload = (T) ArrayUtils.clone((byte[]) payload);
+        }
+        return payload;
+    }
+
+    static Message copyMessage(Message message) {
+        Message copy = null;
+        String originatingStepId = message.getHeader().getOriginatingStepId();
+        if (message instanceof EntityDataMessage) {
+            copy = new EntityDataMessage(originatingStepId, copy(((EntityDataMessage) message).getPayload()));
+        } else if (message instanceof TextMessage) {
+            copy = new TextMessage(originatingStepId, copy(((TextMessage) message).getPayload()));
+        } else if (message instanceof BinaryMessage) {
+            copy = new BinaryMessage(originatingStepId, copy(((BinaryMessage) message).getPayload()));
+        } else {
+            return message;
+        }
+        copy.getHeader().putAll(message.getHeader());
+        return copy;
+    }
+
+    /**
+     * Queues a message to each of the targets. A handed off payload goes to
+     * the first target as is and every other target gets a copy. All of the
+     * copies are made before the original is queued, because the target that
+     * gets it can start changing it right away.
+     */
+    static void queue(Message message, List<StepRuntime> targets, boolean handOffPayloads) throws InterruptedException {
+        if (!handOffPayloads) {
+            for (StepRuntime target : targets) {
+                target.queue(message);
+            }
+        } else {
+            Message[] messages = new Message[targets.size()];
+            for (int i = 0; i < messages.length; i++) {
+                messages[i] = i == 0 ? message : copyMessage(message);
+            }
+            for (int i = messages.length - 1; i >= 0; i--) {
+                targets.get(i).queue(messages[i]);
+            }
+        }
+    }
+
     class SendMessageCallback implements ISendMessageCallback {
 
         Map<Integer, Message> currentInputMessages = new HashMap<>();
@@ -685,24 +944,6 @@ public class StepRuntime implements Runnable {
             return newMessage;
         }
 
-        @SuppressWarnings("unchecked")
-        private <T extends Serializable> T copy(T payload) {
-            if (payload instanceof ArrayList) {
-                ArrayList<?> old = (ArrayList<?>) payload;
-                ArrayList<Object> copied = new ArrayList<>(old.size());
-                for (Object object : old) {
-                    if (object instanceof EntityData) {
-                        object = ((EntityData) object).copy();
-                    }
-                    copied.add(object);
-                }
-                payload = (T) copied;
-            } else if (payload instanceof byte[]) {
-                payload = (T) ArrayUtils.clone((byte[]) payload);
-            }
-            return payload;
-        }
-
         private void sendMessage(Message message, String... targetFlowStepIds) {
             ComponentStatistics statistics = componentContext.getComponentStatistics();
             int threadNumber = ThreadUtils.getThreadNumber(threadCount);
@@ -718,9 +959,6 @@ public class StepRuntime implements Runnable {
 
             componentContext.getExecutionTracker().updateStatistics(threadNumber, componentContext);
 
-            Component component = componentContext.getFlowStep().getComponent();
-            boolean logOutput = component.getBoolean(AbstractComponentRuntime.LOG_OUTPUT, false);
-
             if (logOutput) {
                 logOutput(message, targetFlowStepIds);
             }
@@ -729,26 +967,36 @@ public class StepRuntime implements Runnable {
 
             Collection<String> targetStepIds = targetFlowStepIds != null ? Arrays.asList(targetFlowStepIds) : Collections.emptyList();
 
+            if (handOffPayloads) {
+                PayloadHandOffChecker.handedOff(message);
+            }
+
+            List<StepRuntime> targets = new ArrayList<>(targetStepRuntimes.size());
             for (StepRuntime targetRuntime : targetStepRuntimes) {
                 boolean forward = targetStepIds == null || targetStepIds.size() == 0
                         || targetStepIds.contains(targetRuntime.getComponentContext().getFlowStep().getId());
                 if (forward) {
-                    try {
-                        if (log.isDebugEnabled()) {
-                            log.debug("Sending " + message.getClass().getSimpleName() + " to "
-                                    + targetRuntime.getComponentContext().getFlowStep().getName());
-                        }
-                        targetRuntime.queue(message);
-                        if (message instanceof ControlMessage) {
-                            targetStepRuntimeUnitOfWorkSent.add(targetRuntime.getComponentContext().getFlowStep().getId());
-                        }
-                    } catch (Exception e) {
-                        if (e instanceof RuntimeException) {
-                            throw (RuntimeException) e;
-                        } else {
-                            throw new RuntimeException(e);
-                        }
+                    if (log.isDebugEnabled()) {
+                        log.debug("Sending " + message.getClass().getSimpleName() + " to "
+                                + targetRuntime.getComponentContext().getFlowStep().getName());
                     }
+                    targets.add(targetRuntime);
+                }
+            }
+
+            try {
+                queue(message, targets, handOffPayloads);
+            } catch (Exception e) {
+                if (e instanceof RuntimeException) {
+                    throw (RuntimeException) e;
+                } else {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            if (message instanceof ControlMessage) {
+                for (StepRuntime targetRuntime : targets) {
+                    targetStepRuntimeUnitOfWorkSent.add(targetRuntime.getComponentContext().getFlowStep().getId());
                 }
             }
             
@@ -798,7 +1046,9 @@ public class StepRuntime implements Runnable {
 
         @Override
         public void sendBinaryMessage(Map<String, Serializable> messageHeaders, byte[] payload, String... targetStepIds) {
-            payload = copy(payload);
+            if (!handOffPayloads) {
+                payload = copy(payload);
+            }
             FlowStep flowStep = componentContext.getFlowStep();
             sendMessage(createMessage(new BinaryMessage(flowStep.getId(), payload), messageHeaders), targetStepIds);
             contentMessagesSentCount++;
@@ -807,7 +1057,9 @@ public class StepRuntime implements Runnable {
         @Override
         public void sendEntityDataMessage(Map<String, Serializable> messageHeaders, ArrayList<EntityData> payload, String... targetStepIds) {
             validateEntityData(payload);
-            payload = copy(payload);
+            if (!handOffPayloads) {
+                payload = copy(payload);
+            }
             FlowStep flowStep = componentContext.getFlowStep();
             sendMessage(createMessage(new EntityDataMessage(flowStep.getId(), payload), messageHeaders), targetStepIds);
             contentMessagesSentCount++;
@@ -822,7 +1074,9 @@ public class StepRuntime implements Runnable {
 
         @Override
         public void sendTextMessage(Map<String, Serializable> messageHeaders, ArrayList<String> payload, String... targetStepIds) {
-            payload = copy(payload);
+            if (!handOffPayloads) {
+                payload = copy(payload);
+            }
             FlowStep flowStep = componentContext.getFlowStep();
             sendMessage(createMessage(new TextMessage(flowStep.getId(), payload), messageHeaders), targetStepIds);
             contentMessagesSentCount++;
@@ -845,6 +1099,61 @@ public class StepRuntime implements Runnable {
         }
     }
 
+    /*
+     * Holds a unit of work boundary message until the messages being handled
+     * by other threads are done. The last thread to finish wakes it up.
+     */
+    class UnitOfWorkBarrier implements ForkJoinPool.ManagedBlocker {
+
+        @Override
+        public boolean isReleasable() {
+            return activeCount.get() <= 1 || cancelling;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            unitOfWorkWaiter = Thread.currentThread();
+            try {
+                while (!isReleasable()) {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(MAX_WAIT_FOR_MESSAGE_MS));
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+            } finally {
+                unitOfWorkWaiter = null;
+            }
+            return true;
+        }
+    }
+
+    class QueueOffer implements ForkJoinPool.ManagedBlocker {
+
+        Message message;
+
+        boolean offered;
+
+        QueueOffer(Message message) {
+            this.message = message;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            if (!offered) {
+                offered = inQueue.offer(message);
+            }
+            return offered || cancelling;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            while (!offered && !cancelling) {
+                offered = inQueue.offer(message, 500, TimeUnit.MILLISECONDS);
+            }
+            return true;
+        }
+    }
+
     @Override
     public String toString() {
         return componentContext.getFlowStep().getName();
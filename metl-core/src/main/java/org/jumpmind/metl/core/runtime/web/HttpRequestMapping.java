@@ -49,6 +49,8 @@ public class HttpRequestMapping implements Serializable, Comparable<HttpRequestM
     
     String flowDescription;
     
+    boolean streaming;
+    
     public HttpMethod getMethod() {
         return method;
     }
@@ -128,6 +130,18 @@ public class HttpRequestMapping implements Serializable, Comparable<HttpRequestM
     public String getFlowDescription() {
         return flowDescription;
     }
+    
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+    
+    /**
+     * @return true if the request body is read by the flow instead of being
+     *         passed as a flow parameter
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
 
     @Override
     public int compareTo(HttpRequestMapping o) {
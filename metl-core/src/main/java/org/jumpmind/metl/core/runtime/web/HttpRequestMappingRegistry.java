@@ -43,22 +43,26 @@ public class HttpRequestMappingRegistry implements IHttpRequestMappingRegistry {
     
     Map<AgentDeploy, Set<HttpRequestMapping>> mappingsByAgentDeployment = new HashMap<>();
     
+    /*
+     * Rebuilt when a mapping is registered or unregistered so requests can be
+     * matched without locking
+     */
+    volatile Map<HttpMethod, HttpRequestRouteTrie> routesByHttpMethod = Collections.emptyMap();
+
     @Override
     public HttpRequestMapping findBestMatch(HttpMethod method, String path) {
-        Set<HttpRequestMapping> mappings = mappingsByHttpMethod.get(method);
-        if (mappings != null) {
-            for (HttpRequestMapping httpRequestMapping : mappings) {
-                log.info(String.format("Found available uri: %s",httpRequestMapping.getPath()));
-                if (patternMatcher.match(httpRequestMapping.getPath(), path)) {
-                    return httpRequestMapping;
-                }
-            }
-        }
-        return null;
+        HttpRequestMappingMatch match = match(method, path);
+        return match != null ? match.getMapping() : null;
+    }
+
+    @Override
+    public HttpRequestMappingMatch match(HttpMethod method, String path) {
+        HttpRequestRouteTrie routes = routesByHttpMethod.get(method);
+        return routes != null ? routes.match(path) : null;
     }
     
     @Override
-    public List<HttpRequestMapping> getHttpRequestMappingsFor(AgentDeploy deployment) {
+    public synchronized List<HttpRequestMapping> getHttpRequestMappingsFor(AgentDeploy deployment) {
         Set<HttpRequestMapping> mappings = mappingsByAgentDeployment.get(deployment);
         if (mappings != null) {
             return new ArrayList<>(mappings);
@@ -68,7 +72,7 @@ public class HttpRequestMappingRegistry implements IHttpRequestMappingRegistry {
     }  
     
     @Override
-    public void register(HttpRequestMapping request) {
+    public synchronized void register(HttpRequestMapping request) {
         Set<HttpRequestMapping> mappings = mappingsByHttpMethod.get(request.getMethod());
         if (mappings == null) {
             mappings = new TreeSet<>();
@@ -84,11 +88,13 @@ public class HttpRequestMappingRegistry implements IHttpRequestMappingRegistry {
                 
         mappings.add(request);
         
+        buildRoutes();
+        
         log.info("Registering REST service: {}", request);
     }
     
     @Override
-    public void unregister(HttpRequestMapping request) {
+    public synchronized void unregister(HttpRequestMapping request) {
         boolean unregistered = false;
         Set<HttpRequestMapping> mappings = mappingsByHttpMethod.get(request.getMethod());
         if (mappings != null) {            
@@ -101,9 +107,17 @@ public class HttpRequestMappingRegistry implements IHttpRequestMappingRegistry {
         }
         
         if (unregistered) {
+            buildRoutes();
             log.info("Unregistering REST service: {}", request);
         }
     }
     
+    protected void buildRoutes() {
+        Map<HttpMethod, HttpRequestRouteTrie> routesByHttpMethod = new HashMap<>();
+        for (Map.Entry<HttpMethod, Set<HttpRequestMapping>> entry : mappingsByHttpMethod.entrySet()) {
+            routesByHttpMethod.put(entry.getKey(), new HttpRequestRouteTrie(entry.getValue(), patternMatcher));
+        }
+        this.routesByHttpMethod = routesByHttpMethod;
+    }
     
 }
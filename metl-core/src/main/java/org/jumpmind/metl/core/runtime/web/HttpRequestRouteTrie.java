@@ -0,0 +1,226 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.web;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.util.AntPathMatcher;
+
+/**
+ * Finds the first of an ordered list of request mappings whose path matches
+ * a request path, the same way a scan with {@link AntPathMatcher#match} does.
+ * <p>
+ * Paths made of literal segments and <code>{name}</code> segments are
+ * compiled into a tree of path segments, so a lookup only visits the
+ * segments of the request path. Paths with wildcards or regular expressions
+ * are still matched with the {@link AntPathMatcher}, but only those that come
+ * before the best match from the tree are tried.
+ * <p>
+ * The trie is not changed after it is built, so it can be used by any number
+ * of threads.
+ */
+final class HttpRequestRouteTrie {
+
+    static final String PATH_SEPARATOR = "/";
+
+    final Node root = new Node();
+
+    final List<Route> patternRoutes = new ArrayList<>();
+
+    final AntPathMatcher patternMatcher;
+
+    HttpRequestRouteTrie(Collection<HttpRequestMapping> mappings, AntPathMatcher patternMatcher) {
+        this.patternMatcher = patternMatcher;
+        int order = 0;
+        for (HttpRequestMapping mapping : mappings) {
+            String path = mapping.getPath();
+            if (path != null) {
+                add(new Route(mapping, order++));
+            }
+        }
+    }
+
+    HttpRequestMappingMatch match(String path) {
+        if (path == null) {
+            return null;
+        }
+
+        List<String> segments = tokenize(path);
+        Route best = root.find(segments, 0, path.startsWith(PATH_SEPARATOR), path.endsWith(PATH_SEPARATOR));
+        Map<String, String> uriTemplateVariables = best != null ? best.extractUriTemplateVariables(segments) : null;
+
+        for (Route route : patternRoutes) {
+            if (best != null && route.order > best.order) {
+                break;
+            }
+            if (patternMatcher.match(route.path, path)) {
+                best = route;
+                uriTemplateVariables = patternMatcher.extractUriTemplateVariables(route.path, path);
+                break;
+            }
+        }
+
+        return best != null ? new HttpRequestMappingMatch(best.mapping, uriTemplateVariables) : null;
+    }
+
+    private void add(Route route) {
+        List<String> segments = tokenize(route.path);
+        String[] variableNames = new String[segments.size()];
+        Node node = root;
+        for (int i = 0; i < segments.size(); i++) {
+            String segment = segments.get(i);
+            if (isLiteral(segment)) {
+                node = node.literals.computeIfAbsent(segment, k -> new Node());
+            } else {
+                String variableName = toVariableName(segment);
+                if (variableName == null) {
+                    patternRoutes.add(route);
+                    return;
+                }
+                variableNames[i] = variableName;
+                if (node.variable == null) {
+                    node.variable = new Node();
+                }
+                node = node.variable;
+            }
+        }
+        route.variableNames = variableNames;
+        node.routes.add(route);
+    }
+
+    /*
+     * Tokenizes like the AntPathMatcher does by default: tokens are not
+     * trimmed and empty tokens are skipped
+     */
+    static List<String> tokenize(String path) {
+        List<String> segments = new ArrayList<>();
+        int start = 0;
+        while (start <= path.length()) {
+            int end = path.indexOf(PATH_SEPARATOR, start);
+            if (end < 0) {
+                end = path.length();
+            }
+            if (end > start) {
+                segments.add(path.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return segments;
+    }
+
+    static boolean isLiteral(String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '*' || c == '?' || c == '{' || c == '}') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Returns the name of a segment that is a single uri template variable
+     * without a regular expression, or null
+     */
+    static String toVariableName(String segment) {
+        if (segment.length() > 2 && segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}') {
+            String name = segment.substring(1, segment.length() - 1);
+            if (isLiteral(name) && name.indexOf(':') < 0) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    static final class Node {
+
+        final Map<String, Node> literals = new HashMap<>();
+
+        Node variable;
+
+        /* the routes that end at this node, in order */
+        final List<Route> routes = new ArrayList<>(1);
+
+        Route find(List<String> segments, int index, boolean leadingSeparator, boolean trailingSeparator) {
+            if (index == segments.size()) {
+                for (Route route : routes) {
+                    if (route.leadingSeparator == leadingSeparator && route.trailingSeparator == trailingSeparator) {
+                        return route;
+                    }
+                }
+                return null;
+            }
+
+            Route best = null;
+            Node literal = literals.get(segments.get(index));
+            if (literal != null) {
+                best = literal.find(segments, index + 1, leadingSeparator, trailingSeparator);
+            }
+            if (variable != null) {
+                Route route = variable.find(segments, index + 1, leadingSeparator, trailingSeparator);
+                if (route != null && (best == null || route.order < best.order)) {
+                    best = route;
+                }
+            }
+            return best;
+        }
+    }
+
+    static final class Route {
+
+        final HttpRequestMapping mapping;
+
+        final String path;
+
+        final int order;
+
+        final boolean leadingSeparator;
+
+        final boolean trailingSeparator;
+
+        /* the variable name of each segment, null for literal segments */
+        String[] variableNames;
+
+        Route(HttpRequestMapping mapping, int order) {
+            this.mapping = mapping;
+            this.path = mapping.getPath();
+            this.order = order;
+            this.leadingSeparator = path.startsWith(PATH_SEPARATOR);
+            this.trailingSeparator = path.endsWith(PATH_SEPARATOR);
+        }
+
+        Map<String, String> extractUriTemplateVariables(List<String> segments) {
+            Map<String, String> variables = new LinkedHashMap<>();
+            for (int i = 0; i < variableNames.length; i++) {
+                if (variableNames[i] != null) {
+                    variables.put(variableNames[i], segments.get(i));
+                }
+            }
+            return variables;
+        }
+    }
+
+}
@@ -28,6 +28,12 @@ public interface IHttpRequestMappingRegistry {
     
     public HttpRequestMapping findBestMatch(HttpMethod method, String path);
     
+    /**
+     * Finds the mapping like {@link #findBestMatch(HttpMethod, String)} does
+     * and also returns the values of the uri template variables in the path
+     */
+    public HttpRequestMappingMatch match(HttpMethod method, String path);
+    
     public void register(HttpRequestMapping request);
     
     public void unregister(HttpRequestMapping request);
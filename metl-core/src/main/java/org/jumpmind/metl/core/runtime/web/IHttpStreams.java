@@ -0,0 +1,52 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Gives the components of a flow that was called as a web service access to
+ * the body of the request and the response, so they can be streamed instead
+ * of being held in memory.
+ */
+public interface IHttpStreams {
+
+    public InputStream getRequestBody() throws IOException;
+
+    /**
+     * @return the character encoding of the request, or null if the request
+     *         did not specify one
+     */
+    public String getRequestCharacterEncoding();
+
+    /**
+     * Sets the content type of the response, if the response has not been
+     * committed yet, and returns the stream to write the body to. Without a
+     * content length the body is sent with chunked transfer encoding as it is
+     * flushed.
+     */
+    public OutputStream getResponseBody(String contentType) throws IOException;
+
+    public String getResponseCharacterEncoding();
+
+}
@@ -0,0 +1,133 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.util;
+
+import java.io.Closeable;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An append only buffer that keeps objects in memory until it is told to
+ * spill them to a {@link SpillFile}. The owner tracks memory use across its
+ * buffers with {@link #getMemorySize()} and decides which ones to spill.
+ * Objects are read back in the order they were added.
+ */
+public class SpillBuffer<T extends Serializable> implements Closeable {
+
+    String prefix;
+
+    List<T> memory = new ArrayList<>();
+
+    long memorySize;
+
+    SpillFile<T> file;
+
+    long count;
+
+    public SpillBuffer(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public void add(T object, long estimatedSize) {
+        memory.add(object);
+        memorySize += estimatedSize;
+        count++;
+    }
+
+    /**
+     * Move everything held in memory to disk
+     * 
+     * @return The number of bytes that were released
+     */
+    public long spill() {
+        long released = memorySize;
+        if (memory.size() > 0) {
+            if (file == null) {
+                file = new SpillFile<>(prefix);
+            }
+            for (T object : memory) {
+                file.write(object);
+            }
+            memory = new ArrayList<>();
+            memorySize = 0;
+        }
+        return released;
+    }
+
+    public long getMemorySize() {
+        return memorySize;
+    }
+
+    public long size() {
+        return count;
+    }
+
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * @return An iterator over everything that was added. Nothing may be added
+     *         while it is in use.
+     */
+    public Iterator<T> iterator() {
+        final SpillFile<T>.Reader spilled = file != null ? file.read() : null;
+        final Iterator<T> inMemory = memory.iterator();
+        return new Iterator<T>() {
+            boolean spilledRemaining = spilled != null;
+
+            @Override
+            public boolean hasNext() {
+                if (spilledRemaining) {
+                    if (spilled.hasNext()) {
+                        return true;
+                    }
+                    spilled.close();
+                    spilledRemaining = false;
+                }
+                return inMemory.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return spilledRemaining ? spilled.next() : inMemory.next();
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        if (file != null) {
+            file.delete();
+            file = null;
+        }
+        memory = new ArrayList<>();
+        memorySize = 0;
+        count = 0;
+    }
+
+}
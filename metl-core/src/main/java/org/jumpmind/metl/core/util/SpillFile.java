@@ -0,0 +1,176 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.jumpmind.exception.IoException;
+
+/**
+ * A temporary file that objects are written to in sequence and then read back
+ * in the same order. Used by components that have to hold on to more data than
+ * fits in the heap.
+ * <p>
+ * The object stream is reset periodically so that it does not hold on to a
+ * reference to every object that was written.
+ */
+public class SpillFile<T extends Serializable> implements Closeable {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    static final int RESET_INTERVAL = 1000;
+
+    File file;
+
+    ObjectOutputStream out;
+
+    long count;
+
+    public SpillFile(String prefix) {
+        try {
+            file = File.createTempFile(prefix, ".spill");
+            out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        } catch (IOException e) {
+            delete();
+            throw new IoException(e);
+        }
+    }
+
+    public void write(T object) {
+        try {
+            out.writeObject(object);
+            if (++count % RESET_INTERVAL == 0) {
+                out.reset();
+            }
+        } catch (IOException e) {
+            throw new IoException(e);
+        }
+    }
+
+    /**
+     * Finish writing. No more objects may be written after this is called.
+     */
+    public void finish() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new IoException(e);
+            } finally {
+                out = null;
+            }
+        }
+    }
+
+    /**
+     * Open a reader over everything that was written. Writing is finished if
+     * it was not already.
+     */
+    public Reader read() {
+        finish();
+        return new Reader();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public void delete() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+            }
+            out = null;
+        }
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    @Override
+    public void close() {
+        delete();
+    }
+
+    public class Reader implements Iterator<T>, Closeable {
+
+        ObjectInputStream in;
+
+        long remaining = count;
+
+        Reader() {
+            try {
+                in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+            } catch (IOException e) {
+                throw new IoException(e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T next() {
+            if (remaining <= 0) {
+                throw new NoSuchElementException();
+            }
+            try {
+                remaining--;
+                return (T) in.readObject();
+            } catch (EOFException e) {
+                throw new NoSuchElementException();
+            } catch (IOException e) {
+                throw new IoException(e);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+}
@@ -22,20 +22,31 @@ package org.jumpmind.metl.core.util;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 final public class ThreadUtils {
 
+    /*
+     * Thread number assigned to a task running on a shared pool. Shared pool
+     * threads serve many steps so their names can't carry the thread number.
+     */
+    private static final ThreadLocal<Integer> assignedThreadNumber = new ThreadLocal<>();
+
     private ThreadUtils() {
     }
 
     public static int getThreadNumber(int maxThreads) {
         if (maxThreads == 1) {
             return 1;
+        } else if (assignedThreadNumber.get() != null) {
+            return assignedThreadNumber.get();
         } else {
             int threadNumber = 1;
             String name = Thread.currentThread().getName();
@@ -67,6 +78,41 @@ final public class ThreadUtils {
         return Executors.newCachedThreadPool(new CustomThreadFactory(namePrefix));
     }
 
+    public static ForkJoinPool createWorkStealingPool(String namePrefix, int parallelism) {
+        return new ForkJoinPool(parallelism, new CustomForkJoinWorkerThreadFactory(namePrefix), null, true);
+    }
+
+    public static void runAsThreadNumber(int threadNumber, Runnable runnable) {
+        assignedThreadNumber.set(threadNumber);
+        try {
+            runnable.run();
+        } finally {
+            assignedThreadNumber.remove();
+        }
+    }
+
+    /**
+     * Wait until the condition is met. When called from a thread in a
+     * {@link ForkJoinPool} the pool is told that the thread is blocked so it
+     * can compensate with another thread and keep the other tasks moving.
+     */
+    public static void waitUntil(BooleanSupplier condition, long pollIntervalMs) throws InterruptedException {
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            @Override
+            public boolean isReleasable() {
+                return condition.getAsBoolean();
+            }
+
+            @Override
+            public boolean block() throws InterruptedException {
+                while (!condition.getAsBoolean()) {
+                    Thread.sleep(pollIntervalMs);
+                }
+                return true;
+            }
+        });
+    }
+
     static class CustomThreadFactory implements ThreadFactory {
 
         String namePrefix;
@@ -88,4 +134,21 @@ final public class ThreadUtils {
             return t;
         }
     }
+
+    static class CustomForkJoinWorkerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+        String namePrefix;
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        public CustomForkJoinWorkerThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName(namePrefix + "-" + threadNumber.getAndIncrement());
+            return t;
+        }
+    }
 }
@@ -0,0 +1,127 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+public class ModelIndexesTest {
+
+    @Test
+    public void testIndexedLookupsMatchTheScans() {
+        Model model = createModel();
+        ModelAttrib col1 = model.getAttributeById("tt1col1");
+        ModelEntity tt2 = model.getEntityByName("test_table_2");
+        model.buildIndexes();
+        assertSame(col1, model.getAttributeById("TT1COL1"));
+        assertSame(tt2, model.getEntityByName("test_table_2"));
+        assertSame(tt2, model.getEntityById("tt2"));
+        assertSame(col1, model.getAttributeByName("Test_Table_1", "col1"));
+        assertSame(model.getModelEntities().get(0).getModelAttributes().get(1),
+                model.getAttributeByName("TEST_TABLE_1", "COL2"));
+        assertNull(model.getAttributeById("missing"));
+        assertNull(model.getAttributeById(null));
+        assertNull(model.getAttributeByName("TEST_TABLE_2", "COL1"));
+        assertNull(model.getEntityByName("missing"));
+    }
+
+    @Test
+    public void testFirstMatchWins() {
+        Model model = createModel();
+        ModelEntity duplicate = new ModelEntity("tt3", "Test_Table_1");
+        model.getModelEntities().add(duplicate);
+        model.buildIndexes();
+        assertEquals("tt1", model.getEntityByName("TEST_TABLE_1").getId());
+    }
+
+    @Test
+    public void testSettingTheEntitiesInvalidatesTheIndexes() {
+        Model model = createModel();
+        model.buildIndexes();
+        ModelEntity tt3 = new ModelEntity("tt3", "TEST_TABLE_3");
+        tt3.addModelAttribute(new ModelAttrib("tt3col1", tt3.getId(), "COL1"));
+        ArrayList<ModelEntity> entities = new ArrayList<ModelEntity>(model.getModelEntities());
+        entities.add(tt3);
+        model.setModelEntities(entities);
+        assertSame(tt3, model.getEntityByName("TEST_TABLE_3"));
+        assertEquals("tt3col1", model.getAttributeByName("TEST_TABLE_3", "COL1").getId());
+    }
+
+    @Test
+    public void testAddingAndRemovingEntitiesInvalidatesTheIndexes() {
+        Model model = createModel();
+        model.buildIndexes();
+        ModelEntity tt3 = new ModelEntity("tt3", "TEST_TABLE_3");
+        model.addModelEntity(tt3);
+        assertSame(tt3, model.getEntityById("tt3"));
+        model.buildIndexes();
+        model.removeModelEntity(tt3);
+        assertNull(model.getEntityByName("TEST_TABLE_3"));
+    }
+
+    @Test
+    public void testComponentSettingIndexes() {
+        Component component = new Component(null, createModel(), null, new ArrayList<ComponentEntitySetting>(),
+                new ArrayList<ComponentAttribSetting>(), new ComponentSetting("log.input", "true"));
+        component.addAttributeSetting(new ComponentAttribSetting("tt1col1", "ordinal", "2"));
+        component.addAttributeSetting(new ComponentAttribSetting("tt1col2", "ordinal", "1"));
+        component.buildIndexes();
+
+        assertEquals(true, component.getBoolean("log.input", false));
+        assertEquals("1", component.getSingleAttributeSetting("tt1col2", "ORDINAL").getValue());
+        assertNull(component.getSingleAttributeSetting("tt1col3", "ordinal"));
+        assertSame(component.getInputModel().getModelEntities().get(0), component.getInputModel().getEntityById("TT1"));
+
+        component.put("log.input", "false");
+        assertEquals(false, component.getBoolean("log.input", true));
+        component.put("log.output", "true");
+        assertEquals(true, component.getBoolean("log.output", false));
+        component.addAttributeSetting(new ComponentAttribSetting("tt1col3", "ordinal", "3"));
+        assertEquals("3", component.getSingleAttributeSetting("tt1col3", "ordinal").getValue());
+
+        component.buildIndexes();
+        component.removeAttributeSetting(component.getSingleAttributeSetting("tt1col3", "ordinal"));
+        assertNull(component.getSingleAttributeSetting("tt1col3", "ordinal"));
+        component.addSetting(new ComponentSetting("log.debug", "true"));
+        assertEquals(true, component.getBoolean("log.debug", false));
+    }
+
+    private static Model createModel() {
+        ModelEntity tt1 = new ModelEntity("tt1", "TEST_TABLE_1");
+        tt1.addModelAttribute(new ModelAttrib("tt1col1", tt1.getId(), "COL1"));
+        tt1.addModelAttribute(new ModelAttrib("tt1col2", tt1.getId(), "COL2"));
+        tt1.addModelAttribute(new ModelAttrib("tt1col3", tt1.getId(), "COL3"));
+
+        ModelEntity tt2 = new ModelEntity("tt2", "TEST_TABLE_2");
+        tt2.addModelAttribute(new ModelAttrib("tt2colx", tt2.getId(), "COLX"));
+
+        Model model = new Model();
+        model.getModelEntities().add(tt1);
+        model.getModelEntities().add(tt2);
+        return model;
+    }
+
+}
@@ -0,0 +1,144 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.persist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.jumpmind.metl.core.model.ExecutionStepLog;
+import org.jumpmind.metl.core.runtime.LogLevel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExecutionStepLogStoreTest {
+
+    private static final File LOG_DIR = new File("build/steplogs");
+
+    File logFile;
+
+    @Before
+    public void setup() {
+        LOG_DIR.mkdirs();
+        logFile = new File(LOG_DIR, "step.logz");
+        FileUtils.deleteQuietly(logFile);
+        FileUtils.deleteQuietly(ExecutionStepLogWriter.getIndexFile(logFile));
+    }
+
+    @After
+    public void cleanup() {
+        FileUtils.deleteQuietly(LOG_DIR);
+    }
+
+    @Test
+    public void testReadPages() throws Exception {
+        write(0, 1000);
+        ExecutionStepLogReader reader = new ExecutionStepLogReader("step", logFile);
+        assertTrue(reader.blockCount > 1);
+        assertEquals(1000, reader.count(null));
+
+        List<ExecutionStepLog> page = reader.read(250, 100, null);
+        assertEquals(100, page.size());
+        assertEquals("message 250", page.get(0).getLogText());
+        assertEquals("251", page.get(0).getId());
+        assertEquals("step", page.get(0).getExecutionStepId());
+        assertEquals(LogLevel.INFO.name(), page.get(0).getLevel());
+        assertEquals(250, page.get(0).getCreateTime().getTime());
+        assertEquals("message 349", page.get(99).getLogText());
+
+        assertEquals(10, reader.read(990, 100, null).size());
+        assertEquals(0, reader.read(1000, 100, null).size());
+    }
+
+    @Test
+    public void testTail() throws Exception {
+        write(0, 1000);
+        ExecutionStepLogReader reader = new ExecutionStepLogReader("step", logFile);
+        List<ExecutionStepLog> tail = reader.tail(150, null);
+        assertEquals(150, tail.size());
+        assertEquals("message 850", tail.get(0).getLogText());
+        assertEquals("message 999", tail.get(149).getLogText());
+        assertEquals(1000, reader.tail(5000, null).size());
+    }
+
+    @Test
+    public void testLevelFilter() throws Exception {
+        write(0, 1000);
+        ExecutionStepLogReader reader = new ExecutionStepLogReader("step", logFile);
+        assertEquals(10, reader.count(Collections.singleton(LogLevel.ERROR)));
+
+        List<ExecutionStepLog> errors = reader.read(0, Integer.MAX_VALUE, Collections.singleton(LogLevel.ERROR));
+        assertEquals(10, errors.size());
+        for (int i = 0; i < errors.size(); i++) {
+            assertEquals(LogLevel.ERROR.name(), errors.get(i).getLevel());
+            assertEquals("message " + (i * 100 + 99), errors.get(i).getLogText());
+        }
+
+        assertEquals("message 499", reader.read(4, 1, Collections.singleton(LogLevel.ERROR)).get(0).getLogText());
+        assertEquals("message 999", reader.tail(1, Collections.singleton(LogLevel.ERROR)).get(0).getLogText());
+
+        List<ExecutionStepLog> scanned = new ArrayList<>();
+        reader.scan(Collections.singleton(LogLevel.ERROR), scanned::add);
+        assertEquals(errors, scanned);
+    }
+
+    @Test
+    public void testUnflushedBlockIsNotVisible() throws Exception {
+        try (ExecutionStepLogWriter writer = new ExecutionStepLogWriter(logFile, 1024 * 1024)) {
+            writer.write(LogLevel.INFO, 0, "one");
+            assertEquals(0, new ExecutionStepLogReader("step", logFile).count(null));
+            writer.flush();
+            assertEquals(1, new ExecutionStepLogReader("step", logFile).count(null));
+        }
+    }
+
+    @Test
+    public void testAppendAfterPartialBlock() throws Exception {
+        write(0, 500);
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+            file.seek(file.length());
+            file.write(new byte[] { 1, 2, 3 });
+        }
+        write(500, 500);
+        ExecutionStepLogReader reader = new ExecutionStepLogReader("step", logFile);
+        assertEquals(1000, reader.count(null));
+        List<ExecutionStepLog> page = reader.read(499, 2, null);
+        assertEquals("message 499", page.get(0).getLogText());
+        assertEquals("message 500", page.get(1).getLogText());
+        assertEquals("501", page.get(1).getId());
+    }
+
+    protected void write(int start, int count) throws Exception {
+        try (ExecutionStepLogWriter writer = new ExecutionStepLogWriter(logFile, 1024)) {
+            for (int i = start; i < start + count; i++) {
+                writer.write(i % 100 == 99 ? LogLevel.ERROR : LogLevel.INFO, i, "message " + i);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+public class CompositeKeyTest {
+
+    @Test
+    public void testConcatenatedValuesDoNotCollide() {
+        assertNotEquals(new CompositeKey("ab", "c"), new CompositeKey("a", "bc"));
+    }
+
+    @Test
+    public void testValuesKeepTheirTypes() {
+        assertNotEquals(new CompositeKey("1"), new CompositeKey(1));
+        assertEquals(new CompositeKey(1, null), new CompositeKey(1, null));
+        assertEquals(new CompositeKey(1, null).hashCode(), new CompositeKey(1, null).hashCode());
+    }
+
+    @Test
+    public void testOf() {
+        EntityData row = new EntityData();
+        row.put("a", "x");
+        row.put("B", 2);
+        CompositeKey key = CompositeKey.of(row, new String[] { "b", "a", "c" });
+        assertEquals(new CompositeKey(2, "x", null), key);
+        assertEquals(3, key.size());
+        assertEquals("x", key.get(1));
+    }
+
+}
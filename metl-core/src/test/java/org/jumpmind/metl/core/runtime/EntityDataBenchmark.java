@@ -0,0 +1,143 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.jumpmind.util.LinkedCaseInsensitiveMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares building, reading and copying rows of entity data with the case
+ * insensitive linked map that {@link EntityData} used to extend, with rows
+ * that each have their own {@link EntityDataLayout} and with rows that share
+ * one layout the way components create them.
+ * <p>
+ * Each benchmark retains a full message worth of rows, so running with the gc
+ * profiler reports the bytes allocated per row as well as the throughput:
+ * <code>gradle jmh -PjmhArgs="EntityDataBenchmark -prof gc"</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EntityDataBenchmark {
+
+    static final int ROWS = 1000;
+
+    @Param({ "10", "50" })
+    int attributeCount;
+
+    @Param({ "map", "layoutPerRow", "sharedLayout" })
+    String representation;
+
+    String[] attributeIds;
+
+    EntityDataLayout sharedLayout;
+
+    List<Map<String, Object>> rows;
+
+    @Setup
+    public void setup() {
+        attributeIds = new String[attributeCount];
+        for (int i = 0; i < attributeCount; i++) {
+            attributeIds[i] = UUID.randomUUID().toString();
+        }
+        sharedLayout = new EntityDataLayout(true);
+        rows = build();
+    }
+
+    Map<String, Object> newRow() {
+        if (representation.equals("map")) {
+            return new LinkedCaseInsensitiveMap<Object>();
+        } else if (representation.equals("layoutPerRow")) {
+            return new EntityData();
+        } else {
+            return new EntityData(sharedLayout);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    Map<String, Object> copy(Map<String, Object> row) {
+        if (row instanceof EntityData) {
+            return ((EntityData) row).copy();
+        } else {
+            return (Map<String, Object>) ((LinkedCaseInsensitiveMap<Object>) row).clone();
+        }
+    }
+
+    List<Map<String, Object>> build() {
+        List<Map<String, Object>> rows = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            Map<String, Object> row = newRow();
+            for (int j = 0; j < attributeIds.length; j++) {
+                row.put(attributeIds[j], Integer.toString(j));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<Map<String, Object>> buildRows() {
+        return build();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void readRows(Blackhole blackhole) {
+        for (Map<String, Object> row : rows) {
+            for (int j = 0; j < attributeIds.length; j++) {
+                blackhole.consume(row.get(attributeIds[j]));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<Map<String, Object>> copyRows() {
+        List<Map<String, Object>> copies = new ArrayList<>(ROWS);
+        for (Map<String, Object> row : rows) {
+            copies.add(copy(row));
+        }
+        return copies;
+    }
+
+}
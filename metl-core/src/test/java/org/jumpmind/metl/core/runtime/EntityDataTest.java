@@ -0,0 +1,155 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.jumpmind.metl.core.runtime.EntityData.ChangeType;
+import org.junit.Test;
+
+public class EntityDataTest {
+
+    @Test
+    public void testMapOperations() {
+        EntityData data = new EntityData();
+        assertTrue(data.isEmpty());
+        assertNull(data.put("a", "1"));
+        assertNull(data.put("b", null));
+        assertEquals(2, data.size());
+        assertTrue(data.containsKey("b"));
+        assertNull(data.get("b"));
+        assertFalse(data.containsKey("c"));
+        assertEquals("1", data.put("a", "2"));
+        assertEquals("2", data.get("a"));
+        assertNull(data.remove("b"));
+        assertFalse(data.containsKey("b"));
+        assertEquals(1, data.size());
+        data.clear();
+        assertTrue(data.isEmpty());
+        assertNull(data.get("a"));
+    }
+
+    @Test
+    public void testKeysAreCaseInsensitive() {
+        EntityData data = new EntityData();
+        data.put("AttributeId", "1");
+        assertEquals("1", data.get("attributeid"));
+        assertEquals("1", data.get("ATTRIBUTEID"));
+        data.put("ATTRIBUTEID", "2");
+        assertEquals(1, data.size());
+        assertEquals("2", data.get("AttributeId"));
+        assertEquals(Arrays.asList("AttributeId"), new ArrayList<>(data.keySet()));
+    }
+
+    @Test
+    public void testIterationFollowsInsertionOrder() {
+        EntityData data = new EntityData();
+        data.put("c", 3);
+        data.put("a", 1);
+        data.put("b", 2);
+        assertEquals(Arrays.asList("c", "a", "b"), new ArrayList<>(data.keySet()));
+        assertEquals(Arrays.asList(3, 1, 2), new ArrayList<>(data.values()));
+
+        Iterator<Map.Entry<String, Object>> i = data.entrySet().iterator();
+        i.next();
+        i.remove();
+        i.next().setValue(10);
+        assertEquals(Arrays.asList("a", "b"), new ArrayList<>(data.keySet()));
+        assertEquals(10, data.get("a"));
+    }
+
+    @Test
+    public void testCopyIsIndependentAndSharesLayout() {
+        EntityData data = new EntityData();
+        data.setChangeType(ChangeType.CHG);
+        data.put("a", 1);
+        EntityData copy = data.copy();
+        assertSame(data.getLayout(), copy.getLayout());
+        assertTrue(data.getLayout().isShared());
+        assertEquals(ChangeType.CHG, copy.getChangeType());
+        copy.put("a", 2);
+        copy.put("b", 3);
+        data.remove("a");
+        assertEquals(2, copy.get("a"));
+        assertEquals(3, copy.get("b"));
+        assertFalse(data.containsKey("b"));
+        assertTrue(data.isEmpty());
+    }
+
+    @Test
+    public void testRowsFromSharedLayout() {
+        EntityDataLayout layout = new EntityDataLayout(true);
+        EntityData one = new EntityData(layout);
+        one.put("a", 1);
+        one.put("b", 2);
+        EntityData two = new EntityData(layout);
+        two.put("b", 4);
+        two.put("c", 5);
+        assertEquals(3, layout.size());
+        assertEquals(Arrays.asList("a", "b"), new ArrayList<>(one.keySet()));
+        assertEquals(Arrays.asList("b", "c"), new ArrayList<>(two.keySet()));
+        assertNull(one.get("c"));
+    }
+
+    @Test
+    public void testEqualsOtherMaps() {
+        EntityData data = new EntityData();
+        data.put("a", 1);
+        data.put("b", null);
+        Map<String, Object> map = new HashMap<>();
+        map.put("a", 1);
+        map.put("b", null);
+        assertEquals(map, data);
+        assertEquals(data, map);
+        assertEquals(map.hashCode(), data.hashCode());
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        EntityData data = new EntityData();
+        data.setChangeType(ChangeType.DEL);
+        data.put("a", 1);
+        data.put("b", null);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(data);
+        out.close();
+        EntityData read = (EntityData) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(data, read);
+        assertTrue(read.containsKey("b"));
+        assertEquals(ChangeType.DEL, read.getChangeType());
+    }
+
+}
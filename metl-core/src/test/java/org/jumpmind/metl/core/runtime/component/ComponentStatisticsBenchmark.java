@@ -0,0 +1,180 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures how many rows per second a component can process with statistics
+ * turned off, kept the way {@link ComponentStatistics} did it before (a
+ * {@link ConcurrentHashMap} of boxed counts per thread number) and kept the
+ * way it does it now (padded primitive counters per thread number). Every
+ * row does a little work and counts an entity, and every batch of rows counts
+ * the inbound and outbound messages and payload the way a step does.
+ * <p>
+ * Run with <code>gradle jmh -PjmhArgs="ComponentStatisticsBenchmark -t 4"</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ComponentStatisticsBenchmark {
+
+    static final int ROWS = 1000;
+
+    @Param({ "off", "map", "striped" })
+    String statistics;
+
+    @Param({ "10" })
+    int tokensPerRow;
+
+    RowCounter counter;
+
+    AtomicInteger threadNumbers = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class ThreadNumber {
+        int value;
+
+        @Setup(Level.Trial)
+        public void setup(ComponentStatisticsBenchmark benchmark) {
+            value = benchmark.threadNumbers.incrementAndGet();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if ("map".equals(statistics)) {
+            counter = new MapCounter();
+        } else if ("striped".equals(statistics)) {
+            counter = new StripedCounter();
+        } else {
+            counter = new NoCounter();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void processRows(ThreadNumber threadNumber) {
+        int thread = threadNumber.value;
+        counter.messageReceived(thread, ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            Blackhole.consumeCPU(tokensPerRow);
+            counter.rowProcessed(thread);
+        }
+        counter.messageSent(thread, ROWS);
+    }
+
+    interface RowCounter {
+        void messageReceived(int thread, int payloadSize);
+
+        void rowProcessed(int thread);
+
+        void messageSent(int thread, int payloadSize);
+    }
+
+    static class NoCounter implements RowCounter {
+        @Override
+        public void messageReceived(int thread, int payloadSize) {
+        }
+
+        @Override
+        public void rowProcessed(int thread) {
+        }
+
+        @Override
+        public void messageSent(int thread, int payloadSize) {
+        }
+    }
+
+    static class StripedCounter implements RowCounter {
+
+        ComponentStatistics statistics = new ComponentStatistics(Runtime.getRuntime().availableProcessors());
+
+        @Override
+        public void messageReceived(int thread, int payloadSize) {
+            statistics.incrementInboundMessages(thread);
+            statistics.incrementNumberInboundPayload(thread, payloadSize);
+        }
+
+        @Override
+        public void rowProcessed(int thread) {
+            statistics.incrementNumberEntitiesProcessed(thread);
+        }
+
+        @Override
+        public void messageSent(int thread, int payloadSize) {
+            statistics.incrementOutboundMessages(thread);
+            statistics.incrementNumberOutboundPayload(thread, payloadSize);
+        }
+    }
+
+    static class MapCounter implements RowCounter {
+
+        Map<Integer, Integer> numberInboundMessages = new ConcurrentHashMap<>();
+        Map<Integer, Integer> numberOutboundMessages = new ConcurrentHashMap<>();
+        Map<Integer, Integer> numberEntitiesProcessed = new ConcurrentHashMap<>();
+        Map<Integer, Integer> numberInboundPayload = new ConcurrentHashMap<>();
+        Map<Integer, Integer> numberOutboundPayload = new ConcurrentHashMap<>();
+
+        @Override
+        public void messageReceived(int thread, int payloadSize) {
+            increment(numberInboundMessages, thread, 1);
+            increment(numberInboundPayload, thread, payloadSize);
+        }
+
+        @Override
+        public void rowProcessed(int thread) {
+            increment(numberEntitiesProcessed, thread, 1);
+        }
+
+        @Override
+        public void messageSent(int thread, int payloadSize) {
+            increment(numberOutboundMessages, thread, 1);
+            increment(numberOutboundPayload, thread, payloadSize);
+        }
+
+        static void increment(Map<Integer, Integer> counts, int thread, int amount) {
+            Integer number = counts.get(thread);
+            counts.put(thread, (number != null ? number : 0) + amount);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ComponentStatisticsTest {
+
+    @Test
+    public void testCountersPerThread() {
+        ComponentStatistics statistics = new ComponentStatistics(2);
+        statistics.incrementInboundMessages(1);
+        statistics.incrementNumberEntitiesProcessed(1, 10);
+        statistics.incrementNumberEntitiesProcessed(2);
+        statistics.incrementTimeSpentInHandle(2, 5);
+        statistics.incrementTimeSpentInHandle(2, -5);
+        statistics.setNumberOutboundPayload(2, 7);
+
+        assertEquals(1, statistics.getNumberInboundMessages(1));
+        assertEquals(0, statistics.getNumberInboundMessages(2));
+        assertEquals(10, statistics.getNumberEntitiesProcessed(1));
+        assertEquals(1, statistics.getNumberEntitiesProcessed(2));
+        assertEquals(5, statistics.getTimeSpentInHandle(2));
+        assertEquals(7, statistics.getNumberOutboundPayload(2));
+
+        ComponentStatistics.Snapshot snapshot = statistics.snapshot(2);
+        assertEquals(1, snapshot.getNumberEntitiesProcessed());
+        assertEquals(5, snapshot.getTimeSpentInHandle());
+        assertEquals(7, snapshot.getNumberOutboundPayload());
+        assertEquals(11, statistics.snapshot().getNumberEntitiesProcessed());
+    }
+
+    @Test
+    public void testThreadNumbersBeyondThreadCount() {
+        ComponentStatistics statistics = new ComponentStatistics();
+        statistics.incrementNumberEntitiesProcessed(1);
+        statistics.incrementNumberEntitiesProcessed(17);
+        statistics.incrementNumberEntitiesProcessed(17);
+        assertEquals(1, statistics.getNumberEntitiesProcessed(1));
+        assertEquals(2, statistics.getNumberEntitiesProcessed(17));
+        assertEquals(0, statistics.getNumberEntitiesProcessed(9));
+        assertEquals(3, statistics.snapshot().getNumberEntitiesProcessed());
+    }
+
+    @Test
+    public void testConcurrentIncrementsAreNotLost() throws Exception {
+        ComponentStatistics statistics = new ComponentStatistics();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            int threadNumber = i + 1;
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 100000; j++) {
+                    // every thread shares slot 1 and also grows the table
+                    statistics.incrementNumberEntitiesProcessed(1);
+                    statistics.incrementNumberEntitiesProcessed(threadNumber * 8);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400000, statistics.getNumberEntitiesProcessed(1));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(100000, statistics.getNumberEntitiesProcessed(i * 8));
+        }
+    }
+
+}
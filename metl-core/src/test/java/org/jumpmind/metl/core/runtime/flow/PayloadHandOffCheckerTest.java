@@ -0,0 +1,95 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.flow;
+
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+
+import org.jumpmind.metl.core.runtime.BinaryMessage;
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityDataMessage;
+import org.jumpmind.metl.core.runtime.Message;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PayloadHandOffCheckerTest {
+
+    @Before
+    public void setup() {
+        PayloadHandOffChecker.setEnabled(true);
+    }
+
+    @After
+    public void teardown() {
+        PayloadHandOffChecker.setEnabled(false);
+    }
+
+    @Test
+    public void testUnchangedPayload() {
+        EntityDataMessage message = new EntityDataMessage("source", rows());
+        PayloadHandOffChecker.handedOff(message);
+        PayloadHandOffChecker.verify(new EntityDataMessage("source", rows()), "target");
+        PayloadHandOffChecker.verify(message, "target");
+    }
+
+    @Test
+    public void testChangedRow() {
+        EntityDataMessage message = new EntityDataMessage("source", rows());
+        PayloadHandOffChecker.handedOff(message);
+        message.getPayload().get(0).put("id", 2);
+        assertRejected(message);
+    }
+
+    @Test
+    public void testClearedList() {
+        EntityDataMessage message = new EntityDataMessage("source", rows());
+        PayloadHandOffChecker.handedOff(message);
+        message.getPayload().clear();
+        assertRejected(message);
+    }
+
+    @Test
+    public void testChangedBytes() {
+        BinaryMessage message = new BinaryMessage("source", new byte[] { 1, 2 });
+        PayloadHandOffChecker.handedOff(message);
+        message.getPayload()[1] = 3;
+        assertRejected(message);
+    }
+
+    protected void assertRejected(Message message) {
+        try {
+            PayloadHandOffChecker.verify(message, "target");
+            fail("The change should have been detected");
+        } catch (IllegalStateException ex) {
+        }
+    }
+
+    protected ArrayList<EntityData> rows() {
+        ArrayList<EntityData> rows = new ArrayList<>();
+        EntityData row = new EntityData();
+        row.put("id", 1);
+        rows.add(row);
+        return rows;
+    }
+
+}
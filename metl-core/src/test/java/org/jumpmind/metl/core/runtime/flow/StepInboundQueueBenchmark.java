@@ -0,0 +1,230 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.flow;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jumpmind.metl.core.runtime.ControlMessage;
+import org.jumpmind.metl.core.runtime.Message;
+import org.jumpmind.metl.core.util.ThreadUtils;
+import org.jumpmind.util.AppUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures how many messages per second a multi-threaded step can dispatch as
+ * thread.count grows. The step bookkeeping is reproduced the way
+ * {@link StepRuntime} did it before (a {@link LinkedBlockingQueue}, a
+ * synchronized active count and a sleeping unit of work barrier) and the way
+ * it does it now (a {@link StepInboundQueue}, atomic counters and a parking
+ * barrier). Every thousandth message is a unit of work boundary.
+ * <p>
+ * Run with <code>gradle jmh -PjmhArgs="StepInboundQueueBenchmark"</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StepInboundQueueBenchmark {
+
+    static final int MESSAGES = 10000;
+
+    static final int UNIT_OF_WORK_SIZE = 1000;
+
+    @Param({ "1", "2", "4", "8" })
+    int threadCount;
+
+    @Param({ "500", "5000" })
+    int tokensPerMessage;
+
+    @Param({ "locked", "lockFree" })
+    String bookkeeping;
+
+    ExecutorService componentRuntimeExecutor;
+
+    StepBookkeeping step;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        step = "locked".equals(bookkeeping) ? new LockedBookkeeping() : new LockFreeBookkeeping();
+        if (threadCount > 1) {
+            componentRuntimeExecutor = ThreadUtils.createFixedThreadPool("benchmark", 1000, threadCount);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (componentRuntimeExecutor != null) {
+            componentRuntimeExecutor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void dispatch() throws Exception {
+        CountDownLatch handled = new CountDownLatch(MESSAGES);
+        Thread sender = new Thread(() -> {
+            Message message = new ControlMessage("benchmark");
+            try {
+                for (int i = 0; i < MESSAGES; i++) {
+                    step.queue(message);
+                }
+            } catch (InterruptedException e) {
+            }
+        });
+        sender.start();
+
+        int dispatched = 0;
+        while (dispatched < MESSAGES) {
+            Message message = step.nextMessage();
+            if (message == null) {
+                Thread.yield();
+            } else {
+                dispatched++;
+                if (dispatched % UNIT_OF_WORK_SIZE == 0) {
+                    step.waitForOtherThreads();
+                }
+                Runnable handle = () -> {
+                    Blackhole.consumeCPU(tokensPerMessage);
+                    step.messageHandled();
+                    handled.countDown();
+                };
+                if (componentRuntimeExecutor != null) {
+                    componentRuntimeExecutor.execute(handle);
+                } else {
+                    handle.run();
+                }
+            }
+        }
+        handled.await();
+        sender.join();
+    }
+
+    interface StepBookkeeping {
+        void queue(Message message) throws InterruptedException;
+
+        Message nextMessage();
+
+        void waitForOtherThreads();
+
+        void messageHandled();
+    }
+
+    static class LockedBookkeeping implements StepBookkeeping {
+
+        BlockingQueue<Message> inQueue = new LinkedBlockingQueue<>(1000);
+
+        int activeCount;
+
+        @Override
+        public void queue(Message message) throws InterruptedException {
+            while (!inQueue.offer(message, 500, TimeUnit.MILLISECONDS)) {
+            }
+        }
+
+        @Override
+        public Message nextMessage() {
+            synchronized (this) {
+                Message message = inQueue.poll();
+                if (message != null) {
+                    activeCount++;
+                }
+                return message;
+            }
+        }
+
+        @Override
+        public void waitForOtherThreads() {
+            while (activeCount > 1) {
+                AppUtils.sleep(5);
+            }
+        }
+
+        @Override
+        public synchronized void messageHandled() {
+            activeCount--;
+        }
+    }
+
+    static class LockFreeBookkeeping implements StepBookkeeping {
+
+        StepInboundQueue inQueue = new StepInboundQueue(1000);
+
+        AtomicInteger activeCount = new AtomicInteger();
+
+        volatile Thread waiter;
+
+        @Override
+        public void queue(Message message) throws InterruptedException {
+            while (!inQueue.offer(message, 500, TimeUnit.MILLISECONDS)) {
+            }
+        }
+
+        @Override
+        public Message nextMessage() {
+            Message message = inQueue.poll();
+            if (message != null) {
+                activeCount.incrementAndGet();
+            }
+            return message;
+        }
+
+        @Override
+        public void waitForOtherThreads() {
+            waiter = Thread.currentThread();
+            while (activeCount.get() > 1) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(500));
+            }
+            waiter = null;
+        }
+
+        @Override
+        public void messageHandled() {
+            if (activeCount.decrementAndGet() <= 1) {
+                Thread thread = waiter;
+                if (thread != null) {
+                    LockSupport.unpark(thread);
+                }
+            }
+        }
+    }
+}
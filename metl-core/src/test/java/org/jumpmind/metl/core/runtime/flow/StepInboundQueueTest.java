@@ -0,0 +1,128 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.flow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.jumpmind.metl.core.runtime.ControlMessage;
+import org.jumpmind.metl.core.runtime.Message;
+import org.junit.Test;
+
+public class StepInboundQueueTest {
+
+    @Test
+    public void testOfferAndPollInOrder() {
+        StepInboundQueue queue = new StepInboundQueue(3);
+        Message one = new ControlMessage("1");
+        Message two = new ControlMessage("2");
+        assertTrue(queue.isEmpty());
+        assertTrue(queue.offer(one));
+        assertTrue(queue.offer(two));
+        assertEquals(2, queue.size());
+        assertEquals(1, queue.remainingCapacity());
+        assertSame(one, queue.peek());
+        assertSame(one, queue.poll());
+        assertSame(two, queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testCapacityIsEnforced() throws Exception {
+        StepInboundQueue queue = new StepInboundQueue(3);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(queue.offer(new ControlMessage()));
+        }
+        assertFalse(queue.offer(new ControlMessage()));
+        assertFalse(queue.offer(new ControlMessage(), 10, TimeUnit.MILLISECONDS));
+        assertEquals(0, queue.remainingCapacity());
+        queue.poll();
+        assertTrue(queue.offer(new ControlMessage()));
+    }
+
+    @Test
+    public void testWrapsAroundTheBuffer() {
+        StepInboundQueue queue = new StepInboundQueue(2);
+        for (int i = 0; i < 100; i++) {
+            Message message = new ControlMessage(Integer.toString(i));
+            assertTrue(queue.offer(message));
+            assertSame(message, queue.poll());
+        }
+    }
+
+    @Test
+    public void testDrainTo() {
+        StepInboundQueue queue = new StepInboundQueue(10);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(new ControlMessage());
+        }
+        List<Message> drained = new ArrayList<>();
+        assertEquals(5, queue.drainTo(drained));
+        assertEquals(5, drained.size());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testManySenders() throws Exception {
+        final int senderCount = 4;
+        final int messagesPerSender = 10000;
+        StepInboundQueue queue = new StepInboundQueue(16);
+        List<Thread> senders = new ArrayList<>();
+        for (int i = 0; i < senderCount; i++) {
+            String senderId = Integer.toString(i);
+            Thread sender = new Thread(() -> {
+                try {
+                    for (int j = 0; j < messagesPerSender; j++) {
+                        ControlMessage message = new ControlMessage(senderId);
+                        message.getHeader().setSequenceNumber(j);
+                        queue.offer(message, 10, TimeUnit.SECONDS);
+                    }
+                } catch (InterruptedException e) {
+                }
+            });
+            senders.add(sender);
+            sender.start();
+        }
+
+        Set<String> received = new HashSet<>();
+        while (received.size() < senderCount * messagesPerSender) {
+            Message message = queue.poll();
+            if (message != null) {
+                assertTrue(received.add(message.getHeader().getOriginatingStepId() + "-" + message.getHeader().getSequenceNumber()));
+            }
+        }
+
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        assertTrue(queue.isEmpty());
+    }
+}
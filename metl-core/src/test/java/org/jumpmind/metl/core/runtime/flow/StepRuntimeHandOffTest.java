@@ -0,0 +1,107 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.flow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityDataMessage;
+import org.jumpmind.metl.core.runtime.Message;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class StepRuntimeHandOffTest {
+
+    @Test
+    public void testCopiesAreMadeBeforeTheOriginalIsQueued() throws Exception {
+        final List<Message> queued = new ArrayList<>();
+        StepRuntime first = target(queued, true);
+        StepRuntime second = target(queued, false);
+        StepRuntime third = target(queued, false);
+
+        EntityDataMessage message = new EntityDataMessage("source", rows());
+        StepRuntime.queue(message, Arrays.asList(first, second, third), true);
+
+        assertEquals(3, queued.size());
+        assertSame(message, queued.get(2));
+        assertEquals("changed", message.getPayload().get(0).get("name"));
+        for (Message copy : queued.subList(0, 2)) {
+            assertNotSame(message, copy);
+            EntityData row = ((EntityDataMessage) copy).getPayload().get(0);
+            assertNotSame(message.getPayload().get(0), row);
+            assertEquals("original", row.get("name"));
+        }
+        assertNotSame(queued.get(0), queued.get(1));
+    }
+
+    @Test
+    public void testWithoutHandOffEveryTargetGetsTheMessage() throws Exception {
+        List<Message> queued = new ArrayList<>();
+        EntityDataMessage message = new EntityDataMessage("source", rows());
+        StepRuntime.queue(message, Arrays.asList(target(queued, false), target(queued, false)), false);
+        assertEquals(2, queued.size());
+        assertSame(message, queued.get(0));
+        assertSame(message, queued.get(1));
+    }
+
+    /**
+     * @param changePayload
+     *            changes the rows as soon as the message is queued, the way a
+     *            target running on another thread could
+     */
+    protected StepRuntime target(final List<Message> queued, final boolean changePayload) throws Exception {
+        StepRuntime target = mock(StepRuntime.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                EntityDataMessage message = (EntityDataMessage) invocation.getArguments()[0];
+                if (changePayload) {
+                    message.getPayload().get(0).put("name", "changed");
+                }
+                queued.add(message);
+                return null;
+            }
+        }).when(target).queue(any(Message.class));
+        return target;
+    }
+
+    protected ArrayList<EntityData> rows() {
+        ArrayList<EntityData> rows = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            EntityData row = new EntityData();
+            row.put("id", i);
+            row.put("name", "original");
+            rows.add(row);
+        }
+        return rows;
+    }
+
+}
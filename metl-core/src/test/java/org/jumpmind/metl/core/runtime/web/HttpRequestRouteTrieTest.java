@@ -0,0 +1,109 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.util.AntPathMatcher;
+
+public class HttpRequestRouteTrieTest {
+
+    AntPathMatcher patternMatcher = new AntPathMatcher();
+
+    @Test
+    public void testMatchesLikeTheAntPathMatcher() {
+        List<HttpRequestMapping> mappings = mappings("/customers", "/customers/{id}", "/customers/{id}/orders",
+                "/customers/new", "/customers/{id}/orders/{orderId}", "/customers/*/notes", "/files/**", "/items/{id:\\d+}",
+                "/items/{name}", "/trailing/", "relative/{id}", "/", "/Case");
+        HttpRequestRouteTrie trie = new HttpRequestRouteTrie(mappings, patternMatcher);
+
+        String[] paths = { "/customers", "/customers/", "/customers/1", "/customers/new", "/customers/1/orders",
+                "/customers/1/orders/2", "/customers/1/notes", "/customers//1", "/files", "/files/a/b", "/items/12", "/items/abc",
+                "/trailing", "/trailing/", "relative/1", "/relative/1", "/", "", "/case", "/Case", "/unknown", "/customers/1/2/3" };
+        for (String path : paths) {
+            HttpRequestMapping expected = scan(mappings, path);
+            HttpRequestMappingMatch match = trie.match(path);
+            if (expected == null) {
+                assertNull(path, match);
+            } else {
+                assertSame(path, expected, match.getMapping());
+                assertEquals(path, patternMatcher.extractUriTemplateVariables(expected.getPath(), path),
+                        match.getUriTemplateVariables());
+            }
+        }
+    }
+
+    @Test
+    public void testFirstMappingInOrderWins() {
+        List<HttpRequestMapping> mappings = mappings("/customers/{id}", "/customers/**", "/customers/new");
+        HttpRequestRouteTrie trie = new HttpRequestRouteTrie(mappings, patternMatcher);
+        assertSame(mappings.get(0), trie.match("/customers/new").getMapping());
+        assertSame(mappings.get(1), trie.match("/customers/new/1").getMapping());
+
+        Collections.reverse(mappings);
+        trie = new HttpRequestRouteTrie(mappings, patternMatcher);
+        assertSame(mappings.get(0), trie.match("/customers/new").getMapping());
+        assertSame(mappings.get(1), trie.match("/customers/1").getMapping());
+    }
+
+    @Test
+    public void testExtractsUriTemplateVariables() {
+        HttpRequestRouteTrie trie = new HttpRequestRouteTrie(mappings("/customers/{id}/orders/{orderId}"), patternMatcher);
+        Map<String, String> variables = trie.match("/customers/42/orders/7").getUriTemplateVariables();
+        assertEquals(2, variables.size());
+        assertEquals("42", variables.get("id"));
+        assertEquals("7", variables.get("orderId"));
+    }
+
+    @Test
+    public void testNullPath() {
+        assertNull(new HttpRequestRouteTrie(mappings("/customers"), patternMatcher).match(null));
+    }
+
+    private HttpRequestMapping scan(List<HttpRequestMapping> mappings, String path) {
+        for (HttpRequestMapping mapping : mappings) {
+            if (patternMatcher.match(mapping.getPath(), path)) {
+                return mapping;
+            }
+        }
+        return null;
+    }
+
+    private static List<HttpRequestMapping> mappings(String... paths) {
+        List<HttpRequestMapping> mappings = new ArrayList<>();
+        for (String path : paths) {
+            HttpRequestMapping mapping = new HttpRequestMapping();
+            mapping.setMethod(HttpMethod.GET);
+            mapping.setPath(path);
+            mappings.add(mapping);
+        }
+        return mappings;
+    }
+
+}
@@ -0,0 +1,133 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.web;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.AntPathMatcher;
+
+/**
+ * Measures how long it takes to find the mapping and the uri template
+ * variables for a request to <code>/ws/**</code>, the way
+ * {@link HttpRequestMappingRegistry} did it before (a scan of the mappings
+ * with the {@link AntPathMatcher}) and the way it does it now (a
+ * {@link HttpRequestRouteTrie}). One in ten mappings uses a wildcard.
+ * <p>
+ * Run with <code>gradle jmh -PjmhArgs="HttpRequestRoutingBenchmark"</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HttpRequestRoutingBenchmark {
+
+    @Param({ "30", "300" })
+    int mappingCount;
+
+    AntPathMatcher patternMatcher = new AntPathMatcher();
+
+    Set<HttpRequestMapping> mappings;
+
+    HttpRequestRouteTrie trie;
+
+    String[] paths;
+
+    int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        mappings = new TreeSet<>();
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < mappingCount; i++) {
+            String path;
+            switch (i % 10) {
+                case 0:
+                    path = "/files" + i + "/**";
+                    paths.add("/files" + i + "/2017/report.csv");
+                    break;
+                case 1:
+                case 2:
+                case 3:
+                    path = "/api/v1/resource" + i;
+                    paths.add(path);
+                    break;
+                case 4:
+                case 5:
+                case 6:
+                    path = "/api/v1/resource" + i + "/{id}";
+                    paths.add("/api/v1/resource" + i + "/42");
+                    break;
+                default:
+                    path = "/api/v1/resource" + i + "/{id}/items/{itemId}";
+                    paths.add("/api/v1/resource" + i + "/42/items/7");
+                    break;
+            }
+            HttpRequestMapping mapping = new HttpRequestMapping();
+            mapping.setMethod(HttpMethod.GET);
+            mapping.setPath(path);
+            mappings.add(mapping);
+        }
+        trie = new HttpRequestRouteTrie(mappings, patternMatcher);
+        this.paths = paths.toArray(new String[paths.size()]);
+    }
+
+    String nextPath() {
+        String path = paths[next];
+        next = (next + 1) % paths.length;
+        return path;
+    }
+
+    @Benchmark
+    public Map<String, String> scan() {
+        String path = nextPath();
+        for (HttpRequestMapping mapping : mappings) {
+            if (patternMatcher.match(mapping.getPath(), path)) {
+                return patternMatcher.extractUriTemplateVariables(mapping.getPath(), path);
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public Map<String, String> trie() {
+        return trie.match(nextPath()).getUriTemplateVariables();
+    }
+
+}
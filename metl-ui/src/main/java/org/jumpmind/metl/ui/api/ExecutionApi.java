@@ -28,6 +28,8 @@ import static org.jumpmind.metl.ui.api.ApiConstants.HEADER_EXECUTION_ID;
 import static org.jumpmind.metl.ui.common.UiUtils.whereAreYou;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.annotation.Annotation;
 import java.net.URLDecoder;
@@ -63,7 +65,9 @@ import org.jumpmind.metl.core.runtime.component.Results;
 import org.jumpmind.metl.core.runtime.flow.FlowRuntime;
 import org.jumpmind.metl.core.runtime.web.HttpMethod;
 import org.jumpmind.metl.core.runtime.web.HttpRequestMapping;
+import org.jumpmind.metl.core.runtime.web.HttpRequestMappingMatch;
 import org.jumpmind.metl.core.runtime.web.IHttpRequestMappingRegistry;
+import org.jumpmind.metl.core.runtime.web.IHttpStreams;
 import org.jumpmind.metl.core.util.GeneralUtils;
 import org.jumpmind.metl.core.util.VersionUtils;
 import org.jumpmind.util.AppUtils;
@@ -71,12 +75,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.http.server.ServletServerHttpRequest;
 import org.springframework.stereotype.Controller;
-import org.springframework.util.AntPathMatcher;
 import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
@@ -126,7 +130,7 @@ public class ExecutionApi {
     @Autowired
     IHttpRequestMappingRegistry requestRegistry;
 
-    AntPathMatcher patternMatcher = new AntPathMatcher();
+    StringHttpMessageConverter payloadConverter = new StringHttpMessageConverter();
 
     @ApiOperation(
             value = "Invoke a flow that is deployed to an agent by name.  This is the way a non-webservice enabled flow is typically called by an external tool")
@@ -156,33 +160,31 @@ public class ExecutionApi {
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
     public final Object get(HttpServletRequest req, HttpServletResponse res) throws Exception {
-        return executeFlow(req, res, null);
+        return executeFlow(req, res, false);
     }
 
     @ApiIgnore
     @RequestMapping(value = WS + "/**", method = RequestMethod.PUT)
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
-    public final Object put(HttpServletRequest req, HttpServletResponse res, @RequestBody(required = false) String payload) throws Exception {
-        return executeFlow(req, res, payload);
+    public final Object put(HttpServletRequest req, HttpServletResponse res) throws Exception {
+        return executeFlow(req, res, true);
     }
 
     @ApiIgnore
     @RequestMapping(value = WS + "/**", method = RequestMethod.DELETE)
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
-    public final Object delete(HttpServletRequest req, HttpServletResponse res, @RequestBody(required = false) String payload)
-            throws Exception {
-        return executeFlow(req, res, payload);
+    public final Object delete(HttpServletRequest req, HttpServletResponse res) throws Exception {
+        return executeFlow(req, res, true);
     }
 
     @ApiIgnore
     @RequestMapping(value = WS + "/**", method = RequestMethod.POST)
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
-    public final Object post(HttpServletRequest req, HttpServletResponse res, @RequestBody(required = false) String payload)
-            throws Exception {
-        return executeFlow(req, res, payload);
+    public final Object post(HttpServletRequest req, HttpServletResponse res) throws Exception {
+        return executeFlow(req, res, true);
     }
 
     @ApiOperation(value = "This is the Json Swagger API definition for Metl Hosted Services. Visit http://swagger.io for more details about the specification")
@@ -326,15 +328,21 @@ public class ExecutionApi {
         }
     }
 
-    private Object executeFlow(HttpServletRequest request, HttpServletResponse response, String payload) throws Exception {
+    /*
+     * The body is read here, rather than bound as a request body, so that
+     * mappings that stream the body don't have it read into memory
+     */
+    private Object executeFlow(HttpServletRequest request, HttpServletResponse response, boolean hasBody) throws Exception {
         Object resultPayload = null;
         String requestType = request.getMethod();
         String restOfTheUrl = ((String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE)).substring(WS.length());
-        log.info(String.format("Attempting to find a service uri match for %s with request type %s", restOfTheUrl, requestType));
-        HttpRequestMapping mapping = requestRegistry.findBestMatch(HttpMethod.valueOf(requestType), restOfTheUrl);
-        if (mapping != null) {
+        log.debug("Attempting to find a service uri match for {} with request type {}", restOfTheUrl, requestType);
+        HttpRequestMappingMatch match = requestRegistry.match(HttpMethod.valueOf(requestType), restOfTheUrl);
+        if (match != null) {
+            HttpRequestMapping mapping = match.getMapping();
+            String payload = hasBody && !mapping.isStreaming() ? readPayload(request) : null;
             Map<String, String> params = toMap(request);
-            params.putAll(patternMatcher.extractUriTemplateVariables(mapping.getPath(), restOfTheUrl));
+            params.putAll(match.getUriTemplateVariables());
             if (isNotBlank(payload)) {
                 params.put(REQUEST_VALUE_PARAMETER, payload.toString());
             }
@@ -353,8 +361,9 @@ public class ExecutionApi {
             if (enforceSecurity(security, request, response)) {
                 String executionId = flowRuntime.getExecutionId();
                 response.setHeader(HEADER_EXECUTION_ID, executionId);
+                flowRuntime.setHttpStreams(new ServletHttpStreams(request, response));
                 Results results = flowRuntime.execute();
-                if (results != null) {
+                if (results != null && !response.isCommitted()) {
                     String contentType = results.getContentType();
                     if (isNotBlank(contentType)) {
                         response.setContentType(contentType);
@@ -372,6 +381,10 @@ public class ExecutionApi {
         }
     }
 
+    protected String readPayload(HttpServletRequest request) throws IOException {
+        return payloadConverter.read(String.class, new ServletServerHttpRequest(request));
+    }
+
     protected boolean enforceSecurity(IHasSecurity security, HttpServletRequest request, HttpServletResponse response) throws IOException {
         boolean secured = true;
         if (security != null) {
@@ -548,4 +561,43 @@ public class ExecutionApi {
         return new RestError(ex, httpErrorCode);
     }
 
+    static class ServletHttpStreams implements IHttpStreams {
+
+        HttpServletRequest request;
+
+        HttpServletResponse response;
+
+        ServletHttpStreams(HttpServletRequest request, HttpServletResponse response) {
+            this.request = request;
+            this.response = response;
+        }
+
+        @Override
+        public InputStream getRequestBody() throws IOException {
+            return request.getInputStream();
+        }
+
+        @Override
+        public String getRequestCharacterEncoding() {
+            return request.getCharacterEncoding();
+        }
+
+        @Override
+        public OutputStream getResponseBody(String contentType) throws IOException {
+            if (!response.isCommitted()) {
+                if (isNotBlank(contentType)) {
+                    response.setContentType(contentType);
+                } else if (isBlank(response.getContentType())) {
+                    response.setContentType("application/octet-stream;charset=utf-8");
+                }
+            }
+            return response.getOutputStream();
+        }
+
+        @Override
+        public String getResponseCharacterEncoding() {
+            return response.getCharacterEncoding();
+        }
+    }
+
 }
@@ -156,6 +156,7 @@ public class EditHierarchicalModelPanel extends VerticalLayout implements IUiPan
                             }
                             if (unique) {
                                 obj.setName(newName);
+                                model.invalidateIndexes();
                                 EditHierarchicalModelPanel.this.context.getConfigurationService().save(obj);
                             } else {
                                 NotifyDialog.show("Name needs to be unique", "Name needs to be unique", null, Type.WARNING_MESSAGE);
@@ -489,7 +490,7 @@ public class EditHierarchicalModelPanel extends VerticalLayout implements IUiPan
             		childEntity.setModelId(model.getId());
             		childEntity.setName("New Entity");
             		childEntity.setId(UUID.randomUUID().toString());
-            		model.getModelEntities().add(childEntity);
+            		model.addModelEntity(childEntity);
             		context.getConfigurationService().save(childEntity);
             		//add the attribute that references the entity
             		ModelAttrib attrib=null;
@@ -500,6 +501,7 @@ public class EditHierarchicalModelPanel extends VerticalLayout implements IUiPan
 	            		attrib.setTypeEntityId(childEntity.getId());
 	            		attrib.setName("entity ref");
 	            		parentEntity.getModelAttributes().add(attrib);
+	            		model.invalidateIndexes();
 	            		context.getConfigurationService().save(attrib);
                     treeTable.setCollapsed(parentEntity, false);
                     if (model.getRootElement().getId().equalsIgnoreCase(parentEntity.getId())) {
@@ -549,6 +551,7 @@ public class EditHierarchicalModelPanel extends VerticalLayout implements IUiPan
                 if (entity != null) {
                     a.setEntityId(entity.getId());
                     entity.addModelAttribute(a);
+                    model.invalidateIndexes();
                     context.getConfigurationService().save(a);
                     addAttribute(itemId, a);
                     treeTable.setCollapsed(itemId, false);
@@ -597,6 +600,7 @@ public class EditHierarchicalModelPanel extends VerticalLayout implements IUiPan
 	        				ModelEntity childEntity = model.getEntityById(attrib.getTypeEntityId());
 	        				context.getConfigurationService().delete(attrib);
 	        				entity.removeModelAttribute(attrib);
+	        				model.invalidateIndexes();
 	        				deleteEntity(childEntity);
 	        			} else {
 	        				deleteAttribute(attrib);
@@ -614,7 +618,7 @@ public class EditHierarchicalModelPanel extends VerticalLayout implements IUiPan
 	        		}
 	        		context.getConfigurationService().delete(entity);
 	            treeTable.removeItem(entity);
-	            model.getModelEntities().remove(entity);
+	            model.removeModelEntity(entity);
 	        }
         }
     }
@@ -625,6 +629,7 @@ public class EditHierarchicalModelPanel extends VerticalLayout implements IUiPan
 		if (entity.getModelAttributes().contains(attribute)) {
 			context.getConfigurationService().delete(attribute);
 			entity.removeModelAttribute(attribute);
+			model.invalidateIndexes();
 			treeTable.removeItem(attribute);
 		}
     }
@@ -653,13 +658,14 @@ public class EditHierarchicalModelPanel extends VerticalLayout implements IUiPan
                     context.getConfigurationService().save(e);
                     existingModelEntities.put(e.getName().toUpperCase(), e);
 //TODO:                    add(e);
-                    model.getModelEntities().add(e);
+                    model.addModelEntity(e);
                 } else {
                     for (ModelAttrib a : e.getModelAttributes()) {
                         if (modelEntity.getModelAttributeByName(a.getName()) == null) {
                             a.setEntityId(modelEntity.getId());
                             context.getConfigurationService().save(a);
                             modelEntity.addModelAttribute(a);
+                            model.invalidateIndexes();
 //TODO:                            addModelAttribute(modelEntity, a);
                         }
                     }
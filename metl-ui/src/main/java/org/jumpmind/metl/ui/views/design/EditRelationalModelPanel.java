@@ -190,6 +190,7 @@ public class EditRelationalModelPanel extends VerticalLayout implements IUiPanel
                             }
                             if (unique) {
                                 obj.setName(newName);
+                                model.invalidateIndexes();
                                 EditRelationalModelPanel.this.context.getConfigurationService().save(obj);
                             } else {
                                 NotifyDialog.show("Name needs to be unique", "Name needs to be unique", null, Type.WARNING_MESSAGE);
@@ -590,7 +591,7 @@ public class EditRelationalModelPanel extends VerticalLayout implements IUiPanel
             ModelEntity e = new ModelEntity();
             e.setName("New Entity");
             e.setModelId(model.getId());
-            model.getModelEntities().add(e);
+            model.addModelEntity(e);
             context.getConfigurationService().save(e);
             addModelEntity(e);
             selectOnly(e);
@@ -616,6 +617,7 @@ public class EditRelationalModelPanel extends VerticalLayout implements IUiPanel
                 if (entity != null) {
                     a.setEntityId(entity.getId());
                     entity.addModelAttribute(a);
+                    model.invalidateIndexes();
                     context.getConfigurationService().save(a);
                     addModelAttribute(entity, a);
                     treeTable.setCollapsed(entity, false);
@@ -657,6 +659,7 @@ public class EditRelationalModelPanel extends VerticalLayout implements IUiPanel
                                 context.getConfigurationService().delete((ModelAttrib) itemId);
                                 ModelEntity entity = (ModelEntity) treeTable.getParent(itemId);
                                 entity.removeModelAttribute(a);
+                                model.invalidateIndexes();
                                 treeTable.removeItem(itemId);
                             }
                         }
@@ -664,7 +667,7 @@ public class EditRelationalModelPanel extends VerticalLayout implements IUiPanel
                             if (itemId instanceof ModelEntity) {
                                 context.getConfigurationService().delete((ModelEntity) itemId);
                                 treeTable.removeItem(itemId);
-                                model.getModelEntities().remove(itemId);
+                                model.removeModelEntity((ModelEntity) itemId);
                             }
                         }
 
@@ -697,13 +700,14 @@ public class EditRelationalModelPanel extends VerticalLayout implements IUiPanel
                     context.getConfigurationService().save(e);
                     existingModelEntities.put(e.getName().toUpperCase(), e);
                     add(e);
-                    model.getModelEntities().add(e);
+                    model.addModelEntity(e);
                 } else {
                     for (ModelAttrib a : e.getModelAttributes()) {
                         if (modelEntity.getModelAttributeByName(a.getName()) == null) {
                             a.setEntityId(modelEntity.getId());
                             context.getConfigurationService().save(a);
                             modelEntity.addModelAttribute(a);
+                            model.invalidateIndexes();
                             addModelAttribute(modelEntity, a);
                         }
                     }
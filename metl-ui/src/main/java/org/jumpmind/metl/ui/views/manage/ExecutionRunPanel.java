@@ -24,14 +24,20 @@ import static org.apache.commons.lang.StringUtils.isNotBlank;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.apache.commons.io.FileUtils;
 import org.jumpmind.metl.core.model.AbstractObject;
 import org.jumpmind.metl.core.model.Execution;
 import org.jumpmind.metl.core.model.ExecutionStatus;
@@ -150,6 +156,8 @@ public class ExecutionRunPanel extends VerticalLayout implements IUiPanel, IBack
 
     TextField limitField;
 
+    ComboBox levelFilter;
+
     String executionId;
 
     ApplicationContext context;
@@ -303,8 +311,8 @@ public class ExecutionRunPanel extends VerticalLayout implements IUiPanel, IBack
         stepTable.addSelectionListener(event -> {
             String stepId = (String) stepTable.getSelectedRow();
             logContainer.removeAllItems();
-            List<ExecutionStepLog> logs = executionService.findExecutionStepLogs(stepId,
-                    getMaxToShow());
+            List<ExecutionStepLog> logs = executionService.findLastExecutionStepLogs(stepId,
+                    getMaxToShow(), getSelectedLevels());
             logContainer.addAll(logs);
             downloadLink.setVisible(logs.size() > 0);
             setLogMinimized(logContainer.size()==0);
@@ -359,7 +367,7 @@ public class ExecutionRunPanel extends VerticalLayout implements IUiPanel, IBack
         logTextFilterCell.setComponent(filterField);
 
         HeaderCell levelFilterCell = filteringHeader.getCell("level");
-        ComboBox levelFilter = new ComboBox();
+        levelFilter = new ComboBox();
         levelFilter.setWidth(8, Unit.EM);
         levelFilter.setNullSelectionAllowed(true);
         LogLevel[] levels = LogLevel.values();
@@ -372,6 +380,13 @@ public class ExecutionRunPanel extends VerticalLayout implements IUiPanel, IBack
             if (isNotBlank(text)) {
                 logContainer.addContainerFilter(new SimpleStringFilter("level", text, true, false));
             }
+            String stepId = (String) stepTable.getSelectedRow();
+            if (stepId != null) {
+                logContainer.removeAllItems();
+                logContainer.addAll(executionService.findLastExecutionStepLogs(stepId,
+                        getMaxToShow(), getSelectedLevels()));
+                updateStatus();
+            }
         });
         levelFilterCell.setComponent(levelFilter);
 
@@ -433,13 +448,23 @@ public class ExecutionRunPanel extends VerticalLayout implements IUiPanel, IBack
         }
         
         if (stepId != null) {
-            final File file = executionService.getExecutionStepLog(stepId);
+            final String executionStepId = stepId;
             StreamSource ss = new StreamSource() {
                 private static final long serialVersionUID = 1L;
 
                 public InputStream getStream() {
                     try {
-                        return new FileInputStream(file);
+                        File file = File.createTempFile("metl-step-log", ".csv");
+                        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+                            executionService.exportExecutionStepLog(executionStepId, writer);
+                        }
+                        return new FileInputStream(file) {
+                            @Override
+                            public void close() throws IOException {
+                                super.close();
+                                FileUtils.deleteQuietly(file);
+                            }
+                        };
                     } catch (Exception e) {
                         log.error("Failed to download log file", e);
                         CommonUiUtils.notify("Failed to download log file", Type.ERROR_MESSAGE);
@@ -447,7 +472,7 @@ public class ExecutionRunPanel extends VerticalLayout implements IUiPanel, IBack
                     }
                 }
             };
-            StreamResource resource = new StreamResource(ss, file.getName());
+            StreamResource resource = new StreamResource(ss, stepId + ".csv");
             final String KEY = "export";
             setResource(KEY, resource);
             Page.getCurrent().open(ResourceReference.create(resource, this, KEY).getURL(), null);
@@ -635,10 +660,16 @@ public class ExecutionRunPanel extends VerticalLayout implements IUiPanel, IBack
         this.flow = context.getConfigurationService().findFlow(data.execution.getFlowId());
 
         String selected = (String) stepTable.getSelectedRow();
-        data.logs = executionService.findExecutionStepLogs(selected, getMaxToShow());
+        data.logs = selected != null ? executionService.findLastExecutionStepLogs(selected, getMaxToShow(), getSelectedLevels())
+                : new ArrayList<>();
         return data;
     }
 
+    protected Set<LogLevel> getSelectedLevels() {
+        String level = levelFilter != null ? (String) levelFilter.getValue() : null;
+        return isNotBlank(level) ? Collections.singleton(LogLevel.valueOf(level)) : null;
+    }
+
     protected int getMaxToShow() {
         return getMaxToShow(limitField.getValue());
     }
@@ -779,6 +810,13 @@ public class ExecutionRunPanel extends VerticalLayout implements IUiPanel, IBack
 
             if (newLogMessages.size() > 0) {
                 logContainer.addAll(newLogMessages);
+                
+                // Only keep the latest messages when tailing a running step
+                List<ExecutionStepLog> allLogMessages = new ArrayList<>(logContainer.getItemIds());
+                Collections.sort(allLogMessages);
+                for (int i = 0; i < allLogMessages.size() - getMaxToShow(); i++) {
+                    logContainer.removeItem(allLogMessages.get(i));
+                }
                 if (lastSortOrder != null) {
                     logTable.setSortOrder(lastSortOrder);
                 }